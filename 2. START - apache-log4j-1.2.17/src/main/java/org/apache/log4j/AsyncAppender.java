@@ -423,8 +423,9 @@ public class AsyncAppender extends AppenderSkeleton
 
   /**
    * Summary of discarded logging events for a logger.
+   * Also used by {@link RingBufferAsyncAppender}.
    */
-  private static final class DiscardSummary {
+  static final class DiscardSummary {
     /**
      * First event of the highest severity.
      */
@@ -38,7 +38,6 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.apache.log4j.spi.LoggerRepository;
 import org.apache.log4j.spi.HierarchyEventListener;
-import org.apache.log4j.spi.LoggerFactory;
 import org.apache.log4j.helpers.NullEnumeration;
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.config.PropertySetter;
@@ -125,6 +124,26 @@ public class Category implements AppenderAttachable {
      ancestor which is the root category. */
   volatile protected Category parent;
 
+  /**
+     A generation that {@link Hierarchy#levelGeneration} never takes,
+     used to mark {@link #enabledLevel} as invalid. */
+  static final int GENERATION_UNKNOWN = Integer.MIN_VALUE;
+
+  /**
+     Marks {@link #enabledLevel} as invalid. */
+  private static final long LEVEL_UNKNOWN = ((long) GENERATION_UNKNOWN) << 32;
+
+  /**
+     The integer value of the greater of the effective level of this
+     category and the threshold of its hierarchy in the low 32 bits,
+     and the hierarchy generation it was computed in in the high 32
+     bits. A request is enabled if and only if its level is greater or
+     equal to the cached value and the generation is still current.
+     Only used when the repository is a {@link Hierarchy}, which
+     advances its generation whenever a level or the threshold
+     changes. */
+  private volatile long enabledLevel = LEVEL_UNKNOWN;
+
   /**
      The fully qualified name of the Category class. See also the
      getFQCN method. */
@@ -136,7 +155,9 @@ public class Category implements AppenderAttachable {
   protected LoggerRepository repository;
 
 
-  AppenderAttachableImpl aai;
+  /** Attached appenders, replaced only while holding the lock on this
+      category. {@link #callAppenders} reads it without locking. */
+  volatile AppenderAttachableImpl aai;
 
   /** Additivity is set to true by default, that is children inherit
       the appenders of their ancestors by default. If this variable is
@@ -145,7 +166,7 @@ public class Category implements AppenderAttachable {
       of this category will inherit its appenders, unless the children
       have their additivity flag set to <code>false</code> too. See
       the user manual for more details. */
-  protected boolean additive = true;
+  volatile protected boolean additive = true;
 
   /**
      This constructor created a new <code>Category</code> instance and
@@ -207,20 +228,29 @@ public class Category implements AppenderAttachable {
      hierarchy circumventing any evaluation of whether to log or not
      to log the particular log request.
 
+     <p>No lock is taken. Each category's appenders are read from an
+     immutable snapshot, so concurrent calls to {@link #addAppender},
+     {@link #removeAppender(Appender)} and the like only affect
+     subsequent events.
+
+     <p>Consequently an event already being dispatched when {@link
+     #removeAllAppenders} or {@link #removeAppender(Appender)} returns
+     may still reach a removed appender, even though
+     <code>removeAllAppenders</code> has closed it. Such an appender
+     reports the attempt through its error handler.
+
      @param event the event to log.  */
   public
   void callAppenders(LoggingEvent event) {
     int writes = 0;
 
     for(Category c = this; c != null; c=c.parent) {
-      // Protected against simultaneous call to addAppender, removeAppender,...
-      synchronized(c) {
-	if(c.aai != null) {
-	  writes += c.aai.appendLoopOnAppenders(event);
-	}
-	if(!c.additive) {
-	  break;
-	}
+      AppenderAttachableImpl appenders = c.aai;
+      if(appenders != null) {
+	writes += appenders.appendLoopOnAppenders(event);
+      }
+      if(!c.additive) {
+	break;
       }
     }
 
@@ -267,9 +297,7 @@ public class Category implements AppenderAttachable {
     @param message the message object to log. */
   public
   void debug(Object message) {
-    if(repository.isDisabled(Level.DEBUG_INT))
-      return;
-    if(Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isLevelEnabled(Level.DEBUG_INT)) {
       forcedLog(FQCN, Level.DEBUG, message, null);
     }
   }
@@ -286,9 +314,7 @@ public class Category implements AppenderAttachable {
    @param t the exception to log, including its stack trace.  */
   public
   void debug(Object message, Throwable t) {
-    if(repository.isDisabled(Level.DEBUG_INT))
-      return;
-    if(Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.DEBUG_INT))
       forcedLog(FQCN, Level.DEBUG, message, t);
   }
 
@@ -312,9 +338,7 @@ public class Category implements AppenderAttachable {
     @param message the message object to log */
   public
   void error(Object message) {
-    if(repository.isDisabled(Level.ERROR_INT))
-      return;
-    if(Level.ERROR.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.ERROR_INT))
       forcedLog(FQCN, Level.ERROR, message, null);
   }
 
@@ -329,9 +353,7 @@ public class Category implements AppenderAttachable {
    @param t the exception to log, including its stack trace.  */
   public
   void error(Object message, Throwable t) {
-    if(repository.isDisabled(Level.ERROR_INT))
-      return;
-    if(Level.ERROR.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.ERROR_INT))
       forcedLog(FQCN, Level.ERROR, message, t);
 
   }
@@ -372,9 +394,7 @@ public class Category implements AppenderAttachable {
     @param message the message object to log */
   public
   void fatal(Object message) {
-    if(repository.isDisabled(Level.FATAL_INT))
-      return;
-    if(Level.FATAL.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.FATAL_INT))
       forcedLog(FQCN, Level.FATAL, message, null);
   }
 
@@ -389,9 +409,7 @@ public class Category implements AppenderAttachable {
    @param t the exception to log, including its stack trace.  */
   public
   void fatal(Object message, Throwable t) {
-    if(repository.isDisabled(Level.FATAL_INT))
-      return;
-    if(Level.FATAL.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.FATAL_INT))
       forcedLog(FQCN, Level.FATAL, message, t);
   }
 
@@ -459,6 +477,52 @@ public class Category implements AppenderAttachable {
     return null; // If reached will cause an NullPointerException.
   }
 
+  /**
+     Returns <code>true</code> if a request of the given level would
+     pass both the repository threshold and the effective level of this
+     category.
+
+     <p>When attached to a {@link Hierarchy} the answer comes from a
+     cached integer, so a disabled request costs two volatile reads
+     and two comparisons. Other repositories are asked every time.  */
+  final
+  boolean isLevelEnabled(int level) {
+    if(!(repository instanceof Hierarchy)) {
+      return !repository.isDisabled(level)
+	&& level >= this.getEffectiveLevel().level;
+    }
+    Hierarchy h = (Hierarchy) repository;
+    long cached = enabledLevel;
+    if((int) (cached >>> 32) != h.levelGeneration) {
+      cached = computeEnabledLevel(h);
+    }
+    return level >= (int) cached;
+  }
+
+  /**
+     Recomputes and caches the enabled level, tagged with the
+     generation read before the levels were. Should the hierarchy be
+     modified meanwhile, the tag is already stale and the value will be
+     recomputed on the next request.  */
+  private
+  long computeEnabledLevel(Hierarchy h) {
+    int generation = h.levelGeneration;
+    int value = Math.max(h.thresholdInt, this.getEffectiveLevel().level);
+    long cached = (((long) generation) << 32) | (value & 0xFFFFFFFFL);
+    enabledLevel = cached;
+    return cached;
+  }
+
+  /**
+     Invalidates the cached enabled level of this category and of all
+     categories that may inherit from it.  */
+  final
+  void levelChanged() {
+    if(repository instanceof Hierarchy) {
+      ((Hierarchy) repository).invalidateEnabledLevels();
+    }
+  }
+
   /**
     *
     * @deprecated Please use the the {@link #getEffectiveLevel} method
@@ -673,9 +737,7 @@ public class Category implements AppenderAttachable {
     @param message the message object to log */
   public
   void info(Object message) {
-    if(repository.isDisabled(Level.INFO_INT))
-      return;
-    if(Level.INFO.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.INFO_INT))
       forcedLog(FQCN, Level.INFO, message, null);
   }
 
@@ -690,9 +752,7 @@ public class Category implements AppenderAttachable {
    @param t the exception to log, including its stack trace.  */
   public
   void info(Object message, Throwable t) {
-    if(repository.isDisabled(Level.INFO_INT))
-      return;
-    if(Level.INFO.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.INFO_INT))
       forcedLog(FQCN, Level.INFO, message, t);
   }
 
@@ -744,9 +804,7 @@ public class Category implements AppenderAttachable {
     *   */
   public
   boolean isDebugEnabled() {
-    if(repository.isDisabled( Level.DEBUG_INT))
-      return false;
-    return Level.DEBUG.isGreaterOrEqual(this.getEffectiveLevel());
+    return isLevelEnabled(Level.DEBUG_INT);
   }
 
   /**
@@ -759,9 +817,7 @@ public class Category implements AppenderAttachable {
   */
   public
   boolean isEnabledFor(Priority level) {
-    if(repository.isDisabled(level.level))
-      return false;
-    return level.isGreaterOrEqual(this.getEffectiveLevel());
+    return isLevelEnabled(level.level);
   }
 
   /**
@@ -773,9 +829,7 @@ public class Category implements AppenderAttachable {
   */
   public
   boolean isInfoEnabled() {
-    if(repository.isDisabled(Level.INFO_INT))
-      return false;
-    return Level.INFO.isGreaterOrEqual(this.getEffectiveLevel());
+    return isLevelEnabled(Level.INFO_INT);
   }
 
 
@@ -789,10 +843,7 @@ public class Category implements AppenderAttachable {
      @since 0.8.4 */
   public
   void l7dlog(Priority priority, String key, Throwable t) {
-    if(repository.isDisabled(priority.level)) {
-      return;
-    }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isLevelEnabled(priority.level)) {
       String msg = getResourceBundleString(key);
       // if message corresponding to 'key' could not be found in the
       // resource bundle, then default to 'key'.
@@ -813,10 +864,7 @@ public class Category implements AppenderAttachable {
   */
   public
   void l7dlog(Priority priority, String key,  Object[] params, Throwable t) {
-    if(repository.isDisabled(priority.level)) {
-      return;
-    }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isLevelEnabled(priority.level)) {
       String pattern = getResourceBundleString(key);
       String msg;
       if(pattern == null)
@@ -832,10 +880,7 @@ public class Category implements AppenderAttachable {
    */
   public
   void log(Priority priority, Object message, Throwable t) {
-    if(repository.isDisabled(priority.level)) {
-      return;
-    }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(priority.level))
       forcedLog(FQCN, priority, message, t);
   }
 
@@ -844,10 +889,7 @@ public class Category implements AppenderAttachable {
  */
   public
   void log(Priority priority, Object message) {
-    if(repository.isDisabled(priority.level)) {
-      return;
-    }
-    if(priority.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(priority.level))
       forcedLog(FQCN, priority, message, null);
   }
 
@@ -862,10 +904,7 @@ public class Category implements AppenderAttachable {
      @param t The throwable of the logging request, may be null.  */
   public
   void log(String callerFQCN, Priority level, Object message, Throwable t) {
-    if(repository.isDisabled(level.level)) {
-      return;
-    }
-    if(level.isGreaterOrEqual(this.getEffectiveLevel())) {
+    if(isLevelEnabled(level.level)) {
       forcedLog(callerFQCN, level, message, t);
     }
   }
@@ -958,6 +997,7 @@ public class Category implements AppenderAttachable {
   final
   void setHierarchy(LoggerRepository repository) {
     this.repository = repository;
+    enabledLevel = LEVEL_UNKNOWN;
   }
 
   /**
@@ -974,6 +1014,7 @@ public class Category implements AppenderAttachable {
   public
   void setLevel(Level level) {
     this.level = level;
+    levelChanged();
   }
 
 
@@ -987,6 +1028,7 @@ public class Category implements AppenderAttachable {
   public
   void setPriority(Priority priority) {
     this.level = (Level) priority;
+    levelChanged();
   }
 
 
@@ -1049,10 +1091,7 @@ public class Category implements AppenderAttachable {
     @param message the message object to log.  */
   public
   void warn(Object message) {
-    if(repository.isDisabled( Level.WARN_INT))
-      return;
-
-    if(Level.WARN.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.WARN_INT))
       forcedLog(FQCN, Level.WARN, message, null);
   }
 
@@ -1067,9 +1106,7 @@ public class Category implements AppenderAttachable {
    @param t the exception to log, including its stack trace.  */
   public
   void warn(Object message, Throwable t) {
-    if(repository.isDisabled(Level.WARN_INT))
-      return;
-    if(Level.WARN.isGreaterOrEqual(this.getEffectiveLevel()))
+    if(isLevelEnabled(Level.WARN_INT))
       forcedLog(FQCN, Level.WARN, message, t);
   }
 
@@ -1157,186 +1194,6 @@ public
     }
   }
 
-/**
-     Return a new logger instance named as the first parameter using
-     <code>factory</code>.
-
-     <p>If a logger of that name already exists, then it will be
-     returned.  Otherwise, a new logger will be instantiated by the
-     <code>factory</code> parameter and linked with its existing
-     ancestors as well as children.
-
-     @param name The name of the logger to retrieve.
-     @param factory The factory that will make the new logger instance.
-
- */
-  public
-  Logger getLogger(String name, LoggerFactory factory) {
-    //System.out.println("getInstance("+name+") called.");
-    CategoryKey key = new CategoryKey(name);
-    // Synchronize to prevent write conflicts. Read conflicts (in
-    // getChainedLevel method) are possible only if variable
-    // assignments are non-atomic.
-    Logger logger;
-
-    synchronized(ht) {
-      Object o = ht.get(key);
-      if(o == null) {
-	logger = factory.makeNewLoggerInstance(name);
-	logger.setHierarchy(this);
-	ht.put(key, logger);
-	updateParents(logger);
-	return logger;
-      } else if(o instanceof Logger) {
-	return (Logger) o;
-      } else if (o instanceof ProvisionNode) {
-	//System.out.println("("+name+") ht.get(this) returned ProvisionNode");
-	logger = factory.makeNewLoggerInstance(name);
-	logger.setHierarchy(this);
-	ht.put(key, logger);
-	updateChildren((ProvisionNode) o, logger);
-	updateParents(logger);
-	return logger;
-      }
-      else {
-	// It should be impossible to arrive here
-	return null;  // but let's keep the compiler happy.
-      }
-    }
-  }
-
-/**
-     Reset all values contained in this hierarchy instance to their
-     default.  This removes all appenders from all categories, sets
-     the level of all non-root categories to <code>null</code>,
-     sets their additivity flag to <code>true</code> and sets the level
-     of the root logger to {@link Level#DEBUG DEBUG}.  Moreover,
-     message disabling is set its default "off" value.
-
-     <p>Existing categories are not removed. They are just reset.
-
-     <p>This method should be used sparingly and with care as it will
-     block all logging until it is completed.</p>
-
-     @since 0.8.5 */
-  public
-  void resetConfiguration() {
-
-    getRootLogger().setLevel((Level) Level.DEBUG);
-    root.setResourceBundle(null);
-    setThreshold(Level.ALL);
-
-    // the synchronization is needed to prevent JDK 1.2.x hashtable
-    // surprises
-    synchronized(ht) {
-      shutdown(); // nested locks are OK
-
-      Enumeration cats = getCurrentLoggers();
-      while(cats.hasMoreElements()) {
-	Logger c = (Logger) cats.nextElement();
-	c.setLevel(null);
-	c.setAdditivity(true);
-	c.setResourceBundle(null);
-      }
-    }
-    rendererMap.clear();
-    throwableRenderer = null;
-  }
-
-/**
-      We update the links for all the children that placed themselves
-      in the provision node 'pn'. The second argument 'cat' is a
-      reference for the newly created Logger, parent of all the
-      children in 'pn'
-
-      We loop on all the children 'c' in 'pn':
-
-         If the child 'c' has been already linked to a child of
-         'cat' then there is no need to update 'c'.
-
-	 Otherwise, we set cat's parent field to c's parent and set
-	 c's parent field to cat.
-
-  */
-  final
-  private
-  void updateChildren(ProvisionNode pn, Logger logger) {
-    //System.out.println("updateChildren called for " + logger.name);
-    final int last = pn.size();
-
-    for(int i = 0; i < last; i++) {
-      Logger l = (Logger) pn.elementAt(i);
-      //System.out.println("Updating child " +p.name);
-
-      // Unless this child already points to a correct (lower) parent,
-      // make cat.parent point to l.parent and l.parent to cat.
-      if(!l.parent.name.startsWith(logger.name)) {
-	logger.parent = l.parent;
-	l.parent = logger;
-      }
-    }
-  }
-
-/**
-     This method loops through all the *potential* parents of
-     'cat'. There 3 possible cases:
-
-     1) No entry for the potential parent of 'cat' exists
-
-        We create a ProvisionNode for this potential parent and insert
-        'cat' in that provision node.
-
-     2) There entry is of type Logger for the potential parent.
-
-        The entry is 'cat's nearest existing parent. We update cat's
-        parent field with this entry. We also break from the loop
-        because updating our parent's parent is our parent's
-        responsibility.
-
-     3) There entry is of type ProvisionNode for this potential parent.
-
-        We add 'cat' to the list of children for this potential parent.
-   */
-  final
-  private
-  void updateParents(Logger cat) {
-    String name = cat.name;
-    int length = name.length();
-    boolean parentFound = false;
-
-    //System.out.println("UpdateParents called for " + name);
-
-    // if name = "w.x.y.z", loop thourgh "w.x.y", "w.x" and "w", but not "w.x.y.z"
-    for(int i = name.lastIndexOf('.', length-1); i >= 0;
-	                                 i = name.lastIndexOf('.', i-1))  {
-      String substr = name.substring(0, i);
-
-      //System.out.println("Updating parent : " + substr);
-      CategoryKey key = new CategoryKey(substr); // simple constructor
-      Object o = ht.get(key);
-      // Create a provision node for a future parent.
-      if(o == null) {
-	//System.out.println("No parent "+substr+" found. Creating ProvisionNode.");
-	ProvisionNode pn = new ProvisionNode(cat);
-	ht.put(key, pn);
-      } else if(o instanceof Category) {
-	parentFound = true;
-	cat.parent = (Category) o;
-	//System.out.println("Linking " + cat.name + " -> " + ((Category) o).name);
-	break; // no need to update the ancestors of the closest ancestor
-      } else if(o instanceof ProvisionNode) {
-	((ProvisionNode) o).addElement(cat);
-      } else {
-	Exception e = new IllegalStateException("unexpected object type " +
-					o.getClass() + " in ht.");
-	e.printStackTrace();
-      }
-    }
-    // If we could not find any existing parents, then link with root.
-    if(!parentFound)
-      cat.parent = root;
-  }
-
 /**
      Used internally to parse an category element.
   */
@@ -130,15 +130,15 @@ public class ConsoleAppender extends WriterAppender {
    public void activateOptions() {
         if (follow) {
             if (target.equals(SYSTEM_ERR)) {
-               setWriter(createWriter(new SystemErrStream()));
+               setWriter(createStreamWriter(new SystemErrStream()));
             } else {
-               setWriter(createWriter(new SystemOutStream()));
+               setWriter(createStreamWriter(new SystemOutStream()));
             }
         } else {
             if (target.equals(SYSTEM_ERR)) {
-               setWriter(createWriter(System.err));
+               setWriter(createStreamWriter(System.err));
             } else {
-               setWriter(createWriter(System.out));
+               setWriter(createStreamWriter(System.out));
             }
         }
 
@@ -22,6 +22,7 @@ package org.apache.log4j;
 import java.io.IOException;
 import java.io.File;
 import java.io.InterruptedIOException;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -29,7 +30,9 @@ import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.Locale;
 
+import org.apache.log4j.helpers.FileCompressor;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.pattern.CachedDateFormat;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -177,7 +180,7 @@ public class DailyRollingFileAppender extends FileAppender {
 
   Date now = new Date();
 
-  SimpleDateFormat sdf;
+  DateFormat sdf;
 
   RollingCalendar rc = new RollingCalendar();
 
@@ -223,7 +226,8 @@ public class DailyRollingFileAppender extends FileAppender {
     super.activateOptions();
     if(datePattern != null && fileName != null) {
       now.setTime(System.currentTimeMillis());
-      sdf = new SimpleDateFormat(datePattern);
+      // shared with the layouts and appenders using the same pattern
+      sdf = CachedDateFormat.getInstance(datePattern, TimeZone.getDefault());
       int type = computeCheckPeriod();
       printPeriodicity(type);
       rc.setType(type);
@@ -328,6 +332,12 @@ public class DailyRollingFileAppender extends FileAppender {
     boolean result = file.renameTo(target);
     if(result) {
       LogLog.debug(fileName +" -> "+ scheduledFilename);
+      if(compression != FileCompressor.NONE) {
+	File compressed = new File(scheduledFilename
+				   + FileCompressor.getSuffix(compression));
+	executeInBackground(new FileCompressor(target, compressed,
+					       compression, compressionLevel));
+      }
     } else {
       LogLog.error("Failed to rename ["+fileName+"] to ["+scheduledFilename+"].");
     }
@@ -408,6 +408,13 @@ import org.apache.log4j.spi.LoggingEvent;
 
   </dl>
 
+   <p>A layout may be shared by any number of threads. Each thread
+   formats its events into a buffer it keeps for the next event, so
+   {@link #format(LoggingEvent)} does not allocate a buffer per
+   event. Buffers grown beyond 4096 characters by a long event are
+   dropped, and new buffers are sized from the length of recent
+   events.
+
    <p>The above text is largely inspired from Peter A. Darnell and
    Philip E. Margolis' highly recommended book "C -- a Software
    Engineering Approach", ISBN 0-387-97389-3.
@@ -446,6 +453,33 @@ public class EnhancedPatternLayout extends Layout {
    */
   public static final String PATTERN_RULE_REGISTRY = "PATTERN_RULE_REGISTRY";
 
+  /**
+   * Largest capacity of a buffer kept by a thread for the next event.
+   */
+  private static final int MAX_RETAINED_CAPACITY = 4096;
+
+  /**
+   * Smallest capacity of a new buffer.
+   */
+  private static final int MIN_INITIAL_CAPACITY = 64;
+
+  /**
+   * Buffer of each thread, shared by all layouts, held in a one
+   * element array which is emptied while the buffer is in use.
+   */
+  private static final ThreadLocal buffers = new ThreadLocal() {
+      protected Object initialValue() {
+          return new StringBuffer[1];
+      }
+  };
+
+  /**
+   * Moving average of the length of the events formatted by this
+   * layout, used to size new buffers. Updates from concurrent threads
+   * may be lost, which only makes the estimate less precise.
+   */
+  private volatile int averageLength = 256;
+
 
   /**
     *  Initial converter for pattern.
@@ -539,13 +573,48 @@ public class EnhancedPatternLayout extends Layout {
    * @param event logging event to be formatted.
   */
   public String format(final LoggingEvent event) {
-      StringBuffer buf = new StringBuffer();
+      StringBuffer[] slot = (StringBuffer[]) buffers.get();
+      StringBuffer buf = slot[0];
+      if (buf == null) {
+          // first event of the thread, or formatting within a format
+          buf = new StringBuffer(initialCapacity());
+      } else {
+          slot[0] = null;
+          buf.setLength(0);
+      }
+      format(buf, event);
+      int length = buf.length();
+      averageLength += (length - averageLength) >> 3;
+      String formatted = buf.toString();
+      if (buf.capacity() <= MAX_RETAINED_CAPACITY) {
+          slot[0] = buf;
+      }
+      return formatted;
+  }
+
+  /**
+   * Returns the capacity of a new buffer, a quarter more than the
+   * average length of recent events.
+   * @return capacity in characters.
+   */
+  private int initialCapacity() {
+      int length = averageLength;
+      return Math.min(MAX_RETAINED_CAPACITY,
+                      Math.max(MIN_INITIAL_CAPACITY, length + (length >> 2)));
+  }
+
+  /**
+   *  Formats a logging event into a caller supplied buffer.
+   * @param buf buffer to receive the formatted event.
+   * @param event logging event to be formatted.
+   * @since 1.2.18
+  */
+  public void format(final StringBuffer buf, final LoggingEvent event) {
       for(PatternConverter c = head;
           c != null;
           c = c.next) {
           c.format(buf, event);
       }
-      return buf.toString();
   }
 
   /**
@@ -16,65 +16,209 @@
  */
 package org.apache.log4j;
 
+import org.apache.log4j.spi.OptionHandler;
 import org.apache.log4j.spi.ThrowableRenderer;
 
 import java.io.File;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.security.CodeSource;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Enhanced implementation of ThrowableRenderer.  Uses Throwable.getStackTrace
- * if running on JDK 1.4 or later and delegates to DefaultThrowableRenderer.render
- * on earlier virtual machines.
+ * and appends the location and version of the class of each frame.
+ *
+ * <p>Since 1.2.18, the lines rendered for the recently seen stack
+ * traces are reused when a throwable with the same message and stack
+ * trace is rendered again, as happens when the same failure is logged
+ * over and over. The <b>MaxDepth</b> option limits the number of
+ * frames output, and the <b>FoldRepeatedFrames</b> option outputs a
+ * sequence of frames repeated by a recursion only once.
  *
  * @since 1.2.16
  */
-public final class EnhancedThrowableRenderer implements ThrowableRenderer {
+public final class EnhancedThrowableRenderer
+  implements ThrowableRenderer, OptionHandler {
+    /**
+     * Number of stack traces whose rendering is cached, must be a
+     * power of two.
+     */
+    private static final int CACHE_SIZE = 256;
+
     /**
-     * Throwable.getStackTrace() method.
+     * Longest sequence of frames folded when repeated.
      */
-    private Method getStackTraceMethod;
+    private static final int MAX_PERIOD = 16;
+
     /**
-     * StackTraceElement.getClassName() method.
+     * Renderings of recent stack traces, indexed by their hash code.
+     * Entries are immutable, so the cache is read and updated without
+     * locking; colliding stack traces simply replace each other.
      */
-    private Method getClassNameMethod;
+    private volatile Rendering[] cache = new Rendering[CACHE_SIZE];
+
+    /**
+     * Maximum number of frames output, 0 for all of them.
+     */
+    private int maxDepth;
+
+    /**
+     * Whether repeated sequences of frames are folded.
+     */
+    private boolean foldRepeatedFrames;
 
 
     /**
      * Construct new instance.
      */
     public EnhancedThrowableRenderer() {
-        try {
-            Class[] noArgs = null;
-            getStackTraceMethod = Throwable.class.getMethod("getStackTrace", noArgs);
-            Class ste = Class.forName("java.lang.StackTraceElement");
-            getClassNameMethod = ste.getMethod("getClassName", noArgs);
-        } catch(Exception ex) {
-        }
+    }
+
+    /**
+     * Sets the maximum number of frames output, the remaining ones
+     * being replaced by a line giving their number.
+     * @param maxDepth maximum number of frames, 0 for no limit.
+     * @since 1.2.18
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+        cache = new Rendering[CACHE_SIZE];
+    }
+
+    /**
+     * Gets the maximum number of frames output.
+     * @return maximum number of frames, 0 for no limit.
+     * @since 1.2.18
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets whether a sequence of up to 16 frames repeated in a row,
+     * as by a recursion, is output once followed by a line giving the
+     * number of repetitions.
+     * @param fold true to fold repeated frames.
+     * @since 1.2.18
+     */
+    public void setFoldRepeatedFrames(final boolean fold) {
+        this.foldRepeatedFrames = fold;
+        cache = new Rendering[CACHE_SIZE];
+    }
+
+    /**
+     * Gets whether repeated frames are folded.
+     * @return true if repeated frames are folded.
+     * @since 1.2.18
+     */
+    public boolean getFoldRepeatedFrames() {
+        return foldRepeatedFrames;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void activateOptions() {
     }
 
     /**
      * {@inheritDoc}
      */
     public String[] doRender(final Throwable throwable) {
-        if (getStackTraceMethod != null) {
-            try {
-                Object[] noArgs = null;
-                Object[] elements = (Object[]) getStackTraceMethod.invoke(throwable, noArgs);
-                String[] lines = new String[elements.length + 1];
-                lines[0] = throwable.toString();
-                Map classMap = new HashMap();
-                for(int i = 0; i < elements.length; i++) {
-                    lines[i+1] = formatElement(elements[i], classMap);
+        String head = throwable.toString();
+        StackTraceElement[] elements = throwable.getStackTrace();
+        int hash = head.hashCode();
+        for(int i = 0; i < elements.length; i++) {
+            hash = 31 * hash + elements[i].hashCode();
+        }
+        Rendering[] renderings = cache;
+        int index = hash & (CACHE_SIZE - 1);
+        Rendering rendering = renderings[index];
+        if (rendering == null || !rendering.head.equals(head)
+            || !Arrays.equals(rendering.elements, elements)) {
+            rendering = new Rendering(head, elements, render(head, elements));
+            renderings[index] = rendering;
+        }
+        return (String[]) rendering.lines.clone();
+    }
+
+    /**
+     * Renders a stack trace.
+     * @param head string representation of the throwable.
+     * @param elements stack trace.
+     * @return lines.
+     */
+    private String[] render(final String head,
+                            final StackTraceElement[] elements) {
+        int depth = elements.length;
+        if (maxDepth > 0 && maxDepth < depth) {
+            depth = maxDepth;
+        }
+        String[] lines = new String[depth + 2];
+        int count = 0;
+        lines[count++] = head;
+        Map classMap = new HashMap();
+        int i = 0;
+        while (i < depth) {
+            int period = 0;
+            int repeats = 0;
+            if (foldRepeatedFrames) {
+                for (int p = 1; p <= MAX_PERIOD && repeats == 0; p++) {
+                    period = p;
+                    repeats = countRepeats(elements, i, p, depth);
                 }
-                return lines;
-            } catch(Exception ex) {
+            }
+            if (repeats > 0) {
+                for (int j = 0; j < period; j++) {
+                    lines[count++] = formatElement(elements[i + j], classMap);
+                }
+                lines[count++] = "\t... " + period
+                    + (period == 1 ? " frame" : " frames")
+                    + " repeated " + repeats
+                    + (repeats == 1 ? " time" : " times");
+                i += period * (repeats + 1);
+            } else {
+                lines[count++] = formatElement(elements[i], classMap);
+                i++;
             }
         }
-        return DefaultThrowableRenderer.render(throwable);
+        if (depth < elements.length) {
+            lines[count++] = "\t... " + (elements.length - depth) + " more";
+        }
+        if (count < lines.length) {
+            String[] trimmed = new String[count];
+            System.arraycopy(lines, 0, trimmed, 0, count);
+            lines = trimmed;
+        }
+        return lines;
+    }
+
+    /**
+     * Counts how many times the frames starting at an index are
+     * immediately repeated.
+     * @param elements stack trace.
+     * @param start index of the first frame of the sequence.
+     * @param period length of the sequence.
+     * @param end index past the last frame considered.
+     * @return number of repetitions following the sequence.
+     */
+    private static int countRepeats(final StackTraceElement[] elements,
+                                    final int start, final int period,
+                                    final int end) {
+        int repeats = 0;
+        int next = start + period;
+        while (next + period <= end) {
+            for (int j = 0; j < period; j++) {
+                if (!elements[start + j].equals(elements[next + j])) {
+                    return repeats;
+                }
+            }
+            repeats++;
+            next += period;
+        }
+        return repeats;
     }
 
     /**
@@ -83,11 +227,12 @@ public final class EnhancedThrowableRenderer implements ThrowableRenderer {
      * @param classMap map of class name to location.
      * @return string representation of element.
      */
-    private String formatElement(final Object element, final Map classMap) {
+    private String formatElement(final StackTraceElement element,
+                                 final Map classMap) {
         StringBuffer buf = new StringBuffer("\tat ");
         buf.append(element);
         try {
-            String className = getClassNameMethod.invoke(element, (Object[]) null).toString();
+            String className = element.getClassName();
             Object classDetails = classMap.get(className);
             if (classDetails != null) {
                 buf.append(classDetails);
@@ -165,4 +310,34 @@ public final class EnhancedThrowableRenderer implements ThrowableRenderer {
     }
   }
 
+    /**
+     * Rendering of a stack trace.
+     */
+    private static final class Rendering {
+        /**
+         * String representation of the throwable.
+         */
+        final String head;
+        /**
+         * Stack trace.
+         */
+        final StackTraceElement[] elements;
+        /**
+         * Rendered lines.
+         */
+        final String[] lines;
+
+        /**
+         * Creates a new instance.
+         * @param head string representation of the throwable.
+         * @param elements stack trace.
+         * @param lines rendered lines.
+         */
+        Rendering(final String head, final StackTraceElement[] elements,
+                  final String[] lines) {
+            this.head = head;
+            this.elements = elements;
+            this.lines = lines;
+        }
+    }
 }
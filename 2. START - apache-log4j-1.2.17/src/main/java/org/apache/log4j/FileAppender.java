@@ -24,9 +24,16 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Timer;
+import java.util.TimerTask;
 
+import org.apache.log4j.helpers.ByteBufferWriter;
+import org.apache.log4j.helpers.FileChannelWriter;
+import org.apache.log4j.helpers.FileCompressor;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.QuietWriter;
+import org.apache.log4j.helpers.SerialExecutor;
 import org.apache.log4j.spi.ErrorCode;
 
 // Contibutors: Jens Uwe Pipka <jens.pipka@gmx.de>
@@ -66,6 +73,65 @@ public class FileAppender extends WriterAppender {
    */
   protected int bufferSize = 8*1024;
 
+  /**
+     Do we write through a FileChannel?
+
+     @since 1.2.18 */
+  protected boolean channelIO = false;
+
+  /**
+     What a flush guarantees when <code>channelIO</code> is set, one
+     of the {@link FileChannelWriter} durability constants.
+
+     @since 1.2.18 */
+  protected int durability = FileChannelWriter.WRITE;
+
+  /**
+     Milliseconds after which buffered output is written when
+     <code>channelIO</code> is set and immediate flush is not.
+
+     @since 1.2.18 */
+  protected long batchInterval = 1000;
+
+  /**
+     Format rolled over files are compressed to by subclasses, one of
+     the {@link FileCompressor} constants.
+
+     @since 1.2.18 */
+  protected int compression = FileCompressor.NONE;
+
+  /**
+     Deflater level used for compression, -1 for the default.
+
+     @since 1.2.18 */
+  protected int compressionLevel = -1;
+
+  /**
+     Maximum number of rollovers whose background work is pending.
+
+     @since 1.2.18 */
+  protected int maxPendingRollovers = 4;
+
+  /**
+     Milliseconds {@link #close} waits for pending background rollover
+     work.
+
+     @since 1.2.18 */
+  public static final long CLOSE_TIMEOUT = 30000;
+
+  /**
+     Runs rollover work of subclasses, created on first use.  */
+  private volatile SerialExecutor backgroundExecutor;
+
+  /**
+     Daemon timer running the batch flushes of this appender, created
+     on first use and cancelled on close, guarded by this.  */
+  private Timer batchTimer;
+
+  /**
+     Scheduled batch flush, guarded by this.  */
+  private TimerTask batchTask;
+
 
   /**
      The default constructor does not do anything.
@@ -260,6 +326,208 @@ public class FileAppender extends WriterAppender {
     this.bufferSize = bufferSize;
   }
 
+  /**
+     Get the value of the <b>ChannelIO</b> option.
+
+     @since 1.2.18 */
+  public
+  boolean getChannelIO() {
+    return this.channelIO;
+  }
+
+  /**
+     The <b>ChannelIO</b> option takes a boolean value. It is set to
+     <code>false</code> by default. If true, events are encoded into a
+     direct byte buffer of <b>BufferSize</b> bytes which is written to
+     the file's {@link java.nio.channels.FileChannel} when it fills up,
+     when <b>BatchInterval</b> elapses or when the appender is closed
+     or rolled over. The option takes precedence over
+     <b>BufferedIO</b>.
+
+     <p>As with BufferedIO, setting this option turns immediate flush
+     off. If ImmediateFlush is set back to true, every event is written
+     and made durable on its own.
+
+     @since 1.2.18 */
+  public
+  void setChannelIO(boolean channelIO) {
+    this.channelIO = channelIO;
+    if(channelIO) {
+      immediateFlush = false;
+    }
+  }
+
+  /**
+     Returns the value of the <b>Durability</b> option.
+
+     @since 1.2.18 */
+  public
+  String getDurability() {
+    switch(durability) {
+    case FileChannelWriter.FORCE: return "force";
+    case FileChannelWriter.FORCE_METADATA: return "forceMetadata";
+    default: return "write";
+    }
+  }
+
+  /**
+     The <b>Durability</b> option determines what writing the buffer
+     guarantees when ChannelIO is set. With "write", the default, the
+     bytes are handed to the operating system. With "force" the file
+     content is also forced to the storage device, and with
+     "forceMetadata" the file metadata as well. Forcing happens at
+     most once per batch.
+
+     @since 1.2.18 */
+  public
+  void setDurability(String value) {
+    durability = FileChannelWriter.toDurability(value, durability);
+  }
+
+  /**
+     Returns the value of the <b>BatchInterval</b> option.
+
+     @since 1.2.18 */
+  public
+  long getBatchInterval() {
+    return batchInterval;
+  }
+
+  /**
+     The <b>BatchInterval</b> option sets the maximum number of
+     milliseconds events stay in the buffer when ChannelIO is set and
+     ImmediateFlush is not. The default is 1000. Zero or a negative
+     value disables timed writes, leaving the buffer to be written
+     only when it fills up.
+
+     <p>Timed writes, and the forcing required by <b>Durability</b>,
+     run on a daemon thread of their own for each appender, so a slow
+     device only delays the appenders writing to it.
+
+     @since 1.2.18 */
+  public
+  void setBatchInterval(long batchInterval) {
+    this.batchInterval = batchInterval;
+  }
+
+  /**
+     Returns the value of the <b>Compression</b> option.
+
+     @since 1.2.18 */
+  public
+  String getCompression() {
+    return FileCompressor.getFormatName(compression);
+  }
+
+  /**
+     The <b>Compression</b> option takes one of the values "none",
+     "gzip" or "zip". It is "none" by default. Appenders that roll
+     over, {@link RollingFileAppender} and {@link
+     DailyRollingFileAppender}, compress each rolled over file on a
+     background thread and append ".gz" or ".zip" to its name. The
+     single entry of a zip file is named after the log file for
+     RollingFileAppender, so that it stays right as backups shift, and
+     after the dated file for DailyRollingFileAppender.
+
+     @since 1.2.18 */
+  public
+  void setCompression(String value) {
+    compression = FileCompressor.toFormat(value, compression);
+  }
+
+  /**
+     Returns the value of the <b>CompressionLevel</b> option.
+
+     @since 1.2.18 */
+  public
+  int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+     The <b>CompressionLevel</b> option sets the deflater level, from
+     0 (no compression) to 9 (best compression). The default, -1,
+     selects the deflater's default level.
+
+     @since 1.2.18 */
+  public
+  void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+     Returns the value of the <b>MaxPendingRollovers</b> option.
+
+     @since 1.2.18 */
+  public
+  int getMaxPendingRollovers() {
+    return maxPendingRollovers;
+  }
+
+  /**
+     The <b>MaxPendingRollovers</b> option bounds the number of
+     rollovers whose background renaming or compression has not
+     completed. A rollover finding that many pending waits for the
+     oldest one to complete. The default is 4.
+
+     @since 1.2.18 */
+  public
+  void setMaxPendingRollovers(int maxPendingRollovers) {
+    this.maxPendingRollovers = maxPendingRollovers;
+  }
+
+  /**
+     Returns the number of rollovers whose background work has not
+     completed.
+
+     @since 1.2.18 */
+  public
+  int getPendingRollovers() {
+    SerialExecutor executor = backgroundExecutor;
+    return executor == null ? 0 : executor.getPendingCount();
+  }
+
+  /**
+     Queues rollover work to the background thread of this appender.
+     Tasks run one at a time in the order they were queued. Waits if
+     <b>MaxPendingRollovers</b> tasks are pending.
+
+     @since 1.2.18 */
+  protected
+  void executeInBackground(Runnable task) {
+    if(backgroundExecutor == null) {
+      backgroundExecutor = new SerialExecutor("log4j rollover " + getName(),
+					      maxPendingRollovers);
+    }
+    backgroundExecutor.execute(task);
+  }
+
+  /**
+     Closes the file and waits up to {@link #CLOSE_TIMEOUT}
+     milliseconds for pending background rollover work to complete.
+     The wait happens outside the lock of this appender. Work that is
+     still pending afterwards is reported and completes in the
+     background, since the rollover thread is not a daemon.
+
+     @since 1.2.18 */
+  public
+  void close() {
+    SerialExecutor executor;
+    synchronized(this) {
+      super.close();
+      if(batchTimer != null) {
+	batchTimer.cancel();
+	batchTimer = null;
+      }
+      executor = backgroundExecutor;
+    }
+    if(executor != null && !executor.awaitIdle(CLOSE_TIMEOUT)) {
+      LogLog.warn(executor.getPendingCount() + " rollovers of appender ["
+		  + name + "] still pending " + CLOSE_TIMEOUT
+		  + " ms after close, leaving them to the background thread.");
+    }
+  }
+
   /**
     <p>Sets and <i>opens</i> the file where the log output will
     go. The specified file must be writable.
@@ -310,11 +578,25 @@ public class FileAppender extends WriterAppender {
              throw ex;
           }
     }
-    Writer fw = createWriter(ostream);
-    if(bufferedIO) {
-      fw = new BufferedWriter(fw, bufferSize);
+    Writer fw = null;
+    if(channelIO) {
+      Charset charset = getCharset();
+      if(charset != null) {
+	fw = new FileChannelWriter(ostream, charset, bufferSize, durability);
+      }
+    }
+    if(fw == null) {
+      fw = createStreamWriter(ostream);
+      // a ByteBufferWriter is already buffered
+      if(bufferedIO && !(fw instanceof ByteBufferWriter)) {
+	fw = new BufferedWriter(fw, bufferSize);
+      }
     }
     this.setQWForFiles(fw);
+    if(fw instanceof FileChannelWriter && !immediateFlush && batchInterval > 0) {
+      batchTask = new BatchFlushTask();
+      getBatchTimer().schedule(batchTask, batchInterval, batchInterval);
+    }
     this.fileName = fileName;
     this.fileAppend = append;
     this.bufferedIO = bufferedIO;
@@ -340,9 +622,35 @@ public class FileAppender extends WriterAppender {
      <code>reset</code>.  */
   protected
   void reset() {
+    if(batchTask != null) {
+      batchTask.cancel();
+      batchTask = null;
+    }
     closeFile();
     this.fileName = null;
     super.reset();
   }
-}
 
+  /**
+     Returns the batch timer of this appender, creating it if needed.  */
+  private
+  Timer getBatchTimer() {
+    if(batchTimer == null) {
+      batchTimer = new Timer(true);
+    }
+    return batchTimer;
+  }
+
+  /**
+     Writes out the buffered events of the enclosing appender.  */
+  private final class BatchFlushTask extends TimerTask {
+    public
+    void run() {
+      synchronized(FileAppender.this) {
+	if(qw != null) {
+	  qw.flush();
+	}
+      }
+    }
+  }
+}
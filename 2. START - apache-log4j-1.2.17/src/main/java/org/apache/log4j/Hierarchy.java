@@ -28,7 +28,6 @@
 package org.apache.log4j;
 
 
-import java.util.Hashtable;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -68,13 +67,24 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   private LoggerFactory defaultFactory;
   private Vector listeners;
 
-  Hashtable ht;
+  LoggerRegistry registry;
   Logger root;
   RendererMap rendererMap;
 
-  int thresholdInt;
+  volatile int thresholdInt;
   Level threshold;
 
+  /**
+     Incremented whenever a level or the threshold changes, which
+     invalidates the enabled levels cached by the categories, see
+     {@link Category#isLevelEnabled}. */
+  volatile int levelGeneration;
+
+  /**
+     Serializes increments of {@link #levelGeneration} so that no
+     invalidation is lost. */
+  private final Object generationLock = new Object();
+
   boolean emittedNoAppenderWarning = false;
   boolean emittedNoResourceBundleWarning = false;
 
@@ -88,7 +98,7 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
    */
   public
   Hierarchy(Logger root) {
-    ht = new Hashtable();
+    registry = new LoggerRegistry();
     listeners = new Vector(1);
     this.root = root;
     // Enable all level levels by default.
@@ -110,7 +120,9 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
   public
   void clear() {
     //System.out.println("\n\nAbout to clear internal hash table.");
-    ht.clear();
+    synchronized(registry) {
+      registry.clear();
+    }
   }
 
   /**
@@ -124,6 +136,25 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     if(l != null) {
       thresholdInt = l.level;
       threshold = l;
+      invalidateEnabledLevels();
+    }
+  }
+
+  /**
+     Invalidates the cached enabled level of every logger in this
+     hierarchy. Loggers do not know their children, so a change of
+     level anywhere invalidates them all. Rather than visiting every
+     logger, this only advances {@link #levelGeneration}: each cached
+     value records the generation it was computed in and is recomputed
+     lazily once the generation has moved on. The cost of a level
+     change is therefore independent of the number of loggers.  */
+  void invalidateEnabledLevels() {
+    synchronized(generationLock) {
+      int next = levelGeneration + 1;
+      if(next == Category.GENERATION_UNKNOWN) {
+	next++;
+      }
+      levelGeneration = next;
     }
   }
 
@@ -167,27 +198,231 @@ public class Hierarchy implements LoggerRepository, RendererSupport, ThrowableRe
     return getLogger(name, defaultFactory);
   }
 
+ /**
+     Return a new logger instance named as the first parameter using
+     <code>factory</code>.
+
+     <p>If a logger of that name already exists, then it will be
+     returned.  Otherwise, a new logger will be instantiated by the
+     <code>factory</code> parameter and linked with its existing
+     ancestors as well as children.
+
+     <p>Looking up an existing logger takes no lock. Creation is
+     serialized on the registry so that each name is instantiated
+     exactly once.
+
+     @param name The name of the logger to retrieve.
+     @param factory The factory that will make the new logger instance.
+
+ */
+  public
+  Logger getLogger(String name, LoggerFactory factory) {
+    Object o = registry.get(name);
+    if(o instanceof Logger) {
+      return (Logger) o;
+    }
+
+    // Synchronize to prevent write conflicts. A lookup without the
+    // lock may miss a logger that is being registered, so look again.
+    synchronized(registry) {
+      o = registry.get(name);
+      if(o instanceof Logger) {
+	return (Logger) o;
+      }
+      Logger logger = factory.makeNewLoggerInstance(name);
+      logger.setHierarchy(this);
+      // Link the new logger before it becomes visible, either through
+      // the registry or as the parent of one of its children.
+      updateParents(logger);
+      if(o instanceof ProvisionNode) {
+	updateChildren((ProvisionNode) o, logger);
+      }
+      registry.put(name, logger);
+      if(o != null && logger.getLevel() != null) {
+	// children now inherit the level of the new logger
+	invalidateEnabledLevels();
+      }
+      return logger;
+    }
+  }
+
+  /**
+      We update the links for all the children that placed themselves
+      in the provision node 'pn'. The second argument 'cat' is a
+      reference for the newly created Logger, parent of all the
+      children in 'pn'
+
+      We loop on all the children 'c' in 'pn':
+
+         If the child 'c' has been already linked to a child of
+         'cat' then there is no need to update 'c'.
+
+	 Otherwise, we set cat's parent field to c's parent and set
+	 c's parent field to cat.
+
+  */
+  final
+  private
+  void updateChildren(ProvisionNode pn, Logger logger) {
+    final int last = pn.size();
+
+    for(int i = 0; i < last; i++) {
+      Logger l = (Logger) pn.elementAt(i);
+
+      // Unless this child already points to a correct (lower) parent,
+      // make cat.parent point to l.parent and l.parent to cat.
+      if(!l.parent.name.startsWith(logger.name)) {
+	logger.parent = l.parent;
+	l.parent = logger;
+      }
+    }
+  }
+
+  /**
+     This method loops through all the *potential* parents of
+     'cat'. There 3 possible cases:
+
+     1) No entry for the potential parent of 'cat' exists
+
+        We create a ProvisionNode for this potential parent and insert
+        'cat' in that provision node.
+
+     2) There entry is of type Logger for the potential parent.
+
+        The entry is 'cat's nearest existing parent. We update cat's
+        parent field with this entry. We also break from the loop
+        because updating our parent's parent is our parent's
+        responsibility.
+
+     3) There entry is of type ProvisionNode for this potential parent.
+
+        We add 'cat' to the list of children for this potential parent.
+
+     The caller must hold the lock on the registry.
+   */
+  final
+  private
+  void updateParents(Logger cat) {
+    String name = cat.name;
+    int length = name.length();
+    boolean parentFound = false;
+
+    // if name = "w.x.y.z", loop thourgh "w.x.y", "w.x" and "w", but not "w.x.y.z"
+    for(int i = name.lastIndexOf('.', length-1); i >= 0;
+	                                 i = name.lastIndexOf('.', i-1))  {
+      String substr = name.substring(0, i);
+
+      Object o = registry.get(substr);
+      // Create a provision node for a future parent.
+      if(o == null) {
+	ProvisionNode pn = new ProvisionNode(cat);
+	registry.put(substr, pn);
+      } else if(o instanceof Category) {
+	parentFound = true;
+	cat.parent = (Category) o;
+	break; // no need to update the ancestors of the closest ancestor
+      } else if(o instanceof ProvisionNode) {
+	((ProvisionNode) o).addElement(cat);
+      } else {
+	Exception e = new IllegalStateException("unexpected object type " +
+					o.getClass() + " in registry.");
+	e.printStackTrace();
+      }
+    }
+    // If we could not find any existing parents, then link with root.
+    if(!parentFound)
+      cat.parent = root;
+  }
+
  /**
      Returns all the currently defined categories in this hierarchy as
      an {@link java.util.Enumeration Enumeration}.
 
      <p>The root logger is <em>not</em> included in the returned
-     {@link Enumeration}.  */
+     {@link Enumeration}.
+
+     <p>The enumeration walks the registry as it was when this method
+     was called, without copying it. Loggers created meanwhile may or
+     may not be returned.  */
   public
   Enumeration getCurrentLoggers() {
-    // The accumlation in v is necessary because not all elements in
-    // ht are Logger objects as there might be some ProvisionNodes
-    // as well.
-    Vector v = new Vector(ht.size());
-
-    Enumeration elems = ht.elements();
-    while(elems.hasMoreElements()) {
-      Object o = elems.nextElement();
-      if(o instanceof Logger) {
-	v.addElement(o);
+    return registry.loggers();
+  }
+
+  /**
+     Shutting down a hierarchy will <em>safely</em> close and remove
+     all appenders in all categories including the root logger.
+
+     <p>Some appenders such as {@link org.apache.log4j.net.SocketAppender}
+     and {@link AsyncAppender} need to be closed before the
+     application exists. Otherwise, pending logging events might be
+     lost.
+
+     <p>The <code>shutdown</code> method is careful to close nested
+     appenders before closing regular appenders. This is allows
+     configurations where a regular appender is attached to a logger
+     and again to a nested appender.
+
+     @since 1.0 */
+  public
+  void shutdown() {
+    Logger root = getRootLogger();
+
+    // begin by closing nested appenders
+    root.closeNestedAppenders();
+
+    synchronized(registry) {
+      Enumeration cats = this.getCurrentLoggers();
+      while(cats.hasMoreElements()) {
+	Logger c = (Logger) cats.nextElement();
+	c.closeNestedAppenders();
+      }
+
+      // then, remove all appenders
+      root.removeAllAppenders();
+      cats = this.getCurrentLoggers();
+      while(cats.hasMoreElements()) {
+	Logger c = (Logger) cats.nextElement();
+	c.removeAllAppenders();
+      }
+    }
+  }
+
+  /**
+     Reset all values contained in this hierarchy instance to their
+     default.  This removes all appenders from all categories, sets
+     the level of all non-root categories to <code>null</code>,
+     sets their additivity flag to <code>true</code> and sets the level
+     of the root logger to {@link Level#DEBUG DEBUG}.  Moreover,
+     message disabling is set its default "off" value.
+
+     <p>Existing categories are not removed. They are just reset.
+
+     <p>This method should be used sparingly and with care as it will
+     block all logging until it is completed.</p>
+
+     @since 0.8.5 */
+  public
+  void resetConfiguration() {
+
+    getRootLogger().setLevel((Level) Level.DEBUG);
+    root.setResourceBundle(null);
+    setThreshold(Level.ALL);
+
+    // prevent loggers from being created while they are reset
+    synchronized(registry) {
+      shutdown(); // nested locks are OK
+
+      Enumeration cats = getCurrentLoggers();
+      while(cats.hasMoreElements()) {
+	Logger c = (Logger) cats.nextElement();
+	c.setLevel(null);
+	c.setAdditivity(true);
+	c.setResourceBundle(null);
       }
     }
-    return v.elements();
+    rendererMap.clear();
+    throwableRenderer = null;
   }
 
   /**
@@ -42,6 +42,21 @@ public abstract class Layout implements OptionHandler {
   public
   String format(LoggingEvent event);
 
+  /**
+     Appends the formatted representation of <code>event</code> to
+     <code>sbuf</code>. Appenders that reuse a buffer across events
+     call this method instead of {@link #format(LoggingEvent)}.
+
+     <p>The base class appends the result of {@link
+     #format(LoggingEvent)}. Layouts able to write into the buffer
+     directly should override this method.
+
+     @since 1.2.18 */
+  public
+  void format(StringBuffer sbuf, LoggingEvent event) {
+    sbuf.append(format(event));
+  }
+
   /**
      Returns the content type output by this layout. The base class
      returns "text/plain". 
@@ -16,6 +16,7 @@
  */
 package org.apache.log4j;
 
+import org.apache.log4j.helpers.MessageFormatter;
 import org.apache.log4j.spi.LoggingEvent;
 
 import java.util.ResourceBundle;
@@ -27,6 +28,8 @@ import java.util.ResourceBundle;
  * <p>
  * Message formatting is only performed when the 
  * request exceeds the threshold level of the logger.
+ * Since 1.2.18 patterns are parsed once and cached by each thread,
+ * see {@link MessageFormatter}.
  *
  * @since 1.2.16
  *
@@ -50,55 +53,17 @@ public final class LogSF extends LogXF {
      */
     private static String format(final String pattern,
                                  final Object[] arguments) {
-        if (pattern != null) {
-            String retval = "";
-            int count = 0;
-            int prev = 0;
-            int pos = pattern.indexOf("{");
-            while(pos >= 0) {
-                if (pos == 0 || pattern.charAt(pos-1) != '\\') {
-                    retval += pattern.substring(prev, pos);
-                    if (pos + 1 < pattern.length() && pattern.charAt(pos+1) == '}') {
-                        if(arguments != null && count < arguments.length) {
-                            retval += arguments[count++];
-                        } else {
-                            retval += "{}";
-                        }
-                        prev = pos + 2;
-                    } else {
-                        retval += "{";
-                        prev = pos + 1;
-                    }
-                } else {
-                    retval += pattern.substring(prev, pos - 1) + "{";
-                    prev = pos + 1;
-                }
-                pos = pattern.indexOf("{", prev);
-            }
-            return retval + pattern.substring(prev);
-        }
-        return null;
+        return MessageFormatter.formatSF(pattern, arguments);
     }
 
     /**
-     * Formats arguments using MessageFormat.
+     * Formats a single argument using SLF4J-like formatter.
      * @param pattern pattern, may be malformed.
      * @param arg0 argument, may be null or mismatched.
      * @return Message string
      */
     private static String format(final String pattern, final Object arg0) {
-        if (pattern != null) {
-            //
-            //  if there is an escaped brace, delegate to multi-param formatter
-            if (pattern.indexOf("\\{") >= 0) {
-                return format(pattern, new Object[] { arg0 });
-            }
-            int pos = pattern.indexOf("{}");
-            if (pos >= 0) {
-                return pattern.substring(0, pos) + arg0 + pattern.substring(pos+2);
-            }
-        }
-        return pattern;
+        return MessageFormatter.formatSF(pattern, arg0);
     }
 
     /**
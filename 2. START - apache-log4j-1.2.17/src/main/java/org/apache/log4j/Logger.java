@@ -21,6 +21,7 @@ import java.util.Date;
 
 import org.apache.log4j.chainsaw.EventDetails;
 import org.apache.log4j.chainsaw.MyTableModel;
+import org.apache.log4j.helpers.ParameterizedMessage;
 import org.apache.log4j.spi.LoggerFactory;
 
 
@@ -167,11 +168,7 @@ public class Logger extends Category {
      * @since 1.2.12
      */
     public void trace(Object message) {
-      if (repository.isDisabled(Level.TRACE_INT)) {
-        return;
-      }
-
-      if (Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel())) {
+      if (isLevelEnabled(Level.TRACE_INT)) {
         forcedLog(FQCN, Level.TRACE, message, null);
       }
     }
@@ -189,11 +186,7 @@ public class Logger extends Category {
      * @since 1.2.12
      */
     public void trace(Object message, Throwable t) {
-      if (repository.isDisabled(Level.TRACE_INT)) {
-        return;
-      }
-
-      if (Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel())) {
+      if (isLevelEnabled(Level.TRACE_INT)) {
         forcedLog(FQCN, Level.TRACE, message, t);
       }
     }
@@ -206,11 +199,403 @@ public class Logger extends Category {
      *         TRACE, <code>false</code> otherwise.
      */
     public boolean isTraceEnabled() {
-        if (repository.isDisabled(Level.TRACE_INT)) {
-            return false;
-          }
+        return isLevelEnabled(Level.TRACE_INT);
+    }
+
+    /**
+     * Log a message object with the <code>TRACE</code> level including the
+     * stack trace of the {@link Throwable} <code>t</code>.
+     *
+     * <p>This overload is selected instead of {@link #trace(String, Object)}
+     * when the second argument is a <code>Throwable</code>, as it was before
+     * parameterized requests were added.
+     *
+     * @param message the message to log.
+     * @param t the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void trace(String message, Throwable t) {
+      if (isLevelEnabled(Level.TRACE_INT)) {
+        forcedLog(FQCN, Level.TRACE, message, t);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>TRACE</code> level.
+     * Nothing is done unless the logger is enabled for <code>TRACE</code>, and
+     * the message is only formatted when it is rendered, replacing the
+     * <code>{}</code> of the pattern as {@link LogSF} does.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @since 1.2.18
+     */
+    public void trace(String pattern, Object arg0) {
+      if (isLevelEnabled(Level.TRACE_INT)) {
+        forcedLog(FQCN, Level.TRACE, new ParameterizedMessage(pattern, arg0), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>TRACE</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @see #trace(String, Object)
+     * @since 1.2.18
+     */
+    public void trace(String pattern, Object arg0, Object arg1) {
+      if (isLevelEnabled(Level.TRACE_INT)) {
+        forcedLog(FQCN, Level.TRACE, new ParameterizedMessage(pattern, arg0, arg1), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>TRACE</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @param arg2 the argument replacing the third <code>{}</code>.
+     * @see #trace(String, Object)
+     * @since 1.2.18
+     */
+    public void trace(String pattern, Object arg0, Object arg1, Object arg2) {
+      if (isLevelEnabled(Level.TRACE_INT)) {
+        forcedLog(FQCN, Level.TRACE,
+                  new ParameterizedMessage(pattern, arg0, arg1, arg2), null);
+      }
+    }
+
+    /**
+     * Log a message object with the <code>DEBUG</code> level including the
+     * stack trace of the {@link Throwable} <code>t</code>.
+     *
+     * <p>This overload is selected instead of {@link #debug(String, Object)}
+     * when the second argument is a <code>Throwable</code>, as it was before
+     * parameterized requests were added.
+     *
+     * @param message the message to log.
+     * @param t the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void debug(String message, Throwable t) {
+      if (isLevelEnabled(Level.DEBUG_INT)) {
+        forcedLog(FQCN, Level.DEBUG, message, t);
+      }
+    }
 
-          return Level.TRACE.isGreaterOrEqual(this.getEffectiveLevel());
+    /**
+     * Log a parameterized message with the <code>DEBUG</code> level.
+     * Nothing is done unless the logger is enabled for <code>DEBUG</code>, and
+     * the message is only formatted when it is rendered, replacing the
+     * <code>{}</code> of the pattern as {@link LogSF} does.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @since 1.2.18
+     */
+    public void debug(String pattern, Object arg0) {
+      if (isLevelEnabled(Level.DEBUG_INT)) {
+        forcedLog(FQCN, Level.DEBUG, new ParameterizedMessage(pattern, arg0), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>DEBUG</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @see #debug(String, Object)
+     * @since 1.2.18
+     */
+    public void debug(String pattern, Object arg0, Object arg1) {
+      if (isLevelEnabled(Level.DEBUG_INT)) {
+        forcedLog(FQCN, Level.DEBUG, new ParameterizedMessage(pattern, arg0, arg1), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>DEBUG</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @param arg2 the argument replacing the third <code>{}</code>.
+     * @see #debug(String, Object)
+     * @since 1.2.18
+     */
+    public void debug(String pattern, Object arg0, Object arg1, Object arg2) {
+      if (isLevelEnabled(Level.DEBUG_INT)) {
+        forcedLog(FQCN, Level.DEBUG,
+                  new ParameterizedMessage(pattern, arg0, arg1, arg2), null);
+      }
+    }
+
+    /**
+     * Log a message object with the <code>INFO</code> level including the
+     * stack trace of the {@link Throwable} <code>t</code>.
+     *
+     * <p>This overload is selected instead of {@link #info(String, Object)}
+     * when the second argument is a <code>Throwable</code>, as it was before
+     * parameterized requests were added.
+     *
+     * @param message the message to log.
+     * @param t the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void info(String message, Throwable t) {
+      if (isLevelEnabled(Level.INFO_INT)) {
+        forcedLog(FQCN, Level.INFO, message, t);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>INFO</code> level.
+     * Nothing is done unless the logger is enabled for <code>INFO</code>, and
+     * the message is only formatted when it is rendered, replacing the
+     * <code>{}</code> of the pattern as {@link LogSF} does.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @since 1.2.18
+     */
+    public void info(String pattern, Object arg0) {
+      if (isLevelEnabled(Level.INFO_INT)) {
+        forcedLog(FQCN, Level.INFO, new ParameterizedMessage(pattern, arg0), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>INFO</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @see #info(String, Object)
+     * @since 1.2.18
+     */
+    public void info(String pattern, Object arg0, Object arg1) {
+      if (isLevelEnabled(Level.INFO_INT)) {
+        forcedLog(FQCN, Level.INFO, new ParameterizedMessage(pattern, arg0, arg1), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>INFO</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @param arg2 the argument replacing the third <code>{}</code>.
+     * @see #info(String, Object)
+     * @since 1.2.18
+     */
+    public void info(String pattern, Object arg0, Object arg1, Object arg2) {
+      if (isLevelEnabled(Level.INFO_INT)) {
+        forcedLog(FQCN, Level.INFO,
+                  new ParameterizedMessage(pattern, arg0, arg1, arg2), null);
+      }
+    }
+
+    /**
+     * Log a message object with the <code>WARN</code> level including the
+     * stack trace of the {@link Throwable} <code>t</code>.
+     *
+     * <p>This overload is selected instead of {@link #warn(String, Object)}
+     * when the second argument is a <code>Throwable</code>, as it was before
+     * parameterized requests were added.
+     *
+     * @param message the message to log.
+     * @param t the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void warn(String message, Throwable t) {
+      if (isLevelEnabled(Level.WARN_INT)) {
+        forcedLog(FQCN, Level.WARN, message, t);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>WARN</code> level.
+     * Nothing is done unless the logger is enabled for <code>WARN</code>, and
+     * the message is only formatted when it is rendered, replacing the
+     * <code>{}</code> of the pattern as {@link LogSF} does.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @since 1.2.18
+     */
+    public void warn(String pattern, Object arg0) {
+      if (isLevelEnabled(Level.WARN_INT)) {
+        forcedLog(FQCN, Level.WARN, new ParameterizedMessage(pattern, arg0), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>WARN</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @see #warn(String, Object)
+     * @since 1.2.18
+     */
+    public void warn(String pattern, Object arg0, Object arg1) {
+      if (isLevelEnabled(Level.WARN_INT)) {
+        forcedLog(FQCN, Level.WARN, new ParameterizedMessage(pattern, arg0, arg1), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>WARN</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @param arg2 the argument replacing the third <code>{}</code>.
+     * @see #warn(String, Object)
+     * @since 1.2.18
+     */
+    public void warn(String pattern, Object arg0, Object arg1, Object arg2) {
+      if (isLevelEnabled(Level.WARN_INT)) {
+        forcedLog(FQCN, Level.WARN,
+                  new ParameterizedMessage(pattern, arg0, arg1, arg2), null);
+      }
+    }
+
+    /**
+     * Log a message object with the <code>ERROR</code> level including the
+     * stack trace of the {@link Throwable} <code>t</code>.
+     *
+     * <p>This overload is selected instead of {@link #error(String, Object)}
+     * when the second argument is a <code>Throwable</code>, as it was before
+     * parameterized requests were added.
+     *
+     * @param message the message to log.
+     * @param t the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void error(String message, Throwable t) {
+      if (isLevelEnabled(Level.ERROR_INT)) {
+        forcedLog(FQCN, Level.ERROR, message, t);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>ERROR</code> level.
+     * Nothing is done unless the logger is enabled for <code>ERROR</code>, and
+     * the message is only formatted when it is rendered, replacing the
+     * <code>{}</code> of the pattern as {@link LogSF} does.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @since 1.2.18
+     */
+    public void error(String pattern, Object arg0) {
+      if (isLevelEnabled(Level.ERROR_INT)) {
+        forcedLog(FQCN, Level.ERROR, new ParameterizedMessage(pattern, arg0), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>ERROR</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @see #error(String, Object)
+     * @since 1.2.18
+     */
+    public void error(String pattern, Object arg0, Object arg1) {
+      if (isLevelEnabled(Level.ERROR_INT)) {
+        forcedLog(FQCN, Level.ERROR, new ParameterizedMessage(pattern, arg0, arg1), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>ERROR</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @param arg2 the argument replacing the third <code>{}</code>.
+     * @see #error(String, Object)
+     * @since 1.2.18
+     */
+    public void error(String pattern, Object arg0, Object arg1, Object arg2) {
+      if (isLevelEnabled(Level.ERROR_INT)) {
+        forcedLog(FQCN, Level.ERROR,
+                  new ParameterizedMessage(pattern, arg0, arg1, arg2), null);
+      }
+    }
+
+    /**
+     * Log a message object with the <code>FATAL</code> level including the
+     * stack trace of the {@link Throwable} <code>t</code>.
+     *
+     * <p>This overload is selected instead of {@link #fatal(String, Object)}
+     * when the second argument is a <code>Throwable</code>, as it was before
+     * parameterized requests were added.
+     *
+     * @param message the message to log.
+     * @param t the exception to log, including its stack trace.
+     * @since 1.2.18
+     */
+    public void fatal(String message, Throwable t) {
+      if (isLevelEnabled(Level.FATAL_INT)) {
+        forcedLog(FQCN, Level.FATAL, message, t);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>FATAL</code> level.
+     * Nothing is done unless the logger is enabled for <code>FATAL</code>, and
+     * the message is only formatted when it is rendered, replacing the
+     * <code>{}</code> of the pattern as {@link LogSF} does.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @since 1.2.18
+     */
+    public void fatal(String pattern, Object arg0) {
+      if (isLevelEnabled(Level.FATAL_INT)) {
+        forcedLog(FQCN, Level.FATAL, new ParameterizedMessage(pattern, arg0), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>FATAL</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @see #fatal(String, Object)
+     * @since 1.2.18
+     */
+    public void fatal(String pattern, Object arg0, Object arg1) {
+      if (isLevelEnabled(Level.FATAL_INT)) {
+        forcedLog(FQCN, Level.FATAL, new ParameterizedMessage(pattern, arg0, arg1), null);
+      }
+    }
+
+    /**
+     * Log a parameterized message with the <code>FATAL</code> level.
+     *
+     * @param pattern the message pattern.
+     * @param arg0 the argument replacing the first <code>{}</code>.
+     * @param arg1 the argument replacing the second <code>{}</code>.
+     * @param arg2 the argument replacing the third <code>{}</code>.
+     * @see #fatal(String, Object)
+     * @since 1.2.18
+     */
+    public void fatal(String pattern, Object arg0, Object arg1, Object arg2) {
+      if (isLevelEnabled(Level.FATAL_INT)) {
+        forcedLog(FQCN, Level.FATAL,
+                  new ParameterizedMessage(pattern, arg0, arg1, arg2), null);
+      }
     }
 
 	/** @param myTableModel TODO
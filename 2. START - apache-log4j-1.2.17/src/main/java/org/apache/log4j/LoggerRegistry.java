@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+   The table of {@link Logger} and {@link ProvisionNode} instances of a
+   {@link Hierarchy}, keyed by logger name.
+
+   <p>Reads take no lock. Entries are immutable except for their
+   value, and every modification ends by writing the volatile table
+   reference, so a reader sees either the old or the new state of a
+   chain. A reader may miss an entry added concurrently; callers that
+   need a definite answer repeat the lookup while synchronized on the
+   registry, which is also the lock that all writers must hold.
+
+   @since 1.2.18 */
+final class LoggerRegistry {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** Table, length is always a power of two. */
+  private volatile Entry[] table;
+
+  /** Number of entries, guarded by this. */
+  private int count;
+
+  LoggerRegistry() {
+    table = new Entry[INITIAL_CAPACITY];
+  }
+
+  private static int hash(String name) {
+    int h = name.hashCode();
+    // spread the high bits, names often share long prefixes
+    return h ^ (h >>> 16);
+  }
+
+  /**
+     Returns the Logger or ProvisionNode registered under
+     <code>name</code>, or <code>null</code>. Does not lock.  */
+  Object get(String name) {
+    int hash = hash(name);
+    Entry[] tab = table;
+    for(Entry e = tab[hash & (tab.length - 1)]; e != null; e = e.next) {
+      if(e.hash == hash && name.equals(e.name)) {
+	return e.value;
+      }
+    }
+    return null;
+  }
+
+  /**
+     Registers <code>value</code> under <code>name</code>, replacing
+     any previous value. The caller must hold the lock on this
+     registry.  */
+  void put(String name, Object value) {
+    int hash = hash(name);
+    Entry[] tab = table;
+    int index = hash & (tab.length - 1);
+    for(Entry e = tab[index]; e != null; e = e.next) {
+      if(e.hash == hash && name.equals(e.name)) {
+	e.value = value;
+	table = tab;
+	return;
+      }
+    }
+    tab[index] = new Entry(name, hash, tab[index], value);
+    if(++count > (tab.length >> 1) + (tab.length >> 2)) {
+      tab = rehash(tab);
+    }
+    table = tab;
+  }
+
+  /**
+     Returns a table twice as large holding copies of all entries.
+     The old table is left untouched for concurrent readers.  */
+  private
+  Entry[] rehash(Entry[] oldTable) {
+    Entry[] newTable = new Entry[oldTable.length << 1];
+    int mask = newTable.length - 1;
+    for(int i = 0; i < oldTable.length; i++) {
+      for(Entry e = oldTable[i]; e != null; e = e.next) {
+	int index = e.hash & mask;
+	newTable[index] = new Entry(e.name, e.hash, newTable[index], e.value);
+      }
+    }
+    return newTable;
+  }
+
+  /**
+     Removes all entries. The caller must hold the lock on this
+     registry.  */
+  void clear() {
+    count = 0;
+    table = new Entry[INITIAL_CAPACITY];
+  }
+
+  /**
+     Returns the loggers registered at the time of the call, skipping
+     provision nodes. Loggers added afterwards may or may not be
+     enumerated. No copy is made and no lock is taken.  */
+  Enumeration loggers() {
+    return new LoggerEnumeration(table);
+  }
+
+  private static final class Entry {
+    final String name;
+    final int hash;
+    final Entry next;
+    volatile Object value;
+
+    Entry(String name, int hash, Entry next, Object value) {
+      this.name = name;
+      this.hash = hash;
+      this.next = next;
+      this.value = value;
+    }
+  }
+
+  private static final class LoggerEnumeration implements Enumeration {
+    private final Entry[] tab;
+    private int index;
+    private Entry entry;
+    private Logger nextLogger;
+
+    LoggerEnumeration(Entry[] tab) {
+      this.tab = tab;
+      advance();
+    }
+
+    private
+    void advance() {
+      nextLogger = null;
+      while(nextLogger == null) {
+	while(entry == null) {
+	  if(index >= tab.length) {
+	    return;
+	  }
+	  entry = tab[index++];
+	}
+	Object value = entry.value;
+	entry = entry.next;
+	if(value instanceof Logger) {
+	  nextLogger = (Logger) value;
+	}
+      }
+    }
+
+    public
+    boolean hasMoreElements() {
+      return nextLogger != null;
+    }
+
+    public
+    Object nextElement() {
+      Logger logger = nextLogger;
+      if(logger == null) {
+	throw new NoSuchElementException();
+      }
+      advance();
+      return logger;
+    }
+  }
+}
@@ -20,6 +20,9 @@ package org.apache.log4j;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import org.apache.log4j.helpers.ContextMap;
 import org.apache.log4j.helpers.Loader;
 import org.apache.log4j.helpers.ThreadLocalMap;
 
@@ -34,6 +37,11 @@ import org.apache.log4j.helpers.ThreadLocalMap;
    <p><b><em>The MDC is managed on a per thread basis</em></b>. A
    child thread automatically inherits a <em>copy</em> of the mapped
    diagnostic context of its parent.
+
+   <p>Since 1.2.18, the context of a thread is an immutable {@link
+   ContextMap} replaced on every change. Logging events, asynchronous
+   appenders and child threads capture the context by keeping a
+   reference to the current map instead of copying it.
   
    <p>The MDC class requires JDK 1.2 or above. Under JDK 1.1 the MDC
    will always return empty values but otherwise will not affect or
@@ -117,6 +125,11 @@ public class MDC {
   /**
    * Get the current thread's MDC as a hashtable. This method is
    * intended to be used internally.  
+   *
+   * <p>Since 1.2.18 the hashtable is a copy of the context, created
+   * on every call. Its put, remove and clear methods also change the
+   * MDC of the calling thread. {@link #getImmutableContext} returns
+   * the context without copying it.
    * */
   public static Hashtable getContext() {
     if (mdc != null) {
@@ -126,6 +139,20 @@ public class MDC {
     }
   }
 
+  /**
+   * Get the current thread's MDC as an immutable map. The map is not
+   * affected by later changes to the MDC.
+   * @return context, null if the MDC of the thread is empty.
+   * @since 1.2.18
+   */
+  public static Map getImmutableContext() {
+    if (mdc != null) {
+        return mdc.getImmutableContext0();
+    } else {
+        return null;
+    }
+  }
+
   /**
    *  Remove all values from the MDC.
    *  @since 1.2.16
@@ -142,12 +169,11 @@ public class MDC {
     if(java1 || tlm == null) {
       return;
     } else {
-      Hashtable ht = (Hashtable) ((ThreadLocalMap)tlm).get();
-      if(ht == null) {
-        ht = new Hashtable(HT_SIZE);
-        ((ThreadLocalMap)tlm).set(ht);
-      }    
-      ht.put(key, o);
+      ContextMap map = (ContextMap) ((ThreadLocalMap)tlm).get();
+      if(map == null) {
+        map = ContextMap.EMPTY;
+      }
+      ((ThreadLocalMap)tlm).set(map.with(key, o));
     }
   }
   
@@ -156,9 +182,9 @@ public class MDC {
     if(java1 || tlm == null) {
       return null;
     } else {       
-      Hashtable ht = (Hashtable) ((ThreadLocalMap)tlm).get();
-      if(ht != null && key != null) {
-        return ht.get(key);
+      ContextMap map = (ContextMap) ((ThreadLocalMap)tlm).get();
+      if(map != null && key != null) {
+        return map.get(key);
       } else {
         return null;
       }
@@ -168,12 +194,14 @@ public class MDC {
   private
   void remove0(String key) {
     if(!java1 && tlm != null) {
-      Hashtable ht = (Hashtable) ((ThreadLocalMap)tlm).get();
-      if(ht != null) {
-        ht.remove(key);
+      ContextMap map = (ContextMap) ((ThreadLocalMap)tlm).get();
+      if(map != null) {
+        map = map.without(key);
         // clean up if this was the last key
-        if (ht.isEmpty()) {
+        if (map.isEmpty()) {
           clear0();
+        } else {
+          ((ThreadLocalMap)tlm).set(map);
         }
       } 
     }
@@ -182,20 +210,27 @@ public class MDC {
 
   private
   Hashtable getContext0() {
+    Map map = getImmutableContext0();
+    if(map == null) {
+      return null;
+    } else {
+      return new ContextTable(map);
+    }
+  }
+
+  private
+  Map getImmutableContext0() {
      if(java1 || tlm == null) {
       return null;
     } else {       
-      return (Hashtable) ((ThreadLocalMap)tlm).get();
+      return (Map) ((ThreadLocalMap)tlm).get();
     }
   }
 
   private
   void clear0() {
     if(!java1 && tlm != null) {
-      Hashtable ht = (Hashtable) ((ThreadLocalMap)tlm).get();
-      if(ht != null) {
-        ht.clear();
-      }
+      ((ThreadLocalMap)tlm).set(null);
       if(removeMethod != null) {
           // java 1.3/1.4 does not have remove - will suffer from a memory leak
           try {
@@ -209,4 +244,56 @@ public class MDC {
     }
   }
 
+  /**
+     Copy of a context returned by getContext. Putting, removing
+     and clearing also change the MDC of the calling thread, as
+     changing the hashtable of the MDC did before 1.2.18.
+   */
+  private static final class ContextTable extends Hashtable {
+    private static final long serialVersionUID = 6097016371496409373L;
+
+    ContextTable(Map map) {
+      super(Math.max(HT_SIZE, map.size() * 2));
+      for(Iterator iter = map.entrySet().iterator(); iter.hasNext();) {
+        Map.Entry entry = (Map.Entry) iter.next();
+        super.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    public
+    synchronized
+    Object put(Object key, Object value) {
+      Object previous = super.put(key, value);
+      if(key instanceof String) {
+        MDC.put((String) key, value);
+      }
+      return previous;
+    }
+
+    public
+    synchronized
+    Object remove(Object key) {
+      Object previous = super.remove(key);
+      if(key instanceof String) {
+        MDC.remove((String) key);
+      }
+      return previous;
+    }
+
+    public
+    synchronized
+    void clear() {
+      super.clear();
+      MDC.clear();
+    }
+
+    /**
+       Returns a plain hashtable, whose changes do not affect the MDC.
+     */
+    public
+    synchronized
+    Object clone() {
+      return new Hashtable(this);
+    }
+  }
 }
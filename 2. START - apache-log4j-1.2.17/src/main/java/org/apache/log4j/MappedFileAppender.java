@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.MappedFileWriter;
+
+/**
+   MappedFileAppender appends log events to a file through a memory
+   mapped region, so that appending an event copies its encoded bytes
+   into memory without a system call.
+
+   <p>It accepts the options of {@link FileAppender} and can replace
+   it in existing configurations. <b>BufferedIO</b>,
+   <b>BufferSize</b> and <b>ChannelIO</b> are ignored. The
+   <b>RegionSize</b> option sets the size of the regions the file is
+   mapped in, and <b>Durability</b> determines whether a flush forces
+   the mapped region to the storage device.
+
+   <p>While the appender is open the file is extended to the end of
+   the current region and readers see zero bytes after the last
+   event. Closing the appender truncates the file to the length
+   written. If the process ends without the appender being closed,
+   as {@link LogManager#shutdown} does, the zero bytes remain.
+
+   <p>Each region is released when the next one is mapped and on
+   close, through internal classes of the virtual machine. Where they
+   cannot be reached, regions stay mapped until garbage collected; on
+   Windows the file then cannot be truncated on close and keeps its
+   zero bytes. See {@link MappedFileWriter}.
+
+   @since 1.2.18 */
+public class MappedFileAppender extends FileAppender {
+
+  /**
+     Size of the mapped regions. */
+  protected int regionSize = MappedFileWriter.DEFAULT_REGION_SIZE;
+
+  /**
+     The default constructor does not do anything.
+  */
+  public
+  MappedFileAppender() {
+  }
+
+  /**
+    Instantiate a <code>MappedFileAppender</code> and open the file
+    designated by <code>filename</code>.
+
+    <p>If the <code>append</code> parameter is true, the file will be
+    appended to. Otherwise, the file designated by
+    <code>filename</code> will be truncated before being opened.
+  */
+  public
+  MappedFileAppender(Layout layout, String filename, boolean append)
+                                                             throws IOException {
+    this.layout = layout;
+    this.setFile(filename, append, false, bufferSize);
+  }
+
+  /**
+     Returns the value of the <b>RegionSize</b> option.
+   */
+  public
+  int getRegionSize() {
+    return regionSize;
+  }
+
+  /**
+     The <b>RegionSize</b> option sets the number of bytes mapped at a
+     time. The file grows by this amount whenever a region fills up.
+     The default is 8 MB.
+   */
+  public
+  void setRegionSize(int regionSize) {
+    this.regionSize = regionSize;
+  }
+
+  /**
+    Opens <code>fileName</code> and maps its first region.
+
+    @param fileName The path to the log file.
+    @param append   If true will append to fileName. Otherwise will
+        truncate fileName.
+    @param bufferedIO ignored.
+    @param bufferSize ignored. */
+  public
+  synchronized
+  void setFile(String fileName, boolean append, boolean bufferedIO, int bufferSize)
+                                                            throws IOException {
+    LogLog.debug("setFile called: "+fileName+", "+append);
+
+    reset();
+    RandomAccessFile file;
+    try {
+      file = new RandomAccessFile(fileName, "rw");
+    } catch(FileNotFoundException ex) {
+      String parentName = new File(fileName).getParent();
+      if (parentName != null) {
+	File parentDir = new File(parentName);
+	if(!parentDir.exists() && parentDir.mkdirs()) {
+	  file = new RandomAccessFile(fileName, "rw");
+	} else {
+	  throw ex;
+	}
+      } else {
+	throw ex;
+      }
+    }
+
+    Charset charset = getCharset();
+    if(charset == null) {
+      // the Encoding option names an unsupported charset
+      charset = Charset.forName("UTF-8");
+    }
+    try {
+      setQWForFiles(new MappedFileWriter(file, charset, append, regionSize,
+					 durability));
+    } catch(IOException e) {
+      file.close();
+      throw e;
+    }
+    this.fileName = fileName;
+    this.fileAppend = append;
+    this.bufferedIO = bufferedIO;
+    this.bufferSize = bufferSize;
+    writeHeader();
+    LogLog.debug("setFile ended");
+  }
+}
@@ -20,12 +20,9 @@
 
 package org.apache.log4j;
 
-import java.util.Hashtable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Stack;
-import java.util.Enumeration;
-import java.util.Vector;
-
-import org.apache.log4j.helpers.LogLog;
 
 /**
    The NDC class implements <i>nested diagnostic contexts</i> as
@@ -81,10 +78,9 @@ import org.apache.log4j.helpers.LogLog;
    request will have a different NDC tag.
 
    <p>Heavy duty systems should call the {@link #remove} method when
-   leaving the run method of a thread. This ensures that the memory
-   used by the thread can be freed by the Java garbage
-   collector. There is a mechanism to lazily remove references to dead
-   threads. In practice, this means that you can be a little sloppy
+   leaving the run method of a thread, or before returning it to a
+   pool. Since the NDC is kept in a thread local variable, its memory
+   is reclaimed along with the thread, so you can be a little sloppy
    and sometimes forget to call {@link #remove} before exiting a
    thread.
    
@@ -101,40 +97,37 @@ import org.apache.log4j.helpers.LogLog;
  
 public class NDC {
 
-  // The synchronized keyword is not used in this class. This may seem
-  // dangerous, especially since the class will be used by
-  // multiple-threads. In particular, all threads share the same
-  // hashtable (the "ht" variable). This is OK since java hashtables
-  // are thread safe. Same goes for Stacks.
-
-  // More importantly, when inheriting diagnostic contexts the child
-  // thread is handed a clone of the parent's NDC.  It follows that
-  // each thread has its own NDC (i.e. stack).
+  // Each thread only sees its own diagnostic context, kept in a
+  // thread local variable, so no locking is needed. The context is a
+  // chain of immutable DiagnosticContext objects, each pointing to the
+  // one pushed before it, and the thread only holds the innermost
+  // one. Chains can thus be handed to other threads without copying.
 
-  static Hashtable ht = new Hashtable();
+  private static final ThreadLocal current = new ThreadLocal();
 
-  static int pushCounter = 0; // the number of times push has been called
-                              // after the latest call to lazyRemove
-
-  // The number of times we allow push to be called before we call lazyRemove
-  // 5 is a relatively small number. As such, lazyRemove is not called too
-  // frequently. We thus avoid the cost of creating an Enumeration too often.
-  // The higher this number, the longer is the avarage period for which all
-  // logging calls in all threads are blocked.
-  static final int REAP_THRESHOLD = 5;
+  // ThreadLocal.remove is only available since JDK 1.5.
+  private static final Method removeMethod = getRemoveMethod();
   
   // No instances allowed.
   private NDC() {}
+
+  private
+  static
+  Method getRemoveMethod() {
+    try {
+      return ThreadLocal.class.getMethod("remove", null);
+    } catch (NoSuchMethodException e) {
+      // java prior to 1.5
+      return null;
+    }
+  }
   
   /**
-   *   Get NDC stack for current thread.
-   *   @return NDC stack for current thread.
+   *   Get the innermost diagnostic context of the current thread.
+   *   @return innermost context, null if there is none.
    */
-  private static Stack getCurrentStack() {
-      if (ht != null) {
-          return (Stack) ht.get(Thread.currentThread());
-      }
-      return null;
+  private static DiagnosticContext getCurrent() {
+      return (DiagnosticContext) current.get();
   }
 
 
@@ -150,9 +143,8 @@ public class NDC {
   public
   static
   void clear() {
-    Stack stack = getCurrentStack();    
-    if(stack != null) 
-      stack.setSize(0);    
+    if(getCurrent() != null)
+      current.set(null);
   }
 
   
@@ -173,11 +165,15 @@ public class NDC {
   public
   static
   Stack cloneStack() {
-    Stack stack = getCurrentStack();
-    if(stack == null)
+    DiagnosticContext dc = getCurrent();
+    if(dc == null)
       return null;
     else {
-      return (Stack) stack.clone();
+      Stack stack = new Stack();
+      stack.setSize(dc.depth);
+      for(; dc != null; dc = dc.parent)
+	stack.setElementAt(dc, dc.depth - 1);
+      return stack;
     }
   }
 
@@ -205,8 +201,19 @@ public class NDC {
   public
   static
   void inherit(Stack stack) {
-    if(stack != null)
-      ht.put(Thread.currentThread(), stack);
+    if(stack != null) {
+      // Stacks obtained from cloneStack hold the contexts already
+      // chained, which can then be shared as they are.
+      DiagnosticContext dc = null;
+      for(int i = 0; i < stack.size(); i++) {
+	DiagnosticContext element = (DiagnosticContext) stack.elementAt(i);
+	if(element.parent == dc)
+	  dc = element;
+	else
+	  dc = new DiagnosticContext(element.message, dc);
+      }
+      current.set(dc);
+    }
   }
 
 
@@ -217,9 +224,9 @@ public class NDC {
   static
   public
   String get() {
-    Stack s = getCurrentStack();
-    if(s != null && !s.isEmpty()) 
-      return ((DiagnosticContext) s.peek()).fullMessage;
+    DiagnosticContext dc = getCurrent();
+    if(dc != null) 
+      return dc.fullMessage;
     else
       return null;
   }
@@ -233,57 +240,13 @@ public class NDC {
   public
   static
   int getDepth() {
-    Stack stack = getCurrentStack();          
-    if(stack == null)
+    DiagnosticContext dc = getCurrent();          
+    if(dc == null)
       return 0;
     else
-      return stack.size();      
+      return dc.depth;      
   }
 
-  private
-  static
-  void lazyRemove() {
-    if (ht == null) return;
-     
-    // The synchronization on ht is necessary to prevent JDK 1.2.x from
-    // throwing ConcurrentModificationExceptions at us. This sucks BIG-TIME.
-    // One solution is to write our own hashtable implementation.
-    Vector v;
-    
-    synchronized(ht) {
-      // Avoid calling clean-up too often.
-      if(++pushCounter <= REAP_THRESHOLD) {
-	return; // We release the lock ASAP.
-      } else {
-	pushCounter = 0; // OK let's do some work.
-      }
-
-      int misses = 0;
-      v = new Vector(); 
-      Enumeration enumeration = ht.keys();
-      // We give up after 4 straigt missses. That is 4 consecutive
-      // inspected threads in 'ht' that turn out to be alive.
-      // The higher the proportion on dead threads in ht, the higher the
-      // chances of removal.
-      while(enumeration.hasMoreElements() && (misses <= 4)) {
-	Thread t = (Thread) enumeration.nextElement();
-	if(t.isAlive()) {
-	  misses++;
-	} else {
-	  misses = 0;
-	  v.addElement(t);
-	}
-      }
-    } // synchronized
-
-    int size = v.size();
-    for(int i = 0; i < size; i++) {
-      Thread t = (Thread) v.elementAt(i);
-      LogLog.debug("Lazy NDC removal for thread [" + t.getName() + "] ("+ 
-		   ht.size() + ").");
-      ht.remove(t);
-    }
-  }
 
   /**
      Clients should call this method before leaving a diagnostic
@@ -298,10 +261,11 @@ public class NDC {
   public
   static
   String pop() {
-    Stack stack = getCurrentStack();
-    if(stack != null && !stack.isEmpty()) 
-      return ((DiagnosticContext) stack.pop()).message;
-    else
+    DiagnosticContext dc = getCurrent();
+    if(dc != null) {
+      current.set(dc.parent);
+      return dc.message;
+    } else
       return "";
   }
 
@@ -318,9 +282,9 @@ public class NDC {
   public
   static
   String peek() {
-    Stack stack = getCurrentStack();
-    if(stack != null && !stack.isEmpty())
-      return ((DiagnosticContext) stack.peek()).message;
+    DiagnosticContext dc = getCurrent();
+    if(dc != null)
+      return dc.message;
     else
       return "";
   }
@@ -335,21 +299,7 @@ public class NDC {
   public
   static
   void push(String message) {
-    Stack stack = getCurrentStack();
-      
-    if(stack == null) {
-      DiagnosticContext dc = new DiagnosticContext(message, null);      
-      stack = new Stack();
-      Thread key = Thread.currentThread();
-      ht.put(key, stack);
-      stack.push(dc);
-    } else if (stack.isEmpty()) {
-      DiagnosticContext dc = new DiagnosticContext(message, null);            
-      stack.push(dc);
-    } else {
-      DiagnosticContext parent = (DiagnosticContext) stack.peek();
-      stack.push(new DiagnosticContext(message, parent));
-    }    
+    current.set(new DiagnosticContext(message, getCurrent()));
   }
 
   /**
@@ -360,25 +310,23 @@ public class NDC {
      the memory used by the <b>thread</b> cannot be reclaimed by the
      VM.
 
-     <p>As this is such an important problem in heavy duty systems and
-     because it is difficult to always guarantee that the remove
-     method is called before exiting a thread, this method has been
-     augmented to lazily remove references to dead threads. In
-     practice, this means that you can be a little sloppy and
-     occasionally forget to call {@link #remove} before exiting a
-     thread. However, you must call <code>remove</code> sometime. If
-     you never call it, then your application is sure to run out of
-     memory.
+     <p>Since 1.2.18 the diagnostic context is held in a thread local
+     variable which is reclaimed along with the thread, so this method
+     mostly matters for threads that are returned to a pool.
      
   */
   static
   public
   void remove() {
-    if (ht != null) {
-        ht.remove(Thread.currentThread());
-    
-        // Lazily remove dead-thread references in ht.
-        lazyRemove();
+    current.set(null);
+    if(removeMethod != null) {
+      try {
+	removeMethod.invoke(current, null);
+      } catch (IllegalAccessException e) {
+	// should not happen
+      } catch (InvocationTargetException e) {
+	// should not happen
+      }
     }
   }
 
@@ -412,23 +360,32 @@ public class NDC {
   static
   public
   void setMaxDepth(int maxDepth) {
-    Stack stack = getCurrentStack();    
-    if(stack != null && maxDepth < stack.size()) 
-      stack.setSize(maxDepth);
+    DiagnosticContext dc = getCurrent();    
+    if(dc != null && maxDepth < dc.depth) {
+      while(dc != null && dc.depth > maxDepth) {
+	dc = dc.parent;
+      }
+      current.set(dc);
+    }
   }
   
   // =====================================================================
    private static class DiagnosticContext {
 
-    String fullMessage;
-    String message;
+    final String fullMessage;
+    final String message;
+    final DiagnosticContext parent;
+    final int depth;
     
     DiagnosticContext(String message, DiagnosticContext parent) {
       this.message = message;
+      this.parent = parent;
       if(parent != null) {
 	fullMessage = parent.fullMessage + ' ' + message;
+	depth = parent.depth + 1;
       } else {
 	fullMessage = message;
+	depth = 1;
       }
     }
   }
@@ -500,12 +500,32 @@ public class PatternLayout extends Layout {
       sbuf.setLength(0);
     }
 
+    format(sbuf, event);
+    return sbuf.toString();
+  }
+
+  /**
+     Appends the output of the conversion pattern to
+     <code>sbuf</code>. Unlike {@link #format(LoggingEvent)} this
+     method neither uses the internal buffer nor creates a String.
+
+     <p>It may be called concurrently, each caller supplying its own
+     buffer, only as long as every converter is thread-safe. This
+     holds for the converters of the default {@link
+     org.apache.log4j.helpers.PatternParser PatternParser}, whose date
+     converter shares a thread-safe {@link
+     org.apache.log4j.pattern.CachedDateFormat CachedDateFormat}, but
+     not necessarily for those added by overriding {@link
+     #createPatternParser}.
+
+     @since 1.2.18 */
+  public
+  void format(StringBuffer sbuf, LoggingEvent event) {
     PatternConverter c = head;
 
     while(c != null) {
       c.format(sbuf, event);
       c = c.next;
     }
-    return sbuf.toString();
   }
 }
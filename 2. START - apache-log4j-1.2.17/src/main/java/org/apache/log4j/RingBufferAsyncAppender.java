@@ -0,0 +1,583 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.helpers.AppenderAttachableImpl;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.RingBuffer;
+import org.apache.log4j.helpers.WaitStrategy;
+import org.apache.log4j.spi.AppenderAttachable;
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * An asynchronous appender backed by a preallocated {@link RingBuffer}.
+ * <p>
+ * <code>RingBufferAsyncAppender</code> honors the <b>BufferSize</b>,
+ * <b>Blocking</b> and <b>LocationInfo</b> options of {@link AsyncAppender}
+ * and summarizes discarded events the same way, so a configuration can
+ * switch between the two without changing what ends up in the nested
+ * appenders. Unlike <code>AsyncAppender</code>, logging threads never
+ * wait on a shared monitor while the buffer has room, and the dispatcher
+ * thread drains events without locking the buffer.
+ * </p>
+ * <p>
+ * The <b>WaitStrategy</b> option selects how the dispatcher waits for
+ * events and how blocked callers wait for room: <code>spin</code>,
+ * <code>yield</code> or <code>park</code> (the default).
+ * </p>
+ * <p>
+ * The buffer and the dispatcher thread are created by
+ * {@link #activateOptions()}. Until then, and after the dispatcher has
+ * died, events are appended synchronously.
+ * </p>
+ *
+ * @since 1.2.18
+ */
+public class RingBufferAsyncAppender extends AppenderSkeleton
+  implements AppenderAttachable {
+  /**
+   * Maximum number of events dispatched per drain of the buffer.
+   */
+  private static final int MAX_BATCH = 256;
+
+  /**
+   * Milliseconds close waits for events claimed but not yet published.
+   */
+  private static final long PUBLISH_TIMEOUT = 1000;
+
+  /**
+   * Map of DiscardSummary objects keyed by logger name,
+   * also used as its own monitor.
+   */
+  private final Map discardMap = new HashMap();
+
+  /**
+   * Nested appenders.
+   */
+  private final AppenderAttachableImpl appenders =
+    new AppenderAttachableImpl();
+
+  /**
+   * Buffer size.
+   */
+  private int bufferSize = AsyncAppender.DEFAULT_BUFFER_SIZE;
+
+  /**
+   * Does appender block when buffer is full.
+   */
+  private boolean blocking = true;
+
+  /**
+   * Should location info be included in dispatched messages.
+   */
+  private boolean locationInfo = false;
+
+  /**
+   * Name of the wait strategy.
+   */
+  private String waitStrategyName = WaitStrategy.PARK;
+
+  /**
+   * Event buffer, created by activateOptions.
+   */
+  private RingBuffer ring;
+
+  /**
+   * Wait strategy, created by activateOptions.
+   */
+  private WaitStrategy waitStrategy;
+
+  /**
+   * Dispatcher, created by activateOptions.
+   */
+  private Thread dispatcher;
+
+  /**
+   * Set when the dispatcher should exit once the buffer is empty.
+   */
+  private volatile boolean stopping = false;
+
+  /**
+   * Set while discardMap is not empty.
+   */
+  private volatile boolean hasDiscards = false;
+
+  /**
+   * Create new instance.
+   */
+  public RingBufferAsyncAppender() {
+  }
+
+  /**
+   * Creates the buffer and starts the dispatcher thread.
+   */
+  public void activateOptions() {
+    if (dispatcher != null) {
+      LogLog.warn("RingBufferAsyncAppender [" + name
+        + "] has already been activated.");
+      return;
+    }
+
+    ring = new RingBuffer(bufferSize);
+    waitStrategy =
+      WaitStrategy.forName(waitStrategyName, WaitStrategy.getDefault());
+
+    Thread thread = new Thread(new Dispatcher());
+
+    // It is the user's responsibility to close appenders before
+    // exiting.
+    thread.setDaemon(true);
+    thread.setName("RingBufferAsyncAppender-Dispatcher-" + thread.getName());
+    dispatcher = thread;
+    thread.start();
+  }
+
+  /**
+   * Add appender.
+   *
+   * @param newAppender appender to add, may not be null.
+   */
+  public void addAppender(final Appender newAppender) {
+    synchronized (appenders) {
+      appenders.addAppender(newAppender);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void append(final LoggingEvent event) {
+    RingBuffer buffer = ring;
+    Thread thread = dispatcher;
+
+    //
+    //   if not activated or dispatcher thread has died then
+    //      append synchronously, see bug 23021
+    if ((buffer == null) || !thread.isAlive()) {
+      synchronized (appenders) {
+        appenders.appendLoopOnAppenders(event);
+      }
+
+      return;
+    }
+
+    // Set the NDC and thread name for the calling thread as these
+    // LoggingEvent fields were not set at event creation time.
+    event.getNDC();
+    event.getThreadName();
+    // Get a copy of this thread's MDC.
+    event.getMDCCopy();
+    if (locationInfo) {
+      event.getLocationInformation();
+    }
+    event.getRenderedMessage();
+    event.getThrowableStrRep();
+
+    int attempt = 0;
+
+    while (!buffer.offer(event)) {
+      //
+      //   buffer is full, wait for room if blocking, the thread
+      //      is not interrupted and is not the dispatcher
+      //
+      if (blocking
+              && !stopping
+              && !Thread.currentThread().isInterrupted()
+              && Thread.currentThread() != thread) {
+        if (!thread.isAlive()) {
+          synchronized (appenders) {
+            appenders.appendLoopOnAppenders(event);
+          }
+
+          return;
+        }
+
+        try {
+          waitStrategy.idle(attempt++);
+
+          continue;
+        } catch (InterruptedException e) {
+          //
+          //  reset interrupt status so
+          //    calling code can see interrupt on
+          //    their next wait or sleep.
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      discard(event);
+
+      return;
+    }
+
+    waitStrategy.signal();
+  }
+
+  /**
+   * Adds the event to the summary of discarded events.
+   *
+   * @param event discarded event.
+   */
+  private void discard(final LoggingEvent event) {
+    synchronized (discardMap) {
+      String loggerName = event.getLoggerName();
+      AsyncAppender.DiscardSummary summary =
+        (AsyncAppender.DiscardSummary) discardMap.get(loggerName);
+
+      if (summary == null) {
+        summary = new AsyncAppender.DiscardSummary(event);
+        discardMap.put(loggerName, summary);
+      } else {
+        summary.add(event);
+      }
+
+      hasDiscards = true;
+    }
+  }
+
+  /**
+   * Removes discard summaries and creates the corresponding events.
+   *
+   * @return summary events, may be empty.
+   */
+  private LoggingEvent[] takeDiscardEvents() {
+    synchronized (discardMap) {
+      LoggingEvent[] events = new LoggingEvent[discardMap.size()];
+      int index = 0;
+
+      for (Iterator iter = discardMap.values().iterator(); iter.hasNext();) {
+        events[index++] =
+          ((AsyncAppender.DiscardSummary) iter.next()).createEvent();
+      }
+
+      discardMap.clear();
+      hasDiscards = false;
+
+      return events;
+    }
+  }
+
+  /**
+   * Appends events to the nested appenders.
+   *
+   * @param events events.
+   * @param count number of events to append.
+   */
+  private void dispatch(final LoggingEvent[] events, final int count) {
+    for (int i = 0; i < count; i++) {
+      synchronized (appenders) {
+        appenders.appendLoopOnAppenders(events[i]);
+      }
+
+      events[i] = null;
+    }
+  }
+
+  /**
+   * Close this <code>RingBufferAsyncAppender</code>. Pending events are
+   * dispatched before the nested appenders are closed. Events whose
+   * slot is claimed but which are still not published after one second
+   * are lost, and their number is reported.
+   */
+  public void close() {
+    closed = true;
+    stopping = true;
+
+    Thread thread = dispatcher;
+
+    if (thread != null) {
+      waitStrategy.signal();
+
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LogLog.error(
+          "Got an InterruptedException while waiting for the "
+          + "dispatcher to finish.", e);
+      }
+
+      //
+      //   dispatch anything published after the dispatcher exited,
+      //      waiting a little for producers that claimed a slot but
+      //      have not published their event yet
+      //
+      LoggingEvent[] batch = new LoggingEvent[MAX_BATCH];
+      long deadline = System.currentTimeMillis() + PUBLISH_TIMEOUT;
+      int attempt = 0;
+
+      while (true) {
+        int count = ring.drainTo(batch);
+
+        if (count > 0) {
+          dispatch(batch, count);
+          attempt = 0;
+
+          continue;
+        }
+
+        int unpublished = ring.length();
+
+        if (unpublished == 0) {
+          break;
+        }
+
+        if (System.currentTimeMillis() >= deadline
+                || Thread.currentThread().isInterrupted()) {
+          LogLog.warn("RingBufferAsyncAppender [" + name + "] discarded "
+            + unpublished + " events that were not published before close.");
+
+          break;
+        }
+
+        try {
+          waitStrategy.idle(attempt++);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      if (hasDiscards) {
+        LoggingEvent[] summaries = takeDiscardEvents();
+        dispatch(summaries, summaries.length);
+      }
+    }
+
+    //
+    //    close all attached appenders.
+    //
+    synchronized (appenders) {
+      Enumeration iter = appenders.getAllAppenders();
+
+      if (iter != null) {
+        while (iter.hasMoreElements()) {
+          Object next = iter.nextElement();
+
+          if (next instanceof Appender) {
+            ((Appender) next).close();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Get iterator over attached appenders.
+   * @return iterator or null if no attached appenders.
+   */
+  public Enumeration getAllAppenders() {
+    synchronized (appenders) {
+      return appenders.getAllAppenders();
+    }
+  }
+
+  /**
+   * Get appender by name.
+   *
+   * @param name name, may not be null.
+   * @return matching appender or null.
+   */
+  public Appender getAppender(final String name) {
+    synchronized (appenders) {
+      return appenders.getAppender(name);
+    }
+  }
+
+  /**
+   * Determines if specified appender is attached.
+   * @param appender appender.
+   * @return true if attached.
+   */
+  public boolean isAttached(final Appender appender) {
+    synchronized (appenders) {
+      return appenders.isAttached(appender);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean requiresLayout() {
+    return false;
+  }
+
+  /**
+   * Removes and closes all attached appenders.
+   */
+  public void removeAllAppenders() {
+    synchronized (appenders) {
+      appenders.removeAllAppenders();
+    }
+  }
+
+  /**
+   * Removes an appender.
+   * @param appender appender to remove.
+   */
+  public void removeAppender(final Appender appender) {
+    synchronized (appenders) {
+      appenders.removeAppender(appender);
+    }
+  }
+
+  /**
+   * Remove appender by name.
+   * @param name name.
+   */
+  public void removeAppender(final String name) {
+    synchronized (appenders) {
+      appenders.removeAppender(name);
+    }
+  }
+
+  /**
+   * Gets whether the location of the logging request call
+   * should be captured.
+   *
+   * @return the current value of the <b>LocationInfo</b> option.
+   */
+  public boolean getLocationInfo() {
+    return locationInfo;
+  }
+
+  /**
+   * Sets whether location information is extracted before the event
+   * is queued. See {@link AsyncAppender#setLocationInfo(boolean)}.
+   *
+   * @param flag true if location information should be extracted.
+   */
+  public void setLocationInfo(final boolean flag) {
+    locationInfo = flag;
+  }
+
+  /**
+   * Sets the number of events allowed in the buffer before the calling
+   * thread is blocked (if blocking is true) or until events are
+   * summarized and discarded. Takes effect at {@link #activateOptions()}.
+   *
+   * @param size buffer size, must be positive.
+   */
+  public void setBufferSize(final int size) {
+    if (size < 0) {
+      throw new java.lang.NegativeArraySizeException("size");
+    }
+
+    //
+    //   don't let size be zero.
+    //
+    bufferSize = (size < 1) ? 1 : size;
+  }
+
+  /**
+   * Gets the current buffer size.
+   * @return the current value of the <b>BufferSize</b> option.
+   */
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * Sets whether appender should wait if there is no
+   * space available in the event buffer or immediately return.
+   *
+   * @param value true if appender should wait until available space in buffer.
+   */
+  public void setBlocking(final boolean value) {
+    blocking = value;
+  }
+
+  /**
+   * Gets whether appender should block calling thread when buffer is full.
+   *
+   * @return true if calling thread will be blocked when buffer is full.
+   */
+  public boolean getBlocking() {
+    return blocking;
+  }
+
+  /**
+   * Sets the wait strategy, one of "spin", "yield" or "park".
+   * Takes effect at {@link #activateOptions()}.
+   *
+   * @param value wait strategy name.
+   */
+  public void setWaitStrategy(final String value) {
+    waitStrategyName = value;
+  }
+
+  /**
+   * Gets the name of the wait strategy.
+   *
+   * @return the current value of the <b>WaitStrategy</b> option.
+   */
+  public String getWaitStrategy() {
+    return waitStrategyName;
+  }
+
+  /**
+   * Event dispatcher.
+   */
+  private final class Dispatcher implements Runnable {
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+      LoggingEvent[] batch =
+        new LoggingEvent[Math.min(ring.getMaxSize(), MAX_BATCH)];
+      int attempt = 0;
+
+      try {
+        while (true) {
+          int count = ring.drainTo(batch);
+
+          if (count > 0) {
+            //
+            //   allow blocked appends to continue
+            waitStrategy.signal();
+            dispatch(batch, count);
+            attempt = 0;
+          }
+
+          //
+          //   add events due to buffer overflow
+          //
+          if (hasDiscards) {
+            LoggingEvent[] summaries = takeDiscardEvents();
+            dispatch(summaries, summaries.length);
+          }
+
+          if (count == 0) {
+            if (stopping && ring.isEmpty()) {
+              break;
+            }
+
+            waitStrategy.idle(attempt++);
+          }
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
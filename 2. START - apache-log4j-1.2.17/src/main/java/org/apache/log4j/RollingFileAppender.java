@@ -23,10 +23,14 @@ import java.io.IOException;
 import java.io.Writer;
 import java.io.File;
 import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Vector;
 
 import org.apache.log4j.helpers.OptionConverter;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.CountingQuietWriter;
+import org.apache.log4j.helpers.FileCompressor;
 import org.apache.log4j.spi.LoggingEvent;
 
 /**
@@ -56,6 +60,14 @@ public class RollingFileAppender extends FileAppender {
 
   private long nextRollover = 0;
 
+  /**
+     Are backups renamed on a background thread? Not by default.
+
+     @since 1.2.18 */
+  protected boolean backgroundRollover = false;
+
+  private int pendingSequence = 0;
+
   /**
      The default constructor simply calls its {@link
      FileAppender#FileAppender parents constructor}.  */
@@ -137,23 +149,17 @@ public class RollingFileAppender extends FileAppender {
     }
     LogLog.debug("maxBackupIndex="+maxBackupIndex);
 
+    // compressing is always done in the background
+    if((backgroundRollover || compression != FileCompressor.NONE)
+       && maxBackupIndex > 0) {
+      rollOverInBackground();
+      return;
+    }
+
     boolean renameSucceeded = true;
     // If maxBackups <= 0, then there is no file renaming to be done.
     if(maxBackupIndex > 0) {
-      // Delete the oldest file, to keep Windows happy.
-      file = new File(fileName + '.' + maxBackupIndex);
-      if (file.exists())
-       renameSucceeded = file.delete();
-
-      // Map {(maxBackupIndex - 1), ..., 2, 1} to {maxBackupIndex, ..., 3, 2}
-      for (int i = maxBackupIndex - 1; i >= 1 && renameSucceeded; i--) {
-	file = new File(fileName + "." + i);
-	if (file.exists()) {
-	  target = new File(fileName + '.' + (i + 1));
-	  LogLog.debug("Renaming file " + file + " to " + target);
-	  renameSucceeded = file.renameTo(target);
-	}
-      }
+      renameSucceeded = shiftBackups(fileName, maxBackupIndex, "");
 
     if(renameSucceeded) {
       // Rename fileName to fileName.1
@@ -200,6 +206,143 @@ public class RollingFileAppender extends FileAppender {
     }
   }
 
+  /**
+     Deletes the oldest backup and maps {(maxBackupIndex - 1), ..., 2,
+     1} to {maxBackupIndex, ..., 3, 2}, the backup names ending with
+     <code>suffix</code>. Returns <code>false</code> if a file could
+     not be deleted or renamed.  */
+  static
+  boolean shiftBackups(String fileName, int maxBackupIndex, String suffix) {
+    boolean renameSucceeded = true;
+    // Delete the oldest file, to keep Windows happy.
+    File file = new File(fileName + '.' + maxBackupIndex + suffix);
+    if (file.exists())
+      renameSucceeded = file.delete();
+
+    for (int i = maxBackupIndex - 1; i >= 1 && renameSucceeded; i--) {
+      file = new File(fileName + "." + i + suffix);
+      if (file.exists()) {
+	File target = new File(fileName + '.' + (i + 1) + suffix);
+	LogLog.debug("Renaming file " + file + " to " + target);
+	renameSucceeded = file.renameTo(target);
+      }
+    }
+    return renameSucceeded;
+  }
+
+  /**
+     Moves the current file aside under a temporary name, opens a new
+     file and queues the renaming of the backups, and the compression
+     of the moved file, to the background thread. Waits if
+     <b>MaxPendingRollovers</b> rollovers are already queued.  */
+  private
+  void rollOverInBackground() {
+    String name = fileName;
+    File file = new File(name);
+    File pending = new File(name + ".pending." + System.currentTimeMillis()
+			    + '.' + (++pendingSequence));
+
+    this.closeFile(); // keep windows happy.
+
+    LogLog.debug("Renaming file " + file + " to " + pending);
+    boolean renameSucceeded = file.renameTo(pending);
+    try {
+      // if the rename failed, keep appending to the current file
+      this.setFile(name, !renameSucceeded, bufferedIO, bufferSize);
+      if (renameSucceeded) {
+	nextRollover = 0;
+      }
+    }
+    catch(IOException e) {
+      if (e instanceof InterruptedIOException) {
+	Thread.currentThread().interrupt();
+      }
+      LogLog.error("setFile("+name+", "+!renameSucceeded+") call failed.", e);
+    }
+
+    if (renameSucceeded) {
+      executeInBackground(new BackupTask(name, maxBackupIndex, pending,
+					 compression, compressionLevel));
+    }
+  }
+
+  /**
+     Opens the file and queues the rollover of any
+     <code>File.pending.<i>time</i>.<i>n</i></code> files left behind
+     by a previous run that stopped before its background rollovers
+     completed. They are newer than the existing backups, so they are
+     rolled over oldest first as if the rollovers had just happened.
+
+     @since 1.2.18 */
+  public
+  void activateOptions() {
+    super.activateOptions();
+    if(fileName != null && getPendingRollovers() == 0) {
+      File[] leftovers = findPendingFiles(fileName);
+      for(int i = 0; i < leftovers.length; i++) {
+	if(maxBackupIndex > 0) {
+	  LogLog.warn("Recovering interrupted rollover of " + leftovers[i] + ".");
+	  executeInBackground(new BackupTask(fileName, maxBackupIndex, leftovers[i],
+					     compression, compressionLevel));
+	} else {
+	  LogLog.warn("Found " + leftovers[i] + " left by an interrupted rollover.");
+	}
+      }
+    }
+  }
+
+  /**
+     Returns the files moved aside by background rollovers of
+     <code>fileName</code>, oldest first.  */
+  static
+  File[] findPendingFiles(String fileName) {
+    File file = new File(fileName).getAbsoluteFile();
+    File dir = file.getParentFile();
+    String[] names = dir == null ? null : dir.list();
+    if(names == null) {
+      return new File[0];
+    }
+    final String prefix = file.getName() + ".pending.";
+    Vector found = new Vector();
+    for(int i = 0; i < names.length; i++) {
+      if(names[i].startsWith(prefix)
+	 && pendingOrder(names[i].substring(prefix.length())) != null) {
+	found.addElement(new File(dir, names[i]));
+      }
+    }
+    File[] files = new File[found.size()];
+    found.copyInto(files);
+    Arrays.sort(files, new Comparator() {
+	public int compare(Object o1, Object o2) {
+	  long[] a = pendingOrder(((File) o1).getName().substring(prefix.length()));
+	  long[] b = pendingOrder(((File) o2).getName().substring(prefix.length()));
+	  if(a[0] != b[0]) {
+	    return a[0] < b[0] ? -1 : 1;
+	  }
+	  return a[1] < b[1] ? -1 : (a[1] == b[1] ? 0 : 1);
+	}
+      });
+    return files;
+  }
+
+  /**
+     Parses the <code><i>time</i>.<i>n</i></code> suffix of a pending
+     file, returns <code>null</code> if it is malformed.  */
+  private
+  static
+  long[] pendingOrder(String suffix) {
+    int dot = suffix.indexOf('.');
+    if(dot < 0) {
+      return null;
+    }
+    try {
+      return new long[] { Long.parseLong(suffix.substring(0, dot)),
+			  Long.parseLong(suffix.substring(dot + 1)) };
+    } catch(NumberFormatException e) {
+      return null;
+    }
+  }
+
   public
   synchronized
   void setFile(String fileName, boolean append, boolean bufferedIO, int bufferSize)
@@ -260,6 +403,38 @@ public class RollingFileAppender extends FileAppender {
     maxFileSize = OptionConverter.toFileSize(value, maxFileSize + 1);
   }
 
+  /**
+     Returns the value of the <b>BackgroundRollover</b> option.
+
+     @since 1.2.18 */
+  public
+  boolean getBackgroundRollover() {
+    return backgroundRollover;
+  }
+
+  /**
+     The <b>BackgroundRollover</b> option takes a boolean value. It is
+     set to <code>false</code> by default. If true, a rollover only
+     renames the current file to a temporary name and opens a new one
+     on the logging thread. Shifting the backups and renaming the
+     temporary file to <code>File.1</code> happen in order on a
+     background thread, so logging threads are not held up by the
+     renames of a large <b>MaxBackupIndex</b>.
+
+     <p>Until the background renames are done the previous file is
+     named <code>File.pending.<i>time</i>.<i>n</i></code>. Such files
+     left behind when the virtual machine stopped early are rolled
+     over by {@link #activateOptions}.
+
+     <p>Setting the <b>Compression</b> option implies background
+     rollover.
+
+     @since 1.2.18 */
+  public
+  void setBackgroundRollover(boolean backgroundRollover) {
+    this.backgroundRollover = backgroundRollover;
+  }
+
   protected
   void setQWForFiles(Writer writer) {
      this.qw = new CountingQuietWriter(writer, errorHandler);
@@ -281,4 +456,45 @@ public class RollingFileAppender extends FileAppender {
         }
     }
    }
+
+  /**
+     Shifts the backups and renames or compresses a moved aside file
+     to <code>File.1</code>.  */
+  private static final class BackupTask implements Runnable {
+    private final String fileName;
+    private final int maxBackupIndex;
+    private final File pending;
+    private final int compression;
+    private final int compressionLevel;
+
+    BackupTask(String fileName, int maxBackupIndex, File pending,
+	       int compression, int compressionLevel) {
+      this.fileName = fileName;
+      this.maxBackupIndex = maxBackupIndex;
+      this.pending = pending;
+      this.compression = compression;
+      this.compressionLevel = compressionLevel;
+    }
+
+    public
+    void run() {
+      String suffix = FileCompressor.getSuffix(compression);
+      if (shiftBackups(fileName, maxBackupIndex, suffix)) {
+	File target = new File(fileName + "." + 1 + suffix);
+	if (compression != FileCompressor.NONE) {
+	  // the entry keeps the name of the log file as the backup shifts
+	  if (new FileCompressor(pending, target, compression, compressionLevel,
+				 new File(fileName).getName()).compress()) {
+	    return;
+	  }
+	} else {
+	  LogLog.debug("Renaming file " + pending + " to " + target);
+	  if (pending.renameTo(target)) {
+	    return;
+	  }
+	}
+      }
+      LogLog.error("Could not roll " + pending + " over, the file was left in place.");
+    }
+  }
 }
@@ -22,11 +22,14 @@ import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
 
+import org.apache.log4j.helpers.ByteBufferWriter;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.QuietWriter;
 import org.apache.log4j.spi.ErrorHandler;
 import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
 
 // Contibutors: Jens Uwe Pipka <jens.pipka@gmx.de>
 //              Ben Sandee
@@ -69,6 +72,25 @@ public class WriterAppender extends AppenderSkeleton {
   */
   protected QuietWriter qw;
 
+  /**
+     When <code>true</code>, streams are wrapped in a {@link
+     ByteBufferWriter} and events are formatted into a reused buffer,
+     so that appending allocates no intermediate Strings.
+
+     <p>The <code>directEncoding</code> variable is set to
+     <code>false</code> by default.
+
+     @since 1.2.18 */
+  protected boolean directEncoding = false;
+
+  private static final int BUF_SIZE = 256;
+  private static final int MAX_CAPACITY = 1024;
+
+  /**
+     Buffer events are formatted into when <code>directEncoding</code>
+     is set. Guarded by the appender lock. */
+  private StringBuffer sbuf = new StringBuffer(BUF_SIZE);
+
 
   /**
      This default constructor does nothing.  */
@@ -124,6 +146,34 @@ public class WriterAppender extends AppenderSkeleton {
     return immediateFlush;
   }
 
+  /**
+     The <b>DirectEncoding</b> option takes a boolean value. When
+     set, the layout formats each event into a buffer owned by the
+     appender and the characters are encoded straight into a reused
+     byte buffer instead of passing through a String and an {@link
+     OutputStreamWriter}. Layouts that do not override {@link
+     Layout#format(StringBuffer, LoggingEvent)} still produce a String
+     per event.
+
+     <p>The option applies to streams opened after it is set; it is
+     usually given in the configuration before the appender is
+     activated.
+
+     @since 1.2.18 */
+  public
+  void setDirectEncoding(boolean value) {
+    directEncoding = value;
+  }
+
+  /**
+     Returns value of the <b>DirectEncoding</b> option.
+
+     @since 1.2.18 */
+  public
+  boolean getDirectEncoding() {
+    return directEncoding;
+  }
+
   /**
      Does nothing.
   */
@@ -253,6 +303,44 @@ public class WriterAppender extends AppenderSkeleton {
     return retval;
   }
 
+  /**
+     Returns the writer used to write to <code>os</code>. If the
+     <b>DirectEncoding</b> option is set this is a {@link
+     ByteBufferWriter}, otherwise the result of {@link
+     #createWriter}.
+
+     @since 1.2.18 */
+  protected
+  Writer createStreamWriter(OutputStream os) {
+    if(directEncoding) {
+      Charset charset = getCharset();
+      if(charset != null) {
+	return new ByteBufferWriter(os, charset);
+      }
+    }
+    return createWriter(os);
+  }
+
+  /**
+     Returns the charset named by the <b>Encoding</b> option, or the
+     platform default if the option is not set. Returns
+     <code>null</code> after printing a warning if the charset is not
+     supported.
+
+     @since 1.2.18 */
+  protected
+  Charset getCharset() {
+    String enc = getEncoding();
+    try {
+      return Charset.forName(enc != null ? enc :
+			     System.getProperty("file.encoding", "UTF-8"));
+    } catch(RuntimeException e) {
+      LogLog.warn("Error initializing output writer.");
+      LogLog.warn("Unsupported encoding?");
+      return null;
+    }
+  }
+
   public String getEncoding() {
     return encoding;
   }
@@ -307,15 +395,31 @@ public class WriterAppender extends AppenderSkeleton {
      @since 0.9.0 */
   protected
   void subAppend(LoggingEvent event) {
-    this.qw.write(this.layout.format(event));
-
-    if(layout.ignoresThrowable()) {
-      String[] s = event.getThrowableStrRep();
-      if (s != null) {
-	int len = s.length;
-	for(int i = 0; i < len; i++) {
-	  this.qw.write(s[i]);
-	  this.qw.write(Layout.LINE_SEP);
+    if(directEncoding) {
+      if(sbuf.capacity() > MAX_CAPACITY) {
+	sbuf = new StringBuffer(BUF_SIZE);
+      } else {
+	sbuf.setLength(0);
+      }
+      this.layout.format(sbuf, event);
+      if(layout.ignoresThrowable()) {
+	ThrowableInformation ti = event.getThrowableInformation();
+	if(ti != null) {
+	  ti.appendTo(sbuf, Layout.LINE_SEP);
+	}
+      }
+      this.qw.write(sbuf);
+    } else {
+      this.qw.write(this.layout.format(event));
+
+      if(layout.ignoresThrowable()) {
+	String[] s = event.getThrowableStrRep();
+	if (s != null) {
+	  int len = s.length;
+	  for(int i = 0; i < len; i++) {
+	    this.qw.write(s[i]);
+	    this.qw.write(Layout.LINE_SEP);
+	  }
 	}
       }
     }
@@ -28,6 +28,11 @@ import java.util.Enumeration;
    A straightforward implementation of the {@link AppenderAttachable}
    interface.
 
+   <p>Modifications are expected to be serialized by the caller. Each
+   modification publishes a new immutable array of the attached
+   appenders so that {@link #appendLoopOnAppenders} needs no
+   synchronization and may run concurrently with modifications.
+
    @author Ceki G&uuml;lc&uuml;
    @since version 0.9.1 */
 public class AppenderAttachableImpl implements AppenderAttachable {
@@ -35,6 +40,11 @@ public class AppenderAttachableImpl implements AppenderAttachable {
   /** Array of appenders. */
   protected Vector  appenderList;
 
+  private static final Appender[] EMPTY_ARRAY = new Appender[0];
+
+  /** Copy of appenderList, replaced on every modification. */
+  private volatile Appender[] appenderArray = EMPTY_ARRAY;
+
   /**
      Attach an appender. If the appender is already in the list in
      won't be added again.
@@ -48,27 +58,42 @@ public class AppenderAttachableImpl implements AppenderAttachable {
     if(appenderList == null) {
       appenderList = new Vector(1);
     }
-    if(!appenderList.contains(newAppender))
+    if(!appenderList.contains(newAppender)) {
       appenderList.addElement(newAppender);
+      publish();
+    }
   }
 
   /**
-     Call the <code>doAppend</code> method on all attached appenders.  */
+     Call the <code>doAppend</code> method on all attached appenders.
+
+     <p>The appenders are those attached when the call started,
+     appenders attached or removed meanwhile are not affected.  */
   public
   int appendLoopOnAppenders(LoggingEvent event) {
-    int size = 0;
-    Appender appender;
+    Appender[] appenders = appenderArray;
+    int size = appenders.length;
 
-    if(appenderList != null) {
-      size = appenderList.size();
-      for(int i = 0; i < size; i++) {
-	appender = (Appender) appenderList.elementAt(i);
-	appender.doAppend(event);
-      }
-    }    
+    for(int i = 0; i < size; i++) {
+      appenders[i].doAppend(event);
+    }
     return size;
   }
 
+  /**
+     Publish a copy of appenderList for use by {@link
+     #appendLoopOnAppenders}.  */
+  private
+  void publish() {
+    if(appenderList == null || appenderList.isEmpty()) {
+      appenderArray = EMPTY_ARRAY;
+    } else {
+      Appender[] appenders = new Appender[appenderList.size()];
+      appenderList.copyInto(appenders);
+      appenderArray = appenders;
+    }
+  }
+
 
   /**
      Get all attached appenders as an Enumeration. If there are no
@@ -135,6 +160,8 @@ public class AppenderAttachableImpl implements AppenderAttachable {
   public
   void removeAllAppenders() {
     if(appenderList != null) {
+      // stop appending before the appenders are closed
+      appenderArray = EMPTY_ARRAY;
       int len = appenderList.size();      
       for(int i = 0; i < len; i++) {
 	Appender a = (Appender) appenderList.elementAt(i);
@@ -153,7 +180,9 @@ public class AppenderAttachableImpl implements AppenderAttachable {
   void removeAppender(Appender appender) {
     if(appender == null || appenderList == null) 
       return;
-    appenderList.removeElement(appender);    
+    if(appenderList.removeElement(appender)) {
+      publish();
+    }
   }
 
 
@@ -168,6 +197,7 @@ public class AppenderAttachableImpl implements AppenderAttachable {
     for(int i = 0; i < size; i++) {
       if(name.equals(((Appender)appenderList.elementAt(i)).getName())) {
 	 appenderList.removeElementAt(i);
+	 publish();
 	 break;
       }
     }
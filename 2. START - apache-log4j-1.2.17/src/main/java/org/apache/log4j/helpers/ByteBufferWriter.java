@@ -0,0 +1,323 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+   A {@link Writer} that encodes characters into a reused {@link
+   ByteBuffer} and hands the bytes to an {@link OutputStream}.
+
+   <p>Characters are copied in chunks into a reused array wrapped by a
+   {@link CharBuffer}, so writing a String, a character array or a
+   {@link StringBuffer} allocates nothing once the writer is
+   constructed. Encoded bytes are passed on when the byte buffer fills
+   up or the writer is flushed, which makes the writer buffered.
+
+   <p>Subclasses may send the bytes elsewhere than to a stream by
+   overriding {@link #writeBytes}, {@link #flushTarget} and {@link
+   #closeTarget}.
+
+   <p>Unmappable and malformed input is replaced, as it is by {@link
+   java.io.OutputStreamWriter}. A high surrogate at the end of a write
+   is kept until the next write supplies its low surrogate.
+
+   <p>This class is not thread-safe.
+
+   @since 1.2.18 */
+public class ByteBufferWriter extends Writer {
+  /**
+   * Default size of the byte buffer.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+  /**
+   * Size of the character chunks handed to the encoder.
+   */
+  private static final int CHUNK_SIZE = 1024;
+
+  /**
+   * Destination of the encoded bytes, null if a subclass handles them.
+   */
+  private final OutputStream out;
+
+  /**
+   * Charset encoder.
+   */
+  private final CharsetEncoder encoder;
+
+  /**
+   * Reused character chunk.
+   */
+  private final char[] chars = new char[CHUNK_SIZE];
+
+  /**
+   * Buffer wrapping chars.
+   */
+  private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+  /**
+   * Byte buffer encoded characters are written to.
+   */
+  protected ByteBuffer bytes;
+
+  /**
+   * Number of characters at the start of chars not yet encoded.
+   */
+  private int pending;
+
+  /**
+   * True once the writer has been closed.
+   */
+  private boolean closed;
+
+  /**
+   * Creates a new writer.
+   * @param out destination of encoded bytes, may not be null.
+   * @param charset charset, may not be null.
+   * @param bufferSize size of the byte buffer.
+   */
+  public ByteBufferWriter(final OutputStream out,
+                          final Charset charset,
+                          final int bufferSize) {
+    if (out == null) {
+      throw new NullPointerException("out");
+    }
+    this.out = out;
+    encoder = createEncoder(charset);
+    // room for at least one encoded character
+    int size = Math.max(bufferSize, (int) Math.ceil(encoder.maxBytesPerChar()) * 2);
+    bytes = ByteBuffer.allocate(size);
+  }
+
+  /**
+   * Creates a new writer for a subclass that overrides
+   * {@link #writeBytes}, {@link #flushTarget} and {@link #closeTarget}.
+   * @param charset charset, may not be null.
+   * @param buffer byte buffer to encode into, may be direct.
+   */
+  protected ByteBufferWriter(final Charset charset, final ByteBuffer buffer) {
+    this.out = null;
+    encoder = createEncoder(charset);
+    bytes = buffer;
+  }
+
+  /**
+   * Creates an encoder replacing bad input.
+   * @param charset charset.
+   * @return new encoder.
+   */
+  private static CharsetEncoder createEncoder(final Charset charset) {
+    CharsetEncoder encoder = charset.newEncoder();
+    encoder.onMalformedInput(CodingErrorAction.REPLACE);
+    encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    return encoder;
+  }
+
+  /**
+   * Creates a new writer with the default buffer size.
+   * @param out destination of encoded bytes, may not be null.
+   * @param charset charset, may not be null.
+   */
+  public ByteBufferWriter(final OutputStream out, final Charset charset) {
+    this(out, charset, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Returns the name of the charset used by this writer.
+   * @return charset name.
+   */
+  public String getEncoding() {
+    return encoder.charset().name();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(final int c) throws IOException {
+    chars[pending] = (char) c;
+    encode(1, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(final char[] cbuf, final int off, final int len)
+      throws IOException {
+    int index = off;
+    int end = off + len;
+    while (index < end) {
+      int n = Math.min(end - index, CHUNK_SIZE - pending);
+      System.arraycopy(cbuf, index, chars, pending, n);
+      encode(n, false);
+      index += n;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(final String str, final int off, final int len)
+      throws IOException {
+    int index = off;
+    int end = off + len;
+    while (index < end) {
+      int n = Math.min(end - index, CHUNK_SIZE - pending);
+      str.getChars(index, index + n, chars, pending);
+      encode(n, false);
+      index += n;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void write(final String str) throws IOException {
+    write(str, 0, str.length());
+  }
+
+  /**
+   * Writes the content of a buffer without converting it to a String.
+   * @param sbuf buffer, may not be null.
+   * @throws IOException if the stream cannot be written.
+   */
+  public void write(final StringBuffer sbuf) throws IOException {
+    int end = sbuf.length();
+    int index = 0;
+    while (index < end) {
+      int n = Math.min(end - index, CHUNK_SIZE - pending);
+      sbuf.getChars(index, index + n, chars, pending);
+      encode(n, false);
+      index += n;
+    }
+  }
+
+  /**
+   * Encodes the pending characters followed by <code>length</code>
+   * characters just copied into the chunk.
+   * @param length number of new characters.
+   * @param endOfInput true if no more characters will follow.
+   * @throws IOException if the stream cannot be written.
+   */
+  private void encode(final int length, final boolean endOfInput)
+      throws IOException {
+    charBuffer.limit(pending + length);
+    charBuffer.position(0);
+    for (;;) {
+      CoderResult result = encoder.encode(charBuffer, bytes, endOfInput);
+      if (result.isOverflow()) {
+        drain();
+      } else if (result.isUnderflow()) {
+        break;
+      } else {
+        result.throwException();
+      }
+    }
+    pending = charBuffer.remaining();
+    if (pending > 0) {
+      System.arraycopy(chars, charBuffer.position(), chars, 0, pending);
+    }
+  }
+
+  /**
+   * Discards the characters not yet encoded, such as a trailing high
+   * surrogate, and resets the encoder so that the next write starts
+   * fresh. The bytes already in the buffer are kept.
+   */
+  protected void resetEncoding() {
+    pending = 0;
+    encoder.reset();
+  }
+
+  /**
+   * Passes the encoded bytes to {@link #writeBytes} and
+   * clears the buffer. Called when the buffer is full and on flush.
+   * @throws IOException if the bytes cannot be written.
+   */
+  protected void drain() throws IOException {
+    if (bytes.position() > 0) {
+      bytes.flip();
+      writeBytes(bytes);
+      bytes.clear();
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of <code>buffer</code> to the stream.
+   * @param buffer flipped buffer holding encoded bytes.
+   * @throws IOException if the stream cannot be written.
+   */
+  protected void writeBytes(final ByteBuffer buffer) throws IOException {
+    out.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+              buffer.remaining());
+  }
+
+  /**
+   * Flushes the stream.
+   * @throws IOException if the stream cannot be flushed.
+   */
+  protected void flushTarget() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Closes the stream.
+   * @throws IOException if the stream cannot be closed.
+   */
+  protected void closeTarget() throws IOException {
+    out.close();
+  }
+
+  /**
+   * Writes the encoded bytes and flushes the target.
+   * A trailing high surrogate remains pending.
+   * @throws IOException if the target cannot be written.
+   */
+  public void flush() throws IOException {
+    drain();
+    flushTarget();
+  }
+
+  /**
+   * Encodes any remaining input, writes all bytes and closes the target.
+   * @throws IOException if the target cannot be written.
+   */
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      encode(0, true);
+      while (encoder.flush(bytes).isOverflow()) {
+        drain();
+      }
+      flush();
+    } finally {
+      closeTarget();
+    }
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+   An immutable map holding the mapped diagnostic context of a thread.
+
+   <p>{@link #with} and {@link #without} return a new map and leave
+   the original unchanged, so a map can be shared by any number of
+   threads and logging events without copying or locking. Entries are
+   kept in arrays searched linearly, which suits the handful of keys
+   a diagnostic context usually holds; adding or removing a key
+   copies the arrays.
+
+   <p>Neither keys nor values may be null.
+
+   @since 1.2.18 */
+public final class ContextMap extends AbstractMap {
+  /**
+   * Map without entries.
+   */
+  public static final ContextMap EMPTY =
+    new ContextMap(new Object[0], new Object[0], new int[0]);
+
+  /**
+   * Keys.
+   */
+  private final Object[] keys;
+
+  /**
+   * Values, at the index of their key.
+   */
+  private final Object[] values;
+
+  /**
+   * Hash codes of the keys.
+   */
+  private final int[] hashes;
+
+  /**
+   * Creates a new instance.
+   * @param keys keys.
+   * @param values values.
+   * @param hashes hash codes of the keys.
+   */
+  private ContextMap(final Object[] keys, final Object[] values,
+                     final int[] hashes) {
+    this.keys = keys;
+    this.values = values;
+    this.hashes = hashes;
+  }
+
+  /**
+   * Returns the index of a key.
+   * @param key key, may be null.
+   * @return index, -1 if the key is not in the map.
+   */
+  private int indexOf(final Object key) {
+    if (key == null) {
+      return -1;
+    }
+    int hash = key.hashCode();
+    for (int i = 0; i < keys.length; i++) {
+      if (hashes[i] == hash && key.equals(keys[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a map with the entries of this map and
+   * <code>key</code> mapped to <code>value</code>.
+   * @param key key, may not be null.
+   * @param value value, may not be null.
+   * @return new map.
+   */
+  public ContextMap with(final Object key, final Object value) {
+    if (key == null) {
+      throw new NullPointerException("key");
+    }
+    if (value == null) {
+      throw new NullPointerException("value");
+    }
+    int index = indexOf(key);
+    if (index >= 0) {
+      Object[] newValues = (Object[]) values.clone();
+      newValues[index] = value;
+      return new ContextMap(keys, newValues, hashes);
+    }
+    int size = keys.length;
+    Object[] newKeys = new Object[size + 1];
+    Object[] newValues = new Object[size + 1];
+    int[] newHashes = new int[size + 1];
+    System.arraycopy(keys, 0, newKeys, 0, size);
+    System.arraycopy(values, 0, newValues, 0, size);
+    System.arraycopy(hashes, 0, newHashes, 0, size);
+    newKeys[size] = key;
+    newValues[size] = value;
+    newHashes[size] = key.hashCode();
+    return new ContextMap(newKeys, newValues, newHashes);
+  }
+
+  /**
+   * Returns a map with the entries of this map except the one of
+   * <code>key</code>.
+   * @param key key, may be null.
+   * @return new map, or this map if it does not contain the key.
+   */
+  public ContextMap without(final Object key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return this;
+    }
+    int size = keys.length - 1;
+    if (size == 0) {
+      return EMPTY;
+    }
+    Object[] newKeys = new Object[size];
+    Object[] newValues = new Object[size];
+    int[] newHashes = new int[size];
+    System.arraycopy(keys, 0, newKeys, 0, index);
+    System.arraycopy(values, 0, newValues, 0, index);
+    System.arraycopy(hashes, 0, newHashes, 0, index);
+    System.arraycopy(keys, index + 1, newKeys, index, size - index);
+    System.arraycopy(values, index + 1, newValues, index, size - index);
+    System.arraycopy(hashes, index + 1, newHashes, index, size - index);
+    return new ContextMap(newKeys, newValues, newHashes);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Object get(final Object key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+    return values[index];
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean containsKey(final Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public int size() {
+    return keys.length;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public boolean isEmpty() {
+    return keys.length == 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public Set entrySet() {
+    return new AbstractSet() {
+      public int size() {
+        return keys.length;
+      }
+
+      public Iterator iterator() {
+        return new Iterator() {
+          private int index;
+
+          public boolean hasNext() {
+            return index < keys.length;
+          }
+
+          public Object next() {
+            if (index >= keys.length) {
+              throw new NoSuchElementException();
+            }
+            Entry entry = new Entry(keys[index], values[index]);
+            index++;
+            return entry;
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Entry returned by the iterator of the entry set.
+   */
+  private static final class Entry implements Map.Entry {
+    /**
+     * Key.
+     */
+    private final Object key;
+
+    /**
+     * Value.
+     */
+    private final Object value;
+
+    /**
+     * Creates a new entry.
+     * @param key key.
+     * @param value value.
+     */
+    Entry(final Object key, final Object value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getKey() {
+      return key;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object getValue() {
+      return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object setValue(final Object newValue) {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean equals(final Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry other = (Map.Entry) o;
+      return key.equals(other.getKey()) && value.equals(other.getValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int hashCode() {
+      return key.hashCode() ^ value.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+      return key + "=" + value;
+    }
+  }
+}
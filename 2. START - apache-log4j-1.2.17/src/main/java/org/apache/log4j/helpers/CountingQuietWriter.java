@@ -50,6 +50,12 @@ public class CountingQuietWriter extends QuietWriter {
     }
   }
 
+  public
+  void write(StringBuffer sbuf) {
+    super.write(sbuf);
+    count += sbuf.length();
+  }
+
   public
   long getCount() {
     return count;
@@ -18,6 +18,7 @@
 package org.apache.log4j.helpers;
 
 import org.apache.log4j.Layout;
+import org.apache.log4j.pattern.CachedDateFormat;
 import org.apache.log4j.spi.LoggingEvent;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -133,15 +134,20 @@ abstract public class DateLayout extends Layout {
   
   public
   void activateOptions() {
-    setDateFormat(dateFormatOption);
-    if(timeZoneID != null && dateFormat != null) {
-      dateFormat.setTimeZone(TimeZone.getTimeZone(timeZoneID));
+    TimeZone timeZone = TimeZone.getDefault();
+    if(timeZoneID != null) {
+      timeZone = TimeZone.getTimeZone(timeZoneID);
     }
+    // shared formats cannot change their time zone once created
+    setDateFormat(dateFormatOption, timeZone);
   }
 
   public
   void dateFormat(StringBuffer buf, LoggingEvent event) {
-    if(dateFormat != null) {
+    if(dateFormat instanceof CachedDateFormat) {
+      ((CachedDateFormat) dateFormat).format(event.timeStamp, buf);
+      buf.append(' ');
+    } else if(dateFormat != null) {
       date.setTime(event.timeStamp);
       dateFormat.format(date, buf, this.pos);
       buf.append(' ');
@@ -171,6 +177,10 @@ abstract public class DateLayout extends Layout {
      <code>dateFormatType</code> is not one of the above, then the
      argument is assumed to be a date pattern for {@link
      SimpleDateFormat}.
+
+     <p>Except for the relative and null types, the format is a {@link
+     CachedDateFormat} shared with the layouts using the same type and
+     time zone.
   */
   public
   void setDateFormat(String dateFormatType, TimeZone timeZone) {
@@ -183,18 +193,9 @@ abstract public class DateLayout extends Layout {
       this.dateFormat = null;
     } else if (dateFormatType.equalsIgnoreCase(RELATIVE_TIME_DATE_FORMAT)) {
       this.dateFormat =  new RelativeTimeDateFormat();
-    } else if(dateFormatType.equalsIgnoreCase(
-                             AbsoluteTimeDateFormat.ABS_TIME_DATE_FORMAT)) {
-      this.dateFormat =  new AbsoluteTimeDateFormat(timeZone);
-    } else if(dateFormatType.equalsIgnoreCase(
-                        AbsoluteTimeDateFormat.DATE_AND_TIME_DATE_FORMAT)) {
-      this.dateFormat =  new DateTimeDateFormat(timeZone);
-    } else if(dateFormatType.equalsIgnoreCase(
-                              AbsoluteTimeDateFormat.ISO8601_DATE_FORMAT)) {
-      this.dateFormat =  new ISO8601DateFormat(timeZone);
     } else {
-      this.dateFormat = new SimpleDateFormat(dateFormatType);
-      this.dateFormat.setTimeZone(timeZone);
+      // named formats are resolved by the shared formatter
+      this.dateFormat = CachedDateFormat.getInstance(dateFormatType, timeZone);
     }
   }
 }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+   A {@link ByteBufferWriter} that encodes into a direct buffer and
+   writes it to the channel of a {@link FileOutputStream}.
+
+   <p>The buffer is written with a single {@link FileChannel#write}
+   call when it fills up or when the writer is flushed. What a flush
+   guarantees beyond handing the bytes to the operating system is
+   set by the durability: {@link #WRITE} does nothing more, {@link
+   #FORCE} forces the file content to the storage device and {@link
+   #FORCE_METADATA} forces its metadata as well. The channel is only
+   forced if bytes were written since it was last forced.
+
+   <p>This class is not thread-safe.
+
+   @since 1.2.18 */
+public class FileChannelWriter extends ByteBufferWriter {
+  /**
+   * Flushing writes the buffer to the channel.
+   */
+  public static final int WRITE = 0;
+
+  /**
+   * Flushing also forces the file content to storage.
+   */
+  public static final int FORCE = 1;
+
+  /**
+   * Flushing also forces the file content and metadata to storage.
+   */
+  public static final int FORCE_METADATA = 2;
+
+  /**
+   * Stream owning the channel.
+   */
+  private final FileOutputStream stream;
+
+  /**
+   * Channel of stream.
+   */
+  private final FileChannel channel;
+
+  /**
+   * Durability, one of WRITE, FORCE or FORCE_METADATA.
+   */
+  private final int durability;
+
+  /**
+   * True if bytes were written since the channel was last forced.
+   */
+  private boolean unforced;
+
+  /**
+   * Creates a new writer.
+   * @param stream file stream, may not be null.
+   * @param charset charset, may not be null.
+   * @param bufferSize size of the direct buffer.
+   * @param durability one of WRITE, FORCE or FORCE_METADATA.
+   */
+  public FileChannelWriter(final FileOutputStream stream,
+                           final Charset charset,
+                           final int bufferSize,
+                           final int durability) {
+    super(charset, ByteBuffer.allocateDirect(Math.max(bufferSize, 16)));
+    this.stream = stream;
+    this.channel = stream.getChannel();
+    this.durability = durability;
+  }
+
+  /**
+   * Converts the value of a durability option to a constant.
+   * Recognized values are "write", "force" and "forceMetadata",
+   * ignoring case.
+   * @param value option value, may be null.
+   * @param defaultValue value returned if <code>value</code>
+   * is not recognized.
+   * @return durability constant.
+   */
+  public static int toDurability(final String value, final int defaultValue) {
+    if ("write".equalsIgnoreCase(value)) {
+      return WRITE;
+    }
+    if ("force".equalsIgnoreCase(value)) {
+      return FORCE;
+    }
+    if ("forceMetadata".equalsIgnoreCase(value)) {
+      return FORCE_METADATA;
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Returns the durability.
+   * @return one of WRITE, FORCE or FORCE_METADATA.
+   */
+  public int getDurability() {
+    return durability;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void writeBytes(final ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    unforced = true;
+  }
+
+  /**
+   * Forces the channel if required by the durability.
+   * @throws IOException if the channel cannot be forced.
+   */
+  protected void flushTarget() throws IOException {
+    if (unforced && durability != WRITE) {
+      channel.force(durability == FORCE_METADATA);
+    }
+    unforced = false;
+  }
+
+  /**
+   * Forces the channel if required and closes the file.
+   * @throws IOException if the file cannot be forced or closed.
+   */
+  protected void closeTarget() throws IOException {
+    try {
+      flushTarget();
+    } finally {
+      stream.close();
+    }
+  }
+}
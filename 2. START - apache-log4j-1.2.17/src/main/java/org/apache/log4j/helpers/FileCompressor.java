@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+   Compresses a file into a gzip or zip file and deletes the original.
+
+   <p>The file is read and compressed in fixed size blocks, so memory
+   use does not depend on its size. If compression fails the partial
+   target is deleted and the source is left in place.
+
+   <p>Instances are {@link Runnable} so that compression can be run
+   on a background thread.
+
+   @since 1.2.18 */
+public final class FileCompressor implements Runnable {
+  /**
+   * No compression.
+   */
+  public static final int NONE = 0;
+
+  /**
+   * gzip format.
+   */
+  public static final int GZIP = 1;
+
+  /**
+   * zip format, with a single entry.
+   */
+  public static final int ZIP = 2;
+
+  /**
+   * Size of the copy buffer.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * File to compress.
+   */
+  private final File source;
+
+  /**
+   * Compressed file.
+   */
+  private final File target;
+
+  /**
+   * GZIP or ZIP.
+   */
+  private final int format;
+
+  /**
+   * Deflater level.
+   */
+  private final int level;
+
+  /**
+   * Name of the zip entry.
+   */
+  private final String entryName;
+
+  /**
+   * Creates a new compressor. A zip entry is named after the target
+   * without its ".zip" suffix.
+   * @param source file to compress.
+   * @param target compressed file, replaced if it exists.
+   * @param format GZIP or ZIP.
+   * @param level compression level from 0 to 9, or -1 for the default.
+   */
+  public FileCompressor(final File source, final File target,
+                        final int format, final int level) {
+    this(source, target, format, level, null);
+  }
+
+  /**
+   * Creates a new compressor.
+   * @param source file to compress.
+   * @param target compressed file, replaced if it exists.
+   * @param format GZIP or ZIP.
+   * @param level compression level from 0 to 9, or -1 for the default.
+   * @param entryName name of the zip entry, null to name it after the
+   * target without its ".zip" suffix. Targets which are renamed later,
+   * such as numbered backups, should name the entry after the file
+   * they were rolled over from.
+   */
+  public FileCompressor(final File source, final File target,
+                        final int format, final int level,
+                        final String entryName) {
+    this.source = source;
+    this.target = target;
+    this.format = format;
+    this.level = level;
+    this.entryName = entryName;
+  }
+
+  /**
+   * Converts the value of a compression option to a constant.
+   * Recognized values are "none", "gzip" and "zip", ignoring case.
+   * @param value option value, may be null.
+   * @param defaultValue value returned if <code>value</code>
+   * is not recognized.
+   * @return NONE, GZIP or ZIP.
+   */
+  public static int toFormat(final String value, final int defaultValue) {
+    if ("none".equalsIgnoreCase(value)) {
+      return NONE;
+    }
+    if ("gzip".equalsIgnoreCase(value)) {
+      return GZIP;
+    }
+    if ("zip".equalsIgnoreCase(value)) {
+      return ZIP;
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Returns the name of a format as accepted by toFormat.
+   * @param format NONE, GZIP or ZIP.
+   * @return format name.
+   */
+  public static String getFormatName(final int format) {
+    switch (format) {
+    case GZIP: return "gzip";
+    case ZIP: return "zip";
+    default: return "none";
+    }
+  }
+
+  /**
+   * Returns the suffix appended to the names of compressed files.
+   * @param format NONE, GZIP or ZIP.
+   * @return ".gz", ".zip" or the empty string.
+   */
+  public static String getSuffix(final int format) {
+    switch (format) {
+    case GZIP: return ".gz";
+    case ZIP: return ".zip";
+    default: return "";
+    }
+  }
+
+  /**
+   * Compresses the file, reporting failures to LogLog.
+   */
+  public void run() {
+    compress();
+  }
+
+  /**
+   * Compresses the file and deletes it.
+   * @return true if the file was compressed.
+   */
+  public boolean compress() {
+    LogLog.debug("Compressing " + source + " to " + target);
+    boolean done = false;
+    try {
+      InputStream in = new FileInputStream(source);
+      try {
+        OutputStream out = createStream();
+        try {
+          byte[] buf = new byte[BUFFER_SIZE];
+          int n;
+          while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+          }
+        } finally {
+          out.close();
+        }
+        done = true;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      LogLog.error("Could not compress " + source + " to " + target, e);
+    }
+    if (!done) {
+      target.delete();
+      return false;
+    }
+    if (!source.delete()) {
+      LogLog.warn("Could not delete " + source + " after compressing it.");
+    }
+    return true;
+  }
+
+  /**
+   * Opens the target for writing in the configured format.
+   * @return compressing stream.
+   * @throws IOException if the target cannot be opened.
+   */
+  private OutputStream createStream() throws IOException {
+    FileOutputStream out = new FileOutputStream(target);
+    try {
+      if (format == ZIP) {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setLevel(level);
+        String name = entryName;
+        if (name == null) {
+          name = target.getName();
+          if (name.endsWith(".zip")) {
+            name = name.substring(0, name.length() - 4);
+          }
+        }
+        zip.putNextEntry(new ZipEntry(name));
+        return zip;
+      }
+      return new LeveledGZIPOutputStream(out, level);
+    } catch (IOException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  /**
+   * GZIPOutputStream with a compression level.
+   */
+  private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+    LeveledGZIPOutputStream(final OutputStream out, final int level)
+        throws IOException {
+      super(out, BUFFER_SIZE);
+      def.setLevel(level < 0 ? Deflater.DEFAULT_COMPRESSION : level);
+    }
+  }
+}
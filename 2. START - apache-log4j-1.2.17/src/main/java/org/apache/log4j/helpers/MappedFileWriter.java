@@ -0,0 +1,268 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+   A {@link ByteBufferWriter} that encodes directly into a memory
+   mapped region of a file.
+
+   <p>The file is mapped in regions of a fixed size starting at the
+   end of its content. When a region is full the next one is mapped
+   right after it, which grows the file by the region size. Writing
+   an event therefore only copies bytes into memory; the operating
+   system writes the pages back in its own time. On close the file
+   is truncated to the length actually written.
+
+   <p>Until the writer is closed, the file is longer than its content
+   and readers see zero bytes past the last event. If the process
+   dies the tail of the last region is left zero filled.
+
+   <p>Flushing does nothing unless the durability is {@link
+   FileChannelWriter#FORCE} or {@link
+   FileChannelWriter#FORCE_METADATA}, in which case the current region
+   is forced to the storage device.
+
+   <p>A region is unmapped as soon as the next one is mapped, and the
+   last one before the file is truncated on close. The Java platform
+   offers no way to do so, so this relies on internal classes of the
+   virtual machine and may fail; the region then stays mapped until
+   it is garbage collected. On Windows a file cannot be truncated
+   while it is mapped, so in that case closing fails and the file
+   keeps its zero filled tail.
+
+   <p>This class is not thread-safe.
+
+   @since 1.2.18 */
+public class MappedFileWriter extends ByteBufferWriter {
+  /**
+   * Default region size, 8 MB.
+   */
+  public static final int DEFAULT_REGION_SIZE = 8 * 1024 * 1024;
+
+  /**
+   * Smallest region size accepted.
+   */
+  private static final int MIN_REGION_SIZE = 4096;
+
+  /**
+   * File.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * Channel of file.
+   */
+  private final FileChannel channel;
+
+  /**
+   * Size of each region.
+   */
+  private final int regionSize;
+
+  /**
+   * File offset of the current region.
+   */
+  private long regionStart;
+
+  /**
+   * Durability, one of the FileChannelWriter constants.
+   */
+  private final int durability;
+
+  /**
+   * True once the last region is unmapped by close.
+   */
+  private boolean unmapped;
+
+  /**
+   * Creates a new writer.
+   * @param file file opened for reading and writing, may not be null.
+   * @param charset charset, may not be null.
+   * @param append if true, writing starts at the end of the file,
+   * otherwise the file is truncated.
+   * @param regionSize size of each mapped region.
+   * @param durability one of the FileChannelWriter durability constants.
+   * @throws IOException if the file cannot be mapped.
+   */
+  public MappedFileWriter(final RandomAccessFile file,
+                          final Charset charset,
+                          final boolean append,
+                          final int regionSize,
+                          final int durability) throws IOException {
+    this(file, charset, start(file, append),
+         Math.max(regionSize, MIN_REGION_SIZE), durability);
+  }
+
+  /**
+   * Creates a new writer mapping the first region at <code>start</code>.
+   * @param file file.
+   * @param charset charset.
+   * @param start offset of the first region.
+   * @param regionSize region size.
+   * @param durability durability.
+   * @throws IOException if the file cannot be mapped.
+   */
+  private MappedFileWriter(final RandomAccessFile file,
+                           final Charset charset,
+                           final long start,
+                           final int regionSize,
+                           final int durability) throws IOException {
+    super(charset, file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                         start, regionSize));
+    this.file = file;
+    this.channel = file.getChannel();
+    this.regionSize = regionSize;
+    this.regionStart = start;
+    this.durability = durability;
+  }
+
+  /**
+   * Returns the offset writing starts at, truncating the file
+   * if not appending.
+   * @param file file.
+   * @param append true to start at the end of the file.
+   * @return offset of the first region.
+   * @throws IOException if the file cannot be truncated.
+   */
+  private static long start(final RandomAccessFile file,
+                            final boolean append) throws IOException {
+    if (append) {
+      return file.length();
+    }
+    file.getChannel().truncate(0);
+    return 0;
+  }
+
+  /**
+   * Returns the number of bytes written to the file.
+   * @return length of the content.
+   */
+  public long getLength() {
+    return regionStart + bytes.position();
+  }
+
+  /**
+   * Maps the region following the current one if the current one is
+   * full. Called by the encoder when the region cannot hold the next
+   * character.
+   * @throws IOException if the file cannot be mapped.
+   */
+  protected void drain() throws IOException {
+    if (unmapped) {
+      throw new IOException("Writer closed");
+    }
+    if (bytes.position() == 0) {
+      return;
+    }
+    if (durability != FileChannelWriter.WRITE) {
+      ((MappedByteBuffer) bytes).force();
+    }
+    // the few bytes left unused at the end of a region are
+    // overwritten by the next one
+    ByteBuffer previous = bytes;
+    regionStart += bytes.position();
+    bytes = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+    unmap(previous);
+  }
+
+  /**
+   * Releases a mapped region without waiting for it to be garbage
+   * collected. The buffer must not be used afterwards. Uses
+   * <code>sun.misc.Unsafe.invokeCleaner</code> where available and
+   * the cleaner of the buffer otherwise; does nothing if neither
+   * can be reached.
+   * @param buffer mapped buffer.
+   */
+  private static void unmap(final ByteBuffer buffer) {
+    try {
+      Class unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                                                   new Class[] {ByteBuffer.class});
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), new Object[] {buffer});
+      return;
+    } catch (Exception e) {
+      // before Java 9, fall through
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner", new Class[0]);
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer, new Object[0]);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean", new Class[0])
+          .invoke(cleaner, new Object[0]);
+      }
+    } catch (Exception e) {
+      LogLog.debug("Could not unmap region, it stays mapped until collected.", e);
+    }
+  }
+
+  /**
+   * Not used, bytes are encoded in place.
+   * @param buffer unused.
+   */
+  protected void writeBytes(final ByteBuffer buffer) {
+  }
+
+  /**
+   * Forces the current region if required by the durability.
+   */
+  protected void flushTarget() {
+    if (!unmapped && durability != FileChannelWriter.WRITE) {
+      ((MappedByteBuffer) bytes).force();
+    }
+  }
+
+  /**
+   * Forces the current region if required by the durability.
+   * The region is not remapped.
+   */
+  public void flush() {
+    flushTarget();
+  }
+
+  /**
+   * Unmaps the last region, truncates the file to the length written
+   * and closes it.
+   * @throws IOException if the file cannot be truncated or closed.
+   */
+  protected void closeTarget() throws IOException {
+    long length = getLength();
+    ByteBuffer last = bytes;
+    // later writes overflow this buffer and fail in drain
+    regionStart = length;
+    bytes = ByteBuffer.allocate(0);
+    unmapped = true;
+    unmap(last);
+    try {
+      channel.truncate(length);
+    } finally {
+      file.close();
+    }
+  }
+}
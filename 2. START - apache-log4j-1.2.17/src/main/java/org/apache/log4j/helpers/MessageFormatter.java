@@ -0,0 +1,494 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.text.DateFormat;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+   Formats the message patterns of {@link org.apache.log4j.LogMF},
+   in the syntax of <code>java.text.MessageFormat</code>, and of
+   {@link org.apache.log4j.LogSF}, in the SLF4J syntax.
+
+   <p>Patterns are parsed once and kept, with the formats they need,
+   in a cache of each thread holding the most recently used patterns.
+   Since nothing is shared between threads, formatting takes no lock
+   and any number of threads can format at the same time.
+
+   @since 1.2.18 */
+public final class MessageFormatter {
+  /**
+   * Number of patterns of each syntax cached by a thread.
+   */
+  private static final int MAX_PATTERNS = 128;
+
+  /**
+   * Formatters of each thread.
+   */
+  private static final ThreadLocal formatters = new ThreadLocal() {
+      protected Object initialValue() {
+        return new MessageFormatter();
+      }
+    };
+
+  /**
+   * Compiled MessageFormat patterns.
+   */
+  private final Map mfPatterns = new PatternMap();
+
+  /**
+   * Compiled SLF4J patterns.
+   */
+  private final Map sfPatterns = new PatternMap();
+
+  /**
+   * Locale of the number format.
+   */
+  private Locale numberLocale;
+
+  /**
+   * Number format, created when first needed.
+   */
+  private NumberFormat numberFormat;
+
+  /**
+   * Locale of the date format.
+   */
+  private Locale dateLocale;
+
+  /**
+   * Date format, created when first needed.
+   */
+  private DateFormat dateFormat;
+
+  /**
+   * Creates the formatters of a thread.
+   */
+  private MessageFormatter() {
+  }
+
+  /**
+   * Gets the formatters of the current thread.
+   * @return formatters.
+   */
+  private static MessageFormatter get() {
+    return (MessageFormatter) formatters.get();
+  }
+
+  /**
+   * Formats arguments with a pattern in the syntax of
+   * <code>java.text.MessageFormat</code>. Patterns only made of
+   * literal text and <code>{n}</code> elements are formatted without
+   * <code>MessageFormat</code>, as described in
+   * {@link org.apache.log4j.LogMF}.
+   * @param pattern pattern, may be malformed or null.
+   * @param arguments arguments, may be null or mismatched.
+   * @return formatted message, the pattern itself if it is malformed,
+   * null if it is null.
+   */
+  public static String formatMF(final String pattern,
+                                final Object[] arguments) {
+    if (pattern == null) {
+      return null;
+    }
+    MessageFormatter formatter = get();
+    return formatter.compileMF(pattern).format(formatter, arguments);
+  }
+
+  /**
+   * Formats a single argument with a pattern in the syntax of
+   * <code>java.text.MessageFormat</code>, like
+   * {@link #formatMF(String, Object[])} but without an argument
+   * array unless the pattern needs <code>MessageFormat</code>.
+   * @param pattern pattern, may be malformed or null.
+   * @param arg0 argument, may be null.
+   * @return formatted message, the pattern itself if it is malformed,
+   * null if it is null.
+   */
+  public static String formatMF(final String pattern, final Object arg0) {
+    if (pattern == null) {
+      return null;
+    }
+    MessageFormatter formatter = get();
+    return formatter.compileMF(pattern).format(formatter, arg0);
+  }
+
+  /**
+   * Formats arguments with a pattern in the SLF4J syntax: each
+   * <code>{}</code> is replaced by the next argument,
+   * <code>\{</code> stands for a literal brace and placeholders left
+   * without an argument are output as they are.
+   * @param pattern pattern, may be null.
+   * @param arguments arguments, may be null.
+   * @return formatted message, null if the pattern is null.
+   */
+  public static String formatSF(final String pattern,
+                                final Object[] arguments) {
+    if (pattern == null) {
+      return null;
+    }
+    SFPattern compiled = get().compileSF(pattern);
+    if (compiled.literals.length == 1) {
+      return compiled.literals[0];
+    }
+    StringBuffer buf = new StringBuffer();
+    compiled.format(buf, arguments, arguments == null ? 0 : arguments.length,
+                    null, null, null);
+    return buf.toString();
+  }
+
+  /**
+   * Formats a single argument with a pattern in the SLF4J syntax, like
+   * {@link #formatSF(String, Object[])} without an argument array.
+   * @param pattern pattern, may be null.
+   * @param arg0 argument, may be null.
+   * @return formatted message, null if the pattern is null.
+   */
+  public static String formatSF(final String pattern, final Object arg0) {
+    if (pattern == null) {
+      return null;
+    }
+    SFPattern compiled = get().compileSF(pattern);
+    if (compiled.literals.length == 1) {
+      return compiled.literals[0];
+    }
+    StringBuffer buf = new StringBuffer();
+    compiled.format(buf, null, 1, arg0, null, null);
+    return buf.toString();
+  }
+
+  /**
+   * Appends up to three arguments formatted with a pattern in the
+   * SLF4J syntax to a buffer, for {@link ParameterizedMessage}.
+   * @param buf buffer.
+   * @param pattern pattern, may not be null.
+   * @param count number of arguments.
+   * @param arg0 first argument.
+   * @param arg1 second argument.
+   * @param arg2 third argument.
+   */
+  static void formatSF(final StringBuffer buf, final String pattern,
+                       final int count, final Object arg0,
+                       final Object arg1, final Object arg2) {
+    get().compileSF(pattern).format(buf, null, count, arg0, arg1, arg2);
+  }
+
+  /**
+   * Gets a compiled MessageFormat pattern from the cache, compiling
+   * it if missing or compiled for another default locale.
+   * @param pattern pattern, may not be null.
+   * @return compiled pattern.
+   */
+  private MFPattern compileMF(final String pattern) {
+    MFPattern compiled = (MFPattern) mfPatterns.get(pattern);
+    if (compiled == null || compiled.locale != Locale.getDefault()) {
+      compiled = new MFPattern(pattern);
+      mfPatterns.put(pattern, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * Gets a compiled SLF4J pattern from the cache, compiling it if
+   * missing.
+   * @param pattern pattern, may not be null.
+   * @return compiled pattern.
+   */
+  private SFPattern compileSF(final String pattern) {
+    SFPattern compiled = (SFPattern) sfPatterns.get(pattern);
+    if (compiled == null) {
+      compiled = new SFPattern(pattern);
+      sfPatterns.put(pattern, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * Formats a single argument like a "{0}" format element.
+   * @param arg argument, may be null.
+   * @return string representation of the argument.
+   */
+  private String formatObject(final Object arg) {
+    if (arg instanceof String) {
+      return (String) arg;
+    } else if (arg instanceof Double || arg instanceof Float) {
+      Locale locale = Locale.getDefault();
+      if (locale != numberLocale || numberFormat == null) {
+        numberLocale = locale;
+        numberFormat = NumberFormat.getInstance(locale);
+      }
+      return numberFormat.format(arg);
+    } else if (arg instanceof Date) {
+      Locale locale = Locale.getDefault();
+      if (locale != dateLocale || dateFormat == null) {
+        dateLocale = locale;
+        dateFormat = DateFormat.getDateTimeInstance(DateFormat.SHORT,
+                                                    DateFormat.SHORT,
+                                                    locale);
+      }
+      return dateFormat.format(arg);
+    }
+    return String.valueOf(arg);
+  }
+
+  /**
+   * Map of compiled patterns evicting the least recently used one
+   * beyond MAX_PATTERNS entries.
+   */
+  private static final class PatternMap extends LinkedHashMap {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates a new instance.
+     */
+    PatternMap() {
+      super(16, 0.75f, true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean removeEldestEntry(final Map.Entry eldest) {
+      return size() > MAX_PATTERNS;
+    }
+  }
+
+  /**
+   * Pattern in the syntax of MessageFormat.
+   */
+  private static final class MFPattern {
+    /**
+     * Pattern.
+     */
+    private final String pattern;
+
+    /**
+     * Default locale when the pattern was compiled.
+     */
+    final Locale locale = Locale.getDefault();
+
+    /**
+     * Literal text before each element and after the last one, null
+     * unless the pattern is simple.
+     */
+    private final String[] literals;
+
+    /**
+     * Argument index of each element.
+     */
+    private final int[] indexes;
+
+    /**
+     * Format of a pattern which is not simple, null if the pattern
+     * is simple or malformed.
+     */
+    private final MessageFormat format;
+
+    /**
+     * Compiles a pattern.
+     * @param pattern pattern, may not be null.
+     */
+    MFPattern(final String pattern) {
+      this.pattern = pattern;
+      ArrayList parts = null;
+      if (pattern.indexOf('\'') == -1) {
+        parts = new ArrayList();
+        int prev = 0;
+        for (int pos = pattern.indexOf('{');
+             pos != -1 && parts != null;
+             pos = pattern.indexOf('{', pos + 1)) {
+          if (pos + 2 >= pattern.length()
+              || pattern.charAt(pos + 2) != '}'
+              || pattern.charAt(pos + 1) < '0'
+              || pattern.charAt(pos + 1) > '9') {
+            parts = null;
+          } else {
+            parts.add(pattern.substring(prev, pos));
+            parts.add(new Integer(pattern.charAt(pos + 1) - '0'));
+            prev = pos + 3;
+          }
+        }
+        if (parts != null) {
+          parts.add(pattern.substring(prev));
+        }
+      }
+      if (parts != null) {
+        int count = parts.size() / 2;
+        literals = new String[count + 1];
+        indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+          literals[i] = (String) parts.get(2 * i);
+          indexes[i] = ((Integer) parts.get(2 * i + 1)).intValue();
+        }
+        literals[count] = (String) parts.get(2 * count);
+        format = null;
+      } else {
+        literals = null;
+        indexes = null;
+        MessageFormat parsed = null;
+        try {
+          parsed = new MessageFormat(pattern);
+        } catch (IllegalArgumentException ex) {
+          // malformed pattern, output as is
+        }
+        format = parsed;
+      }
+    }
+
+    /**
+     * Formats arguments.
+     * @param formatter formatters of the current thread.
+     * @param arguments arguments, may be null or mismatched.
+     * @return formatted message.
+     */
+    String format(final MessageFormatter formatter,
+                  final Object[] arguments) {
+      if (literals == null) {
+        if (format == null) {
+          return pattern;
+        }
+        try {
+          return format.format(arguments);
+        } catch (IllegalArgumentException ex) {
+          return pattern;
+        }
+      }
+      return formatSimple(formatter, arguments,
+                          arguments == null ? 0 : arguments.length, null);
+    }
+
+    /**
+     * Formats a single argument.
+     * @param formatter formatters of the current thread.
+     * @param arg0 argument, may be null.
+     * @return formatted message.
+     */
+    String format(final MessageFormatter formatter, final Object arg0) {
+      if (literals == null) {
+        return format(formatter, new Object[] { arg0 });
+      }
+      return formatSimple(formatter, null, 1, arg0);
+    }
+
+    /**
+     * Formats a simple pattern.
+     * @param formatter formatters of the current thread.
+     * @param arguments arguments, null to use arg0.
+     * @param count number of arguments.
+     * @param arg0 single argument used if arguments is null.
+     * @return formatted message.
+     */
+    private String formatSimple(final MessageFormatter formatter,
+                                final Object[] arguments,
+                                final int count,
+                                final Object arg0) {
+      if (indexes.length == 0) {
+        return pattern;
+      }
+      StringBuffer buf = new StringBuffer(pattern.length() + 16 * indexes.length);
+      for (int i = 0; i < indexes.length; i++) {
+        buf.append(literals[i]);
+        int index = indexes[i];
+        if (index >= count) {
+          buf.append('{').append((char) ('0' + index)).append('}');
+        } else {
+          Object arg = arguments == null ? arg0 : arguments[index];
+          buf.append(formatter.formatObject(arg));
+        }
+      }
+      buf.append(literals[indexes.length]);
+      return buf.toString();
+    }
+  }
+
+  /**
+   * Pattern in the SLF4J syntax.
+   */
+  private static final class SFPattern {
+    /**
+     * Literal text before each placeholder and after the last one,
+     * with escaped braces resolved.
+     */
+    final String[] literals;
+
+    /**
+     * Compiles a pattern.
+     * @param pattern pattern, may not be null.
+     */
+    SFPattern(final String pattern) {
+      ArrayList parts = new ArrayList();
+      StringBuffer literal = new StringBuffer();
+      int length = pattern.length();
+      for (int i = 0; i < length; i++) {
+        char c = pattern.charAt(i);
+        if (c == '\\' && i + 1 < length && pattern.charAt(i + 1) == '{') {
+          literal.append('{');
+          i++;
+        } else if (c == '{' && i + 1 < length && pattern.charAt(i + 1) == '}') {
+          parts.add(literal.toString());
+          literal.setLength(0);
+          i++;
+        } else {
+          literal.append(c);
+        }
+      }
+      parts.add(literal.toString());
+      literals = (String[]) parts.toArray(new String[parts.size()]);
+    }
+
+    /**
+     * Appends the formatted arguments to a buffer, taking them from
+     * <code>arguments</code> or, if it is null, from arg0 to arg2.
+     * @param buf buffer.
+     * @param arguments arguments, may be null.
+     * @param count number of arguments.
+     * @param arg0 first argument used if arguments is null.
+     * @param arg1 second argument used if arguments is null.
+     * @param arg2 third argument used if arguments is null.
+     */
+    void format(final StringBuffer buf, final Object[] arguments,
+                final int count, final Object arg0,
+                final Object arg1, final Object arg2) {
+      int placeholders = literals.length - 1;
+      for (int i = 0; i < placeholders; i++) {
+        buf.append(literals[i]);
+        if (i >= count) {
+          buf.append("{}");
+        } else if (arguments != null) {
+          buf.append(arguments[i]);
+        } else if (i == 0) {
+          buf.append(arg0);
+        } else if (i == 1) {
+          buf.append(arg1);
+        } else {
+          buf.append(arg2);
+        }
+      }
+      buf.append(literals[placeholders]);
+    }
+  }
+}
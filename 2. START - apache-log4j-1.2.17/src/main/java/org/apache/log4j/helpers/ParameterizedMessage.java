@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+/**
+   A message pattern and up to three arguments, formatted only when
+   the message is rendered.
+
+   <p>The pattern uses the syntax of {@link org.apache.log4j.LogSF}:
+   each <code>{}</code> is replaced by the string value of the next
+   argument, <code>\{</code> stands for a literal brace, and the
+   placeholders left without an argument are output as they are.
+   The pattern is compiled and cached by {@link MessageFormatter}, so
+   formatting takes no lock and, once the pattern is cached, allocates
+   nothing but the result.
+
+   @since 1.2.18 */
+public final class ParameterizedMessage {
+  /**
+   * Pattern, may be null.
+   */
+  private final String pattern;
+
+  /**
+   * Number of arguments.
+   */
+  private final int count;
+
+  /**
+   * First argument.
+   */
+  private final Object arg0;
+
+  /**
+   * Second argument.
+   */
+  private final Object arg1;
+
+  /**
+   * Third argument.
+   */
+  private final Object arg2;
+
+  /**
+   * Creates a message with one argument.
+   * @param pattern pattern, may be null.
+   * @param arg0 argument, may be null.
+   */
+  public ParameterizedMessage(final String pattern, final Object arg0) {
+    this(pattern, 1, arg0, null, null);
+  }
+
+  /**
+   * Creates a message with two arguments.
+   * @param pattern pattern, may be null.
+   * @param arg0 first argument, may be null.
+   * @param arg1 second argument, may be null.
+   */
+  public ParameterizedMessage(final String pattern, final Object arg0,
+                              final Object arg1) {
+    this(pattern, 2, arg0, arg1, null);
+  }
+
+  /**
+   * Creates a message with three arguments.
+   * @param pattern pattern, may be null.
+   * @param arg0 first argument, may be null.
+   * @param arg1 second argument, may be null.
+   * @param arg2 third argument, may be null.
+   */
+  public ParameterizedMessage(final String pattern, final Object arg0,
+                              final Object arg1, final Object arg2) {
+    this(pattern, 3, arg0, arg1, arg2);
+  }
+
+  /**
+   * Creates a new instance.
+   * @param pattern pattern, may be null.
+   * @param count number of arguments.
+   * @param arg0 first argument.
+   * @param arg1 second argument.
+   * @param arg2 third argument.
+   */
+  private ParameterizedMessage(final String pattern, final int count,
+                               final Object arg0, final Object arg1,
+                               final Object arg2) {
+    this.pattern = pattern;
+    this.count = count;
+    this.arg0 = arg0;
+    this.arg1 = arg1;
+    this.arg2 = arg2;
+  }
+
+  /**
+   * Gets the pattern.
+   * @return pattern, may be null.
+   */
+  public String getPattern() {
+    return pattern;
+  }
+
+  /**
+   * Gets the arguments.
+   * @return new array of the arguments.
+   */
+  public Object[] getArguments() {
+    Object[] arguments = new Object[count];
+    for (int i = 0; i < count; i++) {
+      arguments[i] = getArgument(i);
+    }
+    return arguments;
+  }
+
+  /**
+   * Gets an argument.
+   * @param index index of the argument.
+   * @return argument.
+   */
+  private Object getArgument(final int index) {
+    switch (index) {
+    case 0:
+      return arg0;
+    case 1:
+      return arg1;
+    default:
+      return arg2;
+    }
+  }
+
+  /**
+   * Formats the message.
+   * @return formatted message, null if the pattern is null.
+   */
+  public String toString() {
+    if (pattern == null) {
+      return null;
+    }
+    if (pattern.indexOf('{') < 0) {
+      return pattern;
+    }
+    StringBuffer buf = new StringBuffer(pattern.length() + 16 * count);
+    format(buf);
+    return buf.toString();
+  }
+
+  /**
+   * Appends the formatted message to a buffer.
+   * @param buf buffer.
+   */
+  public void format(final StringBuffer buf) {
+    if (pattern == null) {
+      buf.append((String) null);
+      return;
+    }
+    MessageFormatter.formatSF(buf, pattern, count, arg0, arg1, arg2);
+  }
+}
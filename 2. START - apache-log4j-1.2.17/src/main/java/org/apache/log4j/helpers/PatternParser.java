@@ -17,11 +17,9 @@
 package org.apache.log4j.helpers;
 
 import org.apache.log4j.Layout;
+import org.apache.log4j.pattern.CachedDateFormat;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.LocationInfo;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.Map;
 import java.util.Arrays;
 
@@ -84,6 +82,11 @@ public class PatternParser {
   void  addToList(PatternConverter pc) {
     if(head == null) {
       head = tail = pc;
+    } else if(tail instanceof LiteralPatternConverter
+	      && pc instanceof LiteralPatternConverter) {
+      // adjacent literals are output with a single append
+      ((LiteralPatternConverter) tail).literal +=
+	((LiteralPatternConverter) pc).literal;
     } else {
       tail.next = pc;
       tail = pc;
@@ -246,31 +249,20 @@ public class PatternParser {
       break;
     case 'd':
       String dateFormatStr = AbsoluteTimeDateFormat.ISO8601_DATE_FORMAT;
-      DateFormat df;
+      CachedDateFormat df;
       String dOpt = extractOption();
       if(dOpt != null)
 	dateFormatStr = dOpt;
 
-      if(dateFormatStr.equalsIgnoreCase(
-                                    AbsoluteTimeDateFormat.ISO8601_DATE_FORMAT))
-	df = new  ISO8601DateFormat();
-      else if(dateFormatStr.equalsIgnoreCase(
-                                   AbsoluteTimeDateFormat.ABS_TIME_DATE_FORMAT))
-	df = new AbsoluteTimeDateFormat();
-      else if(dateFormatStr.equalsIgnoreCase(
-                              AbsoluteTimeDateFormat.DATE_AND_TIME_DATE_FORMAT))
-	df = new DateTimeDateFormat();
-      else {
-	try {
-	  df = new SimpleDateFormat(dateFormatStr);
-	}
-	catch (IllegalArgumentException e) {
-	  LogLog.error("Could not instantiate SimpleDateFormat with " +
-		       dateFormatStr, e);
-	  df = (DateFormat) OptionConverter.instantiateByClassName(
-			           "org.apache.log4j.helpers.ISO8601DateFormat",
-				   DateFormat.class, null);
-	}
+      // named formats are resolved by the shared formatter
+      try {
+	df = CachedDateFormat.getInstance(dateFormatStr, null);
+      }
+      catch (IllegalArgumentException e) {
+	LogLog.error("Could not instantiate SimpleDateFormat with " +
+		     dateFormatStr, e);
+	df = CachedDateFormat.getInstance(
+			   AbsoluteTimeDateFormat.ISO8601_DATE_FORMAT, null);
       }
       pc = new DatePatternConverter(formattingInfo, df);
       //LogLog.debug("DATE converter {"+dateFormatStr+"}.");
@@ -404,6 +396,16 @@ public class PatternParser {
       default: return null;
       }
     }
+
+    public
+    void format(StringBuffer sbuf, LoggingEvent event) {
+      // without padding or truncation the number can be appended directly
+      if(type == RELATIVE_TIME_CONVERTER && min == -1 && max == 0x7FFFFFFF) {
+	sbuf.append(event.timeStamp - LoggingEvent.getStartTime());
+      } else {
+	super.format(sbuf, event);
+      }
+    }
   }
 
   private static class LiteralPatternConverter extends PatternConverter {
@@ -426,26 +428,26 @@ public class PatternParser {
   }
 
   private static class DatePatternConverter extends PatternConverter {
-    private DateFormat df;
-    private Date date;
+    private CachedDateFormat df;
 
-    DatePatternConverter(FormattingInfo formattingInfo, DateFormat df) {
+    DatePatternConverter(FormattingInfo formattingInfo, CachedDateFormat df) {
       super(formattingInfo);
-      date = new Date();
       this.df = df;
     }
 
     public
-    String convert(LoggingEvent event) {
-      date.setTime(event.timeStamp);
-      String converted = null;
-      try {
-        converted = df.format(date);
-      }
-      catch (Exception ex) {
-        LogLog.error("Error occured while converting date.", ex);
+    void format(StringBuffer sbuf, LoggingEvent event) {
+      if(min != -1 || max != 0x7FFFFFFF) {
+	super.format(sbuf, event);
+	return;
       }
-      return converted;
+      // without padding or truncation the date is formatted in place
+      df.format(event.timeStamp, sbuf);
+    }
+
+    public
+    String convert(LoggingEvent event) {
+      return df.format(event.timeStamp, new StringBuffer()).toString();
     }
   }
 
@@ -53,6 +53,26 @@ public class QuietWriter extends FilterWriter {
     }
   }
 
+  /**
+     Writes the content of <code>sbuf</code>. When the underlying
+     writer is a {@link ByteBufferWriter} the characters are encoded
+     without creating a String.
+
+     @since 1.2.18 */
+  public
+  void write(StringBuffer sbuf) {
+    try {
+      if(out instanceof ByteBufferWriter) {
+	((ByteBufferWriter) out).write(sbuf);
+      } else {
+	out.write(sbuf.toString());
+      }
+    } catch(Exception e) {
+      errorHandler.error("Failed to write ["+sbuf+"].", e,
+			 ErrorCode.WRITE_FAILURE);
+    }
+  }
+
   public
   void flush() {
     try {
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * <code>RingBuffer</code> is a preallocated, bounded, multiple producer
+ * single consumer queue of logging events used by the
+ * {@link org.apache.log4j.RingBufferAsyncAppender}.
+ * <p>
+ * Producers claim a sequence number, store the event in the slot for
+ * that sequence and publish it by writing the slot's volatile sequence
+ * field. The single consumer reads published slots without taking any
+ * lock and hands the slots back by advancing its own volatile cursor.
+ * </p>
+ * <p>
+ * JDK 1.4 offers no compare-and-set primitive, so claiming a sequence
+ * is done inside a monitor that is held only for a counter check and
+ * increment. Storing, publishing and consuming events are lock free.
+ * </p>
+ *
+ * @since 1.2.18
+ */
+public final class RingBuffer {
+  /**
+   * Preallocated slots, length is a power of two.
+   */
+  private final Slot[] slots;
+
+  /**
+   * Mask used to map a sequence to a slot index.
+   */
+  private final int mask;
+
+  /**
+   * Maximum number of events held at any time.
+   */
+  private final int maxSize;
+
+  /**
+   * Monitor protecting <code>nextSequence</code>.
+   */
+  private final Object claimLock = new Object();
+
+  /**
+   * Next sequence to be claimed by a producer, guarded by claimLock.
+   */
+  private long nextSequence = 0;
+
+  /**
+   * Next sequence to be read by the consumer.
+   */
+  private volatile long consumed = 0;
+
+  /**
+   * Create new instance.
+   *
+   * @param maxSize maximum number of events, must be positive.
+   */
+  public RingBuffer(final int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("The maxSize argument ("
+        + maxSize + ") is not a positive integer.");
+    }
+
+    int capacity = 1;
+
+    while (capacity < maxSize) {
+      capacity <<= 1;
+    }
+
+    this.maxSize = maxSize;
+    this.mask = capacity - 1;
+    this.slots = new Slot[capacity];
+
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = new Slot();
+    }
+  }
+
+  /**
+   * Adds an event if there is room for it.
+   *
+   * @param event event, may not be null.
+   * @return true if the event was added, false if the buffer is full.
+   */
+  public boolean offer(final LoggingEvent event) {
+    long sequence;
+
+    synchronized (claimLock) {
+      sequence = nextSequence;
+
+      if ((sequence - consumed) >= maxSize) {
+        return false;
+      }
+
+      nextSequence = sequence + 1;
+    }
+
+    Slot slot = slots[(int) sequence & mask];
+    slot.event = event;
+    slot.sequence = sequence;
+
+    return true;
+  }
+
+  /**
+   * Removes the oldest published event. Must only be called
+   * from the consumer thread.
+   *
+   * @return oldest event or null if none has been published.
+   */
+  public LoggingEvent poll() {
+    long sequence = consumed;
+    Slot slot = slots[(int) sequence & mask];
+
+    if (slot.sequence != sequence) {
+      return null;
+    }
+
+    LoggingEvent event = slot.event;
+    slot.event = null;
+    consumed = sequence + 1;
+
+    return event;
+  }
+
+  /**
+   * Removes as many published events as fit in <code>batch</code>. Must
+   * only be called from the consumer thread.
+   *
+   * @param batch destination array, may not be null.
+   * @return number of events copied into <code>batch</code>.
+   */
+  public int drainTo(final LoggingEvent[] batch) {
+    long sequence = consumed;
+    int count = 0;
+
+    while (count < batch.length) {
+      Slot slot = slots[(int) sequence & mask];
+
+      if (slot.sequence != sequence) {
+        break;
+      }
+
+      batch[count++] = slot.event;
+      slot.event = null;
+      sequence++;
+    }
+
+    if (count > 0) {
+      consumed = sequence;
+    }
+
+    return count;
+  }
+
+  /**
+   * Determines whether no published event is waiting to be consumed.
+   *
+   * @return true if the consumer would find nothing to read.
+   */
+  public boolean isEmpty() {
+    long sequence = consumed;
+
+    return slots[(int) sequence & mask].sequence != sequence;
+  }
+
+  /**
+   * Get the maximum number of events held by this buffer.
+   *
+   * @return maximum size.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Get an estimate of the number of events currently held.
+   *
+   * @return number of claimed but not yet consumed slots.
+   */
+  public int length() {
+    synchronized (claimLock) {
+      return (int) (nextSequence - consumed);
+    }
+  }
+
+  /**
+   * A single slot of the ring.
+   */
+  private static final class Slot {
+    /**
+     * Sequence of the event last published in this slot.
+     */
+    volatile long sequence = -1;
+
+    /**
+     * Event, written before and read after <code>sequence</code>.
+     */
+    LoggingEvent event;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import java.util.LinkedList;
+
+/**
+   Runs tasks one at a time, in submission order, on a background
+   thread.
+
+   <p>At most <code>capacity</code> tasks may be pending, counting the
+   one running; {@link #execute} blocks while the limit is reached.
+   The worker thread is started when a task is submitted and ends
+   once the queue is empty, so an idle executor holds no thread. The
+   thread is not a daemon: the virtual machine waits for pending tasks
+   before exiting.
+
+   @since 1.2.18 */
+public final class SerialExecutor {
+  /**
+   * Name given to worker threads.
+   */
+  private final String name;
+
+  /**
+   * Maximum number of pending tasks.
+   */
+  private final int capacity;
+
+  /**
+   * Queued tasks, guarded by this.
+   */
+  private final LinkedList tasks = new LinkedList();
+
+  /**
+   * Number of queued and running tasks, guarded by this.
+   */
+  private int pending;
+
+  /**
+   * True while a worker thread is running, guarded by this.
+   */
+  private boolean running;
+
+  /**
+   * Creates a new executor.
+   * @param name name of the worker thread.
+   * @param capacity maximum number of pending tasks, at least 1.
+   */
+  public SerialExecutor(final String name, final int capacity) {
+    this.name = name;
+    this.capacity = Math.max(capacity, 1);
+  }
+
+  /**
+   * Queues a task, waiting while <code>capacity</code> tasks are
+   * pending. If the calling thread is interrupted while waiting, the
+   * task is queued anyway and the interrupt status is restored.
+   * @param task task, may not be null.
+   */
+  public synchronized void execute(final Runnable task) {
+    boolean interrupted = false;
+    while (pending >= capacity && !interrupted) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    tasks.addLast(task);
+    pending++;
+    if (!running) {
+      running = true;
+      Thread worker = new Thread(new Worker(), name);
+      worker.start();
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the number of queued and running tasks.
+   * @return pending task count.
+   */
+  public synchronized int getPendingCount() {
+    return pending;
+  }
+
+  /**
+   * Waits until no task is pending or <code>timeout</code>
+   * milliseconds have elapsed.
+   * @param timeout maximum wait in milliseconds, 0 to wait forever.
+   * @return true if no task is pending.
+   */
+  public synchronized boolean awaitIdle(final long timeout) {
+    long deadline = System.currentTimeMillis() + timeout;
+    try {
+      while (pending > 0) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (timeout == 0) {
+          wait();
+        } else if (remaining > 0) {
+          wait(remaining);
+        } else {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return pending == 0;
+  }
+
+  /**
+   * Runs queued tasks until the queue is empty.
+   */
+  private final class Worker implements Runnable {
+    public void run() {
+      for (;;) {
+        Runnable task;
+        synchronized (SerialExecutor.this) {
+          if (tasks.isEmpty()) {
+            running = false;
+            return;
+          }
+          task = (Runnable) tasks.removeFirst();
+        }
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          LogLog.error("Background task failed.", e);
+        } finally {
+          synchronized (SerialExecutor.this) {
+            pending--;
+            SerialExecutor.this.notifyAll();
+          }
+        }
+      }
+    }
+  }
+}
@@ -22,6 +22,7 @@ package org.apache.log4j.helpers;
 import java.io.Writer;
 import java.util.Date;
 
+import org.apache.log4j.spi.ErrorCode;
 import org.apache.log4j.spi.ErrorHandler;
 
 /**
@@ -53,7 +54,49 @@ public class SyslogQuietWriter extends QuietWriter {
 
   public
   void write(String string) {
-    super.write("<"+(syslogFacility | level)+">" + string);
+    write(null, null, String.valueOf(string), 0);
+  }
+
+  /**
+     Writes a message made of a header, a prefix and the end of a
+     body. When the underlying writer is a {@link SyslogWriter} the
+     parts are written without being concatenated.
+
+     @param header header, may be null.
+     @param prefix prefix, may be null.
+     @param body body, may not be null.
+     @param offset index of the first character of body to write.
+     @since 1.2.18 */
+  public
+  void write(String header, String prefix, String body, int offset) {
+    try {
+      if(out instanceof SyslogWriter) {
+	SyslogWriter writer = (SyslogWriter) out;
+	writer.beginMessage(syslogFacility | level);
+	if(header != null) {
+	  writer.writePart(header, 0, header.length());
+	}
+	if(prefix != null) {
+	  writer.writePart(prefix, 0, prefix.length());
+	}
+	writer.writePart(body, offset, body.length() - offset);
+	writer.endMessage();
+      } else {
+	StringBuffer buf = new StringBuffer();
+	buf.append('<').append(syslogFacility | level).append('>');
+	if(header != null) {
+	  buf.append(header);
+	}
+	if(prefix != null) {
+	  buf.append(prefix);
+	}
+	buf.append(body.substring(offset));
+	out.write(buf.toString());
+      }
+    } catch(Exception e) {
+      errorHandler.error("Failed to write ["+body+"].", e,
+			 ErrorCode.WRITE_FAILURE);
+    }
   }
 
 /**
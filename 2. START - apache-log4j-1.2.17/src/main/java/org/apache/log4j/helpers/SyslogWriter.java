@@ -19,24 +19,66 @@ package org.apache.log4j.helpers;
 
 
 import java.io.Writer;
+import java.io.OutputStream;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.DatagramPacket;
+import java.net.Socket;
 import java.net.UnknownHostException;
 import java.net.SocketException;
 import java.io.IOException;
 import java.net.URL;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
    SyslogWriter is a wrapper around the java.net.DatagramSocket class
    so that it behaves like a java.io.Writer.
 
+   <p>Each call to <code>write</code> sends one syslog message. Since
+   1.2.18, the characters of a message are encoded into a reused byte
+   buffer and sent with a reused packet, and a message may be written
+   in parts between {@link #beginMessage} and {@link #endMessage}
+   without joining them into a String first.
+
+   <p>Since 1.2.18, messages may also be sent over TCP, framed by
+   octet counting as described in RFC 6587: each message is preceded
+   by its length in bytes and a space. Messages are collected in a
+   buffer and sent together when it fills up, when the writer is
+   flushed, or when a message ends more than a second after the first
+   message still waiting in the buffer. The connection is opened on
+   the first message and, after a failure, opened again at most every
+   30 seconds; messages written while there is no connection are lost.
+
    @since 0.7.3
 */
 public class SyslogWriter extends Writer {
 
   final int SYSLOG_PORT = 514;
+
+  /**
+   * Maximum size of a message sent over UDP, longer messages are
+   * truncated.
+   */
+  private static final int MAX_PACKET_SIZE = 1024;
+
+  /**
+   * Size of the buffer collecting TCP messages.
+   */
+  private static final int BATCH_SIZE = 8192;
+
+  /**
+   * Minimum time in milliseconds between TCP connection attempts.
+   */
+  private static final long RECONNECTION_DELAY = 30000;
+
+  /**
+   * Time in milliseconds after which the TCP messages waiting in the
+   * batch are sent at the end of the next message.
+   */
+  private static final long MAX_BATCH_DELAY = 1000;
+
   /**
    *  Host string from last constructed SyslogWriter.
    *  @deprecated
@@ -47,6 +89,51 @@ public class SyslogWriter extends Writer {
   private final int port;
   private DatagramSocket ds;
 
+  /**
+   * Reused packet, null if the socket could not be created.
+   */
+  private DatagramPacket packet;
+
+  /**
+   * True if messages are sent over TCP.
+   */
+  private final boolean tcp;
+
+  /**
+   * TCP connection, null if not connected.
+   */
+  private Socket socket;
+
+  /**
+   * Output stream of socket.
+   */
+  private OutputStream socketOut;
+
+  /**
+   * Time before which no TCP connection is attempted.
+   */
+  private long nextConnect;
+
+  /**
+   * TCP messages waiting to be sent.
+   */
+  private byte[] batch;
+
+  /**
+   * Number of bytes in batch.
+   */
+  private int batchCount;
+
+  /**
+   * Time the first message waiting in the batch was added.
+   */
+  private long batchStart;
+
+  /**
+   * Encoder of the current message.
+   */
+  private final MessageEncoder message;
+
   /**
    *  Constructs a new instance of SyslogWriter.
    *  @param syslogHost host name, may not be null.  A port
@@ -57,6 +144,20 @@ public class SyslogWriter extends Writer {
    */
   public
   SyslogWriter(final String syslogHost) {
+    this(syslogHost, false, null);
+  }
+
+  /**
+   *  Constructs a new instance of SyslogWriter.
+   *  @param syslogHost host name, may not be null, see
+   *  {@link #SyslogWriter(String)}.
+   *  @param tcp true to send messages over TCP instead of UDP.
+   *  @param charset charset of the messages, null for the platform
+   *  default.
+   *  @since 1.2.18
+   */
+  public
+  SyslogWriter(final String syslogHost, final boolean tcp, final Charset charset) {
     SyslogWriter.syslogHost = syslogHost;
     if (syslogHost == null) {
         throw new NullPointerException("syslogHost");
@@ -98,48 +199,272 @@ public class SyslogWriter extends Writer {
 			 ". All logging will FAIL.", e);
     }
 
-    try {
-      this.ds = new DatagramSocket();
-    }
-    catch (SocketException e) {
-      e.printStackTrace();
-      LogLog.error("Could not instantiate DatagramSocket to " + host +
+    this.tcp = tcp;
+    if (tcp) {
+      batch = new byte[BATCH_SIZE];
+    } else {
+      try {
+        this.ds = new DatagramSocket();
+        if (address != null) {
+          packet = new DatagramPacket(new byte[0], 0, address, port);
+        }
+      }
+      catch (SocketException e) {
+        e.printStackTrace();
+        LogLog.error("Could not instantiate DatagramSocket to " + host +
 			 ". All logging will FAIL.", e);
+      }
     }
-    
+
+    Charset cs = charset;
+    if (cs == null) {
+      try {
+        cs = Charset.forName(System.getProperty("file.encoding", "UTF-8"));
+      } catch (RuntimeException e) {
+        cs = Charset.forName("UTF-8");
+      }
+    }
+    message = new MessageEncoder(cs);
   }
 
 
   public
   void write(char[] buf, int off, int len) throws IOException {
-    this.write(new String(buf, off, len));
+    message.reset();
+    message.write(buf, off, len);
+    endMessage();
   }
   
   public
   void write(final String string) throws IOException {
+    message.reset();
+    message.write(string, 0, string.length());
+    endMessage();
+  }
 
-    if(this.ds != null && this.address != null) {
-        byte[] bytes = string.getBytes();
-        //
-        //  syslog packets must be less than 1024 bytes
-        //
-        int bytesLength = bytes.length;
-        if (bytesLength >= 1024) {
-            bytesLength = 1024;
+  /**
+   * Starts a message with the PRI part, discarding any message
+   * not ended.
+   * @param priority priority, facility and level combined.
+   * @since 1.2.18
+   */
+  public
+  void beginMessage(final int priority) throws IOException {
+    message.reset();
+    message.write('<');
+    if (priority >= 100) {
+      message.write('0' + priority / 100);
+    }
+    if (priority >= 10) {
+      message.write('0' + priority / 10 % 10);
+    }
+    message.write('0' + priority % 10);
+    message.write('>');
+  }
+
+  /**
+   * Appends characters to the current message.
+   * @param str string, may not be null.
+   * @param off offset of the first character.
+   * @param len number of characters.
+   * @since 1.2.18
+   */
+  public
+  void writePart(final String str, final int off, final int len) throws IOException {
+    message.write(str, off, len);
+  }
+
+  /**
+   * Sends the current message over UDP, or adds it to the messages
+   * waiting to be sent over TCP.
+   * @since 1.2.18
+   */
+  public
+  void endMessage() throws IOException {
+    ByteBuffer bytes = message.getBytes();
+    int length = bytes.position();
+    if (tcp) {
+      long now = System.currentTimeMillis();
+      frame(bytes.array(), length, now);
+      if (now - batchStart >= MAX_BATCH_DELAY) {
+        sendBatch();
+      }
+    } else if (packet != null) {
+      //
+      //  syslog packets must be less than 1024 bytes
+      //
+      packet.setData(bytes.array(), 0, Math.min(length, MAX_PACKET_SIZE));
+      ds.send(packet);
+    }
+    message.reset();
+  }
+
+  /**
+   * Adds a TCP message preceded by its length to the batch.
+   * @param bytes encoded message.
+   * @param length length of the message.
+   * @param now current time.
+   */
+  private void frame(final byte[] bytes, final int length, final long now) {
+    int digits = 1;
+    for (int n = length; n >= 10; n /= 10) {
+      digits++;
+    }
+    if (batchCount + digits + 1 + length > batch.length) {
+      sendBatch();
+    }
+    if (batchCount == 0) {
+      batchStart = now;
+    }
+    if (digits + 1 + length > batch.length) {
+      // too long for the batch, sent on its own in a larger one
+      batch = new byte[digits + 1 + length];
+    }
+    for (int i = digits - 1, n = length; i >= 0; i--, n /= 10) {
+      batch[batchCount + i] = (byte) ('0' + n % 10);
+    }
+    batch[batchCount + digits] = (byte) ' ';
+    System.arraycopy(bytes, 0, batch, batchCount + digits + 1, length);
+    batchCount += digits + 1 + length;
+  }
+
+  /**
+   * Sends the batch over TCP, connecting if needed. The batch is
+   * discarded if it cannot be sent.
+   */
+  private void sendBatch() {
+    if (batchCount == 0) {
+      return;
+    }
+    if (socket == null) {
+      connect();
+    }
+    if (socketOut != null) {
+      try {
+        socketOut.write(batch, 0, batchCount);
+        socketOut.flush();
+      } catch (IOException e) {
+        if (e instanceof java.io.InterruptedIOException) {
+          Thread.currentThread().interrupt();
         }
-        DatagramPacket packet = new DatagramPacket(bytes, bytesLength,
-                               address, port);
-        ds.send(packet);
+        LogLog.warn("Could not send syslog messages to " + address
+                    + ", connecting again in " + RECONNECTION_DELAY + " ms.", e);
+        disconnect();
+        nextConnect = System.currentTimeMillis() + RECONNECTION_DELAY;
+      }
+    }
+    batchCount = 0;
+    if (batch.length != BATCH_SIZE) {
+      batch = new byte[BATCH_SIZE];
     }
-    
   }
 
+  /**
+   * Opens the TCP connection unless an attempt failed recently.
+   */
+  private void connect() {
+    if (address == null || System.currentTimeMillis() < nextConnect) {
+      return;
+    }
+    try {
+      socket = new Socket(address, port);
+      socketOut = socket.getOutputStream();
+    } catch (IOException e) {
+      if (e instanceof java.io.InterruptedIOException) {
+        Thread.currentThread().interrupt();
+      }
+      LogLog.warn("Could not connect to syslog host " + address + ":" + port
+                  + ", trying again in " + RECONNECTION_DELAY + " ms.", e);
+      disconnect();
+      nextConnect = System.currentTimeMillis() + RECONNECTION_DELAY;
+    }
+  }
+
+  /**
+   * Closes the TCP connection.
+   */
+  private void disconnect() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        LogLog.debug("Could not close syslog connection.", e);
+      }
+    }
+    socket = null;
+    socketOut = null;
+  }
+
+  /**
+   * Sends the TCP messages waiting in the batch.
+   */
   public
-  void flush() {}
+  void flush() {
+    if (tcp) {
+      sendBatch();
+    }
+  }
 
   public void close() {
       if (ds != null) {
           ds.close();
       }
+      if (tcp) {
+          sendBatch();
+          disconnect();
+      }
+  }
+
+  /**
+   * Encodes one message into a byte buffer that grows as needed
+   * and is reused for the next message.
+   */
+  private static final class MessageEncoder extends ByteBufferWriter {
+    /**
+     * Creates a new encoder.
+     * @param charset charset.
+     */
+    MessageEncoder(final Charset charset) {
+      super(charset, ByteBuffer.allocate(256));
+    }
+
+    /**
+     * Returns the buffer holding the encoded message.
+     * @return buffer, its position is the message length.
+     */
+    ByteBuffer getBytes() {
+      return bytes;
+    }
+
+    /**
+     * Discards the current message, including an unpaired high
+     * surrogate at its end.
+     */
+    void reset() {
+      resetEncoding();
+      bytes.clear();
+    }
+
+    /**
+     * Grows the buffer, the message is only sent once complete.
+     */
+    protected void drain() {
+      ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+      bytes.flip();
+      larger.put(bytes);
+      bytes = larger;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void flushTarget() {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void closeTarget() {
+    }
   }
 }
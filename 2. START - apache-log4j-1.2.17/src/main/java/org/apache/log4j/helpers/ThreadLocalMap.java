@@ -24,6 +24,10 @@ import java.util.Hashtable;
    to bequeath a copy of the hashtable of the MDC of the parent
    thread.
 
+   <p>Since 1.2.18 the MDC stores an immutable {@link ContextMap},
+   which the child thread shares with its parent. Only hashtables are
+   copied.
+
    @author Ceki G&uuml;lc&uuml;
    @since 1.2
 */
@@ -32,11 +36,10 @@ final public class ThreadLocalMap extends InheritableThreadLocal {
   public
   final
   Object childValue(Object parentValue) {
-    Hashtable ht = (Hashtable) parentValue;
-    if(ht != null) {
-      return ht.clone();
+    if(parentValue instanceof Hashtable) {
+      return ((Hashtable) parentValue).clone();
     } else {
-      return null;
+      return parentValue;
     }
   }
 }
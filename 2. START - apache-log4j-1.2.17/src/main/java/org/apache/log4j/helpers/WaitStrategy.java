@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+/**
+ * Determines how a thread waits for a {@link RingBuffer} to become
+ * non-empty (the consumer) or non-full (a blocked producer).
+ * <p>
+ * Callers loop on their condition and invoke {@link #idle(int)} with
+ * the number of unsuccessful attempts so far. Whoever changes the
+ * state of the buffer calls {@link #signal()}.
+ * </p>
+ *
+ * @since 1.2.18
+ */
+public abstract class WaitStrategy {
+  /**
+   * Name of the busy spinning strategy.
+   */
+  public static final String SPIN = "spin";
+
+  /**
+   * Name of the strategy yielding the processor between attempts.
+   */
+  public static final String YIELD = "yield";
+
+  /**
+   * Name of the strategy that spins, yields and then parks the thread.
+   */
+  public static final String PARK = "park";
+
+  /**
+   * Create new instance.
+   */
+  protected WaitStrategy() {
+  }
+
+  /**
+   * Returns a new strategy corresponding to <code>name</code>.
+   *
+   * @param name one of "spin", "yield" or "park", case insensitive.
+   * @param defaultValue value returned if name is not recognized.
+   * @return wait strategy.
+   */
+  public static WaitStrategy forName(final String name,
+                                     final WaitStrategy defaultValue) {
+    if (SPIN.equalsIgnoreCase(name)) {
+      return new Spin();
+    }
+
+    if (YIELD.equalsIgnoreCase(name)) {
+      return new Yield();
+    }
+
+    if (PARK.equalsIgnoreCase(name)) {
+      return new Park();
+    }
+
+    return defaultValue;
+  }
+
+  /**
+   * Returns a new instance of the default, parking, strategy.
+   *
+   * @return wait strategy.
+   */
+  public static WaitStrategy getDefault() {
+    return new Park();
+  }
+
+  /**
+   * Waits before the caller re-examines its condition.
+   *
+   * @param attempt number of previous unsuccessful attempts.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  public abstract void idle(int attempt) throws InterruptedException;
+
+  /**
+   * Wakes up threads that may be waiting in {@link #idle(int)}.
+   */
+  public void signal() {
+  }
+
+  /**
+   * Busy spins, lowest latency at the cost of a fully used processor.
+   */
+  private static final class Spin extends WaitStrategy {
+    /**
+     * {@inheritDoc}
+     */
+    public void idle(final int attempt) throws InterruptedException {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+  }
+
+  /**
+   * Yields the processor between attempts.
+   */
+  private static final class Yield extends WaitStrategy {
+    /**
+     * {@inheritDoc}
+     */
+    public void idle(final int attempt) throws InterruptedException {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Spins, then yields, then waits on a monitor until signalled.
+   * Signalling only takes the monitor when some thread is parked.
+   */
+  private static final class Park extends WaitStrategy {
+    /**
+     * Attempts spent spinning.
+     */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Attempts spent yielding, counted after spinning.
+     */
+    private static final int YIELD_TRIES = 200;
+
+    /**
+     * Upper bound of a single park, bounds the cost of a missed signal.
+     */
+    private static final long PARK_MILLIS = 10;
+
+    /**
+     * Number of parked threads.
+     */
+    private volatile int parked = 0;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void idle(final int attempt) throws InterruptedException {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+
+      if (attempt < SPIN_TRIES) {
+        return;
+      }
+
+      if (attempt < YIELD_TRIES) {
+        Thread.yield();
+        return;
+      }
+
+      synchronized (this) {
+        parked++;
+
+        try {
+          wait(PARK_MILLIS);
+        } finally {
+          parked--;
+        }
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void signal() {
+      if (parked > 0) {
+        synchronized (this) {
+          notifyAll();
+        }
+      }
+    }
+  }
+}
@@ -18,10 +18,12 @@ package org.apache.log4j.jdbc;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.log4j.PatternLayout;
 import org.apache.log4j.spi.ErrorCode;
@@ -52,6 +54,22 @@ import org.apache.log4j.spi.LoggingEvent;
   <p>Overriding the {@link #getLogStatement} method allows more
   explicit control of the statement used for logging.
 
+  <p>When the <b>Parameters</b> option is set, the sql option is
+  instead a prepared statement with one <code>?</code> placeholder
+  per parameter, such as <code>insert into LogTable (Logged, Level,
+  Message) values (?, ?, ?)</code> with the parameters
+  <code>timestamp, level, message</code>. Values are bound rather than
+  pasted into the statement text, so quotes in messages are harmless,
+  and the buffered events are inserted with a single batch. If the
+  batch fails, its events are discarded and the error handler is
+  told how many.
+
+  <p>When the <b>FlushInterval</b> option is set, events are inserted
+  by a background thread, once <b>BufferSize</b> events are buffered
+  or at the latest <b>FlushInterval</b> milliseconds after the first
+  of them was appended. Logging only blocks when twice
+  <b>BufferSize</b> events are waiting for the database.
+
   <p>For use as a base class:
 
     <ul>
@@ -131,6 +149,33 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
   
   private boolean locationInfo = false;
 
+  /**
+   * Value of the Parameters option.
+   */
+  private String parameterList;
+
+  /**
+   * Parameters of the prepared statement, null when the statement is
+   * produced by the layout.
+   */
+  private JDBCParameter[] parameters;
+
+  /**
+   * True if a parameter uses the location of events.
+   */
+  private boolean parametersRequireLocation;
+
+  /**
+   * Maximum time in milliseconds an event waits to be inserted,
+   * 0 to insert from the logging thread when the buffer is full.
+   */
+  private long flushInterval = 0;
+
+  /**
+   * Background flushing thread, null unless FlushInterval is set.
+   */
+  private Flusher flusher;
+
   public JDBCAppender() {
     super();
     buffer = new ArrayList(bufferSize);
@@ -167,6 +212,18 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
   }
   
 
+  /**
+   * Starts the background flushing thread if the <b>FlushInterval</b>
+   * option is set.
+   * @since 1.2.18
+   */
+  public void activateOptions() {
+    if (flushInterval > 0 && flusher == null) {
+      flusher = new Flusher();
+      flusher.start();
+    }
+  }
+
   /**
    * Adds the event to the buffer.  When full the buffer is flushed.
    */
@@ -175,11 +232,15 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
     event.getThreadName();
     // Get a copy of this thread's MDC.
     event.getMDCCopy();
-    if (locationInfo) {
+    if (locationInfo || parametersRequireLocation) {
       event.getLocationInformation();
     }
     event.getRenderedMessage();
     event.getThrowableStrRep();
+    if (flusher != null) {
+      flusher.add(event);
+      return;
+    }
     buffer.add(event);
 
     if (buffer.size() >= bufferSize)
@@ -226,6 +287,38 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
     //System.out.println("Execute: " + sql);
   }
 
+  /**
+   * Inserts events with a single batch of the prepared statement
+   * given by the sql option, binding the <b>Parameters</b> of each
+   * event.
+   *
+   * @since 1.2.18
+   */
+  protected void executeBatch(List events) throws SQLException {
+
+    Connection con = null;
+    PreparedStatement stmt = null;
+
+    try {
+        con = getConnection();
+
+        stmt = con.prepareStatement(sqlStatement);
+        for (Iterator i = events.iterator(); i.hasNext();) {
+          LoggingEvent logEvent = (LoggingEvent)i.next();
+          for (int p = 0; p < parameters.length; p++) {
+            parameters[p].bind(stmt, p + 1, logEvent);
+          }
+          stmt.addBatch();
+        }
+        stmt.executeBatch();
+    } finally {
+        if(stmt != null) {
+            stmt.close();
+        }
+        closeConnection(con);
+    }
+  }
+
 
   /**
    * Override this to return the connection to a pool, or to clean up the
@@ -261,6 +354,11 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
    */
   public void close()
   {
+    if (flusher != null) {
+      // inserts the events still waiting
+      flusher.shutdown();
+      flusher = null;
+    }
     flushBuffer();
 
     try {
@@ -274,12 +372,31 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
 
   /**
    * loops through the buffer of LoggingEvents, gets a
-   * sql string from getLogStatement() and sends it to execute().
+   * sql string from getLogStatement() and sends it to execute(),
+   * or sends the whole buffer to executeBatch() when the
+   * <b>Parameters</b> option is set.
    * Errors are sent to the errorHandler.
    *
-   * If a statement fails the LoggingEvent stays in the buffer!
+   * Events are removed from the buffer whether or not they could be
+   * inserted. If a statement fails its LoggingEvent is lost; if the
+   * batch fails all of its events are, and the error reported to the
+   * errorHandler gives their number.
+   *
+   * When the <b>FlushInterval</b> option is set, this also asks the
+   * background thread to insert its events without waiting for it.
    */
   public void flushBuffer() {
+    if (flusher != null) {
+      flusher.flushNow();
+    }
+    if (parameters != null) {
+      if (!buffer.isEmpty()) {
+        flushBatch(buffer);
+        buffer.clear();
+      }
+      return;
+    }
+
     //Do the actual logging
     removes.ensureCapacity(buffer.size());
     for (Iterator i = buffer.iterator(); i.hasNext();) {
@@ -303,6 +420,38 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
     removes.clear();
   }
 
+  /**
+   * Sends events to executeBatch(), reporting errors, and the number of
+   * events lost, to the errorHandler.
+   */
+  private void flushBatch(List events) {
+    try {
+      executeBatch(events);
+    } catch (SQLException e) {
+      errorHandler.error("Failed to execute batch, discarding "
+                         + events.size() + " events", e,
+                         ErrorCode.FLUSH_FAILURE);
+    }
+  }
+
+  /**
+   * Inserts events from the background thread.
+   */
+  private void flushEvents(ArrayList events) {
+    if (parameters != null) {
+      flushBatch(events);
+      return;
+    }
+    for (Iterator i = events.iterator(); i.hasNext();) {
+      try {
+        execute(getLogStatement((LoggingEvent)i.next()));
+      } catch (SQLException e) {
+        errorHandler.error("Failed to excute sql", e,
+                           ErrorCode.FLUSH_FAILURE);
+      }
+    }
+  }
+
 
   /** closes the appender before disposal */
   public void finalize() {
@@ -382,6 +531,65 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
   }
 
 
+  /**
+   * The <b>Parameters</b> option takes a comma separated list of the
+   * values bound to the placeholders of the sql option, which then
+   * becomes a prepared statement. Each value is one of
+   * <code>timestamp</code>, <code>level</code>, <code>logger</code>,
+   * <code>thread</code>, <code>message</code>, <code>ndc</code>,
+   * <code>throwable</code>, <code>class</code>, <code>method</code>,
+   * <code>file</code>, <code>line</code>, <code>property{key}</code>
+   * or a <code>PatternLayout</code> pattern without commas, such as
+   * <code>%d{ISO8601}</code>.
+   *
+   * @since 1.2.18
+   */
+  public void setParameters(String list) {
+    parameterList = list;
+    parameters = JDBCParameter.parse(list);
+    parametersRequireLocation = false;
+    if (parameters != null) {
+      for (int i = 0; i < parameters.length; i++) {
+        parametersRequireLocation |= parameters[i].requiresLocation();
+      }
+    }
+  }
+
+
+  /**
+   * Returns value of the <b>Parameters</b> option.
+   *
+   * @since 1.2.18
+   */
+  public String getParameters() {
+    return parameterList;
+  }
+
+
+  /**
+   * The <b>FlushInterval</b> option takes the maximum number of
+   * milliseconds an event waits before being inserted. When positive,
+   * events are inserted by a background thread started by
+   * activateOptions(). The default, 0, inserts events from the logging
+   * thread once the buffer is full.
+   *
+   * @since 1.2.18
+   */
+  public void setFlushInterval(long interval) {
+    flushInterval = interval;
+  }
+
+
+  /**
+   * Returns value of the <b>FlushInterval</b> option.
+   *
+   * @since 1.2.18
+   */
+  public long getFlushInterval() {
+    return flushInterval;
+  }
+
+
   /**
    * Ensures that the given driver class has been loaded for sql connection
    * creation.
@@ -394,5 +602,132 @@ public class JDBCAppender extends org.apache.log4j.AppenderSkeleton
 			 ErrorCode.GENERIC_FAILURE);
     }
   }
-}
 
+
+  /**
+   * Thread inserting events once <b>BufferSize</b> of them are
+   * waiting, or <b>FlushInterval</b> milliseconds after the first of
+   * them was appended.
+   */
+  private final class Flusher extends Thread {
+    /**
+     * Events waiting, guarded by this.
+     */
+    private ArrayList events = new ArrayList();
+
+    /**
+     * Time the first of the waiting events was added, guarded by this.
+     */
+    private long firstTime;
+
+    /**
+     * Set by flushNow, guarded by this.
+     */
+    private boolean flushRequested;
+
+    /**
+     * Set by shutdown, guarded by this.
+     */
+    private boolean stopping;
+
+    /**
+     * Creates a new instance.
+     */
+    Flusher() {
+      super("JDBCAppender-Flusher-" + JDBCAppender.this.getName());
+      setDaemon(true);
+    }
+
+    /**
+     * Adds an event, waiting while too many events are waiting.
+     * @param event event.
+     */
+    synchronized void add(final LoggingEvent event) {
+      while (events.size() >= 2 * bufferSize && !stopping && isAlive()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      if (events.isEmpty()) {
+        firstTime = System.currentTimeMillis();
+        notifyAll();
+      }
+      events.add(event);
+      if (events.size() == bufferSize) {
+        notifyAll();
+      }
+    }
+
+    /**
+     * Asks for the waiting events to be inserted now.
+     */
+    synchronized void flushNow() {
+      flushRequested = true;
+      notifyAll();
+    }
+
+    /**
+     * Inserts the waiting events and stops the thread.
+     */
+    void shutdown() {
+      synchronized (this) {
+        stopping = true;
+        notifyAll();
+      }
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Inserts batches of events until stopped.
+     */
+    public void run() {
+      ArrayList batch = new ArrayList();
+      while (true) {
+        synchronized (this) {
+          try {
+            while (!stopping && !flushRequested && events.size() < bufferSize) {
+              if (events.isEmpty()) {
+                wait();
+              } else {
+                long remaining = firstTime + flushInterval
+                  - System.currentTimeMillis();
+                if (remaining <= 0) {
+                  break;
+                }
+                wait(remaining);
+              }
+            }
+          } catch (InterruptedException e) {
+            stopping = true;
+          }
+          flushRequested = false;
+          if (events.isEmpty()) {
+            if (stopping) {
+              break;
+            }
+            continue;
+          }
+          ArrayList waiting = events;
+          events = batch;
+          batch = waiting;
+          // wake up logging threads waiting for room
+          notifyAll();
+        }
+        try {
+          flushEvents(batch);
+        } catch (RuntimeException e) {
+          errorHandler.error("Failed to insert events", e,
+                             ErrorCode.FLUSH_FAILURE);
+        }
+        batch.clear();
+      }
+    }
+  }
+}
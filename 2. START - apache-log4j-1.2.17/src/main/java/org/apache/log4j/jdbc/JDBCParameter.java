@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.StringTokenizer;
+
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   Converts a field of an event to the value of a parameter of the
+   prepared statement of {@link JDBCAppender}.
+
+   <p>A parameter is described by one of the names
+   <code>timestamp</code>, <code>level</code>, <code>logger</code>,
+   <code>thread</code>, <code>message</code>, <code>ndc</code>,
+   <code>throwable</code>, <code>class</code>, <code>method</code>,
+   <code>file</code> and <code>line</code>, by
+   <code>property{key}</code> for an MDC value or property, or by a
+   {@link PatternLayout} conversion pattern starting with
+   <code>%</code>. The <code>timestamp</code> is bound as a
+   <code>java.sql.Timestamp</code>, everything else as a string.
+
+   @since 1.2.18 */
+final class JDBCParameter {
+  /**
+   * Time stamp of the event.
+   */
+  private static final int TIMESTAMP = 0;
+
+  /**
+   * Level name.
+   */
+  private static final int LEVEL = 1;
+
+  /**
+   * Logger name.
+   */
+  private static final int LOGGER = 2;
+
+  /**
+   * Thread name.
+   */
+  private static final int THREAD = 3;
+
+  /**
+   * Rendered message.
+   */
+  private static final int MESSAGE = 4;
+
+  /**
+   * Nested diagnostic context.
+   */
+  private static final int NDC = 5;
+
+  /**
+   * Lines of the throwable.
+   */
+  private static final int THROWABLE = 6;
+
+  /**
+   * Location class name.
+   */
+  private static final int CLASS = 7;
+
+  /**
+   * Location method name.
+   */
+  private static final int METHOD = 8;
+
+  /**
+   * Location file name.
+   */
+  private static final int FILE = 9;
+
+  /**
+   * Location line number.
+   */
+  private static final int LINE = 10;
+
+  /**
+   * MDC value or property.
+   */
+  private static final int PROPERTY = 11;
+
+  /**
+   * Output of a pattern layout.
+   */
+  private static final int PATTERN = 12;
+
+  /**
+   * Names of the fields, indexed by type.
+   */
+  private static final String[] NAMES = {
+    "timestamp", "level", "logger", "thread", "message", "ndc",
+    "throwable", "class", "method", "file", "line"
+  };
+
+  /**
+   * Line separator used to join the lines of a throwable.
+   */
+  private static final String LINE_SEP = System.getProperty("line.separator");
+
+  /**
+   * Field type.
+   */
+  private final int type;
+
+  /**
+   * Property key, null unless type is PROPERTY.
+   */
+  private final String key;
+
+  /**
+   * Layout, null unless type is PATTERN.
+   */
+  private final PatternLayout layout;
+
+  /**
+   * Creates a new instance.
+   * @param type field type.
+   * @param key property key.
+   * @param layout pattern layout.
+   */
+  private JDBCParameter(final int type, final String key,
+                        final PatternLayout layout) {
+    this.type = type;
+    this.key = key;
+    this.layout = layout;
+  }
+
+  /**
+   * Parses a comma separated list of parameter descriptions.
+   * Patterns may not contain commas.
+   * @param list list of descriptions, may be null.
+   * @return parameters, null if list is null or empty.
+   */
+  static JDBCParameter[] parse(final String list) {
+    if (list == null) {
+      return null;
+    }
+    ArrayList parameters = new ArrayList();
+    StringTokenizer tokens = new StringTokenizer(list, ",");
+    while (tokens.hasMoreTokens()) {
+      String token = tokens.nextToken().trim();
+      if (token.length() > 0) {
+        parameters.add(create(token));
+      }
+    }
+    if (parameters.isEmpty()) {
+      return null;
+    }
+    return (JDBCParameter[]) parameters.toArray(new JDBCParameter[parameters.size()]);
+  }
+
+  /**
+   * Creates a parameter from its description.
+   * @param description description.
+   * @return parameter, binding null if the description is invalid.
+   */
+  private static JDBCParameter create(final String description) {
+    if (description.startsWith("%")) {
+      return new JDBCParameter(PATTERN, null, new PatternLayout(description));
+    }
+    String lower = description.toLowerCase();
+    if (lower.startsWith("property{") && lower.endsWith("}")) {
+      return new JDBCParameter(PROPERTY,
+                               description.substring(9, description.length() - 1),
+                               null);
+    }
+    for (int i = 0; i < NAMES.length; i++) {
+      if (NAMES[i].equals(lower)) {
+        return new JDBCParameter(i, null, null);
+      }
+    }
+    LogLog.error("Unknown JDBC parameter [" + description + "], binding null.");
+    return new JDBCParameter(PROPERTY, null, null);
+  }
+
+  /**
+   * Determines whether the parameter uses the location of the event.
+   * @return true if the location must be captured when appending.
+   */
+  boolean requiresLocation() {
+    return type >= CLASS && type <= LINE
+        || type == PATTERN && requiresLocation(layout.getConversionPattern());
+  }
+
+  /**
+   * Determines whether a pattern contains a location conversion.
+   * @param pattern conversion pattern.
+   * @return true if it contains %C, %F, %l, %L or %M.
+   */
+  private static boolean requiresLocation(final String pattern) {
+    for (int i = 0; i < pattern.length() - 1; i++) {
+      if (pattern.charAt(i) == '%') {
+        int j = i + 1;
+        while (j < pattern.length()
+               && "-.0123456789".indexOf(pattern.charAt(j)) >= 0) {
+          j++;
+        }
+        if (j < pattern.length() && "CFlLM".indexOf(pattern.charAt(j)) >= 0) {
+          return true;
+        }
+        i = j;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Binds the value of this parameter for an event.
+   * @param statement statement.
+   * @param index parameter index, starting at 1.
+   * @param event event.
+   * @throws SQLException if the value cannot be bound.
+   */
+  void bind(final PreparedStatement statement, final int index,
+            final LoggingEvent event) throws SQLException {
+    if (type == TIMESTAMP) {
+      statement.setTimestamp(index, new Timestamp(event.getTimeStamp()));
+      return;
+    }
+    String value = toString(event);
+    if (value == null) {
+      statement.setNull(index, Types.VARCHAR);
+    } else {
+      statement.setString(index, value);
+    }
+  }
+
+  /**
+   * Returns the string value of this parameter for an event.
+   * @param event event.
+   * @return value, may be null.
+   */
+  private String toString(final LoggingEvent event) {
+    switch (type) {
+    case LEVEL:
+      return event.getLevel().toString();
+    case LOGGER:
+      return event.getLoggerName();
+    case THREAD:
+      return event.getThreadName();
+    case MESSAGE:
+      return event.getRenderedMessage();
+    case NDC:
+      return event.getNDC();
+    case THROWABLE:
+      String[] lines = event.getThrowableStrRep();
+      if (lines == null) {
+        return null;
+      }
+      StringBuffer buf = new StringBuffer();
+      for (int i = 0; i < lines.length; i++) {
+        if (i > 0) {
+          buf.append(LINE_SEP);
+        }
+        buf.append(lines[i]);
+      }
+      return buf.toString();
+    case CLASS:
+      return getLocation(event).getClassName();
+    case METHOD:
+      return getLocation(event).getMethodName();
+    case FILE:
+      return getLocation(event).getFileName();
+    case LINE:
+      return getLocation(event).getLineNumber();
+    case PROPERTY:
+      return key == null ? null : event.getProperty(key);
+    case PATTERN:
+      return layout.format(event);
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * Returns the location captured when the event was appended.
+   * @param event event.
+   * @return location, fields are "?" if it was not captured.
+   */
+  private static LocationInfo getLocation(final LoggingEvent event) {
+    if (event.locationInformationExists()) {
+      return event.getLocationInformation();
+    }
+    return LocationInfo.NA_LOCATION_INFO;
+  }
+}
@@ -0,0 +1,454 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.helpers.Loader;
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.ThrowableInformation;
+
+/**
+   Decodes {@link LoggingEvent} objects written by a {@link
+   BinaryEventEncoder}.
+
+   <p>Events are attached to the logger of the same name in the
+   repository given to the constructor. Like the events read from a
+   serialized stream, they carry no {@link Throwable}, only its string
+   representation, and return unknown location information unless the
+   sender included it.
+
+   <p>A decoder keeps the string table and time stamp of the stream it
+   reads, so each stream needs its own decoder. This class is not
+   thread-safe.
+
+   @see BinaryEventEncoder
+   @since 1.2.18 */
+public final class BinaryEventDecoder {
+  /**
+   * Location of events sent without location information.
+   */
+  private static final LocationInfo NO_LOCATION = new LocationInfo(null, null);
+
+  /**
+   * Parameter types of Level.toLevel(int).
+   */
+  private static final Class[] TO_LEVEL_PARAMS = new Class[] {int.class};
+
+  /**
+   * Repository providing the loggers of decoded events.
+   */
+  private final LoggerRepository repository;
+
+  /**
+   * Strings received so far, by index.
+   */
+  private final List symbols = new ArrayList();
+
+  /**
+   * toLevel methods of custom level classes, by class name.
+   */
+  private final Map levelMethods = new HashMap();
+
+  /**
+   * Time stamp of the previous event.
+   */
+  private long lastTimeStamp;
+
+  /**
+   * Record being decoded.
+   */
+  private byte[] buf;
+
+  /**
+   * Read position in buf.
+   */
+  private int pos;
+
+  /**
+   * End of the record in buf.
+   */
+  private int limit;
+
+  /**
+   * Buffer used by read.
+   */
+  private byte[] record = new byte[512];
+
+  /**
+   * Buffer used to decode strings.
+   */
+  private char[] chars = new char[256];
+
+  /**
+   * Creates a new decoder.
+   * @param repository repository providing the loggers of decoded
+   * events, may not be null.
+   */
+  public BinaryEventDecoder(final LoggerRepository repository) {
+    this.repository = repository;
+  }
+
+  /**
+   * Determines whether a stream starts with the binary event header,
+   * without consuming it.
+   * @param in stream supporting mark and reset.
+   * @return true if the next bytes are {@link BinaryEventEncoder#MAGIC}.
+   * @throws IOException if the stream cannot be read.
+   */
+  public static boolean isBinary(final InputStream in) throws IOException {
+    in.mark(4);
+    try {
+      int magic = 0;
+      for (int i = 0; i < 4; i++) {
+        int b = in.read();
+        if (b == -1) {
+          return false;
+        }
+        magic = (magic << 8) | b;
+      }
+      return magic == BinaryEventEncoder.MAGIC;
+    } finally {
+      in.reset();
+    }
+  }
+
+  /**
+   * Reads and checks the stream header.
+   * @param in stream.
+   * @return version of the stream.
+   * @throws IOException if the header is missing or the version is
+   * not supported.
+   */
+  public static int readHeader(final InputStream in) throws IOException {
+    int magic = 0;
+    for (int i = 0; i < 4; i++) {
+      magic = (magic << 8) | readByte(in);
+    }
+    if (magic != BinaryEventEncoder.MAGIC) {
+      throw new StreamCorruptedException("Not a binary event stream.");
+    }
+    int version = readByte(in);
+    if (version > BinaryEventEncoder.VERSION) {
+      throw new StreamCorruptedException(
+        "Unsupported binary event stream version " + version + ".");
+    }
+    return version;
+  }
+
+  /**
+   * Reads the next record of a stream and decodes it.
+   * @param in stream positioned after the header or a record.
+   * @return event.
+   * @throws EOFException if the stream ends before the record.
+   * @throws IOException if the stream cannot be read or the record
+   * is invalid.
+   */
+  public LoggingEvent read(final InputStream in) throws IOException {
+    int length = 0;
+    for (int shift = 0;; shift += 7) {
+      if (shift > 28) {
+        throw new StreamCorruptedException("Invalid record length.");
+      }
+      int b = readByte(in);
+      length |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+    }
+    if (length < 0 || length > BinaryEventEncoder.MAX_RECORD_SIZE) {
+      throw new StreamCorruptedException("Invalid record length " + length + ".");
+    }
+    if (length > record.length) {
+      record = new byte[Math.max(length, record.length * 2)];
+    }
+    int n = 0;
+    while (n < length) {
+      int read = in.read(record, n, length - n);
+      if (read == -1) {
+        throw new EOFException();
+      }
+      n += read;
+    }
+    return decode(record, 0, length);
+  }
+
+  /**
+   * Decodes the body of a record, without its length.
+   * @param bytes buffer holding the record.
+   * @param offset start of the body.
+   * @param length length of the body.
+   * @return event.
+   * @throws IOException if the record is invalid.
+   */
+  public LoggingEvent decode(final byte[] bytes, final int offset,
+                             final int length) throws IOException {
+    buf = bytes;
+    pos = offset;
+    limit = offset + length;
+    try {
+      int flags = nextByte();
+      if ((flags & BinaryEventEncoder.RESET_CONTEXT) != 0) {
+        symbols.clear();
+        lastTimeStamp = 0;
+      }
+      long timeStamp = lastTimeStamp + unzigzag(readVarLong());
+      lastTimeStamp = timeStamp;
+      int levelInt = unzigzag(readVarInt());
+      Level level;
+      if ((flags & BinaryEventEncoder.CUSTOM_LEVEL) != 0) {
+        level = toLevel(readSymbol(), levelInt);
+      } else {
+        level = Level.toLevel(levelInt);
+      }
+      String loggerName = readSymbol();
+      String threadName = readSymbol();
+      String message = readString();
+      String ndc = null;
+      if ((flags & BinaryEventEncoder.HAS_NDC) != 0) {
+        ndc = readString();
+      }
+      Hashtable mdc = null;
+      if ((flags & BinaryEventEncoder.HAS_MDC) != 0) {
+        int size = readVarInt();
+        mdc = new Hashtable(Math.max(size * 2, 11));
+        for (int i = 0; i < size; i++) {
+          String key = readSymbol();
+          String value = readString();
+          if (key != null && value != null) {
+            mdc.put(key, value);
+          }
+        }
+      }
+      ThrowableInformation throwable = null;
+      if ((flags & BinaryEventEncoder.HAS_THROWABLE) != 0) {
+        int lines = readVarInt();
+        if (lines < 0 || lines > limit - pos) {
+          throw new StreamCorruptedException("Invalid throwable length.");
+        }
+        String[] rep = new String[lines];
+        for (int i = 0; i < lines; i++) {
+          rep[i] = readString();
+        }
+        throwable = new ThrowableInformation(rep);
+      }
+      LocationInfo location = NO_LOCATION;
+      if ((flags & BinaryEventEncoder.HAS_LOCATION) != 0) {
+        String className = readSymbol();
+        String methodName = readSymbol();
+        String fileName = readSymbol();
+        String lineNumber = readSymbol();
+        location = new LocationInfo(fileName, className, methodName, lineNumber);
+      }
+      if (pos != limit) {
+        throw new StreamCorruptedException("Unexpected bytes after event.");
+      }
+      return new LoggingEvent(null,
+                              loggerName == null ? null
+                                  : repository.getLogger(loggerName),
+                              timeStamp, level, message, threadName,
+                              throwable, ndc, location, mdc);
+    } finally {
+      buf = null;
+    }
+  }
+
+  /**
+   * Reads a byte from a stream.
+   * @param in stream.
+   * @return byte.
+   * @throws IOException if the stream ends or cannot be read.
+   */
+  private static int readByte(final InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  /**
+   * Inverse of the zigzag mapping of the encoder.
+   * @param value encoded value.
+   * @return signed value.
+   */
+  private static int unzigzag(final int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Inverse of the zigzag mapping of the encoder.
+   * @param value encoded value.
+   * @return signed value.
+   */
+  private static long unzigzag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads the next byte of the record.
+   * @return byte.
+   * @throws IOException if the record is exhausted.
+   */
+  private int nextByte() throws IOException {
+    if (pos >= limit) {
+      throw new StreamCorruptedException("Truncated event.");
+    }
+    return buf[pos++] & 0xFF;
+  }
+
+  /**
+   * Reads an unsigned variable length integer.
+   * @return value.
+   * @throws IOException if the record is invalid.
+   */
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = nextByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Invalid variable length integer.");
+  }
+
+  /**
+   * Reads an unsigned variable length long.
+   * @return value.
+   * @throws IOException if the record is invalid.
+   */
+  private long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 70; shift += 7) {
+      int b = nextByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Invalid variable length integer.");
+  }
+
+  /**
+   * Reads a string written by the encoder's writeString.
+   * @return string, may be null.
+   * @throws IOException if the record is invalid.
+   */
+  private String readString() throws IOException {
+    int utfLength = readVarInt() - 1;
+    if (utfLength == -1) {
+      return null;
+    }
+    if (utfLength < 0 || utfLength > limit - pos) {
+      throw new StreamCorruptedException("Invalid string length.");
+    }
+    if (utfLength > chars.length) {
+      chars = new char[Math.max(utfLength, chars.length * 2)];
+    }
+    char[] c = chars;
+    byte[] b = buf;
+    int end = pos + utfLength;
+    int n = 0;
+    int i = pos;
+    while (i < end) {
+      int b0 = b[i++] & 0xFF;
+      if (b0 < 0x80) {
+        c[n++] = (char) b0;
+      } else if ((b0 & 0xE0) == 0xC0 && i < end) {
+        c[n++] = (char) (((b0 & 0x1F) << 6) | (b[i++] & 0x3F));
+      } else if ((b0 & 0xF0) == 0xE0 && i + 1 < end) {
+        c[n++] = (char) (((b0 & 0x0F) << 12) | ((b[i] & 0x3F) << 6)
+                         | (b[i + 1] & 0x3F));
+        i += 2;
+      } else {
+        throw new StreamCorruptedException("Invalid string encoding.");
+      }
+    }
+    pos = end;
+    return new String(c, 0, n);
+  }
+
+  /**
+   * Reads a string written through the string table.
+   * @return string, may be null.
+   * @throws IOException if the record is invalid.
+   */
+  private String readSymbol() throws IOException {
+    int code = readVarInt();
+    switch (code) {
+    case BinaryEventEncoder.SYMBOL_NULL:
+      return null;
+    case BinaryEventEncoder.SYMBOL_NEW:
+      // the encoder never defines more, a peer must not grow the table
+      if (symbols.size() >= BinaryEventEncoder.MAX_SYMBOLS) {
+        throw new StreamCorruptedException("Too many strings.");
+      }
+      String s = readString();
+      symbols.add(s);
+      return s;
+    case BinaryEventEncoder.SYMBOL_LITERAL:
+      return readString();
+    default:
+      int index = code - BinaryEventEncoder.SYMBOL_REF;
+      if (index < 0 || index >= symbols.size()) {
+        throw new StreamCorruptedException("Unknown string " + index + ".");
+      }
+      return (String) symbols.get(index);
+    }
+  }
+
+  /**
+   * Converts a level of a custom class, using the toLevel(int) method
+   * of the class as serialization does.
+   * @param className level class name.
+   * @param levelInt level value.
+   * @return level, a standard one if the class cannot be used.
+   */
+  private Level toLevel(final String className, final int levelInt) {
+    try {
+      Method m = (Method) levelMethods.get(className);
+      if (m == null) {
+        Class clazz = Loader.loadClass(className);
+        m = clazz.getDeclaredMethod("toLevel", TO_LEVEL_PARAMS);
+        levelMethods.put(className, m);
+      }
+      return (Level) m.invoke(null, new Object[] {new Integer(levelInt)});
+    } catch (Exception e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      LogLog.warn("Level decoding failed, reverting to default.", e);
+      return Level.toLevel(levelInt);
+    }
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   Encodes {@link LoggingEvent} objects in the log4j binary event
+   format, an alternative to Java serialization for sending events
+   over a socket.
+
+   <p>A stream starts with a header made of the four bytes of {@link
+   #MAGIC} and the {@link #VERSION} byte. Each event follows as a
+   record: its length as a variable length integer, then its body.
+   The body holds the level, logger name, time stamp, thread name,
+   rendered message and, when present, the NDC, MDC, throwable
+   representation and location information. The time stamp is sent
+   as the difference with the previous event.
+
+   <p>Logger names, thread names, MDC keys and location fields are
+   sent in full the first time they occur and as a small index into a
+   table of previous strings afterwards. The table is bounded; when it
+   fills up it is cleared and the next record tells the decoder to
+   clear its own. {@link #resetContext} also forgets the previous time
+   stamp, which allows the records that follow to be read by a decoder
+   that did not see the previous ones.
+
+   <p>Records are accumulated in an internal buffer by {@link #encode}
+   and written out by {@link #writeTo}, so several events can be sent
+   in a single write.
+
+   <p>MDC values are sent as strings. This class is not thread-safe.
+
+   @see BinaryEventDecoder
+   @since 1.2.18 */
+public final class BinaryEventEncoder {
+  /**
+   * First four bytes of a binary event stream, "L4JB". A serialized
+   * object stream starts with 0xACED instead.
+   */
+  public static final int MAGIC = 0x4C344A42;
+
+  /**
+   * Version of the format written by this class.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Length of the stream header.
+   */
+  static final int HEADER_LENGTH = 5;
+
+  /**
+   * Record flag: the decoder clears its string table and previous
+   * time stamp before reading the record.
+   */
+  static final int RESET_CONTEXT = 0x01;
+
+  /**
+   * Record flag: an NDC follows.
+   */
+  static final int HAS_NDC = 0x02;
+
+  /**
+   * Record flag: MDC entries follow.
+   */
+  static final int HAS_MDC = 0x04;
+
+  /**
+   * Record flag: a throwable representation follows.
+   */
+  static final int HAS_THROWABLE = 0x08;
+
+  /**
+   * Record flag: location information follows.
+   */
+  static final int HAS_LOCATION = 0x10;
+
+  /**
+   * Record flag: the level is not a {@link Level} and its class name
+   * follows.
+   */
+  static final int CUSTOM_LEVEL = 0x20;
+
+  /**
+   * Symbol code of a null string.
+   */
+  static final int SYMBOL_NULL = 0;
+
+  /**
+   * Symbol code of a string sent in full and added to the table.
+   */
+  static final int SYMBOL_NEW = 1;
+
+  /**
+   * Symbol code of a string sent in full and not added to the table.
+   */
+  static final int SYMBOL_LITERAL = 2;
+
+  /**
+   * Symbol code of the first table entry.
+   */
+  static final int SYMBOL_REF = 3;
+
+  /**
+   * Maximum number of strings in the table.
+   */
+  static final int MAX_SYMBOLS = 4096;
+
+  /**
+   * Maximum number of bytes a record may hold.
+   */
+  static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Strings sent so far, mapped to their index.
+   */
+  private final Map symbols = new HashMap();
+
+  /**
+   * True if the next record must carry RESET_CONTEXT.
+   */
+  private boolean contextReset;
+
+  /**
+   * True if the last record encoded carries RESET_CONTEXT.
+   */
+  private boolean contextStart;
+
+  /**
+   * Time stamp of the previous event.
+   */
+  private long lastTimeStamp;
+
+  /**
+   * Encoded records.
+   */
+  private byte[] buf = new byte[512];
+
+  /**
+   * Number of bytes in buf.
+   */
+  private int count;
+
+  /**
+   * Creates a new encoder.
+   */
+  public BinaryEventEncoder() {
+  }
+
+  /**
+   * Writes the stream header.
+   * @param out stream, may not be null.
+   * @throws IOException if the header cannot be written.
+   */
+  public static void writeHeader(final OutputStream out) throws IOException {
+    out.write(new byte[] {
+      (byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16),
+      (byte) (MAGIC >>> 8), (byte) MAGIC, (byte) VERSION });
+  }
+
+  /**
+   * Clears the string table and previous time stamp. The next record
+   * is readable by a decoder that has not read the previous ones,
+   * provided it has read the stream header.
+   */
+  public void resetContext() {
+    symbols.clear();
+    lastTimeStamp = 0;
+    contextReset = true;
+  }
+
+  /**
+   * Appends the record of an event to the buffer.
+   * @param event event, may not be null.
+   */
+  public void encode(final LoggingEvent event) {
+    if (symbols.size() >= MAX_SYMBOLS) {
+      resetContext();
+    }
+    String ndc = event.getNDC();
+    Map mdc = event.getProperties();
+    String[] throwable = event.getThrowableStrRep();
+    LocationInfo location = null;
+    if (event.locationInformationExists()) {
+      location = event.getLocationInformation();
+    }
+    Level level = event.getLevel();
+
+    int flags = 0;
+    if (contextReset) {
+      flags |= RESET_CONTEXT;
+      contextReset = false;
+    }
+    contextStart = (flags & RESET_CONTEXT) != 0;
+    if (ndc != null) {
+      flags |= HAS_NDC;
+    }
+    if (!mdc.isEmpty()) {
+      flags |= HAS_MDC;
+    }
+    if (throwable != null) {
+      flags |= HAS_THROWABLE;
+    }
+    if (location != null) {
+      flags |= HAS_LOCATION;
+    }
+    if (level.getClass() != Level.class) {
+      flags |= CUSTOM_LEVEL;
+    }
+
+    // reserve room for the length, written once the body is known
+    int start = count;
+    ensure(5);
+    count += 5;
+
+    writeByte(flags);
+    long timeStamp = event.getTimeStamp();
+    writeVarLong(zigzag(timeStamp - lastTimeStamp));
+    lastTimeStamp = timeStamp;
+    writeVarInt(zigzag(level.toInt()));
+    if ((flags & CUSTOM_LEVEL) != 0) {
+      writeSymbol(level.getClass().getName());
+    }
+    writeSymbol(event.getLoggerName());
+    writeSymbol(event.getThreadName());
+    writeString(event.getRenderedMessage());
+    if (ndc != null) {
+      writeString(ndc);
+    }
+    if (!mdc.isEmpty()) {
+      writeVarInt(mdc.size());
+      for (Iterator i = mdc.entrySet().iterator(); i.hasNext();) {
+        Map.Entry entry = (Map.Entry) i.next();
+        writeSymbol(String.valueOf(entry.getKey()));
+        Object value = entry.getValue();
+        writeString(value == null ? null : value.toString());
+      }
+    }
+    if (throwable != null) {
+      writeVarInt(throwable.length);
+      for (int i = 0; i < throwable.length; i++) {
+        writeString(throwable[i]);
+      }
+    }
+    if (location != null) {
+      writeSymbol(location.getClassName());
+      writeSymbol(location.getMethodName());
+      writeSymbol(location.getFileName());
+      writeSymbol(location.getLineNumber());
+    }
+
+    // move the body next to the actual length
+    int bodyStart = start + 5;
+    int bodyLength = count - bodyStart;
+    count = start;
+    writeVarInt(bodyLength);
+    if (count != bodyStart) {
+      System.arraycopy(buf, bodyStart, buf, count, bodyLength);
+    }
+    count += bodyLength;
+  }
+
+  /**
+   * Determines whether the last record encoded starts a new context,
+   * in which case a decoder may start reading at it.
+   * @return true if the last record carries RESET_CONTEXT.
+   */
+  boolean isContextStart() {
+    return contextStart;
+  }
+
+  /**
+   * Returns the number of encoded bytes waiting in the buffer.
+   * @return byte count.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns a copy of the encoded bytes.
+   * @return encoded records.
+   */
+  public byte[] toByteArray() {
+    byte[] copy = new byte[count];
+    System.arraycopy(buf, 0, copy, 0, count);
+    return copy;
+  }
+
+  /**
+   * Writes the encoded bytes to a stream. The buffer is not cleared.
+   * @param out stream, may not be null.
+   * @throws IOException if the bytes cannot be written.
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+    out.write(buf, 0, count);
+  }
+
+  /**
+   * Discards the encoded bytes. The string table is kept.
+   */
+  public void reset() {
+    count = 0;
+  }
+
+  /**
+   * Maps a signed value to an unsigned one so that small negative
+   * values have short encodings.
+   * @param value value.
+   * @return zigzag encoding of value.
+   */
+  private static int zigzag(final int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * Maps a signed value to an unsigned one so that small negative
+   * values have short encodings.
+   * @param value value.
+   * @return zigzag encoding of value.
+   */
+  private static long zigzag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /**
+   * Grows the buffer if it cannot hold <code>n</code> more bytes.
+   * @param n number of bytes about to be written.
+   */
+  private void ensure(final int n) {
+    if (count + n > buf.length) {
+      byte[] bigger = new byte[Math.max(buf.length * 2, count + n)];
+      System.arraycopy(buf, 0, bigger, 0, count);
+      buf = bigger;
+    }
+  }
+
+  /**
+   * Writes a byte.
+   * @param b byte.
+   */
+  private void writeByte(final int b) {
+    ensure(1);
+    buf[count++] = (byte) b;
+  }
+
+  /**
+   * Writes an unsigned variable length integer, seven bits per byte.
+   * @param value value, treated as unsigned.
+   */
+  private void writeVarInt(final int value) {
+    ensure(5);
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      buf[count++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[count++] = (byte) v;
+  }
+
+  /**
+   * Writes an unsigned variable length long, seven bits per byte.
+   * @param value value, treated as unsigned.
+   */
+  private void writeVarLong(final long value) {
+    ensure(10);
+    long v = value;
+    while ((v & ~0x7FL) != 0) {
+      buf[count++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[count++] = (byte) v;
+  }
+
+  /**
+   * Writes a string as its length plus one, zero for null, followed
+   * by its characters in the modified UTF-8 of
+   * {@link java.io.DataOutput#writeUTF}.
+   * @param s string, may be null.
+   */
+  private void writeString(final String s) {
+    if (s == null) {
+      writeVarInt(0);
+      return;
+    }
+    int len = s.length();
+    int utfLength = 0;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        utfLength++;
+      } else if (c <= 0x07FF) {
+        utfLength += 2;
+      } else {
+        utfLength += 3;
+      }
+    }
+    writeVarInt(utfLength + 1);
+    ensure(utfLength);
+    byte[] b = buf;
+    int n = count;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        b[n++] = (byte) c;
+      } else if (c <= 0x07FF) {
+        b[n++] = (byte) (0xC0 | (c >> 6));
+        b[n++] = (byte) (0x80 | (c & 0x3F));
+      } else {
+        b[n++] = (byte) (0xE0 | (c >> 12));
+        b[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        b[n++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+    count = n;
+  }
+
+  /**
+   * Writes a string through the string table.
+   * @param s string, may be null.
+   */
+  private void writeSymbol(final String s) {
+    if (s == null) {
+      writeVarInt(SYMBOL_NULL);
+      return;
+    }
+    Integer index = (Integer) symbols.get(s);
+    if (index != null) {
+      writeVarInt(SYMBOL_REF + index.intValue());
+    } else if (symbols.size() < MAX_SYMBOLS) {
+      symbols.put(s, new Integer(symbols.size()));
+      writeVarInt(SYMBOL_NEW);
+      writeString(s);
+    } else {
+      writeVarInt(SYMBOL_LITERAL);
+      writeString(s);
+    }
+  }
+}
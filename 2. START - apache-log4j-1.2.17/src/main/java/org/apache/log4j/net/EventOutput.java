@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   Writes events to a socket stream with the codec chosen by the
+   <b>Codec</b> option of the socket appenders.
+
+   <p>Events added with {@link #add} are buffered and sent together
+   by {@link #flush}, so a batch of events costs a single socket
+   write when it fits in the buffer.
+
+   @since 1.2.18 */
+abstract class EventOutput {
+  /**
+   * Events are sent as serialized objects.
+   */
+  static final int SERIALIZED = 0;
+
+  /**
+   * Events are sent in the binary event format.
+   */
+  static final int BINARY = 1;
+
+  /**
+   * Size of the buffer between the encoder and the socket.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Converts the value of a codec option to a constant.
+   * Recognized values are "serialized" and "binary", ignoring case.
+   * @param value option value, may be null.
+   * @param defaultValue value returned if <code>value</code>
+   * is not recognized.
+   * @return SERIALIZED or BINARY.
+   */
+  static int toCodec(final String value, final int defaultValue) {
+    if ("serialized".equalsIgnoreCase(value)) {
+      return SERIALIZED;
+    }
+    if ("binary".equalsIgnoreCase(value)) {
+      return BINARY;
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Returns the name of a codec as accepted by toCodec.
+   * @param codec SERIALIZED or BINARY.
+   * @return codec name.
+   */
+  static String getCodecName(final int codec) {
+    return codec == BINARY ? "binary" : "serialized";
+  }
+
+  /**
+   * Starts a stream, writing its header.
+   * @param out socket stream.
+   * @param codec SERIALIZED or BINARY.
+   * @return event output.
+   * @throws IOException if the header cannot be written.
+   */
+  static EventOutput create(final OutputStream out,
+                            final int codec) throws IOException {
+    OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+    if (codec == BINARY) {
+      return new Binary(buffered);
+    }
+    return new Serialized(buffered);
+  }
+
+  /**
+   * Writes and flushes an event.
+   * @param event event.
+   * @throws IOException if the event cannot be written.
+   */
+  final void write(final LoggingEvent event) throws IOException {
+    add(event);
+    flush();
+  }
+
+  /**
+   * Adds an event to the current batch.
+   * @param event event.
+   * @throws IOException if the event cannot be written.
+   */
+  abstract void add(LoggingEvent event) throws IOException;
+
+  /**
+   * Sends the current batch.
+   * @throws IOException if the batch cannot be written.
+   */
+  abstract void flush() throws IOException;
+
+  /**
+   * Closes the stream.
+   * @throws IOException if the stream cannot be closed.
+   */
+  abstract void close() throws IOException;
+
+  /**
+   * Writes events with Java serialization.
+   */
+  private static final class Serialized extends EventOutput {
+    /**
+     * Object stream.
+     */
+    private final ObjectOutputStream oos;
+
+    /**
+     * Creates a new instance.
+     * @param out socket stream.
+     * @throws IOException if the stream header cannot be written.
+     */
+    Serialized(final OutputStream out) throws IOException {
+      oos = new ObjectOutputStream(out);
+      oos.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    void add(final LoggingEvent event) throws IOException {
+      oos.writeObject(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    void flush() throws IOException {
+      oos.flush();
+      // Failing to reset the object output stream every now and
+      // then creates a serious memory leak. Resetting once per
+      // batch lets the events of a batch share class descriptors.
+      oos.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    void close() throws IOException {
+      oos.close();
+    }
+  }
+
+  /**
+   * Writes events with a {@link BinaryEventEncoder}.
+   */
+  private static final class Binary extends EventOutput {
+    /**
+     * Socket stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * Encoder.
+     */
+    private final BinaryEventEncoder encoder = new BinaryEventEncoder();
+
+    /**
+     * Creates a new instance.
+     * @param out socket stream.
+     * @throws IOException if the stream header cannot be written.
+     */
+    Binary(final OutputStream out) throws IOException {
+      this.out = out;
+      BinaryEventEncoder.writeHeader(out);
+      out.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    void add(final LoggingEvent event) throws IOException {
+      encoder.encode(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    void flush() throws IOException {
+      try {
+        encoder.writeTo(out);
+      } finally {
+        encoder.reset();
+      }
+      out.flush();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    void close() throws IOException {
+      out.close();
+    }
+  }
+}
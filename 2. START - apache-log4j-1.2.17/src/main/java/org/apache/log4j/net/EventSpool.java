@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   A file holding events that could not be sent, to be read back in
+   the order they were written.
+
+   <p>Events are stored in the format of {@link BinaryEventEncoder}.
+   Writing appends to the file and reading resumes where the previous
+   read stopped, so the two may alternate: when the connection drops
+   while the spool is being replayed, new events are appended after
+   the unread ones. Once every event has been read the file is
+   deleted. A file left by a previous run is read before new events.
+
+   <p>Once the file reaches a maximum size, further events are
+   refused until it has been read back. The size may exceed the
+   maximum by the last event written.
+
+   <p>This class is not thread-safe.
+
+   @since 1.2.18 */
+final class EventSpool {
+  /**
+   * Spool file.
+   */
+  private final File file;
+
+  /**
+   * Maximum file size in bytes.
+   */
+  private final long maxSize;
+
+  /**
+   * Repository providing the loggers of events read back.
+   */
+  private final LoggerRepository repository;
+
+  /**
+   * Encoder used while writing.
+   */
+  private final BinaryEventEncoder encoder = new BinaryEventEncoder();
+
+  /**
+   * Stream appending to the file, null when not writing.
+   */
+  private OutputStream out;
+
+  /**
+   * Current file size while writing.
+   */
+  private long size;
+
+  /**
+   * Stream reading the file, null when not reading.
+   */
+  private InputStream in;
+
+  /**
+   * Decoder of in.
+   */
+  private BinaryEventDecoder decoder;
+
+  /**
+   * Creates a new spool.
+   * @param file spool file.
+   * @param maxSize maximum file size in bytes.
+   * @param repository repository providing the loggers of events
+   * read back.
+   */
+  EventSpool(final File file, final long maxSize,
+             final LoggerRepository repository) {
+    this.file = file;
+    this.maxSize = maxSize;
+    this.repository = repository;
+  }
+
+  /**
+   * Determines whether the spool holds unread events.
+   * @return true if events are waiting to be read.
+   */
+  boolean isEmpty() {
+    return in == null && out == null && !file.exists();
+  }
+
+  /**
+   * Appends events to the file.
+   * @param events events.
+   * @param count number of events to write.
+   * @return number of events written, less than <code>count</code>
+   * if the file is full or cannot be written.
+   */
+  int write(final LoggingEvent[] events, final int count) {
+    int written = 0;
+    try {
+      if (out == null) {
+        openOutput();
+      }
+      while (written < count && size + encoder.size() < maxSize) {
+        encoder.encode(events[written++]);
+      }
+      encoder.writeTo(out);
+      size += encoder.size();
+      encoder.reset();
+      out.flush();
+    } catch (IOException e) {
+      LogLog.error("Could not write to spool file [" + file + "].", e);
+      encoder.reset();
+      closeOutput();
+      return 0;
+    }
+    return written;
+  }
+
+  /**
+   * Reads the next events.
+   * @param batch destination array.
+   * @return number of events read, 0 when the spool is exhausted,
+   * in which case the file has been deleted.
+   */
+  int read(final LoggingEvent[] batch) {
+    closeOutput();
+    int count = 0;
+    try {
+      if (in == null) {
+        if (!file.exists()) {
+          return 0;
+        }
+        in = new BufferedInputStream(new FileInputStream(file));
+        BinaryEventDecoder.readHeader(in);
+        decoder = new BinaryEventDecoder(repository);
+      }
+      while (count < batch.length) {
+        batch[count] = decoder.read(in);
+        count++;
+      }
+    } catch (EOFException e) {
+      // end of the file, or a record cut short by a crash
+      if (count == 0) {
+        discard();
+      }
+    } catch (IOException e) {
+      LogLog.error("Could not read spool file [" + file + "], discarding it.", e);
+      if (count == 0) {
+        discard();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Closes the file, keeping unread events for a later run.
+   */
+  void close() {
+    closeOutput();
+    closeInput();
+  }
+
+  /**
+   * Opens the file for appending. A new file starts with the stream
+   * header; an existing one continues with records that do not depend
+   * on the previous ones.
+   * @throws IOException if the file cannot be opened.
+   */
+  private void openOutput() throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    size = file.length();
+    out = new FileOutputStream(file, true);
+    if (size == 0) {
+      BinaryEventEncoder.writeHeader(out);
+      size = BinaryEventEncoder.HEADER_LENGTH;
+    }
+    encoder.resetContext();
+  }
+
+  /**
+   * Closes the output stream if open.
+   */
+  private void closeOutput() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        LogLog.warn("Could not close spool file [" + file + "].", e);
+      }
+      out = null;
+    }
+  }
+
+  /**
+   * Closes the input stream if open.
+   */
+  private void closeInput() {
+    if (in != null) {
+      try {
+        in.close();
+      } catch (IOException e) {
+        LogLog.warn("Could not close spool file [" + file + "].", e);
+      }
+      in = null;
+      decoder = null;
+    }
+  }
+
+  /**
+   * Closes and deletes the file.
+   */
+  private void discard() {
+    closeInput();
+    if (file.exists() && !file.delete()) {
+      LogLog.warn("Could not delete spool file [" + file + "].");
+    }
+  }
+}
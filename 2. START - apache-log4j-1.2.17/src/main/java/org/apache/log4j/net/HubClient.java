@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.LinkedList;
+
+import org.apache.log4j.helpers.LogLog;
+
+/**
+   A client of {@link SocketHubAppender} with its own bounded queue
+   of encoded events and its own writer thread, so that a slow client
+   does not hold up the application or the other clients.
+
+   <p>What happens to an event that arrives while the client is
+   behind depends on the slow client policy: it is dropped when the
+   queue is full, sampled once the queue is half full, or the client
+   is disconnected when the queue is full.
+
+   @since 1.2.18 */
+final class HubClient implements Runnable {
+  /**
+   * Events that do not fit in the queue are dropped.
+   */
+  static final int DROP = 0;
+
+  /**
+   * Once the queue is half full, one event in the sample rate is
+   * queued, the others are dropped.
+   */
+  static final int SAMPLE = 1;
+
+  /**
+   * A client whose queue is full is disconnected.
+   */
+  static final int DISCONNECT = 2;
+
+  /**
+   * Size of the buffer between the queue and the socket.
+   */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Converts the value of a policy option to a constant. Recognized
+   * values are "drop", "sample" and "disconnect", ignoring case.
+   * @param value option value, may be null.
+   * @param defaultValue value returned if <code>value</code> is not
+   * recognized.
+   * @return DROP, SAMPLE or DISCONNECT.
+   */
+  static int toPolicy(final String value, final int defaultValue) {
+    if ("drop".equalsIgnoreCase(value)) {
+      return DROP;
+    }
+    if ("sample".equalsIgnoreCase(value)) {
+      return SAMPLE;
+    }
+    if ("disconnect".equalsIgnoreCase(value)) {
+      return DISCONNECT;
+    }
+    return defaultValue;
+  }
+
+  /**
+   * Returns the name of a policy as accepted by toPolicy.
+   * @param policy DROP, SAMPLE or DISCONNECT.
+   * @return policy name.
+   */
+  static String getPolicyName(final int policy) {
+    if (policy == SAMPLE) {
+      return "sample";
+    }
+    if (policy == DISCONNECT) {
+      return "disconnect";
+    }
+    return "drop";
+  }
+
+  /**
+   * Client socket.
+   */
+  private final Socket socket;
+
+  /**
+   * Codec of the stream.
+   */
+  private final int codec;
+
+  /**
+   * Maximum number of queued events.
+   */
+  private final int capacity;
+
+  /**
+   * Slow client policy.
+   */
+  private final int policy;
+
+  /**
+   * Sample rate of the SAMPLE policy.
+   */
+  private final int sampleRate;
+
+  /**
+   * Encoded events waiting to be written, guarded by this.
+   */
+  private final LinkedList queue = new LinkedList();
+
+  /**
+   * Stream header and buffered events, written before the queue.
+   */
+  private byte[] preamble;
+
+  /**
+   * True until the client receives a context start, guarded by this.
+   */
+  private boolean needsContextStart = true;
+
+  /**
+   * Set by the writer when it empties the queue of a client waiting
+   * for a context start, cleared once one is queued.
+   */
+  private volatile boolean contextStartWanted;
+
+  /**
+   * Events seen by the SAMPLE policy, guarded by this.
+   */
+  private int sampleCount;
+
+  /**
+   * Set when the writer must stop once the queue is written,
+   * guarded by this.
+   */
+  private boolean closing;
+
+  /**
+   * Set once the writer has stopped.
+   */
+  private volatile boolean closed;
+
+  /**
+   * Writer thread.
+   */
+  private Thread thread;
+
+  /**
+   * Creates a new client.
+   * @param socket client socket.
+   * @param codec codec of the stream.
+   * @param preamble bytes written before any queued event.
+   * @param capacity maximum number of queued events.
+   * @param policy slow client policy.
+   * @param sampleRate sample rate of the SAMPLE policy.
+   */
+  HubClient(final Socket socket, final int codec, final byte[] preamble,
+            final int capacity, final int policy, final int sampleRate) {
+    this.socket = socket;
+    this.codec = codec;
+    this.preamble = preamble;
+    this.capacity = capacity;
+    this.policy = policy;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Returns the codec of the stream.
+   * @return EventOutput.SERIALIZED or EventOutput.BINARY.
+   */
+  int getCodec() {
+    return codec;
+  }
+
+  /**
+   * Determines whether the writer has stopped.
+   * @return true if the client no longer receives events.
+   */
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Determines whether the client waits for a context start and has
+   * room for it, in which case the next event should be one.
+   * @return true if the client would resume at a context start.
+   */
+  boolean wantsContextStart() {
+    return contextStartWanted;
+  }
+
+  /**
+   * Starts the writer thread.
+   */
+  void start() {
+    thread = new Thread(this, "SocketHubAppender-Client-"
+                        + socket.getInetAddress().getHostAddress());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Queues an encoded event.
+   * @param bytes encoded event, shared with other clients.
+   * @param contextStart true if the client may start reading at
+   * this event.
+   * @return false if the event was not queued, in which case the
+   * client waits for the next context start. See
+   * {@link #wantsContextStart}.
+   */
+  synchronized boolean offer(final byte[] bytes, final boolean contextStart) {
+    if (closing) {
+      return false;
+    }
+    if (needsContextStart && !contextStart) {
+      return false;
+    }
+    int size = queue.size();
+    if (size >= capacity) {
+      if (policy == DISCONNECT) {
+        LogLog.warn("Disconnecting slow client " + socket.getInetAddress());
+        abort();
+      }
+      needsContextStart = true;
+      return false;
+    }
+    if (policy == SAMPLE && size >= capacity / 2
+        && ++sampleCount % sampleRate != 0) {
+      needsContextStart = true;
+      return false;
+    }
+    needsContextStart = false;
+    contextStartWanted = false;
+    queue.addLast(bytes);
+    if (size == 0) {
+      notifyAll();
+    }
+    return true;
+  }
+
+  /**
+   * Stops the writer once the queued events are written.
+   */
+  synchronized void close() {
+    closing = true;
+    notifyAll();
+  }
+
+  /**
+   * Waits for the writer to stop, then drops the connection if it
+   * has not.
+   * @param timeout maximum time to wait in milliseconds.
+   */
+  void awaitClose(final long timeout) {
+    try {
+      thread.join(Math.max(1, timeout));
+      if (thread.isAlive()) {
+        synchronized (this) {
+          abort();
+        }
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Discards the queue and closes the socket, interrupting a blocked
+   * write. Must be called while holding the lock.
+   */
+  private void abort() {
+    closing = true;
+    queue.clear();
+    notifyAll();
+    closeSocket();
+  }
+
+  /**
+   * Closes the socket.
+   */
+  private void closeSocket() {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      LogLog.debug("could not close client socket.", e);
+    }
+  }
+
+  /**
+   * Writes the queued events until closed.
+   */
+  public void run() {
+    try {
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream(),
+                                                  BUFFER_SIZE);
+      out.write(preamble);
+      preamble = null;
+      out.flush();
+      while (true) {
+        Object[] batch;
+        synchronized (this) {
+          while (queue.isEmpty() && !closing) {
+            wait();
+          }
+          if (queue.isEmpty()) {
+            break;
+          }
+          batch = queue.toArray();
+          queue.clear();
+          // a client that missed events resumes at the next context start
+          contextStartWanted = needsContextStart;
+        }
+        for (int i = 0; i < batch.length; i++) {
+          out.write((byte[]) batch[i]);
+        }
+        out.flush();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      LogLog.debug("dropped connection to " + socket.getInetAddress(), e);
+    } finally {
+      synchronized (this) {
+        closing = true;
+        queue.clear();
+      }
+      closeSocket();
+      closed = true;
+    }
+  }
+}
@@ -49,6 +49,8 @@ import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Properties;
 
 /**
@@ -74,6 +76,16 @@ import java.util.Properties;
 
    Since 1.2.16, SMTP over SSL is supported by setting SMTPProtocol to "smpts".
 
+   <p>Since 1.2.18, setting the <b>Asynchronous</b> option sends the
+   e-mails from a background thread, so that the logging thread does
+   not wait for the mail server. Triggering events that occur while a
+   message is waiting to be sent, or within <b>CoalesceWindow</b>
+   milliseconds of the first one, are sent together in a single
+   message. The <b>RateLimitInterval</b> option limits the messages
+   triggered by events with the same signature, by default the same
+   logger, level and exception or message, to one per interval; the
+   events are kept in the buffer and sent with the next message.
+
    @author Ceki G&uuml;lc&uuml;
    @since 1.0 */
 public class SMTPAppender extends AppenderSkeleton
@@ -102,6 +114,32 @@ public class SMTPAppender extends AppenderSkeleton
   private int bufferSize = 512;
   private boolean locationInfo = false;
   private boolean sendOnClose = false;
+  private boolean asynchronous = false;
+  private long coalesceWindow = 0;
+  private long rateLimitInterval = 0;
+
+  /**
+   * Maximum number of signatures remembered by the rate limit.
+   */
+  private static final int MAX_SIGNATURES = 1000;
+
+  /**
+   * Time the last message was triggered for each signature, guarded
+   * by this.
+   */
+  private final HashMap lastTriggered = new HashMap();
+
+  /**
+   * Number of triggering events that did not trigger a message
+   * because of the rate limit.
+   */
+  private volatile int suppressedCount;
+
+  /**
+   * Background sending thread, null unless the appender is
+   * asynchronous.
+   */
+  private Sender sender;
 
   protected CyclicBuffer cb = new CyclicBuffer(bufferSize);
   protected Message msg;
@@ -153,6 +191,11 @@ public class SMTPAppender extends AppenderSkeleton
      if (evaluator instanceof OptionHandler) {
          ((OptionHandler) evaluator).activateOptions();
      }
+
+     if (asynchronous && sender == null) {
+         sender = new Sender();
+         sender.start();
+     }
   }
   
   /**
@@ -252,9 +295,71 @@ public class SMTPAppender extends AppenderSkeleton
     event.getRenderedMessage();
     event.getThrowableStrRep();
     cb.add(event);
-    if(evaluator.isTriggeringEvent(event)) {
-      sendBuffer();
+    if(evaluator.isTriggeringEvent(event) && !isRateLimited(event)) {
+      if(sender != null) {
+        sender.trigger();
+      } else {
+        sendBuffer();
+      }
+    }
+  }
+
+  /**
+     Determines whether a triggering event must not trigger a message
+     because a message was triggered for the same signature less than
+     <b>RateLimitInterval</b> milliseconds ago.
+   */
+  private
+  boolean isRateLimited(LoggingEvent event) {
+    if(rateLimitInterval <= 0) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    String signature = getSignature(event);
+    Long last = (Long) lastTriggered.get(signature);
+    if(last != null && now - last.longValue() < rateLimitInterval) {
+      suppressedCount++;
+      return true;
+    }
+    if(lastTriggered.size() >= MAX_SIGNATURES) {
+      for(Iterator iter = lastTriggered.values().iterator(); iter.hasNext();) {
+        if(now - ((Long) iter.next()).longValue() >= rateLimitInterval) {
+          iter.remove();
+        }
+      }
+      if(lastTriggered.size() >= MAX_SIGNATURES) {
+        lastTriggered.clear();
+      }
+    }
+    lastTriggered.put(signature, new Long(now));
+    return false;
+  }
+
+  /**
+   * Returns the signature used by the rate limit to recognize
+   * repetitions of a triggering event. The default signature is made
+   * of the logger name, the level and either the exception class with
+   * the frame that threw it or, without exception, the message.
+   * @param event triggering event.
+   * @return signature, may not be null.
+   * @since 1.2.18
+   */
+  protected String getSignature(final LoggingEvent event) {
+    StringBuffer buf = new StringBuffer(event.getLoggerName());
+    buf.append(' ');
+    buf.append(event.getLevel());
+    buf.append(' ');
+    String[] s = event.getThrowableStrRep();
+    if (s != null && s.length > 0) {
+      int colon = s[0].indexOf(':');
+      buf.append(colon < 0 ? s[0] : s[0].substring(0, colon));
+      if (s.length > 1) {
+        buf.append(s[1]);
+      }
+    } else {
+      buf.append(event.getRenderedMessage());
     }
+    return buf.toString();
   }
 
  /**
@@ -285,12 +390,25 @@ public class SMTPAppender extends AppenderSkeleton
   }
 
 
-  synchronized
+  /**
+     Closes the appender. An asynchronous appender first sends the
+     pending message, and the remaining events if <b>SendOnClose</b>
+     is set.
+   */
   public
   void close() {
-    this.closed = true;
-    if (sendOnClose && cb.length() > 0) {
+    Sender s;
+    synchronized(this) {
+      this.closed = true;
+      s = sender;
+      sender = null;
+      if (s == null && sendOnClose && cb.length() > 0) {
         sendBuffer();
+      }
+    }
+    // the sender needs the monitor of this appender to take the events
+    if (s != null) {
+      s.close();
     }
   }
 
@@ -340,14 +458,39 @@ public class SMTPAppender extends AppenderSkeleton
 	  // Note: this code already owns the monitor for this
 	  // appender. This frees us from needing to synchronize on 'cb'.
 	  
+      return formatBody(removeEvents());
+  }
+
+  /**
+   * Removes the events from the cyclic buffer. The caller must own
+   * the monitor for this appender.
+   * @return events, oldest first.
+   */
+  private LoggingEvent[] removeEvents() {
+      LoggingEvent[] events = new LoggingEvent[cb.length()];
+      for(int i = 0; i < events.length; i++) {
+        events[i] = cb.get();
+      }
+      return events;
+  }
+
+  /**
+   * Layout body of email message from events removed from the
+   * buffer. Asynchronous appenders call this method from the sending
+   * thread, without owning the monitor for this appender, see
+   * {@link #formatPendingBody}.
+   * @param events events, oldest first.
+   * @return body.
+   * @since 1.2.18
+   */
+  protected String formatBody(final LoggingEvent[] events) {
       StringBuffer sbuf = new StringBuffer();
       String t = layout.getHeader();
       if(t != null)
 	sbuf.append(t);
-      int len =  cb.length();
-      for(int i = 0; i < len; i++) {
+      for(int i = 0; i < events.length; i++) {
 	//sbuf.append(MimeUtility.encodeText(layout.format(cb.get())));
-	LoggingEvent event = cb.get();
+	LoggingEvent event = events[i];
 	sbuf.append(layout.format(event));
 	if(layout.ignoresThrowable()) {
 	  String[] s = event.getThrowableStrRep();
@@ -367,14 +510,72 @@ public class SMTPAppender extends AppenderSkeleton
       return sbuf.toString();
   }
   
+  /**
+   * Layout body of email message for an asynchronous appender. Called
+   * from the sending thread without owning the monitor for this
+   * appender.
+   *
+   * <p>By default the events are removed from the buffer while owning
+   * the monitor and passed to {@link #formatBody(LoggingEvent[])}
+   * without it, so that logging threads do not wait for the layout.
+   * If a subclass overrides {@link #formatBody()}, that method is
+   * called instead while owning the monitor, as for a synchronous
+   * appender.
+   *
+   * @return body, or null if the buffer is empty.
+   * @since 1.2.18
+   */
+  protected String formatPendingBody() {
+      LoggingEvent[] events;
+      synchronized(this) {
+        if(cb.length() == 0) {
+          return null;
+        }
+        if(overridesFormatBody()) {
+          return formatBody();
+        }
+        events = removeEvents();
+      }
+      return formatBody(events);
+  }
+
+  /**
+   * Returns true if the class of this appender overrides
+   * {@link #formatBody()}.
+   */
+  private boolean overridesFormatBody() {
+      for(Class c = getClass(); c != SMTPAppender.class; c = c.getSuperclass()) {
+        try {
+          c.getDeclaredMethod("formatBody", new Class[0]);
+          return true;
+        } catch(NoSuchMethodException e) {
+          // look in the superclass
+        } catch(SecurityException e) {
+          return true;
+        }
+      }
+      return false;
+  }
+
   /**
      Send the contents of the cyclic buffer as an e-mail message.
    */
   protected
   void sendBuffer() {
+    try {
+      sendBody(formatBody());
+    } catch(RuntimeException e) {
+      LogLog.error("Error occured while sending e-mail notification.", e);
+    }
+  }
+
+  /**
+     Send an e-mail message with the given body.
+   */
+  private
+  void sendBody(String s) {
 
     try {
-      String s = formatBody();
       boolean allAscii = true;
       for(int i = 0; i < s.length() && allAscii; i++) {
           allAscii = s.charAt(i) <= 0x7F;
@@ -410,10 +611,13 @@ public class SMTPAppender extends AppenderSkeleton
 
       Multipart mp = new MimeMultipart();
       mp.addBodyPart(part);
-      msg.setContent(mp);
+      // a subclass may send the buffer while the sender sends
+      synchronized(msg) {
+        msg.setContent(mp);
 
-      msg.setSentDate(new Date());
-      Transport.send(msg);
+        msg.setSentDate(new Date());
+        Transport.send(msg);
+      }
     } catch(MessagingException e) {
       LogLog.error("Error occured while sending e-mail notification.", e);
     } catch(RuntimeException e) {
@@ -771,6 +975,173 @@ public class SMTPAppender extends AppenderSkeleton
         sendOnClose = val;
   }
 
+    /**
+     * Get asynchronous.
+     *
+     * @return if true e-mails are sent from a background thread.
+     * @since 1.2.18
+     */
+  public final boolean getAsynchronous() {
+        return asynchronous;
+  }
+
+    /**
+     * Set asynchronous. When true, activateOptions starts a thread
+     * that sends the e-mails, so that logging does not wait for the
+     * mail server. The thread lays out the messages with {@link
+     * #formatPendingBody}, which honours an overridden {@link
+     * #formatBody()}.
+     *
+     * @param val if true e-mails are sent from a background thread.
+     * @since 1.2.18
+     */
+  public final void setAsynchronous(final boolean val) {
+        asynchronous = val;
+  }
+
+    /**
+     * Get coalesce window.
+     *
+     * @return milliseconds an asynchronous appender waits after a
+     * triggering event before sending.
+     * @since 1.2.18
+     */
+  public final long getCoalesceWindow() {
+        return coalesceWindow;
+  }
+
+    /**
+     * Set coalesce window. An asynchronous appender waits this number
+     * of milliseconds after a triggering event before sending, so that
+     * the events triggering during the window are sent in the same
+     * message. The default, 0, sends as soon as possible.
+     *
+     * @param val window in milliseconds.
+     * @since 1.2.18
+     */
+  public final void setCoalesceWindow(final long val) {
+        coalesceWindow = val;
+  }
+
+    /**
+     * Get rate limit interval.
+     *
+     * @return minimum milliseconds between messages triggered by
+     * events with the same signature, 0 if not limited.
+     * @since 1.2.18
+     */
+  public final long getRateLimitInterval() {
+        return rateLimitInterval;
+  }
+
+    /**
+     * Set rate limit interval. A triggering event does not trigger a
+     * message if an event with the same signature did less than this
+     * number of milliseconds ago. The default, 0, does not limit.
+     *
+     * @param val interval in milliseconds.
+     * @since 1.2.18
+     */
+  public final void setRateLimitInterval(final long val) {
+        rateLimitInterval = val;
+  }
+
+    /**
+     * Get the number of triggering events that did not trigger a
+     * message because of the rate limit.
+     *
+     * @return number of suppressed triggering events.
+     * @since 1.2.18
+     */
+  public final int getSuppressedCount() {
+        return suppressedCount;
+  }
+
+  /**
+     Sends the buffered events when triggered, from its own thread.
+   */
+  private final class Sender extends Thread {
+    /**
+       Time of the first pending triggering event, -1 if none,
+       guarded by this.
+     */
+    private long triggeredAt = -1;
+
+    /**
+       Set when the sender must stop, guarded by this.
+     */
+    private boolean closing;
+
+    Sender() {
+      super("SMTPAppender-" + SMTPAppender.this.getName());
+      setDaemon(true);
+    }
+
+    /**
+       Requests a message, unless one is already pending.
+     */
+    synchronized
+    void trigger() {
+      if(triggeredAt < 0) {
+        triggeredAt = System.currentTimeMillis();
+        notifyAll();
+      }
+    }
+
+    /**
+       Sends the pending message without waiting for the coalesce
+       window, then waits for the thread to stop.
+     */
+    void close() {
+      synchronized(this) {
+        closing = true;
+        notifyAll();
+      }
+      try {
+        join();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LogLog.error("Got an InterruptedException while waiting for the "
+                     + "sender to finish.", e);
+      }
+    }
+
+    public
+    void run() {
+      boolean done = false;
+      while(!done) {
+        boolean triggered;
+        synchronized(this) {
+          try {
+            while(triggeredAt < 0 && !closing) {
+              wait();
+            }
+            long delay;
+            while(!closing && (delay = triggeredAt + coalesceWindow
+                               - System.currentTimeMillis()) > 0) {
+              wait(delay);
+            }
+          } catch(InterruptedException e) {
+            closing = true;
+          }
+          done = closing;
+          triggered = triggeredAt >= 0;
+          triggeredAt = -1;
+        }
+        if(triggered || done && sendOnClose) {
+          try {
+            String body = formatPendingBody();
+            if(body != null) {
+              sendBody(body);
+            }
+          } catch(RuntimeException e) {
+            LogLog.error("Error occured while sending e-mail notification.", e);
+          }
+        }
+      }
+    }
+  }
+
 }
 
 class DefaultEvaluator implements TriggeringEventEvaluator {
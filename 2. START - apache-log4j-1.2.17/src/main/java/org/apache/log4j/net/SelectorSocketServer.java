@@ -0,0 +1,857 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Category;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.apache.log4j.helpers.RingBuffer;
+import org.apache.log4j.helpers.WaitStrategy;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.xml.DOMConfigurator;
+
+/**
+   Receives events from {@link SocketAppender} clients with a few
+   selector threads instead of a thread per connection.
+
+   <p>Connections are spread over a fixed number of selector threads
+   which read them without blocking and decode the events of the
+   binary format of {@link BinaryEventEncoder} as soon as a whole
+   record is in the buffer. Decoded events are passed to a fixed
+   number of worker threads which log them to the repository of the
+   connection. All the events of a connection go to the same worker,
+   so they are logged in the order they were sent.
+
+   <p>Each worker has a bounded queue. When the queue of a worker is
+   full, the connections feeding it are no longer read until the
+   worker has caught up with half of its queue, so a slow appender
+   on the server slows down the clients through TCP flow control
+   instead of exhausting memory.
+
+   <p>Java serialization cannot be decoded incrementally. Connections
+   sending serialized events are handed to a {@link SocketNode}
+   running in a thread of its own, as with {@link SimpleSocketServer},
+   and are not closed by {@link #shutdown}. Clients should set the
+   <b>Codec</b> option of their appender to <code>binary</code> to
+   benefit from this server.
+
+   <p>Usage: <code>java org.apache.log4j.net.SelectorSocketServer port
+   configFile [selectorThreads [workerThreads]]</code>
+
+   <p>The {@link #getRepository} method may be overridden to log the
+   events of each client host to a repository of its own, as {@link
+   SocketServer} does.
+
+   @since 1.2.18 */
+public class SelectorSocketServer {
+  /**
+   * Default number of selector threads.
+   */
+  public static final int DEFAULT_SELECTOR_COUNT = 2;
+
+  /**
+   * Default number of events held by the queue of each worker.
+   */
+  public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+  /**
+   * Initial size of the read buffer of a connection.
+   */
+  private static final int BUFFER_SIZE = 16384;
+
+  /**
+   * Maximum number of events a worker takes from its queue at once.
+   */
+  private static final int MAX_BATCH_SIZE = 256;
+
+  /**
+   * The buffer holds no complete record, more bytes must be read.
+   */
+  private static final int READ = 0;
+
+  /**
+   * The queue of the worker is full.
+   */
+  private static final int PAUSED = 1;
+
+  /**
+   * The client sends serialized events.
+   */
+  private static final int HAND_OFF = 2;
+
+  static Logger logger = Logger.getLogger(SelectorSocketServer.class);
+
+  /**
+   * Port to listen to, 0 for any free port.
+   */
+  private final int port;
+
+  /**
+   * Number of selector threads.
+   */
+  private final int selectorCount;
+
+  /**
+   * Number of worker threads.
+   */
+  private final int workerCount;
+
+  /**
+   * Capacity of the queue of each worker.
+   */
+  private final int queueSize;
+
+  /**
+   * Listening channel, null until started.
+   */
+  private ServerSocketChannel serverChannel;
+
+  /**
+   * Thread accepting connections.
+   */
+  private Thread acceptor;
+
+  /**
+   * Selector threads.
+   */
+  private SelectorLoop[] loops;
+
+  /**
+   * Worker threads.
+   */
+  private Worker[] workers;
+
+  /**
+   * False once shutdown has been called.
+   */
+  private volatile boolean running;
+
+  /**
+   * Creates a server with the default number of threads.
+   * @param port port to listen to, 0 for any free port.
+   */
+  public SelectorSocketServer(final int port) {
+    this(port, DEFAULT_SELECTOR_COUNT,
+         Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE);
+  }
+
+  /**
+   * Creates a server.
+   * @param port port to listen to, 0 for any free port.
+   * @param selectorCount number of selector threads.
+   * @param workerCount number of worker threads.
+   * @param queueSize number of events held by the queue of each worker.
+   */
+  public SelectorSocketServer(final int port, final int selectorCount,
+                              final int workerCount, final int queueSize) {
+    if (selectorCount < 1 || workerCount < 1 || queueSize < 1) {
+      throw new IllegalArgumentException(
+        "Thread counts and queue size must be positive.");
+    }
+    this.port = port;
+    this.selectorCount = selectorCount;
+    this.workerCount = workerCount;
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * Starts listening and the threads of the server.
+   * @throws IOException if the port cannot be bound.
+   */
+  public synchronized void start() throws IOException {
+    if (serverChannel != null) {
+      throw new IllegalStateException("Server already started.");
+    }
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress(port));
+    running = true;
+
+    workers = new Worker[workerCount];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Worker(i);
+      workers[i].start();
+    }
+    loops = new SelectorLoop[selectorCount];
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new SelectorLoop(i);
+      loops[i].start();
+    }
+    acceptor = new Thread("SelectorSocketServer-" + getLocalPort()) {
+        public void run() {
+          acceptConnections();
+        }
+      };
+    acceptor.start();
+  }
+
+  /**
+   * Returns the port the server listens to.
+   * @return port, -1 if the server has not been started.
+   */
+  public synchronized int getLocalPort() {
+    if (serverChannel == null) {
+      return -1;
+    }
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /**
+   * Stops accepting connections, closes the connections read by
+   * selector threads and waits for the workers to log the events
+   * already received.
+   */
+  public void shutdown() {
+    synchronized (this) {
+      if (!running) {
+        return;
+      }
+      running = false;
+    }
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      logger.info("Could not close server socket.", e);
+    }
+    join(acceptor);
+    for (int i = 0; i < loops.length; i++) {
+      loops[i].selector.wakeup();
+      join(loops[i]);
+    }
+    for (int i = 0; i < workers.length; i++) {
+      workers[i].stopped = true;
+      workers[i].waitStrategy.signal();
+      join(workers[i]);
+    }
+  }
+
+  /**
+   * Returns the repository receiving the events of a client. Called
+   * from a single thread, once per connection.
+   * @param address address of the client.
+   * @return repository, the default repository unless overridden.
+   */
+  protected LoggerRepository getRepository(final InetAddress address) {
+    return LogManager.getLoggerRepository();
+  }
+
+  /**
+   * Waits for a thread to end.
+   * @param thread thread.
+   */
+  private static void join(final Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Body of the acceptor thread: assigns each new connection to a
+   * selector thread and a worker in turn.
+   */
+  private void acceptConnections() {
+    int next = 0;
+    while (running) {
+      SocketChannel channel;
+      try {
+        channel = serverChannel.accept();
+      } catch (ClosedChannelException e) {
+        break;
+      } catch (IOException e) {
+        logger.error("Could not accept connection.", e);
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        continue;
+      }
+      InetAddress address = channel.socket().getInetAddress();
+      logger.info("Connected to client at " + address);
+      try {
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel,
+                                               getRepository(address),
+                                               workers[next % workers.length]);
+        loops[next % loops.length].add(connection);
+        next = (next + 1) % (loops.length * workers.length);
+      } catch (IOException e) {
+        logger.error("Could not register connection of " + address, e);
+        close(channel);
+      }
+    }
+  }
+
+  /**
+   * Closes a channel.
+   * @param channel channel.
+   */
+  private static void close(final SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.info("Could not close connection.", e);
+    }
+  }
+
+  /**
+   * A client connection and its decoding state.
+   */
+  private static final class Connection {
+    /**
+     * Channel.
+     */
+    final SocketChannel channel;
+
+    /**
+     * Repository receiving the events.
+     */
+    final LoggerRepository repository;
+
+    /**
+     * Worker logging the events.
+     */
+    final Worker worker;
+
+    /**
+     * Selector thread reading the channel, set on registration.
+     */
+    SelectorLoop loop;
+
+    /**
+     * Registration key, set on registration.
+     */
+    SelectionKey key;
+
+    /**
+     * Bytes read and not yet decoded, ready to be filled.
+     */
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * Decoder, null until the stream header has been read.
+     */
+    BinaryEventDecoder decoder;
+
+    /**
+     * Event decoded while the worker queue was full.
+     */
+    LoggingEvent pending;
+
+    /**
+     * Bytes read from a serialized stream before handing it off.
+     */
+    byte[] received;
+
+    /**
+     * Creates a new instance.
+     * @param channel channel.
+     * @param repository repository receiving the events.
+     * @param worker worker logging the events.
+     */
+    Connection(final SocketChannel channel, final LoggerRepository repository,
+               final Worker worker) {
+      this.channel = channel;
+      this.repository = repository;
+      this.worker = worker;
+    }
+
+    /**
+     * Passes the complete records in the buffer to the worker.
+     * @return READ, PAUSED or HAND_OFF.
+     * @throws IOException if a record is invalid.
+     */
+    int dispatch() throws IOException {
+      if (pending != null) {
+        if (!worker.offer(pending)) {
+          return PAUSED;
+        }
+        pending = null;
+      }
+      int required;
+      buffer.flip();
+      try {
+        required = decode();
+      } finally {
+        buffer.compact();
+      }
+      if (required < 0) {
+        return -required;
+      }
+      if (required > buffer.capacity()) {
+        ByteBuffer larger = ByteBuffer.allocate(
+          Math.max(required, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+      }
+      return READ;
+    }
+
+    /**
+     * Decodes the records of the flipped buffer.
+     * @return number of bytes needed to hold the next record, or
+     * minus PAUSED or HAND_OFF.
+     * @throws IOException if a record is invalid.
+     */
+    private int decode() throws IOException {
+      if (decoder == null) {
+        if (buffer.remaining() < 4) {
+          return 0;
+        }
+        if (buffer.getInt(buffer.position()) != BinaryEventEncoder.MAGIC) {
+          received = new byte[buffer.remaining()];
+          buffer.get(received);
+          return -HAND_OFF;
+        }
+        if (buffer.remaining() < BinaryEventEncoder.HEADER_LENGTH) {
+          return 0;
+        }
+        buffer.getInt();
+        int version = buffer.get() & 0xFF;
+        if (version > BinaryEventEncoder.VERSION) {
+          throw new StreamCorruptedException(
+            "Unsupported binary event stream version " + version + ".");
+        }
+        decoder = new BinaryEventDecoder(repository);
+      }
+      while (true) {
+        int start = buffer.position();
+        int length = 0;
+        int shift = 0;
+        boolean complete = false;
+        while (!complete && buffer.hasRemaining()) {
+          if (shift > 28) {
+            throw new StreamCorruptedException("Invalid record length.");
+          }
+          int b = buffer.get();
+          length |= (b & 0x7F) << shift;
+          shift += 7;
+          complete = (b & 0x80) == 0;
+        }
+        if (!complete) {
+          buffer.position(start);
+          return 0;
+        }
+        if (length < 0 || length > BinaryEventEncoder.MAX_RECORD_SIZE) {
+          throw new StreamCorruptedException(
+            "Invalid record length " + length + ".");
+        }
+        if (buffer.remaining() < length) {
+          int required = buffer.position() - start + length;
+          buffer.position(start);
+          return required;
+        }
+        LoggingEvent event = decoder.decode(buffer.array(),
+                                            buffer.arrayOffset()
+                                            + buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        if (!worker.offer(event)) {
+          pending = event;
+          return -PAUSED;
+        }
+      }
+    }
+  }
+
+  /**
+   * A selector thread reading its share of the connections.
+   */
+  private final class SelectorLoop extends Thread {
+    /**
+     * Selector.
+     */
+    final Selector selector;
+
+    /**
+     * Connections to register, guarded by itself.
+     */
+    private final List added = new ArrayList();
+
+    /**
+     * Paused connections whose worker has room again, guarded by itself.
+     */
+    private final List resumed = new ArrayList();
+
+    /**
+     * Connections to hand off once their key has been deregistered.
+     */
+    private final List handedOff = new ArrayList();
+
+    /**
+     * Creates a new instance.
+     * @param index index of the thread.
+     * @throws IOException if the selector cannot be opened.
+     */
+    SelectorLoop(final int index) throws IOException {
+      super("SelectorSocketServer-Selector-" + index);
+      selector = Selector.open();
+    }
+
+    /**
+     * Adds a connection from another thread.
+     * @param connection connection.
+     */
+    void add(final Connection connection) {
+      synchronized (added) {
+        added.add(connection);
+      }
+      selector.wakeup();
+    }
+
+    /**
+     * Resumes reading a paused connection, from another thread.
+     * @param connection connection.
+     */
+    void resumeLater(final Connection connection) {
+      synchronized (resumed) {
+        resumed.add(connection);
+      }
+      selector.wakeup();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+      try {
+        while (running) {
+          if (handedOff.isEmpty()) {
+            selector.select();
+          } else {
+            // deregisters the cancelled keys of handed off channels
+            selector.selectNow();
+            handOff();
+          }
+          register();
+          resumeConnections();
+          Iterator i = selector.selectedKeys().iterator();
+          while (i.hasNext()) {
+            SelectionKey key = (SelectionKey) i.next();
+            i.remove();
+            if (key.isValid() && key.isReadable()) {
+              read((Connection) key.attachment());
+            }
+          }
+        }
+      } catch (IOException e) {
+        logger.error("Selector failed, closing its connections.", e);
+      } finally {
+        Iterator i = selector.keys().iterator();
+        while (i.hasNext()) {
+          close(((Connection) ((SelectionKey) i.next()).attachment()).channel);
+        }
+        synchronized (added) {
+          for (i = added.iterator(); i.hasNext();) {
+            close(((Connection) i.next()).channel);
+          }
+        }
+        for (i = handedOff.iterator(); i.hasNext();) {
+          close(((Connection) i.next()).channel);
+        }
+        try {
+          selector.close();
+        } catch (IOException e) {
+          logger.info("Could not close selector.", e);
+        }
+      }
+    }
+
+    /**
+     * Registers the added connections.
+     */
+    private void register() {
+      Object[] connections;
+      synchronized (added) {
+        connections = added.toArray();
+        added.clear();
+      }
+      for (int i = 0; i < connections.length; i++) {
+        Connection connection = (Connection) connections[i];
+        try {
+          connection.loop = this;
+          connection.key = connection.channel.register(selector,
+                                                       SelectionKey.OP_READ,
+                                                       connection);
+        } catch (ClosedChannelException e) {
+          close(connection.channel);
+        }
+      }
+    }
+
+    /**
+     * Dispatches the events kept by the resumed connections and reads
+     * them again if their worker can take them all.
+     */
+    private void resumeConnections() {
+      Object[] connections;
+      synchronized (resumed) {
+        connections = resumed.toArray();
+        resumed.clear();
+      }
+      for (int i = 0; i < connections.length; i++) {
+        Connection connection = (Connection) connections[i];
+        if (connection.key.isValid()) {
+          try {
+            update(connection, connection.dispatch());
+          } catch (IOException e) {
+            closeConnection(connection, e);
+          }
+        }
+      }
+    }
+
+    /**
+     * Reads a readable connection.
+     * @param connection connection.
+     */
+    private void read(final Connection connection) {
+      try {
+        int n = connection.channel.read(connection.buffer);
+        if (n == -1) {
+          logger.info("Client at " + connection.channel.socket().getInetAddress()
+                      + " closed the connection.");
+          connection.key.cancel();
+          close(connection.channel);
+        } else if (n > 0) {
+          update(connection, connection.dispatch());
+        }
+      } catch (IOException e) {
+        closeConnection(connection, e);
+      }
+    }
+
+    /**
+     * Acts on the outcome of a dispatch.
+     * @param connection connection.
+     * @param status READ, PAUSED or HAND_OFF.
+     */
+    private void update(final Connection connection, final int status) {
+      if (status == READ) {
+        connection.key.interestOps(SelectionKey.OP_READ);
+      } else if (status == PAUSED) {
+        connection.key.interestOps(0);
+        connection.worker.pause(connection);
+      } else {
+        connection.key.cancel();
+        handedOff.add(connection);
+      }
+    }
+
+    /**
+     * Hands the connections sending serialized events to socket
+     * nodes.
+     */
+    private void handOff() {
+      for (int i = 0; i < handedOff.size(); i++) {
+        Connection connection = (Connection) handedOff.get(i);
+        Socket socket = connection.channel.socket();
+        logger.info("Starting new socket node for " + socket.getInetAddress());
+        try {
+          connection.channel.configureBlocking(true);
+          new Thread(new SocketNode(socket,
+                                    new ByteArrayInputStream(connection.received),
+                                    connection.repository),
+                     "SelectorSocketServer-Node-" + socket.getInetAddress()).start();
+        } catch (IOException e) {
+          logger.error("Could not hand off connection.", e);
+          close(connection.channel);
+        }
+      }
+      handedOff.clear();
+    }
+
+    /**
+     * Closes a connection after an error.
+     * @param connection connection.
+     * @param e error.
+     */
+    private void closeConnection(final Connection connection,
+                                 final IOException e) {
+      logger.info("Caught " + e + ", closing connection to "
+                  + connection.channel.socket().getInetAddress());
+      connection.key.cancel();
+      close(connection.channel);
+    }
+  }
+
+  /**
+   * A worker thread logging the events of its connections.
+   */
+  private final class Worker extends Thread {
+    /**
+     * Decoded events.
+     */
+    private final RingBuffer queue = new RingBuffer(queueSize);
+
+    /**
+     * Strategy used while the queue is empty.
+     */
+    final WaitStrategy waitStrategy = WaitStrategy.getDefault();
+
+    /**
+     * Connections no longer read because the queue was full,
+     * guarded by itself.
+     */
+    private final List paused = new ArrayList();
+
+    /**
+     * True if paused is not empty.
+     */
+    private volatile boolean hasPaused;
+
+    /**
+     * Set once no more events will be queued.
+     */
+    volatile boolean stopped;
+
+    /**
+     * Creates a new instance.
+     * @param index index of the thread.
+     */
+    Worker(final int index) {
+      super("SelectorSocketServer-Worker-" + index);
+    }
+
+    /**
+     * Queues an event.
+     * @param event event.
+     * @return false if the queue is full.
+     */
+    boolean offer(final LoggingEvent event) {
+      if (queue.offer(event)) {
+        waitStrategy.signal();
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Records a connection to resume once the queue has room.
+     * @param connection connection.
+     */
+    void pause(final Connection connection) {
+      synchronized (paused) {
+        paused.add(connection);
+        hasPaused = true;
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+      LoggingEvent[] batch = new LoggingEvent[Math.min(queueSize, MAX_BATCH_SIZE)];
+      int attempt = 0;
+      while (true) {
+        int count = queue.drainTo(batch);
+        for (int i = 0; i < count; i++) {
+          log(batch[i]);
+          batch[i] = null;
+        }
+        if (hasPaused && queue.length() <= queue.getMaxSize() / 2) {
+          synchronized (paused) {
+            for (int i = 0; i < paused.size(); i++) {
+              Connection connection = (Connection) paused.get(i);
+              connection.loop.resumeLater(connection);
+            }
+            paused.clear();
+            hasPaused = false;
+          }
+        }
+        if (count > 0) {
+          attempt = 0;
+        } else if (stopped && queue.isEmpty()) {
+          break;
+        } else {
+          try {
+            waitStrategy.idle(attempt++);
+          } catch (InterruptedException e) {
+            break;
+          }
+        }
+      }
+    }
+
+    /**
+     * Logs an event as if it was generated locally.
+     * @param event event.
+     */
+    private void log(final LoggingEvent event) {
+      try {
+        Category remoteLogger = event.getLogger();
+        // apply the logger-level filter
+        if (remoteLogger != null
+            && event.getLevel().isGreaterOrEqual(remoteLogger.getEffectiveLevel())) {
+          remoteLogger.callAppenders(event);
+        }
+      } catch (RuntimeException e) {
+        logger.error("Could not log remote event.", e);
+      }
+    }
+  }
+
+  public
+  static
+  void main(String argv[]) {
+    if(argv.length < 2 || argv.length > 4) {
+      System.err.println("Wrong number of arguments.");
+      System.err.println("Usage: java " + SelectorSocketServer.class.getName()
+                         + " port configFile [selectorThreads [workerThreads]]");
+      System.exit(1);
+    }
+    String configFile = argv[1];
+    if(configFile.endsWith(".xml")) {
+      DOMConfigurator.configure(configFile);
+    } else {
+      PropertyConfigurator.configure(configFile);
+    }
+    try {
+      int port = Integer.parseInt(argv[0]);
+      int selectors = argv.length > 2 ? Integer.parseInt(argv[2])
+                                      : DEFAULT_SELECTOR_COUNT;
+      int workerThreads = argv.length > 3 ? Integer.parseInt(argv[3])
+                                          : Runtime.getRuntime().availableProcessors();
+      logger.info("Listening on port " + port);
+      new SelectorSocketServer(port, selectors, workerThreads,
+                               DEFAULT_QUEUE_SIZE).start();
+    } catch(Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
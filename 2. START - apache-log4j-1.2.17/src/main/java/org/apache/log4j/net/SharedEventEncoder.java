@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+   Encodes each event once into bytes that can be appended to the
+   stream of any client of a given codec.
+
+   <p>Serialized events are followed by a stream reset, so every
+   chunk can be read by an <code>ObjectInputStream</code> that has
+   read the stream header, whatever it read before. Binary records
+   share a string table; a chunk is a <em>context start</em> when it
+   can be read without the previous ones, and {@link #resetContext}
+   makes the next chunk one. A client that missed a chunk must skip
+   chunks until the next context start.
+
+   <p>This class is not thread-safe.
+
+   @since 1.2.18 */
+final class SharedEventEncoder {
+  /**
+   * Binary encoder, null for the serialized codec.
+   */
+  private final BinaryEventEncoder encoder;
+
+  /**
+   * Buffer of oos.
+   */
+  private final ByteArrayOutputStream bytes;
+
+  /**
+   * Object stream, null for the binary codec.
+   */
+  private ObjectOutputStream oos;
+
+  /**
+   * Last event encoded.
+   */
+  private LoggingEvent lastEvent;
+
+  /**
+   * Encoding of lastEvent.
+   */
+  private byte[] lastBytes;
+
+  /**
+   * Creates a new encoder.
+   * @param codec EventOutput.SERIALIZED or EventOutput.BINARY.
+   * @throws IOException if the object stream cannot be created.
+   */
+  SharedEventEncoder(final int codec) throws IOException {
+    if (codec == EventOutput.BINARY) {
+      encoder = new BinaryEventEncoder();
+      encoder.resetContext();
+      bytes = null;
+    } else {
+      encoder = null;
+      bytes = new ByteArrayOutputStream();
+      openObjectStream();
+    }
+  }
+
+  /**
+   * Writes the header of a stream.
+   * @param out stream.
+   * @param codec EventOutput.SERIALIZED or EventOutput.BINARY.
+   * @throws IOException if the header cannot be written.
+   */
+  static void writeHeader(final OutputStream out,
+                          final int codec) throws IOException {
+    if (codec == EventOutput.BINARY) {
+      BinaryEventEncoder.writeHeader(out);
+    } else {
+      new ObjectOutputStream(out).flush();
+    }
+  }
+
+  /**
+   * Makes the next chunk a context start.
+   */
+  void resetContext() {
+    if (encoder != null) {
+      encoder.resetContext();
+    }
+  }
+
+  /**
+   * Encodes an event. Encoding the same event again returns the same
+   * bytes.
+   * @param event event.
+   * @return encoded bytes, not to be modified.
+   * @throws IOException if the event cannot be encoded.
+   */
+  byte[] encode(final LoggingEvent event) throws IOException {
+    if (event != lastEvent) {
+      lastEvent = null;
+      if (encoder != null) {
+        encoder.reset();
+        encoder.encode(event);
+        lastBytes = encoder.toByteArray();
+      } else {
+        bytes.reset();
+        try {
+          oos.writeObject(event);
+          oos.reset();
+          oos.flush();
+        } catch (IOException e) {
+          // the stream may be left in the middle of an object
+          openObjectStream();
+          throw e;
+        }
+        lastBytes = bytes.toByteArray();
+      }
+      lastEvent = event;
+    }
+    return lastBytes;
+  }
+
+  /**
+   * Determines whether the last chunk encoded is a context start.
+   * @return true if a client may start reading at the last chunk.
+   */
+  boolean isContextStart() {
+    return encoder == null || encoder.isContextStart();
+  }
+
+  /**
+   * Creates the object stream, dropping its header.
+   * @throws IOException if the stream cannot be created.
+   */
+  private void openObjectStream() throws IOException {
+    bytes.reset();
+    oos = new ObjectOutputStream(bytes);
+    oos.flush();
+    bytes.reset();
+  }
+}
@@ -30,12 +30,16 @@ import org.apache.log4j.xml.DOMConfigurator;
  *  A simple {@link SocketNode} based server.
  *
    <pre>
-   <b>Usage:</b> java org.apache.log4j.net.SimpleSocketServer port configFile
+   <b>Usage:</b> java org.apache.log4j.net.SimpleSocketServer port configFile [selectorThreads]
 
    where <em>port</em> is a part number where the server listens and
    <em>configFile</em> is a configuration file fed to the {@link
    PropertyConfigurator} or to {@link DOMConfigurator} if an XML file.
    </pre>
+
+   <p>When <em>selectorThreads</em> is given, connections are read by
+   that many threads of a {@link SelectorSocketServer} instead of a
+   thread each.
   *
   * @author  Ceki G&uuml;lc&uuml;
   *
@@ -50,13 +54,21 @@ public class SimpleSocketServer  {
   public
   static
   void main(String argv[]) {
-    if(argv.length == 2) {
+    if(argv.length == 2 || argv.length == 3) {
       init(argv[0], argv[1]);
     } else {
       usage("Wrong number of arguments.");
     }
     
     try {
+      if(argv.length == 3) {
+	cat.info("Listening on port " + port + " with " + argv[2]
+		 + " selector threads.");
+	new SelectorSocketServer(port, Integer.parseInt(argv[2]),
+				 Runtime.getRuntime().availableProcessors(),
+				 SelectorSocketServer.DEFAULT_QUEUE_SIZE).start();
+	return;
+      }
       cat.info("Listening on port " + port);
       ServerSocket serverSocket = new ServerSocket(port);
       while(true) {
@@ -76,7 +88,8 @@ public class SimpleSocketServer  {
   static void  usage(String msg) {
     System.err.println(msg);
     System.err.println(
-      "Usage: java " +SimpleSocketServer.class.getName() + " port configFile");
+      "Usage: java " +SimpleSocketServer.class.getName()
+      + " port configFile [selectorThreads]");
     System.exit(1);
   }
 
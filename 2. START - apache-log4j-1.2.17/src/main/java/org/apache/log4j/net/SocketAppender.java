@@ -19,16 +19,22 @@
 
 package org.apache.log4j.net;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.Socket;
 
 import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.Level;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.OptionConverter;
+import org.apache.log4j.helpers.RingBuffer;
+import org.apache.log4j.helpers.WaitStrategy;
 import org.apache.log4j.spi.ErrorCode;
 import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
 
 /**
     Sends {@link LoggingEvent} objects to a remote a log server,
@@ -45,7 +51,12 @@ import org.apache.log4j.spi.LoggingEvent;
       the client.
 
       <p><li>SocketAppenders do not use a layout. They ship a
-      serialized {@link LoggingEvent} object to the server side.
+      serialized {@link LoggingEvent} object to the server side. If
+      the <b>Codec</b> option is set to <code>binary</code>, events
+      are sent in the more compact format of {@link
+      BinaryEventEncoder} instead. A {@link SocketNode} recognizes
+      either format from the start of the stream, but servers from
+      log4j versions prior to 1.2.18 only accept serialized events.
 
       <p><li>Remote logging uses the TCP protocol. Consequently, if
       the server is reachable, then log events will eventually arrive
@@ -93,6 +104,23 @@ import org.apache.log4j.spi.LoggingEvent;
       calling the {@link org.apache.log4j.LogManager#shutdown} method
       before exiting the application.
 
+      <p><li>If the <b>QueueSize</b> option is set, events are not
+      written by the logging thread but placed in a queue of that
+      size. A sender thread takes them from the queue and writes them
+      in batches of up to <b>BatchSize</b> events, reconnecting
+      itself when the connection is lost. Logging never waits for the
+      network; events arriving while the queue is full are dropped.
+
+      <p>If the <b>SpillFile</b> option is also set, events that
+      cannot be sent because the server is unreachable are written to
+      that file, up to <b>MaxSpillSize</b> bytes, and sent in their
+      original order once the connection is back, before any newer
+      event. Events already taken from the file when the connection
+      drops again are lost.
+
+      <p>{@link #getQueuedCount}, {@link #getSentCount}, {@link
+      #getDroppedCount} and {@link #getSpilledCount} report what
+      happened to the events.
 
      </ul>
 
@@ -112,6 +140,22 @@ public class SocketAppender extends AppenderSkeleton {
   */
   static final int DEFAULT_RECONNECTION_DELAY   = 30000;
 
+  /**
+     The default maximum number of events in a batch (128).
+  */
+  static final int DEFAULT_BATCH_SIZE = 128;
+
+  /**
+     The default maximum size of the spill file (10 MB).
+  */
+  static final long DEFAULT_MAX_SPILL_SIZE = 10*1024*1024;
+
+  /**
+     How long close waits for queued events to be sent before
+     dropping the connection (30 seconds).
+  */
+  static final long SHUTDOWN_TIMEOUT = 30000;
+
   /**
      We remember host name as String in addition to the resolved
      InetAddress so that it can be returned via getOption().
@@ -125,21 +169,29 @@ public class SocketAppender extends AppenderSkeleton {
 
   InetAddress address;
   int port = DEFAULT_PORT;
-  ObjectOutputStream oos;
+  EventOutput oos;
   int reconnectionDelay = DEFAULT_RECONNECTION_DELAY;
   boolean locationInfo = false;
   private String application;
 
   private Connector connector;
 
-  int counter = 0;
-
-  // reset the ObjectOutputStream every 70 calls
-  //private static final int RESET_FREQUENCY = 70;
-  private static final int RESET_FREQUENCY = 1;
+  int codec = EventOutput.SERIALIZED;
   private boolean advertiseViaMulticastDNS;
   private ZeroConfSupport zeroConf;
 
+  private int queueSize = 0;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private String spillFile;
+  private long maxSpillSize = DEFAULT_MAX_SPILL_SIZE;
+
+  private RingBuffer queue;
+  private WaitStrategy waitStrategy;
+  private volatile Sender sender;
+
+  private volatile long queuedCount;
+  private volatile long overflowCount;
+
   public SocketAppender() {
   }
 
@@ -171,7 +223,11 @@ public class SocketAppender extends AppenderSkeleton {
       zeroConf = new ZeroConfSupport(ZONE, port, getName());
       zeroConf.advertise();
     }
-    connect(address, port);
+    if(queueSize > 0 && address != null) {
+      startSender();
+    } else {
+      connect(address, port);
+    }
   }
 
   /**
@@ -189,6 +245,9 @@ public class SocketAppender extends AppenderSkeleton {
       zeroConf.unadvertise();
     }
 
+    if(sender != null) {
+      sender.shutdown();
+    }
     cleanUp();
   }
 
@@ -221,7 +280,8 @@ public class SocketAppender extends AppenderSkeleton {
     try {
       // First, close the previous connection if any.
       cleanUp();
-      oos = new ObjectOutputStream(new Socket(address, port).getOutputStream());
+      oos = EventOutput.create(new Socket(address, port).getOutputStream(),
+			       codec);
     } catch(IOException e) {
       if (e instanceof InterruptedIOException) {
           Thread.currentThread().interrupt();
@@ -250,31 +310,21 @@ public class SocketAppender extends AppenderSkeleton {
       return;
     }
 
+    if(queue != null) {
+      prepareEvent(event);
+      if(queue.offer(event)) {
+	queuedCount++;
+	waitStrategy.signal();
+      } else {
+	overflowCount++;
+      }
+      return;
+    }
+
     if(oos != null) {
       try {
-    	 
-	if(locationInfo) {
-	   event.getLocationInformation();
-	}
-    if (application != null) {
-        event.setProperty("application", application);
-    }
-    event.getNDC();
-    event.getThreadName();
-    event.getMDCCopy();
-    event.getRenderedMessage();
-    event.getThrowableStrRep();
-    
-	oos.writeObject(event);
-	//LogLog.debug("=========Flushing.");
-	oos.flush();
-	if(++counter >= RESET_FREQUENCY) {
-	  counter = 0;
-	  // Failing to reset the object output stream every now and
-	  // then creates a serious memory leak.
-	  //System.err.println("Doing oos.reset()");
-	  oos.reset();
-	}
+	prepareEvent(event);
+	oos.write(event);
       } catch(IOException e) {
           if (e instanceof InterruptedIOException) {
               Thread.currentThread().interrupt();
@@ -291,6 +341,46 @@ public class SocketAppender extends AppenderSkeleton {
     }
   }
 
+  /**
+     Sets the fields of an event that depend on the logging thread,
+     before the event is written or queued.
+   */
+  void prepareEvent(LoggingEvent event) {
+    if(locationInfo) {
+      event.getLocationInformation();
+    }
+    if (application != null) {
+      event.setProperty("application", application);
+    }
+    event.getNDC();
+    event.getThreadName();
+    event.getMDCCopy();
+    event.getRenderedMessage();
+    event.getThrowableStrRep();
+  }
+
+  /**
+     Creates the queue and starts the sender thread.
+   */
+  void startSender() {
+    if(sender != null) {
+      return;
+    }
+    EventSpool spool = null;
+    if(spillFile != null) {
+      // events read back are attached to a private hierarchy so that
+      // replaying does not create loggers in the application's one
+      spool = new EventSpool(new File(spillFile), maxSpillSize,
+			     new Hierarchy(new RootLogger(Level.ALL)));
+    }
+    queue = new RingBuffer(queueSize);
+    waitStrategy = WaitStrategy.getDefault();
+    sender = new Sender(spool);
+    sender.setDaemon(true);
+    sender.setName("SocketAppender-Sender-" + sender.getName());
+    sender.start();
+  }
+
   public void setAdvertiseViaMulticastDNS(boolean advertiseViaMulticastDNS) {
     this.advertiseViaMulticastDNS = advertiseViaMulticastDNS;
   }
@@ -396,6 +486,27 @@ public class SocketAppender extends AppenderSkeleton {
     return application;
   }
 
+  /**
+     The <b>Codec</b> option selects how events are encoded. The
+     value <code>serialized</code>, the default, sends serialized
+     {@link LoggingEvent} objects. The value <code>binary</code> sends
+     events in the format of {@link BinaryEventEncoder}, which is
+     smaller and faster to produce. The option takes effect on the
+     next connection.
+     @since 1.2.18
+   */
+  public void setCodec(String codec) {
+    this.codec = EventOutput.toCodec(codec, this.codec);
+  }
+
+  /**
+     Returns value of the <b>Codec</b> option.
+     @since 1.2.18
+   */
+  public String getCodec() {
+    return EventOutput.getCodecName(codec);
+  }
+
   /**
      The <b>ReconnectionDelay</b> option takes a positive integer
      representing the number of milliseconds to wait between each
@@ -416,6 +527,125 @@ public class SocketAppender extends AppenderSkeleton {
     return reconnectionDelay;
   }
 
+  /**
+     The <b>QueueSize</b> option sets the number of events that may
+     wait to be sent. If positive, events are sent by a separate
+     thread and logging does not wait for the network. The default,
+     zero, writes each event from the logging thread.
+     @since 1.2.18
+   */
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+
+  /**
+     Returns value of the <b>QueueSize</b> option.
+     @since 1.2.18
+   */
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  /**
+     The <b>BatchSize</b> option sets the maximum number of queued
+     events written and flushed together. The default is 128.
+     @since 1.2.18
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(batchSize, 1);
+  }
+
+  /**
+     Returns value of the <b>BatchSize</b> option.
+     @since 1.2.18
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+     The <b>SpillFile</b> option names a file where queued events are
+     kept while the server is unreachable. It only applies when
+     <b>QueueSize</b> is set. A file left by a previous run is sent
+     before new events.
+     @since 1.2.18
+   */
+  public void setSpillFile(String spillFile) {
+    this.spillFile = spillFile;
+  }
+
+  /**
+     Returns value of the <b>SpillFile</b> option.
+     @since 1.2.18
+   */
+  public String getSpillFile() {
+    return spillFile;
+  }
+
+  /**
+     The <b>MaxSpillSize</b> option sets the size the spill file may
+     reach before further events are dropped, with the suffixes "KB",
+     "MB" or "GB". The default is 10MB.
+     @since 1.2.18
+   */
+  public void setMaxSpillSize(String value) {
+    maxSpillSize = OptionConverter.toFileSize(value, maxSpillSize + 1);
+  }
+
+  /**
+     Sets the maximum size of the spill file in bytes.
+     @since 1.2.18
+   */
+  public void setMaximumSpillSize(long maxSpillSize) {
+    this.maxSpillSize = maxSpillSize;
+  }
+
+  /**
+     Returns the maximum size of the spill file in bytes.
+     @since 1.2.18
+   */
+  public long getMaximumSpillSize() {
+    return maxSpillSize;
+  }
+
+  /**
+     Returns the number of events placed in the queue.
+     @since 1.2.18
+   */
+  public long getQueuedCount() {
+    return queuedCount;
+  }
+
+  /**
+     Returns the number of queued events written to the server,
+     including those read back from the spill file.
+     @since 1.2.18
+   */
+  public long getSentCount() {
+    Sender s = sender;
+    return s == null ? 0 : s.sentCount;
+  }
+
+  /**
+     Returns the number of events lost because the queue or the
+     spill file was full, or because the connection was down and no
+     spill file is configured.
+     @since 1.2.18
+   */
+  public long getDroppedCount() {
+    Sender s = sender;
+    return overflowCount + (s == null ? 0 : s.droppedCount);
+  }
+
+  /**
+     Returns the number of events written to the spill file.
+     @since 1.2.18
+   */
+  public long getSpilledCount() {
+    Sender s = sender;
+    return s == null ? 0 : s.spilledCount;
+  }
+
   /**
      The Connector will reconnect when the server becomes available
      again.  It does this by attempting to open a new connection every
@@ -441,7 +671,7 @@ public class SocketAppender extends AppenderSkeleton {
 	  LogLog.debug("Attempting connection to "+address.getHostName());
 	  socket = new Socket(address, port);
 	  synchronized(this) {
-	    oos = new ObjectOutputStream(socket.getOutputStream());
+	    oos = EventOutput.create(socket.getOutputStream(), codec);
 	    connector = null;
 	    LogLog.debug("Connection established. Exiting connector thread.");
 	    break;
@@ -471,4 +701,201 @@ public class SocketAppender extends AppenderSkeleton {
     */
   }
 
+  /**
+     Takes events from the queue and writes them to the server in
+     batches. While the server is unreachable, events go to the spill
+     file if there is one; once connected the spill file is sent
+     before the queue.
+
+     <p>The sender opens its own connections and retries every
+     <code>reconnectionDelay</code> milliseconds. It never takes the
+     appender's lock.
+
+     @since 1.2.18
+  */
+  class Sender extends Thread {
+
+    private final EventSpool spool;
+    private volatile boolean stopping = false;
+    private volatile Socket socket;
+    private EventOutput output;
+    private long nextAttempt = 0;
+    private boolean reported = false;
+
+    volatile long sentCount;
+    volatile long droppedCount;
+    volatile long spilledCount;
+
+    Sender(EventSpool spool) {
+      this.spool = spool;
+    }
+
+    public
+    void run() {
+      LoggingEvent[] batch = new LoggingEvent[batchSize];
+      int attempt = 0;
+      try {
+	while(true) {
+	  if(output == null && !stopping) {
+	    openConnection();
+	  }
+
+	  int count;
+	  if(output != null && spool != null && !spool.isEmpty()) {
+	    // older events first
+	    count = spool.read(batch);
+	    if(count > 0) {
+	      send(batch, count, false);
+	    }
+	  } else {
+	    count = queue.drainTo(batch);
+	    if(count > 0) {
+	      if(output != null) {
+		send(batch, count, true);
+	      } else {
+		spill(batch, count);
+	      }
+	    }
+	  }
+
+	  for(int i = 0; i < count; i++) {
+	    batch[i] = null;
+	  }
+
+	  if(count > 0) {
+	    attempt = 0;
+	  } else if(stopping && queue.isEmpty()
+		    && (output == null || spool == null || spool.isEmpty())) {
+	    break;
+	  } else {
+	    waitStrategy.idle(attempt++);
+	  }
+	}
+      } catch(InterruptedException e) {
+	LogLog.debug("Sender interrupted. Leaving loop.");
+      } finally {
+	closeConnection();
+	if(spool != null) {
+	  spool.close();
+	}
+      }
+    }
+
+    /**
+       Stops the thread once the queue is empty, waiting at most
+       SHUTDOWN_TIMEOUT for the remaining events to be sent.
+    */
+    void shutdown() {
+      stopping = true;
+      waitStrategy.signal();
+      try {
+	join(SHUTDOWN_TIMEOUT);
+	if(isAlive()) {
+	  LogLog.warn("Timed out sending queued events, closing the connection.");
+	  Socket s = socket;
+	  if(s != null) {
+	    s.close();
+	  }
+	  interrupt();
+	  join();
+	}
+      } catch(InterruptedException e) {
+	Thread.currentThread().interrupt();
+	LogLog.error("Interrupted while waiting for the sender to finish.", e);
+      } catch(IOException e) {
+	LogLog.error("Could not close connection.", e);
+      }
+    }
+
+    private
+    void openConnection() {
+      long now = System.currentTimeMillis();
+      if(now < nextAttempt) {
+	return;
+      }
+      try {
+	LogLog.debug("Attempting connection to "+address.getHostName());
+	socket = new Socket(address, port);
+	output = EventOutput.create(socket.getOutputStream(), codec);
+	reported = false;
+	LogLog.debug("Connection established.");
+      } catch(IOException e) {
+	if (e instanceof InterruptedIOException) {
+	  Thread.currentThread().interrupt();
+	}
+	closeConnection();
+	connectionFailed("Could not connect to remote log4j server at ["
+			 +address.getHostName()+"].", e);
+      }
+    }
+
+    private
+    void connectionFailed(String msg, IOException e) {
+      if(reconnectionDelay > 0) {
+	nextAttempt = System.currentTimeMillis() + reconnectionDelay;
+	if(!reported) {
+	  LogLog.error(msg + " We will try again later.");
+	  reported = true;
+	} else {
+	  LogLog.debug(msg + " Exception is " + e);
+	}
+      } else {
+	nextAttempt = Long.MAX_VALUE;
+	LogLog.error(msg + " We are not retrying.");
+	errorHandler.error(msg, e, ErrorCode.GENERIC_FAILURE);
+      }
+    }
+
+    private
+    void send(LoggingEvent[] batch, int count, boolean queued) {
+      try {
+	for(int i = 0; i < count; i++) {
+	  output.add(batch[i]);
+	}
+	output.flush();
+	sentCount += count;
+      } catch(IOException e) {
+	if (e instanceof InterruptedIOException) {
+	  Thread.currentThread().interrupt();
+	}
+	closeConnection();
+	connectionFailed("Detected problem with connection.", e);
+	if(queued) {
+	  spill(batch, count);
+	} else {
+	  droppedCount += count;
+	}
+      }
+    }
+
+    private
+    void spill(LoggingEvent[] batch, int count) {
+      int written = 0;
+      if(spool != null) {
+	written = spool.write(batch, count);
+	spilledCount += written;
+      }
+      droppedCount += count - written;
+    }
+
+    private
+    void closeConnection() {
+      if(output != null) {
+	try {
+	  output.close();
+	} catch(IOException e) {
+	  LogLog.debug("Could not close connection.", e);
+	}
+	output = null;
+      }
+      Socket s = socket;
+      if(s != null) {
+	try {
+	  s.close();
+	} catch(IOException e) {
+	}
+	socket = null;
+      }
+    }
+  }
 }
@@ -17,9 +17,9 @@
 
 package org.apache.log4j.net;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.io.ObjectOutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -72,23 +72,21 @@ import org.apache.log4j.spi.LoggingEvent;
   <p><li>If no remote clients are attached, the logging requests are
   simply dropped.
   
-  <p><li>Logging events are automatically <em>buffered</em> by the
-  native TCP implementation. This means that if the link to remote
-  client is slow but still faster than the rate of (log) event
-  production, the application will not be affected by the slow network
-  connection. However, if the network connection is slower then the
-  rate of event production, then the local application can only
-  progress at the network rate. In particular, if the network link to
-  the the remote client is down, the application will be blocked.
-  
-  <p>On the other hand, if the network link is up, but the remote
-  client is down, the client will not be blocked when making log
-  requests but the log events will be lost due to client
-  unavailability. 
-
-  <p>The single remote client case extends to multiple clients
-  connections. The rate of logging will be determined by the slowest
-  link.
+  <p><li>Each event is encoded once and the same bytes are queued for
+  every client. Each client has its own queue, holding up to
+  <b>ClientQueueSize</b> events, and its own thread writing the queue
+  to the network, so the application is never blocked by the
+  network, and a slow client does not slow down the others.
+
+  <p>A client that cannot keep up with the rate of event production
+  is handled according to the <b>SlowClientPolicy</b> option. With
+  <code>drop</code>, the default, events that do not fit in its queue
+  are dropped for that client. With <code>sample</code>, once its
+  queue is half full only one event in <b>SampleRate</b> is queued.
+  With <code>disconnect</code>, the client is disconnected as soon as
+  its queue is full. A client that missed events with the binary
+  codec resumes at the next event that does not depend on the string
+  table of the events it missed.
     
   <p><li>If the JVM hosting the <code>SocketHubAppender</code> exits
   before the <code>SocketHubAppender</code> is closed either
@@ -99,7 +97,8 @@ import org.apache.log4j.spi.LoggingEvent;
   <p>To avoid lost data, it is usually sufficient to {@link #close}
   the <code>SocketHubAppender</code> either explicitly or by calling
   the {@link org.apache.log4j.LogManager#shutdown} method before
-  exiting the application.
+  exiting the application. Closing waits a few seconds for clients to
+  receive their queued events.
   
   </ul>
      
@@ -110,11 +109,32 @@ public class SocketHubAppender extends AppenderSkeleton {
   /**
      The default port number of the ServerSocket will be created on. */
   static final int DEFAULT_PORT = 4560;
+
+  /**
+     The default number of events queued for each client. */
+  static final int DEFAULT_CLIENT_QUEUE_SIZE = 1024;
+
+  /**
+     The default sample rate of the <code>sample</code> policy. */
+  static final int DEFAULT_SAMPLE_RATE = 10;
+
+  /**
+     Milliseconds given to clients to receive their queued events
+     when the appender is closed. */
+  static final int CLOSE_TIMEOUT = 5000;
   
   private int port = DEFAULT_PORT;
-  private Vector oosList = new Vector();
+  // guards clients, encoders, buffer and droppedCount
+  private final Object clientLock = new Object();
+  private Vector clients = new Vector();
+  private SharedEventEncoder[] encoders = new SharedEventEncoder[2];
+  private int clientQueueSize = DEFAULT_CLIENT_QUEUE_SIZE;
+  private int slowClientPolicy = HubClient.DROP;
+  private int sampleRate = DEFAULT_SAMPLE_RATE;
+  private volatile long droppedCount;
   private ServerMonitor serverMonitor = null;
   private boolean locationInfo = false;
+  private int codec = EventOutput.SERIALIZED;
   private CyclicBuffer buffer = null;
   private String application;
   private boolean advertiseViaMulticastDNS;
@@ -178,22 +198,19 @@ public class SocketHubAppender extends AppenderSkeleton {
     serverMonitor.stopMonitor();
     serverMonitor = null;
 
-    // close all of the connections
+    // close all of the connections once their queued events are sent
 	LogLog.debug("closing client connections");
-    while (oosList.size() != 0) {
-      ObjectOutputStream oos = (ObjectOutputStream)oosList.elementAt(0);
-      if(oos != null) {
-        try {
-        	oos.close();
-        } catch(InterruptedIOException e) {
-            Thread.currentThread().interrupt();
-            LogLog.error("could not close oos.", e);
-        } catch(IOException e) {
-            LogLog.error("could not close oos.", e);
-        }
-        
-        oosList.removeElementAt(0);     
-      }
+    Object[] closing;
+    synchronized (clientLock) {
+      closing = clients.toArray();
+      clients.removeAllElements();
+    }
+    for (int i = 0; i < closing.length; i++) {
+      ((HubClient) closing[i]).close();
+    }
+    long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+    for (int i = 0; i < closing.length; i++) {
+      ((HubClient) closing[i]).awaitClose(deadline - System.currentTimeMillis());
     }
   }
 
@@ -214,54 +231,91 @@ public class SocketHubAppender extends AppenderSkeleton {
         event.getMDCCopy();
         event.getRenderedMessage();
         event.getThrowableStrRep();
-        
-      if (buffer != null) {
-        buffer.add(event);
-      }
     }
 
-    // if no event or no open connections, exit now
-    if ((event == null) || (oosList.size() == 0)) {
+    // if no event, exit now
+    if (event == null) {
       return;
     }
 
-	// loop through the current set of open connections, appending the event to each
-    for (int streamCount = 0; streamCount < oosList.size(); streamCount++) {    	
-
-      ObjectOutputStream oos = null;
-      try {
-        oos = (ObjectOutputStream)oosList.elementAt(streamCount);
+    synchronized (clientLock) {
+      if (buffer != null) {
+        buffer.add(event);
       }
-      catch (ArrayIndexOutOfBoundsException e) {
-        // catch this, but just don't assign a value
-        // this should not really occur as this method is
-        // the only one that can remove oos's (besides cleanUp).
+
+      // make this event a context start if a client that missed events
+      // has room again; a client that stays full does not reset the
+      // context shared with the others
+      for (int i = 0; i < clients.size(); i++) {
+        HubClient client = (HubClient) clients.elementAt(i);
+        if (client.wantsContextStart()) {
+          SharedEventEncoder encoder = encoders[client.getCodec()];
+          if (encoder != null) {
+            encoder.resetContext();
+          }
+        }
       }
-      
-      // list size changed unexpectedly? Just exit the append.
-      if (oos == null)
-        break;
-        
-      try {
-      	oos.writeObject(event);
-      	oos.flush();
-    	// Failing to reset the object output stream every now and
-    	// then creates a serious memory leak.
-    	// right now we always reset. TODO - set up frequency counter per oos?
-    	oos.reset();
+
+      // loop through the current set of clients, queueing the event for each
+      for (int i = 0; i < clients.size(); i++) {
+        HubClient client = (HubClient) clients.elementAt(i);
+        if (client.isClosed()) {
+          clients.removeElementAt(i);
+          LogLog.debug("dropped connection");
+          // decrement to keep the counter in place (for loop always increments)
+          i--;
+          continue;
+        }
+
+        SharedEventEncoder encoder;
+        byte[] bytes;
+        try {
+          encoder = getEncoder(client.getCodec());
+          bytes = encoder.encode(event);
+        } catch(IOException e) {
+          LogLog.error("could not encode event.", e);
+          continue;
+        }
+        if (!client.offer(bytes, encoder.isContextStart())) {
+          droppedCount++;
+        }
       }
-      catch(IOException e) {
-        if (e instanceof InterruptedIOException) {
-            Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+     Returns the encoder of a codec, creating it if needed. Must be
+     called while holding clientLock. */
+  private
+  SharedEventEncoder getEncoder(int _codec) throws IOException {
+    if (encoders[_codec] == null) {
+      encoders[_codec] = new SharedEventEncoder(_codec);
+    }
+    return encoders[_codec];
+  }
+
+  /**
+     Starts sending events to a new client, beginning with the
+     buffered events. */
+  private
+  void addClient(Socket socket) throws IOException {
+    HubClient client;
+    synchronized (clientLock) {
+      ByteArrayOutputStream preamble = new ByteArrayOutputStream();
+      SharedEventEncoder.writeHeader(preamble, codec);
+      if (buffer != null && buffer.length() > 0) {
+        SharedEventEncoder cached = new SharedEventEncoder(codec);
+        for (int i = 0; i < buffer.length(); i++) {
+          preamble.write(cached.encode(buffer.get(i)));
         }
-          // there was an io exception so just drop the connection
-      	oosList.removeElementAt(streamCount);
-      	LogLog.debug("dropped connection");
-      	
-      	// decrement to keep the counter in place (for loop always increments)
-      	streamCount--;
       }
+      client = new HubClient(socket, codec, preamble.toByteArray(),
+                             clientQueueSize, slowClientPolicy, sampleRate);
+      // the client can only start reading at a context start
+      getEncoder(codec).resetContext();
+      clients.addElement(client);
     }
+    client.start();
   }
   
   /**
@@ -341,6 +395,94 @@ public class SocketHubAppender extends AppenderSkeleton {
     return locationInfo;
   }
 
+  /**
+     The <b>Codec</b> option selects how events are encoded, either
+     <code>serialized</code>, the default, or <code>binary</code> for
+     the format of {@link BinaryEventEncoder}. Clients connecting
+     after the option is changed receive the new format.
+     @since 1.2.18 */
+  public
+  void setCodec(String _codec) {
+    codec = EventOutput.toCodec(_codec, codec);
+  }
+
+  /**
+     Returns value of the <b>Codec</b> option.
+     @since 1.2.18 */
+  public
+  String getCodec() {
+    return EventOutput.getCodecName(codec);
+  }
+
+  /**
+     The <b>ClientQueueSize</b> option takes a positive integer
+     representing the number of events queued for each client before
+     the <b>SlowClientPolicy</b> applies. It takes effect for clients
+     connecting after it is set.
+     @since 1.2.18 */
+  public
+  void setClientQueueSize(int _clientQueueSize) {
+    if (_clientQueueSize > 0) {
+      clientQueueSize = _clientQueueSize;
+    }
+  }
+
+  /**
+     Returns value of the <b>ClientQueueSize</b> option.
+     @since 1.2.18 */
+  public
+  int getClientQueueSize() {
+    return clientQueueSize;
+  }
+
+  /**
+     The <b>SlowClientPolicy</b> option selects what happens to events
+     for a client whose queue is full: <code>drop</code>, the default,
+     <code>sample</code> or <code>disconnect</code>. It takes effect for
+     clients connecting after it is set.
+     @since 1.2.18 */
+  public
+  void setSlowClientPolicy(String _policy) {
+    slowClientPolicy = HubClient.toPolicy(_policy, slowClientPolicy);
+  }
+
+  /**
+     Returns value of the <b>SlowClientPolicy</b> option.
+     @since 1.2.18 */
+  public
+  String getSlowClientPolicy() {
+    return HubClient.getPolicyName(slowClientPolicy);
+  }
+
+  /**
+     The <b>SampleRate</b> option takes a positive integer N. With the
+     <code>sample</code> policy, one event in N is queued for a client
+     whose queue is half full. The default is 10.
+     @since 1.2.18 */
+  public
+  void setSampleRate(int _sampleRate) {
+    if (_sampleRate > 0) {
+      sampleRate = _sampleRate;
+    }
+  }
+
+  /**
+     Returns value of the <b>SampleRate</b> option.
+     @since 1.2.18 */
+  public
+  int getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+     Returns the number of times an event was not queued for a client
+     because the client was too slow.
+     @since 1.2.18 */
+  public
+  long getDroppedCount() {
+    return droppedCount;
+  }
+
   public void setAdvertiseViaMulticastDNS(boolean advertiseViaMulticastDNS) {
     this.advertiseViaMulticastDNS = advertiseViaMulticastDNS;
   }
@@ -353,7 +495,7 @@ public class SocketHubAppender extends AppenderSkeleton {
     Start the ServerMonitor thread. */
   private
   void startServer() {
-    serverMonitor = new ServerMonitor(port, oosList);
+    serverMonitor = new ServerMonitor(port);
   }
   
   /**
@@ -368,20 +510,17 @@ public class SocketHubAppender extends AppenderSkeleton {
 
   /**
     This class is used internally to monitor a ServerSocket
-    and register new connections in a vector passed in the
-    constructor. */
+    and start a client for each new connection. */
   private class ServerMonitor implements Runnable {
     private int port;
-    private Vector oosList;
     private boolean keepRunning;
     private Thread monitorThread;
     
     /**
       Create a thread and start the monitor. */
     public
-    ServerMonitor(int _port, Vector _oosList) {
+    ServerMonitor(int _port) {
       port = _port;
-      oosList = _oosList;
       keepRunning = true;
       monitorThread = new Thread(this);
       monitorThread.setDaemon(true);
@@ -417,17 +556,6 @@ public class SocketHubAppender extends AppenderSkeleton {
       }
     }
     
-    private 
-    void sendCachedEvents(ObjectOutputStream stream) throws IOException {
-      if (buffer != null) {
-        for (int i = 0; i < buffer.length(); i++) {
-          stream.writeObject(buffer.get(i));
-        }
-        stream.flush();
-        stream.reset();
-      }
-    }
-
     /**
       Method that runs, monitoring the ServerSocket and adding connections as
       they connect to the socket. */
@@ -479,14 +607,8 @@ public class SocketHubAppender extends AppenderSkeleton {
               LogLog.debug("accepting connection from " + remoteAddress.getHostName() 
 			   + " (" + remoteAddress.getHostAddress() + ")");
 	        	
-              // create an ObjectOutputStream
-              ObjectOutputStream oos = new ObjectOutputStream(socket.getOutputStream());
-              if (buffer != null && buffer.length() > 0) {
-                sendCachedEvents(oos);
-              }
-	            
-              // add it to the oosList.  OK since Vector is synchronized.
-              oosList.addElement(oos);
+              // start a client for the configured codec
+              addClient(socket);
             } catch (IOException e) {
               if (e instanceof InterruptedIOException) {
                     Thread.currentThread().interrupt();
@@ -19,8 +19,10 @@ package org.apache.log4j.net;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
 
 import org.apache.log4j.Logger;
@@ -37,6 +39,10 @@ import org.apache.log4j.spi.LoggingEvent;
    <p>For example, the socket node might decide to log events to a
    local file and also resent them to a second socket node.
 
+   <p>Events may be sent as serialized objects or in the binary
+   format of {@link BinaryEventEncoder}. The format is recognized
+   from the first bytes sent by the client.
+
     @author  Ceki G&uuml;lc&uuml;
 
     @since 0.8.4
@@ -46,15 +52,37 @@ public class SocketNode implements Runnable {
   Socket socket;
   LoggerRepository hierarchy;
   ObjectInputStream ois;
+  InputStream in;
+  BinaryEventDecoder decoder;
 
   static Logger logger = Logger.getLogger(SocketNode.class);
 
   public SocketNode(Socket socket, LoggerRepository hierarchy) {
+    this(socket, null, hierarchy);
+  }
+
+  /**
+     Creates a node for a connection whose first bytes have already
+     been read, as done by {@link SelectorSocketServer}.
+
+     @param received bytes already read from the socket, may be null.
+     @since 1.2.18 */
+  SocketNode(Socket socket, InputStream received, LoggerRepository hierarchy) {
     this.socket = socket;
     this.hierarchy = hierarchy;
     try {
-      ois = new ObjectInputStream(
-                         new BufferedInputStream(socket.getInputStream()));
+      InputStream stream = socket.getInputStream();
+      if(received != null) {
+        stream = new SequenceInputStream(received, stream);
+      }
+      stream = new BufferedInputStream(stream);
+      if(BinaryEventDecoder.isBinary(stream)) {
+        BinaryEventDecoder.readHeader(stream);
+        decoder = new BinaryEventDecoder(hierarchy);
+        in = stream;
+      } else {
+        ois = new ObjectInputStream(stream);
+      }
     } catch(InterruptedIOException e) {
       Thread.currentThread().interrupt();
       logger.error("Could not open ObjectInputStream to "+socket, e);
@@ -76,10 +104,14 @@ public class SocketNode implements Runnable {
     Logger remoteLogger;
 
     try {
-      if (ois != null) {
+      if (ois != null || decoder != null) {
           while(true) {
 	        // read an event from the wire
-	        event = (LoggingEvent) ois.readObject();
+	        if (decoder != null) {
+	          event = decoder.read(in);
+	        } else {
+	          event = (LoggingEvent) ois.readObject();
+	        }
 	        // get a logger from the hierarchy. The name of the logger is taken to be the name contained in the event.
 	        remoteLogger = hierarchy.getLogger(event.getLoggerName());
 	        //event.logger = remoteLogger;
@@ -111,6 +143,13 @@ public class SocketNode implements Runnable {
             logger.info("Could not close connection.", e);
          }
       }
+      if (in != null) {
+         try {
+            in.close();
+         } catch(Exception e) {
+            logger.info("Could not close connection.", e);
+         }
+      }
       if (socket != null) {
         try {
           socket.close();
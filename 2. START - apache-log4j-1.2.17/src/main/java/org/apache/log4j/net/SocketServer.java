@@ -37,7 +37,7 @@ import org.apache.log4j.spi.RootLogger;
    for each client.
 
    <pre>
-     <b>Usage:</b> java org.apache.log4j.net.SocketServer port configFile configDir
+     <b>Usage:</b> java org.apache.log4j.net.SocketServer port configFile configDir [selectorThreads]
 
      where <b>port</b> is a part number where the server listens,
            <b>configFile</b> is a configuration file fed to the {@link PropertyConfigurator} and
@@ -71,6 +71,15 @@ import org.apache.log4j.spi.RootLogger;
      ensures the total independence of the clients with respect to
      their logging settings.
 
+     <p>Clients may send serialized events or events in the binary
+     format selected by the <b>Codec</b> option of {@link
+     SocketAppender}; each connection is read in the format it
+     starts with.
+
+     <p>When <b>selectorThreads</b> is given, connections are read by
+     that many threads of a {@link SelectorSocketServer} instead of a
+     thread each.
+
      <p>Currently, the hierarchy that will be used for a given request
      depends on the IP address of the client host. For example, two
      separate applicatons running on the same host and logging to the
@@ -102,12 +111,29 @@ public class SocketServer  {
   public
   static
   void main(String argv[]) {
-    if(argv.length == 3)
+    if(argv.length == 3 || argv.length == 4)
       init(argv[0], argv[1], argv[2]);
     else
       usage("Wrong number of arguments.");
 
     try {
+      if(argv.length == 4) {
+	cat.info("Listening on port " + port + " with " + argv[3]
+		 + " selector threads.");
+	new SelectorSocketServer(port, Integer.parseInt(argv[3]),
+				 Runtime.getRuntime().availableProcessors(),
+				 SelectorSocketServer.DEFAULT_QUEUE_SIZE) {
+	    protected LoggerRepository getRepository(InetAddress inetAddress) {
+	      LoggerRepository h =
+		(LoggerRepository) server.hierarchyMap.get(inetAddress);
+	      if(h == null) {
+		h = server.configureHierarchy(inetAddress);
+	      }
+	      return h;
+	    }
+	  }.start();
+	return;
+      }
       cat.info("Listening on port " + port);
       ServerSocket serverSocket = new ServerSocket(port);
       while(true) {
@@ -135,7 +161,8 @@ public class SocketServer  {
   void  usage(String msg) {
     System.err.println(msg);
     System.err.println(
-      "Usage: java " +SocketServer.class.getName() + " port configFile directory");
+      "Usage: java " +SocketServer.class.getName()
+      + " port configFile directory [selectorThreads]");
     System.exit(1);
   }
 
@@ -19,13 +19,16 @@ package org.apache.log4j.net;
 
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Layout;
+import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.helpers.SyslogQuietWriter;
 import org.apache.log4j.helpers.SyslogWriter;
 import org.apache.log4j.spi.LoggingEvent;
 
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.io.IOException;
@@ -36,6 +39,14 @@ import java.io.IOException;
 /**
     Use SyslogAppender to send log messages to a remote syslog daemon.
 
+    <p>Since 1.2.18, messages can be sent over TCP instead of UDP by
+    setting the <b>Protocol</b> option, and formatted as described in
+    RFC 5424 instead of RFC 3164 by setting the <b>Format</b> option.
+    Over TCP, messages are framed by octet counting and are not split.
+    Setting <b>ImmediateFlush</b> to false lets several messages share
+    a TCP write, at the risk of losing the last messages if the
+    application crashes.
+
     @author Ceki G&uuml;lc&uuml;
     @author Anders Kristensen
  */
@@ -124,6 +135,43 @@ public class SyslogAppender extends AppenderSkeleton {
      */
   private boolean layoutHeaderChecked = false;
 
+    /**
+     * True if messages are sent over TCP.
+     */
+  private boolean tcp = false;
+
+    /**
+     * True if messages follow RFC 5424.
+     */
+  private boolean rfc5424 = false;
+
+    /**
+     * APP-NAME field of RFC 5424 messages.
+     */
+  private String appName = "-";
+
+    /**
+     * If false, TCP messages are sent when the buffer fills up or
+     * has waited a second.
+     */
+  private boolean immediateFlush = true;
+
+    /**
+     * Date format of RFC 5424 timestamps.
+     */
+  private SimpleDateFormat rfc5424DateFormat;
+
+    /**
+     * Time, in the resolution of the header, of the last header.
+     */
+  private long lastHeaderTime = -1;
+
+    /**
+     * Last header, reused for events in the same second, or the same
+     * millisecond with RFC 5424.
+     */
+  private String lastHeader;
+
   public
   SyslogAppender() {
     this.initSyslogFacilityStr();
@@ -319,23 +367,23 @@ public class SyslogAppender extends AppenderSkeleton {
     } else {
         packet = layout.format(event);
     }
-    if(facilityPrinting || hdr.length() > 0) {
-        StringBuffer buf = new StringBuffer(hdr);
-        if(facilityPrinting) {
-            buf.append(facilityStr);
-        }
-        buf.append(packet);
-        packet = buf.toString();
-    }
+    String prefix = facilityPrinting ? facilityStr : null;
 
     sqw.setLevel(event.getLevel().getSyslogEquivalent());
     //
     //   if message has a remote likelihood of exceeding 1024 bytes
     //      when encoded, consider splitting message into multiple packets
-    if (packet.length() > 256) {
-        splitPacket(hdr, packet);
+    //      (TCP messages are framed by their length and never split)
+    if (!tcp && hdr.length() + (prefix == null ? 0 : prefix.length())
+            + packet.length() > 256) {
+        StringBuffer buf = new StringBuffer(hdr);
+        if(prefix != null) {
+            buf.append(prefix);
+        }
+        buf.append(packet);
+        splitPacket(hdr, buf.toString());
     } else {
-        sqw.write(packet);
+        sqw.write(hdr, prefix, packet, 0);
     }
 
     if (layout == null || layout.ignoresThrowable()) {
@@ -343,13 +391,17 @@ public class SyslogAppender extends AppenderSkeleton {
       if (s != null) {
         for(int i = 0; i < s.length; i++) {
             if (s[i].startsWith("\t")) {
-               sqw.write(hdr+TAB+s[i].substring(1));
+               sqw.write(hdr, TAB, s[i], 1);
             } else {
-               sqw.write(hdr+s[i]);
+               sqw.write(hdr, null, s[i], 0);
             }
         }
       }
     }
+
+    if (immediateFlush) {
+        sqw.flush();
+    }
   }
 
   /**
@@ -358,7 +410,7 @@ public class SyslogAppender extends AppenderSkeleton {
   */
   public
   void activateOptions() {
-      if (header) {
+      if (header || rfc5424) {
         getLocalHostname();
       }
       if (layout != null && layout.getHeader() != null) {
@@ -388,10 +440,27 @@ public class SyslogAppender extends AppenderSkeleton {
    */
   public
   void setSyslogHost(final String syslogHost) {
-    this.sqw = new SyslogQuietWriter(new SyslogWriter(syslogHost),
+    this.syslogHost = syslogHost;
+    createWriter();
+  }
+
+  /**
+     Creates the writer for the <b>SyslogHost</b>, <b>Protocol</b> and
+     <b>Format</b> options, closing the previous one.
+   */
+  private
+  void createWriter() {
+    if (sqw != null) {
+        try {
+            sqw.close();
+        } catch(IOException e) {
+            // nothing to do
+        }
+    }
+    Charset charset = rfc5424 ? Charset.forName("UTF-8") : null;
+    this.sqw = new SyslogQuietWriter(new SyslogWriter(syslogHost, tcp, charset),
 				     syslogFacility, errorHandler);
     //this.stp = new SyslogTracerPrintWriter(sqw);
-    this.syslogHost = syslogHost;
   }
 
   /**
@@ -445,6 +514,104 @@ public class SyslogAppender extends AppenderSkeleton {
     */
   public final void setHeader(final boolean val) {
       header = val;
+      lastHeader = null;
+  }
+
+    /**
+     * Sets the transport, "UDP" (the default) or "TCP", ignoring case.
+     * @param protocol protocol name.
+     * @since 1.2.18
+     */
+  public final void setProtocol(final String protocol) {
+      boolean val = "TCP".equalsIgnoreCase(protocol);
+      if (!val && !"UDP".equalsIgnoreCase(protocol)) {
+          LogLog.warn("[" + protocol + "] is an unknown syslog protocol. Using [UDP].");
+      }
+      if (val != tcp) {
+          tcp = val;
+          if (syslogHost != null) {
+              createWriter();
+          }
+      }
+  }
+
+    /**
+     * Returns the transport.
+     * @return "UDP" or "TCP".
+     * @since 1.2.18
+     */
+  public final String getProtocol() {
+      return tcp ? "TCP" : "UDP";
+  }
+
+    /**
+     * Sets the message format, "RFC3164" (the default) or "RFC5424",
+     * ignoring case. RFC 5424 messages always have a header and are
+     * encoded in UTF-8.
+     * @param format format name.
+     * @since 1.2.18
+     */
+  public final void setFormat(final String format) {
+      boolean val = "RFC5424".equalsIgnoreCase(format);
+      if (!val && !"RFC3164".equalsIgnoreCase(format)) {
+          LogLog.warn("[" + format + "] is an unknown syslog format. Using [RFC3164].");
+      }
+      if (val != rfc5424) {
+          rfc5424 = val;
+          lastHeader = null;
+          if (syslogHost != null) {
+              createWriter();
+          }
+      }
+  }
+
+    /**
+     * Returns the message format.
+     * @return "RFC3164" or "RFC5424".
+     * @since 1.2.18
+     */
+  public final String getFormat() {
+      return rfc5424 ? "RFC5424" : "RFC3164";
+  }
+
+    /**
+     * Sets the APP-NAME field of RFC 5424 messages, "-" by default.
+     * @param val application name, may not contain spaces.
+     * @since 1.2.18
+     */
+  public final void setAppName(final String val) {
+      appName = val == null || val.length() == 0 ? "-" : val;
+      lastHeader = null;
+  }
+
+    /**
+     * Returns the APP-NAME field of RFC 5424 messages.
+     * @return application name.
+     * @since 1.2.18
+     */
+  public final String getAppName() {
+      return appName;
+  }
+
+    /**
+     * If true, the default, TCP messages are sent at the end of each
+     * append. If false, they are sent when the buffer fills up, when
+     * a message is appended more than a second after the oldest one
+     * still waiting, and when the appender is closed.
+     * @param val immediate flush.
+     * @since 1.2.18
+     */
+  public final void setImmediateFlush(final boolean val) {
+      immediateFlush = val;
+  }
+
+    /**
+     * Returns the value of the <b>ImmediateFlush</b> option.
+     * @return immediate flush.
+     * @since 1.2.18
+     */
+  public final boolean getImmediateFlush() {
+      return immediateFlush;
   }
 
     /**
@@ -471,15 +638,40 @@ public class SyslogAppender extends AppenderSkeleton {
      * @since 1.2.15
      */
   private String getPacketHeader(final long timeStamp) {
+      if (rfc5424) {
+        if (timeStamp != lastHeaderTime || lastHeader == null) {
+          if (rfc5424DateFormat == null) {
+            rfc5424DateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'",
+                                                     Locale.ENGLISH);
+            rfc5424DateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+          }
+          StringBuffer buf = new StringBuffer("1 ");
+          buf.append(rfc5424DateFormat.format(new Date(timeStamp)));
+          buf.append(' ');
+          buf.append(getLocalHostname());
+          buf.append(' ');
+          buf.append(appName);
+          //  no PROCID, MSGID or STRUCTURED-DATA
+          buf.append(" - - - ");
+          lastHeader = buf.toString();
+          lastHeaderTime = timeStamp;
+        }
+        return lastHeader;
+      }
       if (header) {
-        StringBuffer buf = new StringBuffer(dateFormat.format(new Date(timeStamp)));
-        //  RFC 3164 says leading space, not leading zero on days 1-9
-        if (buf.charAt(4) == '0') {
-          buf.setCharAt(4, ' ');
+        long second = timeStamp / 1000;
+        if (second != lastHeaderTime || lastHeader == null) {
+          StringBuffer buf = new StringBuffer(dateFormat.format(new Date(timeStamp)));
+          //  RFC 3164 says leading space, not leading zero on days 1-9
+          if (buf.charAt(4) == '0') {
+            buf.setCharAt(4, ' ');
+          }
+          buf.append(getLocalHostname());
+          buf.append(' ');
+          lastHeader = buf.toString();
+          lastHeaderTime = second;
         }
-        buf.append(getLocalHostname());
-        buf.append(' ');
-        return buf.toString();
+        return lastHeader;
       }
       return "";
   }
@@ -17,6 +17,7 @@
 
 package org.apache.log4j.pattern;
 
+import org.apache.log4j.Level;
 import org.apache.log4j.spi.LoggingEvent;
 
 import java.util.ArrayList;
@@ -29,6 +30,10 @@ import java.util.Map;
  * The class implements the pre log4j 1.3 org.apache.log4j.helpers.PatternConverter
  * contract by delegating to the log4j 1.3 pattern implementation.
  *
+ * <p>The parsed pattern is compiled once: adjacent literals and line
+ * separators are merged into a single character array, fields without
+ * width or alignment are formatted without adjusting the buffer, and
+ * the padded names of the standard levels are computed in advance.
  *
  * @author Curt Arnold
  *
@@ -36,15 +41,21 @@ import java.util.Map;
 public final class BridgePatternConverter
   extends org.apache.log4j.helpers.PatternConverter {
   /**
-   * Pattern converters.
+   * Pattern converters, null where the pattern has literal text.
    */
   private LoggingEventPatternConverter[] patternConverters;
 
   /**
-   * Field widths and alignment corresponding to pattern converters.
+   * Field widths and alignment corresponding to pattern converters,
+   * null for fields output as they are.
    */
   private FormattingInfo[] patternFields;
 
+  /**
+   * Literal text where the pattern has no converter.
+   */
+  private char[][] literals;
+
   /**
    * Does pattern process exceptions.
    */
@@ -67,32 +78,85 @@ public final class BridgePatternConverter
       pattern, converters, fields, converterRegistry,
       PatternParser.getPatternLayoutRules());
 
-    patternConverters = new LoggingEventPatternConverter[converters.size()];
-    patternFields = new FormattingInfo[converters.size()];
+    List compiledConverters = new ArrayList();
+    List compiledFields = new ArrayList();
+    List compiledLiterals = new ArrayList();
+    StringBuffer literal = new StringBuffer();
 
-    int i = 0;
     Iterator converterIter = converters.iterator();
     Iterator fieldIter = fields.iterator();
 
     while (converterIter.hasNext()) {
       Object converter = converterIter.next();
+      FormattingInfo field = null;
 
-      if (converter instanceof LoggingEventPatternConverter) {
-        patternConverters[i] = (LoggingEventPatternConverter) converter;
-        handlesExceptions |= patternConverters[i].handlesThrowable();
-      } else {
-        patternConverters[i] =
-          new org.apache.log4j.pattern.LiteralPatternConverter("");
+      if (fieldIter.hasNext()) {
+        field = (FormattingInfo) fieldIter.next();
       }
 
-      if (fieldIter.hasNext()) {
-        patternFields[i] = (FormattingInfo) fieldIter.next();
+      if ((field != null)
+          && (field.getMinLength() <= 0)
+          && (field.getMaxLength() == Integer.MAX_VALUE)) {
+        field = null;
+      }
+
+      if (!(converter instanceof LoggingEventPatternConverter)) {
+        continue;
+      }
+
+      LoggingEventPatternConverter eventConverter =
+        (LoggingEventPatternConverter) converter;
+
+      if ((field == null)
+          && (eventConverter instanceof LiteralPatternConverter
+            || eventConverter instanceof LineSeparatorPatternConverter)) {
+        eventConverter.format((LoggingEvent) null, literal);
       } else {
-        patternFields[i] = FormattingInfo.getDefault();
+        if (literal.length() > 0) {
+          addLiteral(literal, compiledConverters, compiledFields,
+            compiledLiterals);
+        }
+
+        if ((field != null) && eventConverter instanceof LevelPatternConverter) {
+          eventConverter = new PaddedLevelPatternConverter(field);
+          field = null;
+        }
+
+        handlesExceptions |= eventConverter.handlesThrowable();
+        compiledConverters.add(eventConverter);
+        compiledFields.add(field);
+        compiledLiterals.add(null);
       }
+    }
 
-      i++;
+    if (literal.length() > 0) {
+      addLiteral(literal, compiledConverters, compiledFields, compiledLiterals);
     }
+
+    int size = compiledConverters.size();
+    patternConverters = (LoggingEventPatternConverter[])
+      compiledConverters.toArray(new LoggingEventPatternConverter[size]);
+    patternFields =
+      (FormattingInfo[]) compiledFields.toArray(new FormattingInfo[size]);
+    literals = (char[][]) compiledLiterals.toArray(new char[size][]);
+  }
+
+  /**
+   * Adds accumulated literal text to the compiled pattern.
+   * @param literal literal text, emptied on return.
+   * @param converters compiled converters.
+   * @param fields compiled fields.
+   * @param literals compiled literals.
+   */
+  private static void addLiteral(
+    final StringBuffer literal, final List converters, final List fields,
+    final List literals) {
+    char[] chars = new char[literal.length()];
+    literal.getChars(0, chars.length, chars, 0);
+    converters.add(null);
+    fields.add(null);
+    literals.add(chars);
+    literal.setLength(0);
   }
 
   /**
@@ -115,9 +179,21 @@ public final class BridgePatternConverter
    */
   public void format(final StringBuffer sbuf, final LoggingEvent e) {
     for (int i = 0; i < patternConverters.length; i++) {
-      int startField = sbuf.length();
-      patternConverters[i].format(e, sbuf);
-      patternFields[i].format(startField, sbuf);
+      char[] literal = literals[i];
+
+      if (literal != null) {
+        sbuf.append(literal);
+      } else {
+        FormattingInfo field = patternFields[i];
+
+        if (field == null) {
+          patternConverters[i].format(e, sbuf);
+        } else {
+          int startField = sbuf.length();
+          patternConverters[i].format(e, sbuf);
+          field.format(startField, sbuf);
+        }
+      }
     }
   }
 
@@ -129,4 +205,75 @@ public final class BridgePatternConverter
   public boolean ignoresThrowable() {
     return !handlesExceptions;
   }
+
+  /**
+   * Formats the level of an event within a field, using the padded
+   * names of the standard levels computed once.
+   */
+  private static final class PaddedLevelPatternConverter
+    extends LoggingEventPatternConverter {
+    /**
+     * Standard levels.
+     */
+    private static final Level[] LEVELS =
+      new Level[] {
+        Level.OFF, Level.FATAL, Level.ERROR, Level.WARN, Level.INFO,
+        Level.DEBUG, Level.TRACE, Level.ALL
+      };
+
+    /**
+     * Padded names of the standard levels, at the index of their level.
+     */
+    private final char[][] names = new char[LEVELS.length][];
+
+    /**
+     * Field width and alignment.
+     */
+    private final FormattingInfo field;
+
+    /**
+     * Create a new instance.
+     * @param field field width and alignment, may not be null.
+     */
+    PaddedLevelPatternConverter(final FormattingInfo field) {
+      super("Level", "level");
+      this.field = field;
+
+      StringBuffer buf = new StringBuffer();
+
+      for (int i = 0; i < LEVELS.length; i++) {
+        buf.setLength(0);
+        buf.append(LEVELS[i].toString());
+        field.format(0, buf);
+        names[i] = new char[buf.length()];
+        buf.getChars(0, buf.length(), names[i], 0);
+      }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void format(final LoggingEvent event, final StringBuffer toAppendTo) {
+      Level level = event.getLevel();
+
+      for (int i = 0; i < LEVELS.length; i++) {
+        if (LEVELS[i] == level) {
+          toAppendTo.append(names[i]);
+
+          return;
+        }
+      }
+
+      int startField = toAppendTo.length();
+      toAppendTo.append(level.toString());
+      field.format(startField, toAppendTo);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getStyleClass(final Object e) {
+      return LevelPatternConverter.newInstance(null).getStyleClass(e);
+    }
+  }
 }
@@ -17,21 +17,35 @@
 
 package org.apache.log4j.pattern;
 
+import java.io.Serializable;
 import java.text.DateFormat;
 import java.text.FieldPosition;
 import java.text.NumberFormat;
 import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 
 
 /**
  * CachedDateFormat optimizes the performance of a wrapped
- * DateFormat.  The implementation is not thread-safe.
+ * DateFormat.
  * If the millisecond pattern is not recognized,
  * the class will only use the cache if the
  * same value is requested.
  *
+ * <p>The implementation is thread-safe. The last formatted time is
+ * published as an immutable snapshot which concurrent threads read
+ * without locking, patching the millisecond digits in their own
+ * buffer. Only formatting a new second takes the lock of the wrapped
+ * formatter. Instances obtained from {@link #getInstance} are shared
+ * by all layouts using the same pattern and time zone.
+ *
  */
 public final class CachedDateFormat extends DateFormat {
   /**
@@ -84,25 +98,14 @@ public final class CachedDateFormat extends DateFormat {
   private static final String ZERO_STRING = "000";
 
   /**
-   *   Wrapped formatter.
-   */
-  private final DateFormat formatter;
-
-  /**
-   *  Index of initial digit of millisecond pattern or
-   *   UNRECOGNIZED_MILLISECONDS or NO_MILLISECONDS.
-   */
-  private int millisecondStart;
-
-  /**
-   *  Integral second preceding the previous convered Date.
+   *  Shared instances keyed by pattern, time zone ID and locale.
    */
-  private long slotBegin;
+  private static final Map instances = new HashMap();
 
   /**
-   *  Cache of previous conversion.
+   *   Wrapped formatter, also used as the lock of any call to it.
    */
-  private StringBuffer cache = new StringBuffer(50);
+  private final DateFormat formatter;
 
   /**
    *  Maximum validity period for the cache.
@@ -112,12 +115,18 @@ public final class CachedDateFormat extends DateFormat {
   private final int expiration;
 
   /**
-   *  Date requested in previous conversion.
+   *  True if the instance is shared and its time zone may not change.
    */
-  private long previousTime;
+  private final boolean shared;
 
   /**
-   *   Scratch date object used to minimize date object creation.
+   *  Previous conversion.
+   */
+  private volatile Snapshot snapshot;
+
+  /**
+   *   Scratch date object used to minimize date object creation,
+   *   guarded by the formatter.
    */
   private final Date tmpDate = new Date(0);
 
@@ -130,6 +139,17 @@ public final class CachedDateFormat extends DateFormat {
    *      caching or 1 to only use cache for duplicate requests.
    */
   public CachedDateFormat(final DateFormat dateFormat, final int expiration) {
+    this(dateFormat, expiration, false);
+  }
+
+  /**
+   *  Creates a new CachedDateFormat object.
+   *  @param dateFormat Date format, may not be null.
+   *  @param expiration maximum cached range in milliseconds.
+   *  @param shared true if the time zone may not change.
+   */
+  private CachedDateFormat(final DateFormat dateFormat, final int expiration,
+                           final boolean shared) {
     if (dateFormat == null) {
       throw new IllegalArgumentException("dateFormat cannot be null");
     }
@@ -140,13 +160,62 @@ public final class CachedDateFormat extends DateFormat {
 
     formatter = dateFormat;
     this.expiration = expiration;
-    millisecondStart = 0;
+    this.shared = shared;
 
     //
-    //   set the previousTime so the cache will be invalid
-    //        for the next request.
-    previousTime = Long.MIN_VALUE;
-    slotBegin = Long.MIN_VALUE;
+    //   the snapshot is invalid for the next request and
+    //     the millisecond field is searched after it.
+    snapshot = new Snapshot(Long.MIN_VALUE, Long.MIN_VALUE, 0, "");
+  }
+
+  /**
+   * Gets the shared instance formatting a pattern in a time zone.
+   * @param pattern SimpleDateFormat pattern or one of "ISO8601",
+   * "ABSOLUTE" and "DATE", may not be null.
+   * @param timeZone time zone, null to follow the default time zone.
+   * @return shared instance.
+   * @throws IllegalArgumentException if the pattern is invalid.
+   * @since 1.2.18
+   */
+  public static CachedDateFormat getInstance(final String pattern,
+                                             final TimeZone timeZone) {
+    String simplePattern = pattern;
+
+    if (pattern.equalsIgnoreCase("ISO8601")) {
+      simplePattern = "yyyy-MM-dd HH:mm:ss,SSS";
+    } else if (pattern.equalsIgnoreCase("ABSOLUTE")) {
+      simplePattern = "HH:mm:ss,SSS";
+    } else if (pattern.equalsIgnoreCase("DATE")) {
+      simplePattern = "dd MMM yyyy HH:mm:ss,SSS";
+    }
+
+    List key =
+      Arrays.asList(
+        new Object[] {
+          simplePattern, (timeZone == null) ? null : timeZone.getID(),
+          Locale.getDefault()
+        });
+
+    synchronized (instances) {
+      CachedDateFormat instance = (CachedDateFormat) instances.get(key);
+
+      if (instance == null) {
+        DateFormat format = new SimpleDateFormat(simplePattern);
+
+        if (timeZone == null) {
+          format = new DefaultZoneDateFormat(format);
+        } else {
+          format.setTimeZone(timeZone);
+        }
+
+        instance =
+          new CachedDateFormat(
+            format, getMaximumCacheValidity(simplePattern), true);
+        instances.put(key, instance);
+      }
+
+      return instance;
+    }
   }
 
   /**
@@ -239,12 +308,14 @@ public final class CachedDateFormat extends DateFormat {
    * @return the formatted time string.
    */
   public StringBuffer format(long now, StringBuffer buf) {
+    Snapshot previous = snapshot;
+
     //
     // If the current requested time is identical to the previously
-    //     requested time, then append the cache contents.
+    //     requested time, then append the cached text.
     //
-    if (now == previousTime) {
-      buf.append(cache);
+    if (now == previous.time) {
+      buf.append(previous.text);
 
       return buf;
     }
@@ -253,54 +324,74 @@ public final class CachedDateFormat extends DateFormat {
     //   If millisecond pattern was not unrecognized 
     //     (that is if it was found or milliseconds did not appear)   
     //    
-    if (millisecondStart != UNRECOGNIZED_MILLISECONDS &&
+    if (previous.millisecondStart != UNRECOGNIZED_MILLISECONDS &&
       //    Check if the cache is still valid.
       //    If the requested time is within the same integral second
       //       as the last request and a shorter expiration was not requested.
-        (now < (slotBegin + expiration)) && (now >= slotBegin)
-          && (now < (slotBegin + 1000L))) {
+        (now < (previous.slotBegin + expiration))
+          && (now >= previous.slotBegin)
+          && (now < (previous.slotBegin + 1000L))) {
+        int start = buf.length();
+        buf.append(previous.text);
+
         // 
         //    if there was a millisecond field then update it
         //
-        if (millisecondStart >= 0) {
-          millisecondFormat((int) (now - slotBegin), cache, millisecondStart);
+        if (previous.millisecondStart >= 0) {
+          millisecondFormat(
+            (int) (now - previous.slotBegin), buf,
+            start + previous.millisecondStart);
         }
 
-        //
-        //   update the previously requested time
-        //      (the slot begin should be unchanged)
-        previousTime = now;
-        buf.append(cache);
-
         return buf;
     }
 
     //
     //  could not use previous value.  
     //    Call underlying formatter to format date.
-    cache.setLength(0);
-    tmpDate.setTime(now);
-    cache.append(formatter.format(tmpDate));
-    buf.append(cache);
-    previousTime = now;
-    slotBegin = (previousTime / 1000) * 1000;
-
-    if (slotBegin > previousTime) {
-      slotBegin -= 1000;
-    }
-
-    //
-    //    if the milliseconds field was previous found
-    //       then reevaluate in case it moved.
-    //
-    if (millisecondStart >= 0) {
-      millisecondStart =
-        findMillisecondStart(now, cache.toString(), formatter);
-    }
+    buf.append(refresh(now).text);
 
     return buf;
   }
 
+  /**
+   * Formats a time with the wrapped formatter and publishes it as the
+   * snapshot unless a later second has been published meanwhile.
+   * @param now Number of milliseconds after midnight 1 Jan 1970 GMT.
+   * @return snapshot of the formatted time.
+   */
+  private Snapshot refresh(final long now) {
+    synchronized (formatter) {
+      Snapshot previous = snapshot;
+      tmpDate.setTime(now);
+
+      String text = formatter.format(tmpDate);
+      long slotBegin = (now / 1000) * 1000;
+
+      if (slotBegin > now) {
+        slotBegin -= 1000;
+      }
+
+      //
+      //    if the milliseconds field was previous found
+      //       then reevaluate in case it moved.
+      //
+      int millisecondStart = previous.millisecondStart;
+
+      if (millisecondStart >= 0) {
+        millisecondStart = findMillisecondStart(now, text, formatter);
+      }
+
+      Snapshot current = new Snapshot(now, slotBegin, millisecondStart, text);
+
+      if (slotBegin >= previous.slotBegin) {
+        snapshot = current;
+      }
+
+      return current;
+    }
+  }
+
   /**
    *   Formats a count of milliseconds (0-999) into a numeric representation.
    *   @param millis Millisecond coun between 0 and 999.
@@ -321,11 +412,20 @@ public final class CachedDateFormat extends DateFormat {
    * Setting the timezone using getCalendar().setTimeZone()
    * will likely cause caching to misbehave.
    * @param timeZone TimeZone new timezone
+   * @throws UnsupportedOperationException if the instance is shared.
    */
   public void setTimeZone(final TimeZone timeZone) {
-    formatter.setTimeZone(timeZone);
-    previousTime = Long.MIN_VALUE;
-    slotBegin = Long.MIN_VALUE;
+    if (shared) {
+      throw new UnsupportedOperationException(
+        "time zone of a shared instance cannot change");
+    }
+
+    synchronized (formatter) {
+      formatter.setTimeZone(timeZone);
+      snapshot =
+        new Snapshot(
+          Long.MIN_VALUE, Long.MIN_VALUE, snapshot.millisecondStart, "");
+    }
   }
 
   /**
@@ -336,7 +436,9 @@ public final class CachedDateFormat extends DateFormat {
    * @return parsed date, likely null.
    */
   public Date parse(String s, ParsePosition pos) {
-    return formatter.parse(s, pos);
+    synchronized (formatter) {
+      return formatter.parse(s, pos);
+    }
   }
 
   /**
@@ -369,4 +471,93 @@ public final class CachedDateFormat extends DateFormat {
 
     return 1000;
   }
+
+  /**
+   * Formatted time, immutable so that threads can read it without
+   * locking.
+   */
+  private static final class Snapshot implements Serializable {
+    /**
+     *  Serialization version.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     *  Formatted time.
+     */
+    final long time;
+
+    /**
+     *  Integral second preceding the formatted time.
+     */
+    final long slotBegin;
+
+    /**
+     *  Index of initial digit of millisecond pattern or
+     *   UNRECOGNIZED_MILLISECONDS or NO_MILLISECONDS.
+     */
+    final int millisecondStart;
+
+    /**
+     *  Formatted text.
+     */
+    final String text;
+
+    /**
+     * Creates a new instance.
+     * @param time formatted time.
+     * @param slotBegin integral second preceding the time.
+     * @param millisecondStart index of the millisecond field.
+     * @param text formatted text.
+     */
+    Snapshot(final long time, final long slotBegin,
+             final int millisecondStart, final String text) {
+      this.time = time;
+      this.slotBegin = slotBegin;
+      this.millisecondStart = millisecondStart;
+      this.text = text;
+    }
+  }
+
+  /**
+   * Wrapper which formats in the current default time zone.
+   */
+  private static final class DefaultZoneDateFormat extends DateFormat {
+    /**
+     *  Serialization version.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * Wrapped instance of DateFormat.
+     */
+    private final DateFormat dateFormat;
+
+    /**
+     * Construct new instance.
+     * @param format format, may not be null.
+     */
+    DefaultZoneDateFormat(final DateFormat format) {
+      dateFormat = format;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public StringBuffer format(final Date date, final StringBuffer toAppendTo,
+                               final FieldPosition fieldPosition) {
+      dateFormat.setTimeZone(TimeZone.getDefault());
+
+      return dateFormat.format(date, toAppendTo, fieldPosition);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Date parse(final String source, final ParsePosition pos) {
+      dateFormat.setTimeZone(TimeZone.getDefault());
+
+      return dateFormat.parse(source, pos);
+    }
+  }
 }
@@ -20,10 +20,6 @@ package org.apache.log4j.pattern;
 import org.apache.log4j.helpers.LogLog;
 import org.apache.log4j.spi.LoggingEvent;
 
-import java.text.SimpleDateFormat;
-import java.text.DateFormat;
-import java.text.FieldPosition;
-import java.text.ParsePosition;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -66,45 +62,6 @@ public final class DatePatternConverter extends LoggingEventPatternConverter {
    */
   private final CachedDateFormat df;
 
-    /**
-     * This class wraps a DateFormat and forces the time zone to the
-     *   default time zone before each format and parse request.
-     */
-  private static class DefaultZoneDateFormat extends DateFormat {
-     /**
-      * Serialization version ID.
-      */
-     private static final long serialVersionUID = 1;
-     /**
-         * Wrapped instance of DateFormat.
-         */
-    private final DateFormat dateFormat;
-
-        /**
-         * Construct new instance.
-         * @param format format, may not be null.
-         */
-    public DefaultZoneDateFormat(final DateFormat format) {
-        dateFormat = format;
-    }
-
-        /**
-         * @{inheritDoc}
-         */
-    public StringBuffer format(Date date, StringBuffer toAppendTo, FieldPosition fieldPosition) {
-        dateFormat.setTimeZone(TimeZone.getDefault());
-        return dateFormat.format(date, toAppendTo, fieldPosition);
-    }
-
-        /**
-         * @{inheritDoc}
-         */
-    public Date parse(String source, ParsePosition pos) {
-        dateFormat.setTimeZone(TimeZone.getDefault());
-        return dateFormat.parse(source, pos);
-    }
-  }
-  
   /**
    * Private constructor.
    * @param options options, may be null.
@@ -136,30 +93,26 @@ public final class DatePatternConverter extends LoggingEventPatternConverter {
       pattern = patternOption;
     }
 
-    int maximumCacheValidity = 1000;
-    DateFormat simpleFormat = null;
+    // if the option list contains a TZ option, then set it.
+    TimeZone timeZone = null;
+
+    if ((options != null) && (options.length > 1)) {
+      timeZone = TimeZone.getTimeZone((String) options[1]);
+    }
+
+    CachedDateFormat format;
 
     try {
-      simpleFormat = new SimpleDateFormat(pattern);
-      maximumCacheValidity = CachedDateFormat.getMaximumCacheValidity(pattern);
+      format = CachedDateFormat.getInstance(pattern, timeZone);
     } catch (IllegalArgumentException e) {
         LogLog.warn(
           "Could not instantiate SimpleDateFormat with pattern "
           + patternOption, e);
-
       // default to the ISO8601 format
-      simpleFormat = new SimpleDateFormat(ISO8601_PATTERN);
-    }
-
-    // if the option list contains a TZ option, then set it.
-    if ((options != null) && (options.length > 1)) {
-      TimeZone tz = TimeZone.getTimeZone((String) options[1]);
-      simpleFormat.setTimeZone(tz);
-    } else {
-      simpleFormat = new DefaultZoneDateFormat(simpleFormat);
+      format = CachedDateFormat.getInstance(ISO8601_PATTERN, timeZone);
     }
 
-    df = new CachedDateFormat(simpleFormat, maximumCacheValidity);
+    df = format;
   }
 
   /**
@@ -176,9 +129,7 @@ public final class DatePatternConverter extends LoggingEventPatternConverter {
    * {@inheritDoc}
    */
   public void format(final LoggingEvent event, final StringBuffer output) {
-    synchronized(this) {
-    	df.format(event.timeStamp, output);
-    }
+    df.format(event.timeStamp, output);
   }
 
   /**
@@ -198,8 +149,6 @@ public final class DatePatternConverter extends LoggingEventPatternConverter {
    * @param toAppendTo buffer to which formatted date is appended.
    */
   public void format(final Date date, final StringBuffer toAppendTo) {
-    synchronized(this) {
-    	df.format(date.getTime(), toAppendTo);
-    }
+    df.format(date.getTime(), toAppendTo);
   }
 }
@@ -80,7 +80,9 @@ public class ThrowableInformationPatternConverter
     if (maxLines != 0) {
       ThrowableInformation information = event.getThrowableInformation();
 
-      if (information != null) {
+      if (information != null && maxLines == Integer.MAX_VALUE) {
+        information.appendTo(toAppendTo, "\n");
+      } else if (information != null) {
         String[] stringRep = information.getThrowableStrRep();
 
         int length = stringRep.length;
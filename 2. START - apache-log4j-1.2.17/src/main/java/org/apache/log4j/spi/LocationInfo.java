@@ -19,15 +19,8 @@
 
 package org.apache.log4j.spi;
 
-import org.apache.log4j.Layout;
 import org.apache.log4j.helpers.LogLog;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.InterruptedIOException;
-import java.lang.reflect.Method;
-import java.lang.reflect.InvocationTargetException;
-
 /**
    The internal representation of caller location information.
 
@@ -57,14 +50,25 @@ public class LocationInfo implements java.io.Serializable {
     */
   public String fullInfo;
 
-  private static StringWriter sw = new StringWriter();
-  private static PrintWriter pw = new PrintWriter(sw);
+  /**
+     Stack frame of the caller, from which the other fields are
+     computed on demand. Null if the location was not obtained from a
+     stack trace or was deserialized.
+  */
+  private transient StackTraceElement element;
+
+  /**
+     Number of call sites whose <code>fullInfo</code> is cached, must
+     be a power of two.
+  */
+  private static final int CALL_SITES = 1024;
 
-  private static Method getStackTraceMethod;
-  private static Method getClassNameMethod;
-  private static Method getMethodNameMethod;
-  private static Method getFileNameMethod;
-  private static Method getLineNumberMethod;
+  /**
+     Recently seen call sites, indexed by the hash code of their stack
+     frame. Entries are immutable, so the cache is read and updated
+     without locking; colliding call sites simply replace each other.
+  */
+  private static final CallSite[] callSites = new CallSite[CALL_SITES];
 
 
   /**
@@ -93,24 +97,12 @@ public class LocationInfo implements java.io.Serializable {
     } catch(Throwable e) {
       // nothing to do
     }
-      try {
-          Class[] noArgs = null;
-          getStackTraceMethod = Throwable.class.getMethod("getStackTrace", noArgs);
-          Class stackTraceElementClass = Class.forName("java.lang.StackTraceElement");
-          getClassNameMethod = stackTraceElementClass.getMethod("getClassName", noArgs);
-          getMethodNameMethod = stackTraceElementClass.getMethod("getMethodName", noArgs);
-          getFileNameMethod = stackTraceElementClass.getMethod("getFileName", noArgs);
-          getLineNumberMethod = stackTraceElementClass.getMethod("getLineNumber", noArgs);
-      } catch(ClassNotFoundException ex) {
-          LogLog.debug("LocationInfo will use pre-JDK 1.4 methods to determine location.");
-      } catch(NoSuchMethodException ex) {
-          LogLog.debug("LocationInfo will use pre-JDK 1.4 methods to determine location.");
-      }
   }
 
   /**
      Instantiate location information based on a Throwable. We
-     expect the Throwable <code>t</code>, to be in the format
+     expect the stack trace of the Throwable <code>t</code> to look
+     like
 
        <pre>
         java.lang.Throwable
@@ -123,8 +115,11 @@ public class LocationInfo implements java.io.Serializable {
 	...
        </pre>
 
-       <p>However, we can also deal with JIT compilers that "lose" the
-       location information, especially between the parentheses.
+       <p>The frames are walked from the top down to the first frame
+       past those of <code>fqnOfCallingClass</code>. The class, method,
+       file name and line number of that frame are only converted to
+       strings when asked for, and <code>fullInfo</code> is shared by
+       the locations of the same call site.
         @param t throwable used to determine location, may be null.
         @param fqnOfCallingClass class name of first class considered part of
            the logging framework.  Location will be site that calls a method on this class.
@@ -133,116 +128,51 @@ public class LocationInfo implements java.io.Serializable {
     public LocationInfo(Throwable t, String fqnOfCallingClass) {
       if(t == null || fqnOfCallingClass == null)
 	return;
-      if (getLineNumberMethod != null) {
-          try {
-              Object[] noArgs = null;
-              Object[] elements =  (Object[]) getStackTraceMethod.invoke(t, noArgs);
-              String prevClass = NA;
-              for(int i = elements.length - 1; i >= 0; i--) {
-                  String thisClass = (String) getClassNameMethod.invoke(elements[i], noArgs);
-                  if(fqnOfCallingClass.equals(thisClass)) {
-                      int caller = i + 1;
-                      if (caller < elements.length) {
-                          className = prevClass;
-                          methodName = (String) getMethodNameMethod.invoke(elements[caller], noArgs);
-                          fileName = (String) getFileNameMethod.invoke(elements[caller], noArgs);
-                          if (fileName == null) {
-                              fileName = NA;
-                          }
-                          int line = ((Integer) getLineNumberMethod.invoke(elements[caller], noArgs)).intValue();
-                          if (line < 0) {
-                              lineNumber = NA;
-                          } else {
-                              lineNumber = String.valueOf(line);
-                          }
-                          StringBuffer buf = new StringBuffer();
-                          buf.append(className);
-                          buf.append(".");
-                          buf.append(methodName);
-                          buf.append("(");
-                          buf.append(fileName);
-                          buf.append(":");
-                          buf.append(lineNumber);
-                          buf.append(")");
-                          this.fullInfo = buf.toString();
-                      }
-                      return;
-                  }
-                  prevClass = thisClass;
-              }
-              return;
-          } catch(IllegalAccessException ex) {
-              LogLog.debug("LocationInfo failed using JDK 1.4 methods", ex);
-          } catch(InvocationTargetException ex) {
-              if (ex.getTargetException() instanceof InterruptedException
-                      || ex.getTargetException() instanceof InterruptedIOException) {
-                  Thread.currentThread().interrupt();
-              }
-              LogLog.debug("LocationInfo failed using JDK 1.4 methods", ex);
-          } catch(RuntimeException ex) {
-              LogLog.debug("LocationInfo failed using JDK 1.4 methods", ex);
-          }
+      StackTraceElement[] elements = t.getStackTrace();
+      int i = 0;
+      // skip the frames above the logging framework
+      while(i < elements.length
+	    && !fqnOfCallingClass.equals(elements[i].getClassName()))
+	i++;
+      // and then those of the logging framework
+      while(i < elements.length
+	    && fqnOfCallingClass.equals(elements[i].getClassName()))
+	i++;
+      if(i < elements.length) {
+	element = elements[i];
+	fullInfo = getFullInfo(element);
       }
+    }
 
-      String s;
-      // Protect against multiple access to sw.
-      synchronized(sw) {
-	t.printStackTrace(pw);
-	s = sw.toString();
-	sw.getBuffer().setLength(0);
-      }
-      //System.out.println("s is ["+s+"].");
-      int ibegin, iend;
-
-      // Given the current structure of the package, the line
-      // containing "org.apache.log4j.Category." should be printed just
-      // before the caller.
-
-      // This method of searching may not be fastest but it's safer
-      // than counting the stack depth which is not guaranteed to be
-      // constant across JVM implementations.
-      ibegin = s.lastIndexOf(fqnOfCallingClass);
-      if(ibegin == -1)
-	return;
-
-      //
-      //   if the next character after the class name exists
-      //       but is not a period, see if the classname is
-      //       followed by a period earlier in the trace.
-      //       Minimizes mistakeningly matching on a class whose
-      //       name is a substring of the desired class.
-      //       See bug 44888.
-      if (ibegin + fqnOfCallingClass.length() < s.length() &&
-              s.charAt(ibegin + fqnOfCallingClass.length()) != '.') {
-          int i = s.lastIndexOf(fqnOfCallingClass + ".");
-          if (i != -1) {
-              ibegin = i;
-          }
-      }
-
-
-      ibegin = s.indexOf(Layout.LINE_SEP, ibegin);
-      if(ibegin == -1)
-	return;
-      ibegin+= Layout.LINE_SEP_LEN;
-
-      // determine end of line
-      iend = s.indexOf(Layout.LINE_SEP, ibegin);
-      if(iend == -1)
-	return;
-
-      // VA has a different stack trace format which doesn't
-      // need to skip the inital 'at'
-      if(!inVisualAge) {
-	// back up to first blank character
-	ibegin = s.lastIndexOf("at ", iend);
-	if(ibegin == -1)
-	  return;
-	// Add 3 to skip "at ";
-	ibegin += 3;
+    /**
+     *   Returns the full location info of a stack frame, reusing the
+     *   string of a previous location of the same call site.
+     *   @param element stack frame.
+     *   @return full location info.
+     */
+    private static String getFullInfo(final StackTraceElement element) {
+      int index = element.hashCode() & (CALL_SITES - 1);
+      CallSite site = callSites[index];
+      if (site == null || !site.element.equals(element)) {
+        String file = element.getFileName();
+        int line = element.getLineNumber();
+        StringBuffer buf = new StringBuffer();
+        buf.append(element.getClassName());
+        buf.append(".");
+        buf.append(element.getMethodName());
+        buf.append("(");
+        appendFragment(buf, file);
+        buf.append(":");
+        if (line < 0) {
+          buf.append(NA);
+        } else {
+          buf.append(line);
+        }
+        buf.append(")");
+        site = new CallSite(element, buf.toString());
+        callSites[index] = site;
       }
-      // everything between is the requested stack item
-      this.fullInfo = s.substring(ibegin, iend);
+      return site.fullInfo;
     }
 
     /**
@@ -299,6 +229,9 @@ public class LocationInfo implements java.io.Serializable {
     public
     String getClassName() {
       if(fullInfo == null) return NA;
+      if(className == null && element != null) {
+	className = element.getClassName();
+      }
       if(className == null) {
 	// Starting the search from '(' is safer because there is
 	// potentially a dot between the parentheses.
@@ -340,6 +273,11 @@ public class LocationInfo implements java.io.Serializable {
     String getFileName() {
       if(fullInfo == null) return NA;
 
+      if(fileName == null && element != null) {
+	fileName = element.getFileName();
+	if(fileName == null)
+	  fileName = NA;
+      }
       if(fileName == null) {
 	int iend = fullInfo.lastIndexOf(':');
 	if(iend == -1)
@@ -361,6 +299,13 @@ public class LocationInfo implements java.io.Serializable {
     String getLineNumber() {
       if(fullInfo == null) return NA;
 
+      if(lineNumber == null && element != null) {
+	int line = element.getLineNumber();
+	if(line < 0)
+	  lineNumber = NA;
+	else
+	  lineNumber = String.valueOf(line);
+      }
       if(lineNumber == null) {
 	int iend = fullInfo.lastIndexOf(')');
 	int ibegin = fullInfo.lastIndexOf(':', iend -1);
@@ -378,6 +323,9 @@ public class LocationInfo implements java.io.Serializable {
     public
     String getMethodName() {
       if(fullInfo == null) return NA;
+      if(methodName == null && element != null) {
+	methodName = element.getMethodName();
+      }
       if(methodName == null) {
 	int iend = fullInfo.lastIndexOf('(');
 	int ibegin = fullInfo.lastIndexOf('.', iend);
@@ -388,4 +336,28 @@ public class LocationInfo implements java.io.Serializable {
       }
       return methodName;
     }
+
+    /**
+     *   Full location info of a call site.
+     */
+    private static final class CallSite {
+      /**
+       * Stack frame of the call site.
+       */
+      final StackTraceElement element;
+      /**
+       * Full location info.
+       */
+      final String fullInfo;
+
+      /**
+       * Creates a new instance.
+       * @param element stack frame.
+       * @param fullInfo full location info.
+       */
+      CallSite(final StackTraceElement element, final String fullInfo) {
+        this.element = element;
+        this.fullInfo = fullInfo;
+      }
+    }
 }
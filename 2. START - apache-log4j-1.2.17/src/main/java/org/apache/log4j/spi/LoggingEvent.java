@@ -35,6 +35,7 @@ import org.apache.log4j.NDC;
 import org.apache.log4j.Priority;
 import org.apache.log4j.helpers.Loader;
 import org.apache.log4j.helpers.LogLog;
+import org.apache.log4j.helpers.ParameterizedMessage;
 
 // Contributors:   Nelson Minar <nelson@monkey.org>
 //                 Wolf Siberski
@@ -101,6 +102,11 @@ public class LoggingEvent implements java.io.Serializable {
   /** The mapped diagnostic context (MDC) of logging event. */
   private Hashtable mdcCopy;
 
+  /** The immutable MDC of the thread when the MDC was captured,
+   *  used while mdcCopy is null. The table is only created when the
+   *  event is serialized or its properties are changed. */
+  private transient Map mdcContext;
+
 
   /** Have we tried to do an NDC lookup? If we did, there is no need
    *  to do it again.  Note that its value is always false when
@@ -287,10 +293,16 @@ public class LoggingEvent implements java.io.Serializable {
      serialization, the returned value equals the String form of the
      message possibly after object rendering.
 
+     <p>The message of a parameterized logging request, such as
+     {@link org.apache.log4j.Logger#debug(String, Object)}, is
+     formatted by this method.
+
      @since 1.1 */
   public
   Object getMessage() {
-    if(message != null) {
+    if(message instanceof ParameterizedMessage) {
+      return getRenderedMessage();
+    } else if(message != null) {
       return message;
     } else {
       return getRenderedMessage();
@@ -329,8 +341,9 @@ public class LoggingEvent implements java.io.Serializable {
     Object r;
     // Note the mdcCopy is used if it exists. Otherwise we use the MDC
     // that is associated with the thread.
-    if(mdcCopy != null) {
-      r = mdcCopy.get(key);
+    Map context = mdcCopy != null ? mdcCopy : mdcContext;
+    if(context != null) {
+      r = context.get(key);
       if(r != null) {
         return r;
       }
@@ -341,25 +354,40 @@ public class LoggingEvent implements java.io.Serializable {
   /**
      Obtain a copy of this thread's MDC prior to serialization or
      asynchronous logging.  
+
+     <p>Since 1.2.18 the MDC is immutable and this method only keeps
+     a reference to it.
   */
   public
   void getMDCCopy() {
     if(mdcCopyLookupRequired) {
       mdcCopyLookupRequired = false;
-      // the clone call is required for asynchronous logging.
-      // See also bug #5932.
-      Hashtable t = (Hashtable) MDC.getContext();
-      if(t != null) {
-	mdcCopy = (Hashtable) t.clone();
-      }
+      mdcContext = MDC.getImmutableContext();
     }
   }
 
+  /**
+     Returns the MDC copy as a hashtable that may be changed or
+     serialized, creating it from the captured context if needed.
+     @return MDC copy, null if the captured context is empty.
+   */
+  private
+  Hashtable getMDCTable() {
+    getMDCCopy();
+    if(mdcCopy == null && mdcContext != null) {
+      mdcCopy = new Hashtable(mdcContext);
+      mdcContext = null;
+    }
+    return mdcCopy;
+  }
+
   public
   String getRenderedMessage() {
      if(renderedMessage == null && message != null) {
        if(message instanceof String)
 	 renderedMessage = (String) message;
+       else if(message instanceof ParameterizedMessage)
+	 renderedMessage = message.toString();
        else {
 	 LoggerRepository repository = logger.getLoggerRepository();
 
@@ -482,7 +510,7 @@ public class LoggingEvent implements java.io.Serializable {
 
     // This call has a side effect of setting this.mdcCopy and
     // setting mdcLookupRequired to false if not already false.
-    this.getMDCCopy();
+    this.getMDCTable();
 
     // This sets the throwable sting representation of the event throwable.
     this.getThrowableStrRep();
@@ -521,10 +549,7 @@ public class LoggingEvent implements java.io.Serializable {
      */
   public final void setProperty(final String propName,
                           final String propValue) {
-        if (mdcCopy == null) {
-            getMDCCopy();
-        }
-        if (mdcCopy == null) {
+        if (getMDCTable() == null) {
             mdcCopy = new Hashtable();
         }
         mdcCopy.put(propName, propValue);      
@@ -599,10 +624,13 @@ public class LoggingEvent implements java.io.Serializable {
     public Map getProperties() {
       getMDCCopy();
       Map properties;
-      if (mdcCopy == null) {
-         properties = new HashMap();
-      } else {
+      if (mdcCopy != null) {
          properties = mdcCopy;
+      } else if (mdcContext != null) {
+         // already immutable
+         return mdcContext;
+      } else {
+         properties = new HashMap();
       }
       return Collections.unmodifiableMap(properties);
     }
@@ -627,10 +655,7 @@ public class LoggingEvent implements java.io.Serializable {
      * @since 1.2.16
      */
     public Object removeProperty(String propName) {
-        if (mdcCopy == null) {
-            getMDCCopy();
-        }
-        if (mdcCopy == null) {
+        if (getMDCTable() == null) {
             mdcCopy = new Hashtable();
         }
         return mdcCopy.remove(propName);
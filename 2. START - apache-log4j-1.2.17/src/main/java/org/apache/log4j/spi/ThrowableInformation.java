@@ -17,6 +17,8 @@
 
 package org.apache.log4j.spi;
 
+import java.lang.ref.WeakReference;
+
 import org.apache.log4j.Category;
 import org.apache.log4j.DefaultThrowableRenderer;
 
@@ -30,6 +32,11 @@ import org.apache.log4j.DefaultThrowableRenderer;
   * corresponding to the second entry of the 'rep' array that is
   * rep[1].
   *
+  * <p>The representation is rendered once, when first needed, and
+  * is shared with the events of the same throwable object that were
+  * rendered recently, so logging the same exception again does not
+  * render it again.
+  *
   * @author Ceki G&uuml;lc&uuml;
   *
   * */
@@ -37,9 +44,22 @@ public class ThrowableInformation implements java.io.Serializable {
 
   static final long serialVersionUID = -4748765566864322735L;
 
+  /**
+   * Number of recently rendered throwables remembered, must be a
+   * power of two.
+   */
+  private static final int RECENT_SIZE = 64;
+
+  /**
+   * Recently rendered throwables, indexed by their identity hash
+   * code. Entries are immutable, so the cache is read and updated
+   * without locking.
+   */
+  private static final Rendering[] recent = new Rendering[RECENT_SIZE];
+
   private transient Throwable throwable;
   private transient Category category;
-  private String[] rep;
+  private volatile String[] rep;
 
   public
   ThrowableInformation(Throwable throwable) {
@@ -74,8 +94,34 @@ public class ThrowableInformation implements java.io.Serializable {
     return throwable;
   }
 
-  public synchronized String[] getThrowableStrRep() {
-    if(rep == null) {
+  public String[] getThrowableStrRep() {
+    return (String[]) getRep().clone();
+  }
+
+  /**
+   * Appends the string representation to a buffer, each line
+   * followed by a line separator, without copying the lines.
+   * @param buf buffer.
+   * @param lineSep line separator.
+   * @since 1.2.18
+   */
+  public void appendTo(final StringBuffer buf, final String lineSep) {
+    String[] lines = getRep();
+    for (int i = 0; i < lines.length; i++) {
+      buf.append(lines[i]);
+      buf.append(lineSep);
+    }
+  }
+
+  /**
+   * Returns the lines of the string representation, rendering them
+   * if needed. Threads racing to render the throwable each render it,
+   * but all of them get the same lines.
+   * @return lines, may not be modified.
+   */
+  private String[] getRep() {
+    String[] lines = rep;
+    if (lines == null) {
       ThrowableRenderer renderer = null;
       if (category != null) {
           LoggerRepository repo = category.getLoggerRepository();
@@ -83,14 +129,52 @@ public class ThrowableInformation implements java.io.Serializable {
               renderer = ((ThrowableRendererSupport) repo).getThrowableRenderer();
           }
       }
-      if (renderer == null) {
-          rep = DefaultThrowableRenderer.render(throwable);
+      int index = System.identityHashCode(throwable) & (RECENT_SIZE - 1);
+      Rendering rendering = recent[index];
+      if (rendering != null && rendering.throwable.get() == throwable
+          && rendering.renderer == renderer) {
+          lines = rendering.lines;
       } else {
-          rep = renderer.doRender(throwable);
+          if (renderer == null) {
+              lines = DefaultThrowableRenderer.render(throwable);
+          } else {
+              lines = renderer.doRender(throwable);
+          }
+          recent[index] = new Rendering(throwable, renderer, lines);
       }
+      rep = lines;
     }
-    return (String[]) rep.clone();
+    return lines;
   }
-}
 
+  /**
+   * String representation of a recently rendered throwable.
+   */
+  private static final class Rendering {
+    /**
+     * Throwable, only weakly referenced.
+     */
+    final WeakReference throwable;
+    /**
+     * Renderer used, null for the default one.
+     */
+    final ThrowableRenderer renderer;
+    /**
+     * Rendered lines.
+     */
+    final String[] lines;
 
+    /**
+     * Creates a new instance.
+     * @param throwable throwable.
+     * @param renderer renderer, may be null.
+     * @param lines rendered lines.
+     */
+    Rendering(final Throwable throwable, final ThrowableRenderer renderer,
+              final String[] lines) {
+      this.throwable = new WeakReference(throwable);
+      this.renderer = renderer;
+      this.lines = lines;
+    }
+  }
+}
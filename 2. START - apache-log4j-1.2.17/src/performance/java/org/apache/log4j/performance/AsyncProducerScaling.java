@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.AsyncAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.RingBufferAsyncAppender;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Measures how the throughput of {@link AsyncAppender} and {@link
+   RingBufferAsyncAppender} scales with the number of producer threads.
+
+   <p>Usage: <code>java org.apache.log4j.performance.AsyncProducerScaling
+   [maxThreads] [eventsPerThread] [bufferSize]</code>
+
+   <p>The thread count doubles from 1 up to <code>maxThreads</code>
+   (64 by default). For each count the program prints the number of
+   events per second accepted by each appender configuration. Events
+   are dispatched to an appender that only counts them.
+
+*/
+public class AsyncProducerScaling {
+
+  static Logger logger = Logger.getLogger(AsyncProducerScaling.class);
+
+  static
+  public
+  void main(String[] args) throws Exception {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    int eventsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+    int bufferSize = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+
+    String[] strategies = { "spin", "yield", "park" };
+
+    System.out.println("threads\tAsyncAppender\tring-spin\tring-yield\tring-park");
+    for(int threads = 1; threads <= maxThreads; threads *= 2) {
+      StringBuffer line = new StringBuffer();
+      line.append(threads);
+
+      AsyncAppender async = new AsyncAppender();
+      async.setBufferSize(bufferSize);
+      line.append('\t').append(run(async, threads, eventsPerThread));
+
+      for(int i = 0; i < strategies.length; i++) {
+	RingBufferAsyncAppender ring = new RingBufferAsyncAppender();
+	ring.setBufferSize(bufferSize);
+	ring.setWaitStrategy(strategies[i]);
+	line.append('\t').append(run(ring, threads, eventsPerThread));
+      }
+      System.out.println(line);
+    }
+  }
+
+  /**
+     Returns the number of events per second, including the time
+     needed to drain the buffer on close.
+   */
+  static
+  long run(Appender async, int threads, final int eventsPerThread)
+                                              throws InterruptedException {
+    CountingAppender counter = new CountingAppender();
+    ((org.apache.log4j.spi.AppenderAttachable) async).addAppender(counter);
+    ((org.apache.log4j.spi.OptionHandler) async).activateOptions();
+
+    final LoggingEvent event = new LoggingEvent(AsyncProducerScaling.class.getName(),
+					  logger, Level.INFO, "Hello world", null);
+    final Appender target = async;
+    Thread[] producers = new Thread[threads];
+    for(int i = 0; i < threads; i++) {
+      producers[i] = new Thread(new Runnable() {
+	  public void run() {
+	    for(int j = 0; j < eventsPerThread; j++) {
+	      target.doAppend(event);
+	    }
+	  }
+	});
+    }
+
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < threads; i++) {
+      producers[i].start();
+    }
+    for(int i = 0; i < threads; i++) {
+      producers[i].join();
+    }
+    async.close();
+    long elapsed = Math.max(1, System.currentTimeMillis() - before);
+
+    if(counter.count != (long) threads * eventsPerThread) {
+      System.err.println("Expected " + ((long) threads * eventsPerThread)
+			 + " events, got " + counter.count);
+    }
+    return counter.count * 1000 / elapsed;
+  }
+
+  /**
+     Counts appended events, only ever called from one dispatcher thread.
+   */
+  static class CountingAppender extends AppenderSkeleton {
+    long count;
+
+    public
+    void append(LoggingEvent event) {
+      count++;
+    }
+
+    public
+    void close() {
+    }
+
+    public
+    boolean requiresLayout() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Measures the bytes allocated per event when a {@link WriterAppender}
+   with a {@link PatternLayout} writes to a stream, with and without
+   the <b>DirectEncoding</b> option.
+
+   <p>Usage: <code>java org.apache.log4j.performance.FormattingAllocation
+   [events] [pattern]</code>
+
+   <p>The same event is appended repeatedly to a stream that discards
+   its input, so the figures reflect formatting and encoding only.
+   On JVMs exposing <code>getThreadAllocatedBytes</code> through the
+   thread management bean the count is exact; elsewhere it is
+   estimated from the heap usage, which is unreliable if a collection
+   occurs during a run.
+
+*/
+public class FormattingAllocation {
+
+  static
+  public
+  void main(String[] args) throws Exception {
+    int events = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    String pattern = args.length > 1 ? args[1] : "%r [%t] %-5p %c - %m%n";
+
+    Logger logger = Logger.getLogger(FormattingAllocation.class);
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+					  Level.INFO, "Hello world", null);
+
+    System.out.println("mode\tbytes/event\tevents/s");
+    for(int round = 0; round < 3; round++) {
+      run("string", false, pattern, event, events);
+      run("direct", true, pattern, event, events);
+    }
+  }
+
+  static
+  void run(String mode, boolean direct, String pattern, LoggingEvent event,
+	   int events) {
+    WriterAppender appender = new StreamAppender(new PatternLayout(pattern),
+						 direct);
+
+    // warm up
+    for(int i = 0; i < 10000; i++) {
+      appender.doAppend(event);
+    }
+
+    long allocated = allocatedBytes();
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < events; i++) {
+      appender.doAppend(event);
+    }
+    long elapsed = Math.max(1, System.currentTimeMillis() - before);
+    allocated = allocatedBytes() - allocated;
+    appender.close();
+
+    System.out.println(mode + "\t" + (allocated / events) + "\t"
+		       + ((long) events * 1000 / elapsed));
+  }
+
+  private static Object threadBean;
+  private static Object threadId;
+  private static Method allocatedBytes;
+
+  static {
+    try {
+      Class factory = Class.forName("java.lang.management.ManagementFactory");
+      threadBean = factory.getMethod("getThreadMXBean", null).invoke(null, null);
+      Class beanClass = Class.forName("com.sun.management.ThreadMXBean");
+      allocatedBytes = beanClass.getMethod("getThreadAllocatedBytes",
+					   new Class[] { long.class });
+      threadId = Thread.class.getMethod("getId", null).invoke(Thread.currentThread(), null);
+    } catch(Exception e) {
+      allocatedBytes = null;
+    }
+  }
+
+  static
+  long allocatedBytes() {
+    if(allocatedBytes != null) {
+      try {
+	Object[] id = { threadId };
+	return ((Long) allocatedBytes.invoke(threadBean, id)).longValue();
+      } catch(Exception e) {
+	allocatedBytes = null;
+      }
+    }
+    Runtime rt = Runtime.getRuntime();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  /**
+     A WriterAppender writing to a {@link NullOutputStream}.
+   */
+  static class StreamAppender extends WriterAppender {
+    StreamAppender(PatternLayout layout, boolean direct) {
+      setLayout(layout);
+      setImmediateFlush(false);
+      setDirectEncoding(direct);
+      setWriter(createStreamWriter(new NullOutputStream()));
+    }
+  }
+
+  static class NullOutputStream extends OutputStream {
+    public void write(int b) {}
+    public void write(byte[] b, int off, int len) {}
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.jdbc.JDBCAppender;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Measures the rows per second inserted by {@link JDBCAppender} with
+   one statement per event and with batches of a prepared statement.
+
+   <p>Usage: <code>java org.apache.log4j.performance.JDBCBatch
+   driverClass url [events] [bufferSize]</code>
+
+   <p>The driver of an embedded in-process database must be on the
+   class path, for example <code>org.h2.Driver
+   jdbc:h2:mem:bench</code> or
+   <code>org.apache.derby.jdbc.EmbeddedDriver
+   jdbc:derby:memory:bench;create=true</code>. The program creates a
+   <code>LOG_BENCH</code> table and empties it before each run.
+
+   <p>Messages contain no quotes, which the statement mode could not
+   insert. For each mode the program prints the rate at which events
+   were appended and the rate at which rows were inserted, counting
+   the time needed to close the appender. The <code>background</code>
+   mode inserts batches from the flushing thread.
+
+*/
+public class JDBCBatch {
+
+  static final String STATEMENT_SQL =
+    "insert into LOG_BENCH (LOGGED, LVL, LOGGER, MSG) values "
+    + "('%d{yyyy-MM-dd HH:mm:ss.SSS}', '%p', '%c', '%m')";
+
+  static final String PREPARED_SQL =
+    "insert into LOG_BENCH (LOGGED, LVL, LOGGER, MSG) values (?, ?, ?, ?)";
+
+  static
+  public
+  void main(String[] args) throws Exception {
+    if(args.length < 2) {
+      System.err.println("Usage: java " + JDBCBatch.class.getName()
+			 + " driverClass url [events] [bufferSize]");
+      System.exit(1);
+    }
+    Class.forName(args[0]);
+    String url = args[1];
+    int events = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+    int bufferSize = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+    // keeps an in-memory database alive between runs
+    Connection keeper = DriverManager.getConnection(url);
+    Statement stmt = keeper.createStatement();
+    try {
+      stmt.executeUpdate("drop table LOG_BENCH");
+    } catch(SQLException e) {
+      // did not exist
+    }
+    stmt.executeUpdate("create table LOG_BENCH (LOGGED timestamp, "
+		       + "LVL varchar(10), LOGGER varchar(255), MSG varchar(255))");
+
+    Logger logger = Logger.getLogger(JDBCBatch.class);
+    LoggingEvent[] samples = new LoggingEvent[100];
+    for(int i = 0; i < samples.length; i++) {
+      samples[i] = new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+				    "Message number " + i, null);
+    }
+
+    System.out.println("mode\tappended/s\tinserted/s");
+    for(int round = 0; round < 3; round++) {
+      run("statement", keeper, url, samples, events, bufferSize);
+      run("batch", keeper, url, samples, events, bufferSize);
+      run("background", keeper, url, samples, events, bufferSize);
+    }
+    keeper.close();
+  }
+
+  static
+  void run(String mode, Connection keeper, String url, LoggingEvent[] samples,
+	   int events, int bufferSize) throws Exception {
+    keeper.createStatement().executeUpdate("delete from LOG_BENCH");
+
+    JDBCAppender appender = new JDBCAppender();
+    appender.setURL(url);
+    appender.setUser(null);
+    appender.setPassword(null);
+    appender.setBufferSize(bufferSize);
+    if(mode.equals("statement")) {
+      appender.setSql(STATEMENT_SQL);
+    } else {
+      appender.setSql(PREPARED_SQL);
+      appender.setParameters("timestamp, level, logger, message");
+    }
+    if(mode.equals("background")) {
+      appender.setFlushInterval(1000);
+    }
+    appender.activateOptions();
+
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < events; i++) {
+      appender.doAppend(samples[i % samples.length]);
+    }
+    long appended = System.currentTimeMillis();
+    appender.close();
+    long inserted = System.currentTimeMillis();
+
+    ResultSet rs = keeper.createStatement().executeQuery("select count(*) from LOG_BENCH");
+    rs.next();
+    if(rs.getInt(1) != events) {
+      System.err.println(mode + ": expected " + events + " rows, found " + rs.getInt(1));
+    }
+    System.out.println(mode + "\t" + rate(events, appended - before)
+		       + "\t" + rate(events, inserted - before));
+  }
+
+  static
+  long rate(int events, long millis) {
+    return (long) events * 1000 / Math.max(1, millis);
+  }
+}
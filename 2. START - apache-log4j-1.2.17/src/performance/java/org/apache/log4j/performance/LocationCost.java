@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Measures the cost of caller location information by formatting
+   events with and without location conversions.
+
+   <p>Usage: <code>java org.apache.log4j.performance.LocationCost
+   [runLength]</code>
+
+   <p>For each pattern the program prints the time in nanoseconds
+   needed to create and format an event, the location being computed
+   from a new stack trace for every event as it is when logging.
+
+*/
+public class LocationCost {
+
+  static final String[] PATTERNS = {
+    "%-5p %c - %m%n",
+    "%-5p %c %L - %m%n",
+    "%-5p %C.%M(%F:%L) - %m%n",
+    "%-5p %l - %m%n"
+  };
+
+  static
+  public
+  void main(String[] args) {
+    int runLength = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    Logger logger = Logger.getLogger(LocationCost.class);
+
+    for(int round = 0; round < 3; round++) {
+      for(int p = 0; p < PATTERNS.length; p++) {
+	PatternLayout layout = new PatternLayout(PATTERNS[p]);
+	long before = System.currentTimeMillis();
+	int length = 0;
+	for(int i = 0; i < runLength; i++) {
+	  length += Site.format(logger, layout).length();
+	}
+	long nanos = (System.currentTimeMillis() - before) * 1000000 / runLength;
+	System.out.println(PATTERNS[p].trim() + "\t" + nanos + " ns");
+	if(length < 0) {
+	  System.out.println(length);
+	}
+      }
+    }
+  }
+
+  // Stands for the logger class, the location being that of its caller.
+  static class Site {
+    static
+    String format(Logger logger, PatternLayout layout) {
+      LoggingEvent event = new LoggingEvent(Site.class.getName(), logger,
+					    Level.INFO, "message", null);
+      return layout.format(event);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import java.util.Hashtable;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Measures the cost of capturing the MDC in a logging event, as
+   done for asynchronous and remote appenders, and of changing the
+   MDC, with 0, 5 and 20 keys.
+
+   <p>Usage: <code>java org.apache.log4j.performance.MDCSnapshot
+   [runLength]</code>
+
+   <p>For each size the program prints, in nanoseconds per operation:
+   <ul>
+   <li><code>capture</code>: creating an event and calling
+   <code>getMDCCopy()</code>, which keeps a reference to the
+   immutable context,</li>
+   <li><code>clone</code>: creating an event and cloning a Hashtable
+   of the same size, which is what capturing used to cost,</li>
+   <li><code>put/remove</code>: putting and removing one key.</li>
+   </ul>
+
+*/
+public class MDCSnapshot {
+
+  static final int[] SIZES = {0, 5, 20};
+
+  static
+  public
+  void main(String[] args) {
+    int runLength = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    Logger logger = Logger.getLogger(MDCSnapshot.class);
+
+    System.out.println("keys\tcapture\tclone\tput/remove");
+    for(int round = 0; round < 3; round++) {
+      for(int s = 0; s < SIZES.length; s++) {
+	MDC.clear();
+	Hashtable table = new Hashtable();
+	for(int i = 0; i < SIZES[s]; i++) {
+	  MDC.put("key" + i, "value" + i);
+	  table.put("key" + i, "value" + i);
+	}
+	System.out.println(SIZES[s] + "\t" + capture(logger, runLength)
+			   + "\t" + cloneTable(logger, table, runLength)
+			   + "\t" + putRemove(runLength));
+      }
+    }
+    MDC.clear();
+  }
+
+  static
+  long capture(Logger logger, int runLength) {
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < runLength; i++) {
+      LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+					    Level.INFO, "message", null);
+      event.getMDCCopy();
+    }
+    return (System.currentTimeMillis() - before) * 1000000 / runLength;
+  }
+
+  static
+  long cloneTable(Logger logger, Hashtable table, int runLength) {
+    long before = System.currentTimeMillis();
+    int size = 0;
+    for(int i = 0; i < runLength; i++) {
+      new LoggingEvent(Logger.class.getName(), logger, Level.INFO, "message", null);
+      size += ((Hashtable) table.clone()).size();
+    }
+    if(size < 0) {
+      System.out.println(size);
+    }
+    return (System.currentTimeMillis() - before) * 1000000 / runLength;
+  }
+
+  static
+  long putRemove(int runLength) {
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < runLength; i++) {
+      MDC.put("extra", "value");
+      MDC.remove("extra");
+    }
+    return (System.currentTimeMillis() - before) * 1000000 / runLength;
+  }
+}
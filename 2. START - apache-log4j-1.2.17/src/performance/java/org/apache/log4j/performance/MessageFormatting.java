@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+
+import org.apache.log4j.helpers.MessageFormatter;
+
+/**
+
+   Compares the formatting of the patterns of <code>LogMF</code> and
+   <code>LogSF</code> by {@link MessageFormatter} with the way they
+   were formatted before it existed.
+
+   <p>Usage: <code>java org.apache.log4j.performance.MessageFormatting
+   [threads] [runLength]</code>
+
+   <p>Each thread formats <code>runLength</code> messages. The
+   program prints the number of messages formatted per millisecond by
+   all threads for a simple MessageFormat pattern with a
+   <code>Double</code>, whose number format used to be shared under a
+   lock, for a pattern with a number format element, which used to be
+   parsed by <code>MessageFormat.format</code> on every call, and for
+   an SLF4J pattern, which used to be scanned on every call.
+
+*/
+public class MessageFormatting {
+
+  static final String SIMPLE = "Processed {0} items in {1} seconds";
+  static final String COMPLEX = "Processed {0,number,integer} items in {1,number,#.##} seconds";
+  static final String SF = "Processed {} items in {} seconds";
+
+  static final String[] CASES = {"simple", "complex", "slf4j"};
+
+  static NumberFormat sharedNumberFormat = NumberFormat.getInstance();
+
+  static
+  public
+  void main(String[] args) throws InterruptedException {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int runLength = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+    System.out.println("pattern\tbefore\tnow\t(messages/ms, " + threads + " threads)");
+    for(int round = 0; round < 3; round++) {
+      for(int c = 0; c < CASES.length; c++) {
+	System.out.println(CASES[c] + "\t" + run(c, false, threads, runLength)
+			   + "\t" + run(c, true, threads, runLength));
+      }
+    }
+  }
+
+  static
+  long run(final int c, final boolean cached, int threadCount,
+	   final int runLength) throws InterruptedException {
+    Thread[] threads = new Thread[threadCount];
+    for(int t = 0; t < threadCount; t++) {
+      threads[t] = new Thread() {
+	  public void run() {
+	    int length = 0;
+	    for(int i = 0; i < runLength; i++) {
+	      Object[] arguments = {new Integer(i), new Double(i / 7.0)};
+	      length += format(c, cached, arguments).length();
+	    }
+	    if(length < 0) {
+	      System.out.println(length);
+	    }
+	  }
+	};
+    }
+    long before = System.currentTimeMillis();
+    for(int t = 0; t < threadCount; t++) {
+      threads[t].start();
+    }
+    for(int t = 0; t < threadCount; t++) {
+      threads[t].join();
+    }
+    long millis = Math.max(1, System.currentTimeMillis() - before);
+    return (long) threadCount * runLength / millis;
+  }
+
+  static
+  String format(int c, boolean cached, Object[] arguments) {
+    switch(c) {
+    case 0:
+      if(cached) {
+	return MessageFormatter.formatMF(SIMPLE, arguments);
+      }
+      return "Processed " + arguments[0] + " items in "
+	+ formatNumber(arguments[1]) + " seconds";
+    case 1:
+      if(cached) {
+	return MessageFormatter.formatMF(COMPLEX, arguments);
+      }
+      return MessageFormat.format(COMPLEX, arguments);
+    default:
+      if(cached) {
+	return MessageFormatter.formatSF(SF, arguments);
+      }
+      return formatSF(SF, arguments);
+    }
+  }
+
+  static
+  synchronized
+  String formatNumber(Object n) {
+    return sharedNumberFormat.format(n);
+  }
+
+  // The former scanning of LogSF.
+  static
+  String formatSF(String pattern, Object[] arguments) {
+    String retval = "";
+    int count = 0;
+    int prev = 0;
+    int pos = pattern.indexOf("{");
+    while(pos >= 0) {
+      retval += pattern.substring(prev, pos);
+      if(pos + 1 < pattern.length() && pattern.charAt(pos + 1) == '}') {
+	retval += arguments[count++];
+	prev = pos + 2;
+      } else {
+	retval += "{";
+	prev = pos + 1;
+      }
+      pos = pattern.indexOf("{", prev);
+    }
+    return retval + pattern.substring(prev);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.pattern.BridgePatternConverter;
+import org.apache.log4j.pattern.FormattingInfo;
+import org.apache.log4j.pattern.LoggingEventPatternConverter;
+import org.apache.log4j.pattern.PatternParser;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Measures the cost of formatting an event with common conversion
+   patterns.
+
+   <p>Usage: <code>java org.apache.log4j.performance.PatternFormatting
+   [runLength]</code>
+
+   <p>For each pattern the program prints, in nanoseconds per event:
+   <ul>
+   <li><code>parsed</code>: formatting with each parsed converter and
+   adjusting each field, as EnhancedPatternLayout used to,</li>
+   <li><code>compiled</code>: formatting with the compiled chain of
+   {@link BridgePatternConverter}, used by EnhancedPatternLayout,</li>
+   <li><code>PatternLayout</code>: formatting with PatternLayout.</li>
+   </ul>
+
+*/
+public class PatternFormatting {
+
+  static final String[] PATTERNS = {
+    "%d %-5p [%t] %c - %m%n",
+    "%r [%t] %-5p %c %x - %m%n",
+    "%d{ISO8601} %-5p %c{1} - %m%n"
+  };
+
+  static
+  public
+  void main(String[] args) {
+    int runLength = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    Logger logger = Logger.getLogger(PatternFormatting.class);
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+					  Level.INFO, "Message number 1", null);
+
+    System.out.println("parsed\tcompiled\tPatternLayout\tpattern");
+    for(int round = 0; round < 3; round++) {
+      for(int p = 0; p < PATTERNS.length; p++) {
+	System.out.println(parsed(PATTERNS[p], event, runLength)
+			   + "\t" + compiled(PATTERNS[p], event, runLength)
+			   + "\t" + patternLayout(PATTERNS[p], event, runLength)
+			   + "\t" + PATTERNS[p]);
+      }
+    }
+  }
+
+  static
+  long parsed(String pattern, LoggingEvent event, int runLength) {
+    List converterList = new ArrayList();
+    List fieldList = new ArrayList();
+    PatternParser.parse(pattern, converterList, fieldList, null,
+			PatternParser.getPatternLayoutRules());
+    LoggingEventPatternConverter[] converters = (LoggingEventPatternConverter[])
+      converterList.toArray(new LoggingEventPatternConverter[converterList.size()]);
+    FormattingInfo[] fields = (FormattingInfo[])
+      fieldList.toArray(new FormattingInfo[fieldList.size()]);
+
+    StringBuffer buf = new StringBuffer(256);
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < runLength; i++) {
+      buf.setLength(0);
+      for(int c = 0; c < converters.length; c++) {
+	int start = buf.length();
+	converters[c].format(event, buf);
+	fields[c].format(start, buf);
+      }
+    }
+    return (System.currentTimeMillis() - before) * 1000000 / runLength;
+  }
+
+  static
+  long compiled(String pattern, LoggingEvent event, int runLength) {
+    BridgePatternConverter converter = new BridgePatternConverter(pattern);
+    StringBuffer buf = new StringBuffer(256);
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < runLength; i++) {
+      buf.setLength(0);
+      converter.format(buf, event);
+    }
+    return (System.currentTimeMillis() - before) * 1000000 / runLength;
+  }
+
+  static
+  long patternLayout(String pattern, LoggingEvent event, int runLength) {
+    PatternLayout layout = new PatternLayout(pattern);
+    StringBuffer buf = new StringBuffer(256);
+    long before = System.currentTimeMillis();
+    for(int i = 0; i < runLength; i++) {
+      buf.setLength(0);
+      layout.format(buf, event);
+    }
+    return (System.currentTimeMillis() - before) * 1000000 / runLength;
+  }
+}
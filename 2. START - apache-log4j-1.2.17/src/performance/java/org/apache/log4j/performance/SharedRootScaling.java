@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.ErrorHandler;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.Layout;
+
+/**
+
+   Measures how the throughput of logging through loggers that share
+   the root logger's appender scales with the number of threads.
+
+   <p>Usage: <code>java org.apache.log4j.performance.SharedRootScaling
+   [maxThreads] [eventsPerThread]</code>
+
+   <p>Each thread logs through its own logger, all of which inherit
+   a single unsynchronized appender attached to root. The appender
+   does nothing, so the figures reflect the cost of walking the
+   hierarchy in <code>Category.callAppenders</code>.
+
+*/
+public class SharedRootScaling {
+
+  static
+  public
+  void main(String[] args) throws Exception {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) :
+                                 Runtime.getRuntime().availableProcessors() * 2;
+    final int eventsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+    Logger.getRootLogger().removeAllAppenders();
+    Logger.getRootLogger().addAppender(new DiscardingAppender());
+
+    System.out.println("threads\tevents/s");
+    for(int threads = 1; threads <= maxThreads; threads *= 2) {
+      Thread[] loggers = new Thread[threads];
+      for(int i = 0; i < threads; i++) {
+	final Logger logger = Logger.getLogger("a.b.c.d.e.f.Thread" + i);
+	loggers[i] = new Thread(new Runnable() {
+	    public void run() {
+	      for(int j = 0; j < eventsPerThread; j++) {
+		logger.info("Hello world");
+	      }
+	    }
+	  });
+      }
+      long before = System.currentTimeMillis();
+      for(int i = 0; i < threads; i++) {
+	loggers[i].start();
+      }
+      for(int i = 0; i < threads; i++) {
+	loggers[i].join();
+      }
+      long elapsed = Math.max(1, System.currentTimeMillis() - before);
+      System.out.println(threads + "\t" + ((long) threads * eventsPerThread * 1000 / elapsed));
+    }
+  }
+
+  /**
+     An appender without any synchronization that drops every event.
+   */
+  static class DiscardingAppender implements Appender {
+    String name;
+
+    public void addFilter(Filter newFilter) {}
+    public Filter getFilter() { return null; }
+    public void clearFilters() {}
+    public void close() {}
+    public void doAppend(LoggingEvent event) {}
+    public String getName() { return name; }
+    public void setErrorHandler(ErrorHandler errorHandler) {}
+    public ErrorHandler getErrorHandler() { return null; }
+    public void setLayout(Layout layout) {}
+    public Layout getLayout() { return null; }
+    public void setName(String name) { this.name = name; }
+    public boolean requiresLayout() { return false; }
+  }
+}
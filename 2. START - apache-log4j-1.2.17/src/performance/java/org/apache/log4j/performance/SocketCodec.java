@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.NDC;
+import org.apache.log4j.net.BinaryEventDecoder;
+import org.apache.log4j.net.BinaryEventEncoder;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+
+   Compares the size and speed of the two event encodings of {@link
+   org.apache.log4j.net.SocketAppender}: Java serialization with a
+   stream reset after each event, and the binary format of {@link
+   BinaryEventEncoder}.
+
+   <p>Usage: <code>java org.apache.log4j.performance.SocketCodec
+   [events]</code>
+
+   <p>Events are encoded as the appender sends them, one flush per
+   event, to a stream that only counts bytes. They are then decoded
+   from memory as {@link org.apache.log4j.net.SocketNode} reads them.
+   Events carry an NDC and three MDC entries; with the
+   <code>throwable</code> variant every tenth event also carries a
+   stack trace.
+
+*/
+public class SocketCodec {
+
+  static
+  public
+  void main(String[] args) throws Exception {
+    int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+    Logger logger = Logger.getLogger("org.apache.log4j.performance.SocketCodec");
+    NDC.push("request-17");
+    MDC.put("user", "alice");
+    MDC.put("session", "5f2c9a");
+    MDC.put("host", "web-3");
+    LoggingEvent[] plain = createEvents(logger, false);
+    LoggingEvent[] thrown = createEvents(logger, true);
+
+    System.out.println("codec\tvariant\tbytes/event\tencoded/s\tdecoded/s");
+    for(int round = 0; round < 3; round++) {
+      run("serialized", "plain", plain, events);
+      run("binary", "plain", plain, events);
+      run("serialized", "throwable", thrown, events);
+      run("binary", "throwable", thrown, events);
+    }
+  }
+
+  static
+  LoggingEvent[] createEvents(Logger logger, boolean throwables) {
+    LoggingEvent[] events = new LoggingEvent[100];
+    Exception ex = new Exception("Something failed");
+    for(int i = 0; i < events.length; i++) {
+      LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+					    Level.INFO, "Message number " + i,
+					    throwables && i % 10 == 0 ? ex : null);
+      // fill in what the appender sends
+      event.getNDC();
+      event.getThreadName();
+      event.getMDCCopy();
+      event.getRenderedMessage();
+      event.getThrowableStrRep();
+      events[i] = event;
+    }
+    return events;
+  }
+
+  static
+  void run(String codec, String variant, LoggingEvent[] samples, int events)
+                                                           throws Exception {
+    boolean binary = codec.equals("binary");
+    CountingOutputStream counter = new CountingOutputStream();
+    long elapsed = encode(binary, samples, events, counter);
+    long encodeRate = (long) events * 1000 / Math.max(1, elapsed);
+    long bytesPerEvent = counter.count / events;
+
+    // decode a smaller stream kept in memory
+    int decoded = Math.min(events, 50000);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    encode(binary, samples, decoded, bytes);
+    long before = System.currentTimeMillis();
+    decode(binary, new ByteArrayInputStream(bytes.toByteArray()), decoded);
+    elapsed = Math.max(1, System.currentTimeMillis() - before);
+
+    System.out.println(codec + "\t" + variant + "\t" + bytesPerEvent + "\t"
+		       + encodeRate + "\t" + ((long) decoded * 1000 / elapsed));
+  }
+
+  static
+  long encode(boolean binary, LoggingEvent[] samples, int events,
+	      OutputStream out) throws Exception {
+    long before = System.currentTimeMillis();
+    if(binary) {
+      BinaryEventEncoder.writeHeader(out);
+      BinaryEventEncoder encoder = new BinaryEventEncoder();
+      for(int i = 0; i < events; i++) {
+	encoder.reset();
+	encoder.encode(samples[i % samples.length]);
+	encoder.writeTo(out);
+	out.flush();
+      }
+    } else {
+      ObjectOutputStream oos = new ObjectOutputStream(out);
+      for(int i = 0; i < events; i++) {
+	oos.writeObject(samples[i % samples.length]);
+	oos.flush();
+	oos.reset();
+      }
+    }
+    return System.currentTimeMillis() - before;
+  }
+
+  static
+  void decode(boolean binary, InputStream in, int events) throws Exception {
+    if(binary) {
+      BinaryEventDecoder.readHeader(in);
+      BinaryEventDecoder decoder =
+	new BinaryEventDecoder(LogManager.getLoggerRepository());
+      for(int i = 0; i < events; i++) {
+	decoder.read(in);
+      }
+    } else {
+      ObjectInputStream ois = new ObjectInputStream(in);
+      for(int i = 0; i < events; i++) {
+	ois.readObject();
+      }
+    }
+  }
+
+  static class CountingOutputStream extends OutputStream {
+    long count;
+    public void write(int b) { count++; }
+    public void write(byte[] b, int off, int len) { count += len; }
+  }
+}
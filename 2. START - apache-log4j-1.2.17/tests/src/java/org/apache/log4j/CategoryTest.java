@@ -18,6 +18,8 @@
 package org.apache.log4j;
 
 import junit.framework.TestCase;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
 
 import java.lang.reflect.Method;
 
@@ -86,6 +88,178 @@ public class CategoryTest extends TestCase {
     logger.setPriority(debug);
   }
 
+  /**
+   * Tests that a cached effective level follows level changes of ancestors.
+   */
+  public void testEnabledLevelFollowsAncestors() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    Logger deep = h.getLogger("org.example.a.b.c.d");
+    assertTrue(deep.isDebugEnabled());
+
+    Logger example = h.getLogger("org.example");
+    example.setLevel(Level.WARN);
+    assertFalse(deep.isDebugEnabled());
+    assertFalse(deep.isInfoEnabled());
+    assertTrue(deep.isEnabledFor(Level.WARN));
+
+    h.getRootLogger().setLevel(Level.ERROR);
+    assertTrue(deep.isEnabledFor(Level.WARN));
+
+    example.setLevel(null);
+    assertFalse(deep.isEnabledFor(Level.WARN));
+    assertTrue(deep.isEnabledFor(Level.ERROR));
+
+    Logger b = h.getLogger("org.example.a.b");
+    b.setLevel(Level.TRACE);
+    assertTrue(deep.isTraceEnabled());
+  }
+
+  /**
+   * Tests that a cached effective level follows threshold changes.
+   */
+  public void testEnabledLevelFollowsThreshold() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    Logger logger = h.getLogger("org.example.foo");
+    assertTrue(logger.isDebugEnabled());
+
+    h.setThreshold(Level.INFO);
+    assertFalse(logger.isDebugEnabled());
+    assertTrue(logger.isInfoEnabled());
+
+    h.setThreshold(Level.ALL);
+    assertTrue(logger.isDebugEnabled());
+  }
+
+  /**
+   * Tests that appenders can be added and removed while another
+   * thread is logging, without losing events for the appenders that
+   * stay attached.
+   */
+  public void testConcurrentAppenderChanges() throws InterruptedException {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    final Logger logger = h.getLogger("org.example.concurrent");
+    logger.setAdditivity(false);
+    CountingAppender permanent = new CountingAppender();
+    logger.addAppender(permanent);
+
+    final int count = 20000;
+    final Throwable[] failure = new Throwable[1];
+    Thread writer = new Thread() {
+      public void run() {
+        try {
+          for (int i = 0; i < count; i++) {
+            logger.info("Hello, World");
+          }
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    };
+    writer.start();
+    while (writer.isAlive()) {
+      CountingAppender extra = new CountingAppender();
+      logger.addAppender(extra);
+      logger.removeAppender(extra);
+    }
+    writer.join();
+
+    assertNull(failure[0]);
+    assertEquals(count, permanent.getCount());
+  }
+
+  /**
+   * Tests that setAdditivity takes effect on the next event.
+   */
+  public void testSetAdditivity() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    CountingAppender parentAppender = new CountingAppender();
+    h.getLogger("org.example").addAppender(parentAppender);
+    Logger child = h.getLogger("org.example.child");
+    CountingAppender childAppender = new CountingAppender();
+    child.addAppender(childAppender);
+
+    child.info("Hello, World");
+    assertEquals(1, parentAppender.getCount());
+    assertEquals(1, childAppender.getCount());
+
+    child.setAdditivity(false);
+    child.info("Hello, World");
+    assertEquals(1, parentAppender.getCount());
+    assertEquals(2, childAppender.getCount());
+
+    child.setAdditivity(true);
+    child.info("Hello, World");
+    assertEquals(2, parentAppender.getCount());
+    assertEquals(3, childAppender.getCount());
+  }
+
+  /**
+   * Tests that removeAllAppenders takes effect on the next event and
+   * closes the removed appenders.
+   */
+  public void testRemoveAllAppenders() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    Logger logger = h.getLogger("org.example.remove");
+    CountingAppender appender = new CountingAppender();
+    logger.addAppender(appender);
+
+    logger.info("Hello, World");
+    assertEquals(1, appender.getCount());
+
+    logger.removeAllAppenders();
+    assertTrue(appender.isClosed());
+    assertFalse(logger.getAllAppenders().hasMoreElements());
+    logger.info("Hello, World");
+    assertEquals(1, appender.getCount());
+  }
+
+  /**
+   * Appender counting the events it receives.
+   */
+  private static final class CountingAppender extends AppenderSkeleton {
+    /**
+     * Number of events, guarded by this.
+     */
+    private int count;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected synchronized void append(final LoggingEvent event) {
+      count++;
+    }
+
+    /**
+     * Get the number of events received.
+     * @return event count.
+     */
+    public synchronized int getCount() {
+      return count;
+    }
+
+    /**
+     * Determines whether the appender was closed.
+     * @return true if closed.
+     */
+    public boolean isClosed() {
+      return closed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() {
+      closed = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean requiresLayout() {
+      return false;
+    }
+  }
+
   /**
    * Derived category to check method signature of forcedLog.
    */
@@ -34,9 +34,12 @@ public class CoreTestSuite {
         TestSuite s = new TestSuite();
         s.addTestSuite(LoggingEventTest.class);
         s.addTestSuite(org.apache.log4j.LevelTest.class);
+        s.addTestSuite(org.apache.log4j.NDCTest.class);
         s.addTestSuite(org.apache.log4j.PriorityTest.class);
         s.addTestSuite(org.apache.log4j.CategoryTest.class);
+        s.addTestSuite(org.apache.log4j.HierarchyTest.class);
         s.addTestSuite(org.apache.log4j.FileAppenderTest.class);
+        s.addTestSuite(org.apache.log4j.MappedFileAppenderTest.class);
         s.addTestSuite(org.apache.log4j.LogManagerTest.class);
         s.addTestSuite(org.apache.log4j.helpers.LogLogTest.class);
         s.addTestSuite(org.apache.log4j.LayoutTest.class);
@@ -51,6 +54,11 @@ public class CoreTestSuite {
         s.addTestSuite(org.apache.log4j.PropertyConfiguratorTest.class);
         s.addTestSuite(org.apache.log4j.net.SMTPAppenderTest.class);
         s.addTestSuite(org.apache.log4j.net.TelnetAppenderTest.class);
+        s.addTestSuite(org.apache.log4j.net.BinaryEventCodecTest.class);
+        s.addTestSuite(org.apache.log4j.net.QueuedSocketAppenderTest.class);
+        s.addTestSuite(org.apache.log4j.net.SelectorSocketServerTest.class);
+        s.addTestSuite(org.apache.log4j.net.SocketHubAppenderTest.class);
+        s.addTestSuite(org.apache.log4j.jdbc.JDBCAppenderTest.class);
         s.addTestSuite(org.apache.log4j.DefaultThrowableRendererTest.class);
         s.addTestSuite(org.apache.log4j.EnhancedThrowableRendererTest.class);
         s.addTestSuite(org.apache.log4j.TestLogXF.class);
@@ -61,6 +69,11 @@ public class CoreTestSuite {
         s.addTestSuite(org.apache.log4j.pattern.NameAbbreviatorTest.class);
         s.addTestSuite(org.apache.log4j.pattern.PatternParserTest.class);
         s.addTestSuite(org.apache.log4j.helpers.UtilLoggingLevelTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.RingBufferTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.ByteBufferWriterTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.ContextMapTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.ParameterizedMessageTest.class);
+        s.addTestSuite(org.apache.log4j.helpers.MessageFormatterTest.class);
         return s;
     }
 }
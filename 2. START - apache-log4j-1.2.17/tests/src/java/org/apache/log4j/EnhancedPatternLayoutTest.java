@@ -112,6 +112,59 @@ public class EnhancedPatternLayoutTest extends LayoutTest {
     assertEquals("[", result.substring(0, 1));
   }
 
+  /**
+   * Tests that a message formatted with the same layout while an
+   * event is formatted does not disturb the outer event.
+   */
+  public void testNestedFormat() {
+    final EnhancedPatternLayout layout = new EnhancedPatternLayout("<%m>");
+    final Logger logger = Logger.getLogger("org.apache.log4j.LayoutTest");
+    Object message = new Object() {
+        public String toString() {
+          return layout.format(new LoggingEvent(
+            "org.apache.log4j.Logger", logger, Level.INFO, "inner", null));
+        }
+      };
+    LoggingEvent event =
+      new LoggingEvent(
+        "org.apache.log4j.Logger", logger, Level.INFO, message, null);
+    assertEquals("<<inner>>", layout.format(event));
+    assertEquals("<<inner>>", layout.format(event));
+  }
+
+  /**
+   * Tests that threads sharing a layout format their own events.
+   */
+  public void testConcurrentFormat() throws InterruptedException {
+    final EnhancedPatternLayout layout = new EnhancedPatternLayout("%c %m");
+    final Logger logger = Logger.getLogger("org.apache.log4j.LayoutTest");
+    final String[] failures = new String[4];
+    Thread[] threads = new Thread[failures.length];
+    for (int t = 0; t < threads.length; t++) {
+      final int id = t;
+      threads[t] = new Thread() {
+          public void run() {
+            for (int i = 0; i < 2000 && failures[id] == null; i++) {
+              String message = id + ":" + i;
+              if (i % 100 == 0) {
+                message += new String(new char[5000]);
+              }
+              String result = layout.format(new LoggingEvent(
+                "org.apache.log4j.Logger", logger, Level.INFO, message, null));
+              if (!result.equals(logger.getName() + " " + message)) {
+                failures[id] = result;
+              }
+            }
+          }
+        };
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+      assertNull(failures[t]);
+    }
+  }
+
   /**
    * Class to ensure that protected members are still available.
    */
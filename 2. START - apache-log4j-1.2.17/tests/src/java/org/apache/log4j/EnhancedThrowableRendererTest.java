@@ -45,4 +45,59 @@ public class EnhancedThrowableRendererTest extends TestCase {
             assertNotNull(strRep[i]);
         }
     }
+
+    /**
+     * Creates an exception thrown from a recursion.
+     * @param depth depth of the recursion.
+     * @return exception.
+     */
+    private static Exception recurse(final int depth) {
+        if (depth == 0) {
+            return new Exception("bottom");
+        }
+        return recurse(depth - 1);
+    }
+
+    /**
+     * Throwables with the same message and stack trace share their
+     * rendering.
+     */
+    public void testSameStackTrace() {
+        ThrowableRenderer r = new EnhancedThrowableRenderer();
+        String[][] reps = new String[2][];
+        for (int i = 0; i < reps.length; i++) {
+            reps[i] = r.doRender(recurse(3));
+        }
+        assertNotSame(reps[0], reps[1]);
+        assertEquals(reps[0].length, reps[1].length);
+        assertSame(reps[0][1], reps[1][1]);
+        assertFalse(reps[0][0].equals(r.doRender(new Exception("other"))[0]));
+    }
+
+    /**
+     * Frames past MaxDepth are summarized by a single line.
+     */
+    public void testMaxDepth() {
+        EnhancedThrowableRenderer r = new EnhancedThrowableRenderer();
+        r.setMaxDepth(2);
+        Exception ex = recurse(5);
+        String[] strRep = r.doRender(ex);
+        assertEquals(4, strRep.length);
+        assertEquals("java.lang.Exception: bottom", strRep[0]);
+        assertTrue(strRep[1].startsWith("\tat " + ex.getStackTrace()[0]));
+        assertEquals("\t... " + (ex.getStackTrace().length - 2) + " more",
+                     strRep[3]);
+    }
+
+    /**
+     * Frames repeated by a recursion are output once.
+     */
+    public void testFoldRepeatedFrames() {
+        EnhancedThrowableRenderer r = new EnhancedThrowableRenderer();
+        r.setFoldRepeatedFrames(true);
+        Exception ex = recurse(10);
+        String[] strRep = r.doRender(ex);
+        assertEquals(ex.getStackTrace().length - 7, strRep.length);
+        assertEquals("\t... 1 frame repeated 9 times", strRep[3]);
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import junit.framework.TestCase;
+
+import java.util.Enumeration;
+
+import org.apache.log4j.spi.RootLogger;
+
+
+/**
+ * Tests of Hierarchy.
+ */
+public class HierarchyTest extends TestCase {
+  /**
+   * Constructs new instance of test.
+   * @param name test name.
+   */
+  public HierarchyTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Tests that descendants created before their ancestors are relinked.
+   */
+  public void testProvisionNodes() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    Logger abc = h.getLogger("a.b.c");
+    Logger ab1 = h.getLogger("a.b.1");
+    assertSame(h.getRootLogger(), abc.getParent());
+
+    Logger a = h.getLogger("a");
+    assertSame(a, abc.getParent());
+    assertSame(a, ab1.getParent());
+
+    Logger ab = h.getLogger("a.b");
+    assertSame(ab, abc.getParent());
+    assertSame(ab, ab1.getParent());
+    assertSame(a, ab.getParent());
+    assertSame(h.getRootLogger(), a.getParent());
+  }
+
+  /**
+   * Tests that getCurrentLoggers returns loggers but not provision nodes.
+   */
+  public void testGetCurrentLoggers() {
+    Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    for (int i = 0; i < 200; i++) {
+      h.getLogger("x.y" + i + ".z");
+    }
+    int count = 0;
+    for (Enumeration e = h.getCurrentLoggers(); e.hasMoreElements();) {
+      Logger logger = (Logger) e.nextElement();
+      assertTrue(logger.getName().endsWith(".z"));
+      count++;
+    }
+    assertEquals(200, count);
+  }
+
+  /**
+   * Tests that concurrent lookups of the same name create one logger.
+   */
+  public void testConcurrentGetLogger() throws InterruptedException {
+    final Hierarchy h = new Hierarchy(new RootLogger(Level.DEBUG));
+    final int threads = 8;
+    final Logger[][] results = new Logger[threads][100];
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      final int index = i;
+      workers[i] = new Thread(new Runnable() {
+        public void run() {
+          for (int j = 0; j < 100; j++) {
+            results[index][j] = h.getLogger("org.example.tenant" + j);
+          }
+        }
+      });
+      workers[i].start();
+    }
+    for (int i = 0; i < threads; i++) {
+      workers[i].join();
+    }
+    for (int j = 0; j < 100; j++) {
+      for (int i = 1; i < threads; i++) {
+        assertSame(results[0][j], results[i][j]);
+      }
+    }
+  }
+}
@@ -398,6 +398,53 @@ public class LoggerTestCase extends TestCase {
         assertFalse(root.isTraceEnabled());
     }
 
+    /**
+     * Argument counting the times it is converted to a string.
+     */
+    private static final class CountingArgument {
+        int count;
+
+        public String toString() {
+            count++;
+            return "arg";
+        }
+    }
+
+    /**
+     * Tests parameterized requests: arguments are only formatted
+     * when the message is rendered, and not at all when disabled.
+     */
+    public void testParameterized() {
+        VectorAppender appender = new VectorAppender();
+        appender.activateOptions();
+        Logger root = Logger.getRootLogger();
+        root.addAppender(appender);
+        root.setLevel(Level.INFO);
+        CountingArgument arg = new CountingArgument();
+
+        root.debug("Discarded {}", arg);
+        root.info("Message {}", arg);
+        root.warn("{} and {}", arg, new Integer(2));
+        root.error("{}, {} and {}", "a", null, arg);
+        root.fatal("Message 4", new NullPointerException());
+        assertEquals(0, arg.count);
+
+        Vector msgs = appender.getVector();
+        assertEquals(4, msgs.size());
+        LoggingEvent event = (LoggingEvent) msgs.elementAt(0);
+        assertEquals(Level.INFO, event.getLevel());
+        assertEquals("Message arg", event.getRenderedMessage());
+        assertEquals("Message arg", event.getMessage());
+        assertEquals(1, arg.count);
+        assertEquals("arg and 2",
+            ((LoggingEvent) msgs.elementAt(1)).getRenderedMessage());
+        assertEquals("a, null and arg",
+            ((LoggingEvent) msgs.elementAt(2)).getMessage());
+        event = (LoggingEvent) msgs.elementAt(3);
+        assertEquals("Message 4", event.getMessage());
+        assertNotNull(event.getThrowableInformation());
+    }
+
   private static final class CountingHierarchyEventListener implements HierarchyEventListener {
       private int addEventCount;
       private int removeEventCount;
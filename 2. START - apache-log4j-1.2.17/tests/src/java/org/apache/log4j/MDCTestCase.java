@@ -19,8 +19,12 @@ package org.apache.log4j;
 import java.lang.ref.Reference;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Hashtable;
+import java.util.Map;
 import junit.framework.TestCase;
 
+import org.apache.log4j.spi.LoggingEvent;
+
 /**
  * Test for MDC
  * 
@@ -42,6 +46,53 @@ public class MDCTestCase extends TestCase {
     assertEquals(1, MDC.getContext().size());
   }
   
+  public void testSnapshot() throws Exception {
+    MDC.put("key", "some value");
+    Map context = MDC.getImmutableContext();
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(),
+        Logger.getLogger(MDCTestCase.class), Level.INFO, "msg", null);
+    event.getMDCCopy();
+    MDC.put("key", "other value");
+    MDC.put("key2", "value2");
+    assertEquals(1, context.size());
+    assertEquals("some value", context.get("key"));
+    assertEquals("some value", event.getMDC("key"));
+    assertEquals(1, event.getProperties().size());
+    assertEquals("other value", MDC.get("key"));
+    MDC.remove("key");
+    assertEquals("value2", MDC.get("key2"));
+    assertNull(MDC.get("key"));
+  }
+
+  public void testGetContextWritesThrough() throws Exception {
+    MDC.put("key", "some value");
+    Hashtable context = MDC.getContext();
+    context.put("key2", "value2");
+    assertEquals("value2", MDC.get("key2"));
+    context.remove("key");
+    assertNull(MDC.get("key"));
+    Hashtable copy = (Hashtable) context.clone();
+    copy.clear();
+    assertEquals("value2", MDC.get("key2"));
+    context.clear();
+    assertNull(MDC.getContext());
+  }
+
+  public void testInheritance() throws Exception {
+    MDC.put("key", "some value");
+    final Map[] childContext = new Map[1];
+    Thread child = new Thread() {
+      public void run() {
+        childContext[0] = MDC.getImmutableContext();
+        MDC.put("key", "child value");
+      }
+    };
+    child.start();
+    child.join();
+    assertSame(MDC.getImmutableContext(), childContext[0]);
+    assertEquals("some value", MDC.get("key"));
+  }
+
   public void testRemoveLastKey() throws Exception {
     MDC.put("key", "some value");
 
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * Tests of MappedFileAppender.
+ */
+public class MappedFileAppenderTest extends TestCase {
+  private static final String FILE = "output/mapped.log";
+
+  /**
+   * Constructs new instance of test.
+   * @param name test name.
+   */
+  public MappedFileAppenderTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Deletes the file written by the test.
+   */
+  public void tearDown() {
+    new File(FILE).delete();
+  }
+
+  private static MappedFileAppender createAppender(final boolean append) {
+    MappedFileAppender appender = new MappedFileAppender();
+    appender.setLayout(new PatternLayout("%m%n"));
+    appender.setEncoding("UTF-8");
+    appender.setRegionSize(4096);
+    appender.setAppend(append);
+    appender.setFile(FILE);
+    appender.activateOptions();
+    return appender;
+  }
+
+  private static void append(final Appender appender, final int from,
+                             final int to) {
+    Logger logger = Logger.getLogger(MappedFileAppenderTest.class);
+    for (int i = from; i < to; i++) {
+      appender.doAppend(new LoggingEvent(Logger.class.getName(), logger,
+        Level.INFO, "Hello \u00e9 " + i, null));
+    }
+  }
+
+  private static void assertLines(final int count) throws IOException {
+    BufferedReader reader = new BufferedReader(
+      new InputStreamReader(new FileInputStream(FILE), "UTF-8"));
+    try {
+      for (int i = 0; i < count; i++) {
+        assertEquals("Hello \u00e9 " + i, reader.readLine());
+      }
+      assertNull(reader.readLine());
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Tests that events spanning several regions are written and
+   * that the file is truncated to its content on close.
+   */
+  public void testRemapAndTruncate() throws IOException {
+    MappedFileAppender appender = createAppender(false);
+    append(appender, 0, 1000);
+    assertTrue(new File(FILE).length() > 4096);
+    appender.close();
+    assertLines(1000);
+  }
+
+  /**
+   * Tests that reopening in append mode continues after the content.
+   */
+  public void testAppend() throws IOException {
+    MappedFileAppender appender = createAppender(false);
+    append(appender, 0, 10);
+    appender.close();
+    long length = new File(FILE).length();
+
+    appender = createAppender(true);
+    assertEquals(length + 4096, new File(FILE).length());
+    append(appender, 10, 500);
+    appender.close();
+    assertLines(500);
+  }
+}
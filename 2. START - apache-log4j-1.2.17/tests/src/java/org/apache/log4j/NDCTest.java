@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import junit.framework.TestCase;
+
+import java.util.Stack;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * Tests for {@link NDC}.
+ */
+public class NDCTest extends TestCase {
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public NDCTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void tearDown() {
+    NDC.remove();
+  }
+
+  /**
+   * Push, pop, peek and get follow the nesting of the contexts.
+   */
+  public void testPushPop() {
+    assertNull(NDC.get());
+    assertEquals(0, NDC.getDepth());
+    NDC.push("a");
+    NDC.push("b");
+    assertEquals("a b", NDC.get());
+    assertEquals("b", NDC.peek());
+    assertEquals(2, NDC.getDepth());
+    assertEquals("b", NDC.pop());
+    assertEquals("a", NDC.get());
+    assertEquals("a", NDC.pop());
+    assertEquals("", NDC.pop());
+    assertEquals("", NDC.peek());
+    assertNull(NDC.get());
+  }
+
+  /**
+   * setMaxDepth drops the innermost contexts.
+   */
+  public void testSetMaxDepth() {
+    NDC.push("a");
+    NDC.push("b");
+    NDC.push("c");
+    NDC.setMaxDepth(5);
+    assertEquals(3, NDC.getDepth());
+    NDC.setMaxDepth(1);
+    assertEquals(1, NDC.getDepth());
+    assertEquals("a", NDC.get());
+    NDC.clear();
+    assertEquals(0, NDC.getDepth());
+    assertNull(NDC.get());
+  }
+
+  /**
+   * A cloned stack inherited by another thread evolves independently.
+   */
+  public void testCloneAndInherit() throws InterruptedException {
+    NDC.push("a");
+    NDC.push("b");
+    final Stack stack = NDC.cloneStack();
+    assertEquals(2, stack.size());
+    final String[] seen = new String[2];
+    Thread child = new Thread() {
+        public void run() {
+          NDC.inherit(stack);
+          seen[0] = NDC.get();
+          NDC.pop();
+          NDC.push("c");
+          seen[1] = NDC.get();
+        }
+      };
+    child.start();
+    child.join();
+    assertEquals("a b", seen[0]);
+    assertEquals("a c", seen[1]);
+    assertEquals("a b", NDC.get());
+    assertEquals(2, stack.size());
+
+    NDC.remove();
+    assertNull(NDC.cloneStack());
+    NDC.inherit(stack);
+    assertEquals("a b", NDC.get());
+    NDC.inherit(new Stack());
+    assertNull(NDC.get());
+  }
+
+  /**
+   * An event keeps the context of the time it was captured.
+   */
+  public void testEventSnapshot() {
+    NDC.push("request");
+    LoggingEvent event =
+      new LoggingEvent(Logger.class.getName(), Logger.getLogger(NDCTest.class),
+                       Level.INFO, "message", null);
+    assertEquals("request", event.getNDC());
+    NDC.push("inner");
+    assertEquals("request", event.getNDC());
+  }
+}
@@ -65,6 +65,20 @@ public class PatternLayoutTest extends LayoutTest {
     assertEquals(buf.toString(), result);
   }
 
+  /**
+   * Tests that format into a buffer appends the same text as format.
+   */
+  public void testFormatIntoBuffer() {
+    Logger logger = Logger.getLogger("org.apache.log4j.LayoutTest");
+    LoggingEvent event =
+      new LoggingEvent(
+        "org.apache.log4j.Logger", logger, Level.INFO, "Hello, World", null);
+    PatternLayout layout = new PatternLayout("%r %d{ABSOLUTE} [%t] %p %c - %m%n");
+    StringBuffer buf = new StringBuffer("prefix ");
+    layout.format(buf, event);
+    assertEquals("prefix " + layout.format(event), buf.toString());
+  }
+
   /**
    * Tests getPatternFormat().
    */
@@ -19,9 +19,14 @@ package org.apache.log4j;
 
 import junit.framework.TestCase;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
 
 /**
  *  Test of RollingFileAppender.
@@ -36,8 +41,27 @@ public class RFATestCase extends TestCase {
 
   public void tearDown() {
       LogManager.resetConfiguration();
+      String[] names = new File("output").list();
+      if (names != null) {
+        for (int i = 0; i < names.length; i++) {
+          for (int j = 0; j < GENERATED.length; j++) {
+            if (names[i].startsWith(GENERATED[j])) {
+              new File("output", names[i]).delete();
+            }
+          }
+        }
+      }
   }
 
+  /**
+   * Prefixes of the files written by the rollover tests that compare
+   * exact file contents, deleted after each test.
+   */
+  private static final String[] GENERATED = {
+    "RFA-channel.log", "RFA-background.log", "RFA-recovery.log",
+    "RFA-gzip.log", "RFA-zip.log"
+  };
+
     /**
      * Test basic rolling functionality using property file configuration.
      */
@@ -92,6 +116,193 @@ public class RFATestCase extends TestCase {
       assertFalse(new File("output/RFA-test2.log.4").exists());
     }
 
+    /**
+     * Test rolling over when writing through a FileChannel.
+     */
+    public void testChannelIO() throws Exception {
+      Logger logger = Logger.getLogger(RFATestCase.class);
+      Logger root = Logger.getRootLogger();
+      PatternLayout layout = new PatternLayout("%m\n");
+      org.apache.log4j.RollingFileAppender rfa =
+        new org.apache.log4j.RollingFileAppender();
+      rfa.setName("ROLLING");
+      rfa.setLayout(layout);
+      rfa.setAppend(false);
+      rfa.setMaxBackupIndex(3);
+      rfa.setMaximumFileSize(100);
+      rfa.setChannelIO(true);
+      rfa.setDurability("force");
+      rfa.setFile("output/RFA-channel.log");
+      rfa.activateOptions();
+      assertFalse(rfa.getImmediateFlush());
+      assertEquals("force", rfa.getDurability());
+      root.addAppender(rfa);
+
+      // Write exactly 10 bytes with each log
+      for (int i = 0; i < 55; i++) {
+        if (i < 10) {
+          logger.debug("Hello---" + i);
+        } else {
+          logger.debug("Hello--" + i);
+        }
+      }
+      root.removeAppender(rfa);
+      rfa.close();
+
+      assertEquals(50, new File("output/RFA-channel.log").length());
+      assertEquals(100, new File("output/RFA-channel.log.1").length());
+      assertEquals(100, new File("output/RFA-channel.log.2").length());
+      assertEquals(100, new File("output/RFA-channel.log.3").length());
+      assertFalse(new File("output/RFA-channel.log.4").exists());
+    }
+
+    /**
+     * Test rolling over with backups renamed in the background.
+     */
+    public void testBackgroundRollover() throws Exception {
+      Logger logger = Logger.getLogger(RFATestCase.class);
+      Logger root = Logger.getRootLogger();
+      PatternLayout layout = new PatternLayout("%m\n");
+      org.apache.log4j.RollingFileAppender rfa =
+        new org.apache.log4j.RollingFileAppender();
+      rfa.setName("ROLLING");
+      rfa.setLayout(layout);
+      rfa.setAppend(false);
+      rfa.setMaxBackupIndex(3);
+      rfa.setMaximumFileSize(100);
+      rfa.setBackgroundRollover(true);
+      rfa.setMaxPendingRollovers(1);
+      rfa.setFile("output/RFA-background.log");
+      rfa.activateOptions();
+      root.addAppender(rfa);
+
+      // Write exactly 10 bytes with each log
+      for (int i = 0; i < 55; i++) {
+        if (i < 10) {
+          logger.debug("Hello---" + i);
+        } else {
+          logger.debug("Hello--" + i);
+        }
+      }
+      root.removeAppender(rfa);
+      rfa.close();
+      assertEquals(0, rfa.getPendingRollovers());
+
+      assertEquals(50, new File("output/RFA-background.log").length());
+      assertEquals(100, new File("output/RFA-background.log.1").length());
+      assertEquals(100, new File("output/RFA-background.log.2").length());
+      assertEquals(100, new File("output/RFA-background.log.3").length());
+      assertFalse(new File("output/RFA-background.log.4").exists());
+
+      String[] names = new File("output").list();
+      for (int i = 0; i < names.length; i++) {
+        assertFalse(names[i], names[i].startsWith("RFA-background.log.pending"));
+      }
+    }
+
+    /**
+     * Tests that files left behind by interrupted background rollovers
+     * are rolled over, oldest first, when the appender is activated.
+     */
+    public void testPendingRecovery() throws Exception {
+      String base = "output/RFA-recovery.log";
+      new File(base + ".1").delete();
+      new File(base + ".2").delete();
+      new File(base + ".3").delete();
+      FileWriter writer = new FileWriter(base + ".pending.20.10");
+      writer.write("newer");
+      writer.close();
+      writer = new FileWriter(base + ".pending.20.9");
+      writer.write("older");
+      writer.close();
+
+      org.apache.log4j.RollingFileAppender rfa =
+        new org.apache.log4j.RollingFileAppender();
+      rfa.setName("ROLLING");
+      rfa.setLayout(new PatternLayout("%m\n"));
+      rfa.setMaxBackupIndex(3);
+      rfa.setFile(base);
+      rfa.activateOptions();
+      rfa.close();
+      assertEquals(0, rfa.getPendingRollovers());
+
+      assertEquals(5, new File(base + ".1").length());
+      assertEquals(5, new File(base + ".2").length());
+      assertFalse(new File(base + ".3").exists());
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(base + ".1")));
+      assertEquals("newer", reader.readLine());
+      reader.close();
+      assertFalse(new File(base + ".pending.20.9").exists());
+      assertFalse(new File(base + ".pending.20.10").exists());
+    }
+
+    /**
+     * Rolls 55 events of 10 bytes over into compressed backups.
+     * @param compression compression format.
+     * @param base file name.
+     */
+    private static void rollCompressed(final String compression,
+                                       final String base) {
+      Logger logger = Logger.getLogger(RFATestCase.class);
+      Logger root = Logger.getRootLogger();
+      org.apache.log4j.RollingFileAppender rfa =
+        new org.apache.log4j.RollingFileAppender();
+      rfa.setName("ROLLING");
+      rfa.setLayout(new PatternLayout("%m\n"));
+      rfa.setAppend(false);
+      rfa.setMaxBackupIndex(3);
+      rfa.setMaximumFileSize(100);
+      rfa.setCompression(compression);
+      rfa.setCompressionLevel(9);
+      rfa.setFile(base);
+      rfa.activateOptions();
+      root.addAppender(rfa);
+      for (int i = 10; i < 65; i++) {
+        logger.debug("Hello--" + i);
+      }
+      root.removeAppender(rfa);
+      rfa.close();
+      assertEquals(0, rfa.getPendingRollovers());
+    }
+
+    /**
+     * Test that backups are gzipped and keep their numbering.
+     */
+    public void testGzipCompression() throws Exception {
+      String base = "output/RFA-gzip.log";
+      rollCompressed("gzip", base);
+
+      assertEquals(50, new File(base).length());
+      assertFalse(new File(base + ".1").exists());
+      assertTrue(new File(base + ".2.gz").exists());
+      assertTrue(new File(base + ".3.gz").exists());
+      assertFalse(new File(base + ".4.gz").exists());
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new FileInputStream(base + ".1.gz"))));
+      for (int i = 50; i < 60; i++) {
+        assertEquals("Hello--" + i, reader.readLine());
+      }
+      assertNull(reader.readLine());
+      reader.close();
+    }
+
+    /**
+     * Test that backups are zipped with an entry named after the log
+     * file, which stays right as the backups shift.
+     */
+    public void testZipCompression() throws Exception {
+      String base = "output/RFA-zip.log";
+      rollCompressed("zip", base);
+
+      assertTrue(new File(base + ".3.zip").exists());
+      ZipInputStream zip = new ZipInputStream(new FileInputStream(base + ".2.zip"));
+      assertEquals("RFA-zip.log", zip.getNextEntry().getName());
+      BufferedReader reader = new BufferedReader(new InputStreamReader(zip));
+      assertEquals("Hello--40", reader.readLine());
+      reader.close();
+    }
+
     /**
      * Tests 2 parameter constructor.
      * @throws IOException if IOException during test.
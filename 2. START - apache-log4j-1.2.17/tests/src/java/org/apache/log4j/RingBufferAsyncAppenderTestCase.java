@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j;
+
+import junit.framework.TestCase;
+
+import java.util.Vector;
+
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * Tests for {@link RingBufferAsyncAppender}, checking that the options
+ * shared with {@link AsyncAppender} behave the same way.
+ */
+public class RingBufferAsyncAppenderTestCase extends TestCase {
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public RingBufferAsyncAppenderTestCase(final String name) {
+    super(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  public void tearDown() {
+    LogManager.shutdown();
+  }
+
+  /**
+   * Creates an activated appender around <code>nested</code>.
+   */
+  private static RingBufferAsyncAppender createAppender(
+      final Appender nested, final int bufferSize, final boolean blocking) {
+    RingBufferAsyncAppender async = new RingBufferAsyncAppender();
+    async.setName("ring");
+    async.addAppender(nested);
+    async.setBufferSize(bufferSize);
+    async.setBlocking(blocking);
+    async.activateOptions();
+    return async;
+  }
+
+  /**
+   * Events appended just before close are dispatched, and the nested
+   * appenders are closed.
+   */
+  public void testClose() {
+    BlockableVectorAppender vectorAppender = new BlockableVectorAppender();
+    RingBufferAsyncAppender async = createAppender(vectorAppender, 16, true);
+    Logger root = Logger.getRootLogger();
+    root.addAppender(async);
+
+    for (int i = 0; i < 200; i++) {
+      root.debug("message" + i);
+    }
+    async.close();
+    root.debug("m2");
+
+    Vector v = vectorAppender.getVector();
+    assertEquals(200, v.size());
+    assertEquals("message199", ((LoggingEvent) v.get(199)).getMessage());
+    assertTrue(vectorAppender.isClosed());
+  }
+
+  /**
+   * Events still in the buffer when close is called while the
+   * dispatcher is busy are dispatched before close returns.
+   */
+  public void testCloseWhileDispatching() throws InterruptedException {
+    BlockableVectorAppender vectorAppender = new BlockableVectorAppender();
+    final RingBufferAsyncAppender async =
+      createAppender(vectorAppender, 8, true);
+    Logger root = Logger.getRootLogger();
+    root.addAppender(async);
+
+    Thread closer = new Thread() {
+      public void run() {
+        async.close();
+      }
+    };
+    synchronized (vectorAppender.getMonitor()) {
+      for (int i = 0; i < 8; i++) {
+        root.info("Hello");
+      }
+      closer.start();
+      closer.join(100);
+      assertTrue(closer.isAlive());
+    }
+    closer.join();
+
+    assertEquals(8, vectorAppender.getVector().size());
+    assertTrue(vectorAppender.isClosed());
+  }
+
+  /**
+   * A blocking appender holds logging threads back while the buffer is
+   * full and loses nothing.
+   */
+  public void testBlocking() throws InterruptedException {
+    BlockableVectorAppender vectorAppender = new BlockableVectorAppender();
+    RingBufferAsyncAppender async = createAppender(vectorAppender, 5, true);
+    Logger root = Logger.getRootLogger();
+    root.addAppender(async);
+
+    Thread greeter = new Thread(new Greeter(root, 20));
+    synchronized (vectorAppender.getMonitor()) {
+      greeter.start();
+      greeter.join(200);
+      assertTrue(greeter.isAlive());
+    }
+    greeter.join();
+    async.close();
+
+    Vector events = vectorAppender.getVector();
+    assertEquals(20, events.size());
+    for (int i = 0; i < events.size(); i++) {
+      assertEquals("Hello, World",
+                   ((LoggingEvent) events.get(i)).getMessage());
+    }
+  }
+
+  /**
+   * A non-blocking appender discards events while the buffer is full
+   * and reports them with the summary used by AsyncAppender.
+   */
+  public void testDiscardSummary() {
+    BlockableVectorAppender vectorAppender = new BlockableVectorAppender();
+    RingBufferAsyncAppender async = createAppender(vectorAppender, 5, false);
+    Logger root = Logger.getRootLogger();
+    root.addAppender(async);
+
+    int total = 100;
+    synchronized (vectorAppender.getMonitor()) {
+      new Greeter(root, total).run();
+    }
+    async.close();
+
+    Vector events = vectorAppender.getVector();
+    LoggingEvent summary = null;
+    int delivered = 0;
+    for (int i = 0; i < events.size(); i++) {
+      LoggingEvent event = (LoggingEvent) events.get(i);
+      if ("Hello, World".equals(event.getMessage())) {
+        delivered++;
+      } else {
+        assertNull("more than one summary", summary);
+        summary = event;
+      }
+    }
+    assertNotNull(summary);
+    assertTrue(delivered < total);
+
+    LoggingEvent discarded = new LoggingEvent(Logger.class.getName(), root,
+                                              Level.INFO, "Hello, World", null);
+    AsyncAppender.DiscardSummary expected =
+      new AsyncAppender.DiscardSummary(discarded);
+    for (int i = delivered + 1; i < total; i++) {
+      expected.add(discarded);
+    }
+    LoggingEvent expectedEvent = expected.createEvent();
+    assertEquals(expectedEvent.getMessage(), summary.getMessage());
+    assertEquals(expectedEvent.getLoggerName(), summary.getLoggerName());
+    assertEquals(expectedEvent.getLevel(), summary.getLevel());
+  }
+
+  /**
+   *  Logging request runnable.
+   */
+  private static final class Greeter implements Runnable {
+    /**
+     * Logger.
+     */
+    private final Logger logger;
+
+    /**
+     * Repetitions.
+     */
+    private final int repetitions;
+
+    /**
+     * Create new instance.
+     * @param logger logger, may not be null.
+     * @param repetitions repetitions.
+     */
+    public Greeter(final Logger logger, final int repetitions) {
+      this.logger = logger;
+      this.repetitions = repetitions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+      for (int i = 0; i < repetitions; i++) {
+        logger.info("Hello, World");
+      }
+    }
+  }
+
+  /**
+   * Vector appender that can be explicitly blocked, without the delay
+   * of {@link VectorAppender}.
+   */
+  private static final class BlockableVectorAppender extends VectorAppender {
+    /**
+     * Monitor object used to block appender.
+     */
+    private final Object monitor = new Object();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void append(final LoggingEvent event) {
+      synchronized (monitor) {
+        vector.addElement(event);
+      }
+    }
+
+    /**
+     * Get monitor object.
+     * @return monitor.
+     */
+    public Object getMonitor() {
+      return monitor;
+    }
+  }
+}
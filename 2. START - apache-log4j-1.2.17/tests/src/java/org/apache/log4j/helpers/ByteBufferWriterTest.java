@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.WriterAppender;
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * Tests for {@link ByteBufferWriter}.
+ */
+public class ByteBufferWriterTest extends TestCase {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public ByteBufferWriterTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Builds a string several chunks long containing surrogate pairs.
+   */
+  private static String createText() {
+    StringBuffer buf = new StringBuffer();
+    while (buf.length() < 5000) {
+      buf.append("caf\u00e9 \u20ac \ud834\udd1e ");
+    }
+    return buf.toString();
+  }
+
+  /**
+   * Strings, arrays and buffers encode like String.getBytes
+   * whichever character falls on a chunk boundary.
+   */
+  public void testEncoding() throws IOException {
+    String text = createText();
+    for (int size = 16; size <= 16384; size *= 32) {
+      for (int offset = 0; offset < 11; offset++) {
+        String part = text.substring(offset);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBufferWriter writer = new ByteBufferWriter(out, UTF8, size);
+        writer.write(part);
+        writer.write(part.toCharArray(), 0, part.length());
+        writer.write(new StringBuffer(part));
+        writer.close();
+        String expected = part + part + part;
+        assertEquals(new String(expected.getBytes("UTF-8"), "UTF-8"),
+                     new String(out.toByteArray(), "UTF-8"));
+      }
+    }
+  }
+
+  /**
+   * A surrogate pair split across two writes is encoded once complete.
+   */
+  public void testSplitSurrogate() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBufferWriter writer = new ByteBufferWriter(out, UTF8);
+    writer.write('\ud834');
+    writer.flush();
+    assertEquals(0, out.size());
+    writer.write('\udd1e');
+    writer.flush();
+    assertEquals("\ud834\udd1e", new String(out.toByteArray(), "UTF-8"));
+  }
+
+  /**
+   * A high surrogate pending when the encoding is reset does not
+   * reach the next write.
+   */
+  public void testResetEncoding() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBufferWriter writer = new ByteBufferWriter(out, UTF8);
+    writer.write("x\ud834");
+    writer.resetEncoding();
+    writer.write("\udd1ey");
+    writer.flush();
+    assertEquals("x?y", new String(out.toByteArray(), "UTF-8"));
+  }
+
+  /**
+   * Bytes are only written when flushed or the buffer fills.
+   */
+  public void testBuffered() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBufferWriter writer = new ByteBufferWriter(out, UTF8, 64);
+    writer.write("0123456789");
+    assertEquals(0, out.size());
+    writer.flush();
+    assertEquals(10, out.size());
+    assertEquals("UTF-8", writer.getEncoding());
+  }
+
+  /**
+   * An appender using DirectEncoding produces the same bytes.
+   */
+  public void testDirectEncodingAppender() {
+    Logger logger = Logger.getLogger(ByteBufferWriterTest.class);
+    LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger,
+      Level.INFO, "caf\u00e9 \u20ac", new Exception("boom"));
+    PatternLayout layout = new PatternLayout("%p %c - %m%n");
+
+    ByteArrayOutputStream plain = new ByteArrayOutputStream();
+    StreamAppender appender = new StreamAppender(layout, false, plain);
+    appender.doAppend(event);
+    appender.close();
+
+    ByteArrayOutputStream direct = new ByteArrayOutputStream();
+    appender = new StreamAppender(layout, true, direct);
+    appender.doAppend(event);
+    appender.doAppend(event);
+    appender.close();
+
+    String expected = new String(plain.toByteArray());
+    assertEquals(expected + expected, new String(direct.toByteArray()));
+  }
+
+  /**
+   * WriterAppender writing to a stream in the platform encoding.
+   */
+  private static final class StreamAppender extends WriterAppender {
+    StreamAppender(final PatternLayout layout, final boolean direct,
+                   final ByteArrayOutputStream out) {
+      setLayout(layout);
+      setDirectEncoding(direct);
+      setWriter(createStreamWriter(out));
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Tests for {@link ContextMap}.
+ */
+public class ContextMapTest extends TestCase {
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public ContextMapTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Adding, replacing and removing keys returns new maps and leaves
+   * the original unchanged.
+   */
+  public void testWithWithout() {
+    ContextMap one = ContextMap.EMPTY.with("a", "1");
+    ContextMap two = one.with("b", "2");
+    ContextMap replaced = two.with("a", "3");
+    assertTrue(ContextMap.EMPTY.isEmpty());
+    assertEquals(1, one.size());
+    assertEquals(2, two.size());
+    assertEquals("1", two.get("a"));
+    assertEquals("3", replaced.get("a"));
+    assertEquals("2", replaced.get("b"));
+
+    ContextMap removed = replaced.without("a");
+    assertEquals(1, removed.size());
+    assertNull(removed.get("a"));
+    assertFalse(removed.containsKey("a"));
+    assertEquals("2", removed.get("b"));
+    assertSame(removed, removed.without("c"));
+    assertSame(ContextMap.EMPTY, removed.without("b"));
+    assertEquals("3", replaced.get("a"));
+    assertNull(one.get(null));
+  }
+
+  /**
+   * The map equals a HashMap with the same entries and cannot be
+   * changed through the Map interface.
+   */
+  public void testMap() {
+    ContextMap map = ContextMap.EMPTY;
+    Map expected = new HashMap();
+    for (int i = 0; i < 20; i++) {
+      map = map.with("key" + i, new Integer(i));
+      expected.put("key" + i, new Integer(i));
+    }
+    assertEquals(expected, map);
+    assertEquals(map, expected);
+    assertEquals(expected.hashCode(), map.hashCode());
+    assertEquals(new HashMap(map), expected);
+    try {
+      map.put("key", "value");
+      fail("Should have thrown UnsupportedOperationException");
+    } catch (UnsupportedOperationException ex) {
+    }
+    try {
+      map.with("key", null);
+      fail("Should have thrown NullPointerException");
+    } catch (NullPointerException ex) {
+    }
+  }
+}
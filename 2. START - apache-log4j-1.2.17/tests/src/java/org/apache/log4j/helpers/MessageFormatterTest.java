@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import junit.framework.TestCase;
+
+import java.text.MessageFormat;
+
+
+/**
+ * Tests for {@link MessageFormatter}.
+ */
+public class MessageFormatterTest extends TestCase {
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public MessageFormatterTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Simple MessageFormat patterns are formatted like MessageFormat,
+   * missing arguments being output as the element.
+   */
+  public void testSimpleMF() {
+    Object[] args = new Object[] {"a", new Integer(3)};
+    assertEquals("a, 3, a", MessageFormatter.formatMF("{0}, {1}, {0}", args));
+    assertEquals("{2} and {0}", MessageFormatter.formatMF("{2} and {0}", null));
+    assertEquals("plain", MessageFormatter.formatMF("plain", args));
+    assertNull(MessageFormatter.formatMF(null, args));
+  }
+
+  /**
+   * Other MessageFormat patterns are formatted by MessageFormat, and
+   * malformed ones are output as they are.
+   */
+  public void testComplexMF() {
+    Object[] args = new Object[] {new Double(1.5), "it"};
+    String pattern = "{0,number,#.00} for '{1}' {1}";
+    for (int i = 0; i < 2; i++) {
+      assertEquals(MessageFormat.format(pattern, args),
+                   MessageFormatter.formatMF(pattern, args));
+    }
+    assertEquals("{0", MessageFormatter.formatMF("{0", args));
+    assertEquals("{0,number}", MessageFormatter.formatMF("{0,number}",
+                                                        new Object[] {"x"}));
+  }
+
+  /**
+   * SLF4J patterns replace each placeholder by the next argument.
+   */
+  public void testSF() {
+    Object[] args = new Object[] {"a", null};
+    assertEquals("a null {}", MessageFormatter.formatSF("{} {} {}", args));
+    assertEquals("{} a \\}", MessageFormatter.formatSF("\\{} {} \\}", args));
+    assertEquals("{ x", MessageFormatter.formatSF("{ x", args));
+    assertEquals("{}", MessageFormatter.formatSF("{}", null));
+  }
+
+  /**
+   * A single argument is formatted as an array of one would be.
+   */
+  public void testSingleArgument() {
+    assertEquals("a and {1}", MessageFormatter.formatMF("{0} and {1}", "a"));
+    assertEquals("'a'", MessageFormatter.formatMF("''{0}''", "a"));
+    assertEquals("a {} {", MessageFormatter.formatSF("{} {} \\{", "a"));
+    assertEquals("null", MessageFormatter.formatSF("{}", (Object) null));
+    assertNull(MessageFormatter.formatMF(null, "a"));
+    assertNull(MessageFormatter.formatSF(null, "a"));
+  }
+
+  /**
+   * Threads formatting the same patterns get the same results.
+   */
+  public void testThreads() throws InterruptedException {
+    final String[] failure = new String[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+          public void run() {
+            for (int i = 0; i < 1000; i++) {
+              Object[] args = new Object[] {new Integer(i)};
+              String pattern = "value {0,number,0000} #" + (i % 200);
+              String expected = MessageFormat.format(pattern, args);
+              String actual = MessageFormatter.formatMF(pattern, args);
+              if (!expected.equals(actual)) {
+                failure[0] = actual;
+              }
+            }
+          }
+        };
+      threads[t].start();
+    }
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+    }
+    assertNull(failure[0]);
+  }
+}
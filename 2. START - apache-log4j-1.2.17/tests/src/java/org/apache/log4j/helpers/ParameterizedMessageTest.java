@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests for {@link ParameterizedMessage}.
+ */
+public class ParameterizedMessageTest extends TestCase {
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public ParameterizedMessageTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Placeholders are replaced in order.
+   */
+  public void testFormat() {
+    assertEquals("a=1, b=2, c=3",
+      new ParameterizedMessage("a={}, b={}, c={}", "1", new Integer(2),
+                               new Long(3)).toString());
+    assertEquals("null", new ParameterizedMessage("{}", null).toString());
+    assertEquals("plain", new ParameterizedMessage("plain", "x").toString());
+    assertNull(new ParameterizedMessage(null, "x").toString());
+  }
+
+  /**
+   * Placeholders without an argument are left as they are.
+   */
+  public void testMissingArgument() {
+    assertEquals("1 {} {", new ParameterizedMessage("{} {} {", "1").toString());
+  }
+
+  /**
+   * An escaped brace is output without its backslash.
+   */
+  public void testEscape() {
+    assertEquals("{} 1 \\}",
+      new ParameterizedMessage("\\{} {} \\}", "1").toString());
+  }
+
+  /**
+   * The message can be appended to a buffer and its arguments read.
+   */
+  public void testFormatToBuffer() {
+    ParameterizedMessage msg = new ParameterizedMessage("{}-{}", "a", "b");
+    StringBuffer buf = new StringBuffer(">");
+    msg.format(buf);
+    assertEquals(">a-b", buf.toString());
+    assertEquals("{}-{}", msg.getPattern());
+    assertEquals(2, msg.getArguments().length);
+    assertEquals("b", msg.getArguments()[1]);
+  }
+}
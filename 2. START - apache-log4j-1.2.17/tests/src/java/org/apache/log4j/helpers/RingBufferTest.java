@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.helpers;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * Tests for {@link RingBuffer}.
+ */
+public class RingBufferTest extends TestCase {
+  private static final Logger logger = Logger.getLogger(RingBufferTest.class);
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public RingBufferTest(final String name) {
+    super(name);
+  }
+
+  private static LoggingEvent createEvent(final int i) {
+    return new LoggingEvent("", logger, Level.DEBUG, "e" + i, null);
+  }
+
+  /**
+   * Buffer size must be positive.
+   */
+  public void testBadSize() {
+    try {
+      new RingBuffer(0);
+      fail("Should have thrown IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+    }
+  }
+
+  /**
+   * Events come out in order and offer fails exactly when
+   * the requested size, not the rounded up capacity, is reached.
+   */
+  public void testOfferPoll() {
+    for (int size = 1; size <= 100; size += 11) {
+      RingBuffer ring = new RingBuffer(size);
+      assertEquals(size, ring.getMaxSize());
+      assertTrue(ring.isEmpty());
+      assertNull(ring.poll());
+
+      for (int round = 0; round < 3; round++) {
+        LoggingEvent[] events = new LoggingEvent[size];
+        for (int i = 0; i < size; i++) {
+          events[i] = createEvent(i);
+          assertTrue(ring.offer(events[i]));
+        }
+        assertFalse(ring.offer(createEvent(size)));
+        assertEquals(size, ring.length());
+
+        for (int i = 0; i < size; i++) {
+          assertSame(events[i], ring.poll());
+        }
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+      }
+    }
+  }
+
+  /**
+   * drainTo copies at most batch.length events.
+   */
+  public void testDrainTo() {
+    RingBuffer ring = new RingBuffer(10);
+    for (int i = 0; i < 7; i++) {
+      ring.offer(createEvent(i));
+    }
+    LoggingEvent[] batch = new LoggingEvent[5];
+    assertEquals(5, ring.drainTo(batch));
+    assertEquals("e0", batch[0].getMessage());
+    assertEquals("e4", batch[4].getMessage());
+    assertEquals(2, ring.drainTo(batch));
+    assertEquals("e5", batch[0].getMessage());
+    assertEquals(0, ring.drainTo(batch));
+    assertEquals(0, ring.length());
+  }
+
+  /**
+   * Events from concurrent producers are all delivered once.
+   */
+  public void testConcurrentProducers() throws InterruptedException {
+    final RingBuffer ring = new RingBuffer(16);
+    final int producers = 4;
+    final int perProducer = 1000;
+    final WaitStrategy wait = WaitStrategy.forName("yield", null);
+    Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          for (int j = 0; j < perProducer; j++) {
+            LoggingEvent event = createEvent(j);
+            int attempt = 0;
+            while (!ring.offer(event)) {
+              try {
+                wait.idle(attempt++);
+              } catch (InterruptedException ex) {
+                return;
+              }
+            }
+          }
+        }
+      });
+      threads[i].start();
+    }
+
+    int received = 0;
+    long deadline = System.currentTimeMillis() + 10000;
+    while (received < producers * perProducer
+        && System.currentTimeMillis() < deadline) {
+      if (ring.poll() != null) {
+        received++;
+      } else {
+        Thread.yield();
+      }
+    }
+    for (int i = 0; i < producers; i++) {
+      threads[i].join();
+    }
+    assertEquals(producers * perProducer, received);
+    assertTrue(ring.isEmpty());
+  }
+}
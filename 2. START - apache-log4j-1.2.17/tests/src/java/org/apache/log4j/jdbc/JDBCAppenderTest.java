@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.jdbc;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+
+
+/**
+ * Tests for {@link JDBCAppender} against a connection that records
+ * the statements it is given.
+ */
+public class JDBCAppenderTest extends TestCase {
+  /**
+   * Rows of each executed batch, as lists of bound values.
+   */
+  private final Vector batches = new Vector();
+
+  /**
+   * Names of the threads that executed the batches.
+   */
+  private final Vector batchThreads = new Vector();
+
+  /**
+   * SQL given to executeUpdate.
+   */
+  private final Vector updates = new Vector();
+
+  /**
+   * Appender under test.
+   */
+  private JDBCAppender appender;
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public JDBCAppenderTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void setUp() {
+    final Connection recorder = (Connection) createProxy(Connection.class,
+      new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method,
+                             final Object[] args) {
+          String name = method.getName();
+          if (name.equals("prepareStatement")) {
+            return createStatement();
+          }
+          if (name.equals("createStatement")) {
+            return createProxy(Statement.class, new InvocationHandler() {
+                public Object invoke(final Object p, final Method m,
+                                     final Object[] a) {
+                  if (m.getName().equals("executeUpdate")) {
+                    updates.addElement(a[0]);
+                    return new Integer(1);
+                  }
+                  return null;
+                }
+              });
+          }
+          if (name.equals("isClosed")) {
+            return Boolean.FALSE;
+          }
+          return null;
+        }
+      });
+    appender = new JDBCAppender() {
+        protected Connection getConnection() {
+          return recorder;
+        }
+      };
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void tearDown() {
+    appender.close();
+    MDC.remove("user");
+  }
+
+  /**
+   * Creates a proxy of an interface.
+   */
+  private static Object createProxy(final Class type,
+                                    final InvocationHandler handler) {
+    return Proxy.newProxyInstance(JDBCAppenderTest.class.getClassLoader(),
+                                  new Class[] {type}, handler);
+  }
+
+  /**
+   * Creates a prepared statement recording its batches.
+   */
+  private PreparedStatement createStatement() {
+    final List rows = new ArrayList();
+    final List row = new ArrayList();
+    return (PreparedStatement) createProxy(PreparedStatement.class,
+      new InvocationHandler() {
+        public Object invoke(final Object proxy, final Method method,
+                             final Object[] args) {
+          String name = method.getName();
+          if (name.equals("setString") || name.equals("setTimestamp")) {
+            row.add(args[1]);
+          } else if (name.equals("setNull")) {
+            row.add(null);
+          } else if (name.equals("addBatch")) {
+            rows.add(new ArrayList(row));
+            row.clear();
+          } else if (name.equals("executeBatch")) {
+            batchThreads.addElement(Thread.currentThread().getName());
+            batches.addElement(new ArrayList(rows));
+            return new int[rows.size()];
+          }
+          return null;
+        }
+      });
+  }
+
+  /**
+   * Appends an event.
+   */
+  private void append(final String message) {
+    appender.doAppend(new LoggingEvent(Logger.class.getName(),
+                                       Logger.getLogger(JDBCAppenderTest.class),
+                                       Level.INFO, message, null));
+  }
+
+  /**
+   * Events are inserted in batches of the buffer size with their
+   * values bound, whatever quotes they contain.
+   */
+  public void testBatchInsert() {
+    appender.setSql("insert into LOG (Logged, Level, Message, Usr) values (?, ?, ?, ?)");
+    appender.setParameters("timestamp, level, message, property{user}");
+    appender.setBufferSize(3);
+    appender.activateOptions();
+    MDC.put("user", "bob");
+    for (int i = 0; i < 7; i++) {
+      append("it's " + i);
+    }
+    assertEquals(2, batches.size());
+    appender.close();
+    assertEquals(3, batches.size());
+    assertEquals(1, ((List) batches.elementAt(2)).size());
+    assertEquals(0, updates.size());
+
+    List row = (List) ((List) batches.elementAt(1)).get(2);
+    assertTrue(row.get(0) instanceof Timestamp);
+    assertEquals("INFO", row.get(1));
+    assertEquals("it's 5", row.get(2));
+    assertEquals("bob", row.get(3));
+  }
+
+  /**
+   * With a flush interval, events are inserted by another thread
+   * without waiting for the buffer to fill.
+   */
+  public void testFlushInterval() throws InterruptedException {
+    appender.setSql("insert into LOG (Message, Ndc) values (?, ?)");
+    appender.setParameters("message, ndc");
+    appender.setBufferSize(100);
+    appender.setFlushInterval(50);
+    appender.activateOptions();
+    append("first");
+    append("second");
+    for (int i = 0; i < 200 && batches.isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, batches.size());
+    List rows = (List) batches.elementAt(0);
+    assertEquals(2, rows.size());
+    assertEquals("second", ((List) rows.get(1)).get(0));
+    assertNull(((List) rows.get(1)).get(1));
+    assertFalse(Thread.currentThread().getName().equals(batchThreads.elementAt(0)));
+  }
+
+  /**
+   * Without parameters, each event is formatted into a statement by
+   * the layout.
+   */
+  public void testStatement() {
+    appender.setSql("insert into LOG (Message) values ('%m')");
+    appender.setBufferSize(2);
+    append("a");
+    append("b");
+    assertEquals(2, updates.size());
+    assertEquals("insert into LOG (Message) values ('b')", updates.elementAt(1));
+    assertEquals(0, batches.size());
+  }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LocationInfo;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+import org.apache.log4j.spi.ThrowableInformation;
+import org.apache.log4j.xml.XLevel;
+
+
+/**
+ * Tests for {@link BinaryEventEncoder} and {@link BinaryEventDecoder}.
+ */
+public class BinaryEventCodecTest extends TestCase {
+  /**
+   * Repository receiving decoded events.
+   */
+  private final Hierarchy hierarchy = new Hierarchy(new RootLogger(Level.ALL));
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public BinaryEventCodecTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * Creates an event with every optional field set.
+   */
+  private static LoggingEvent createFullEvent(final long timeStamp) {
+    Map mdc = new HashMap();
+    mdc.put("user", "\u00e9milie");
+    mdc.put("request", new Integer(42));
+    return new LoggingEvent(Logger.class.getName(),
+                            Logger.getLogger("org.example.Full"),
+                            timeStamp, XLevel.TRACE,
+                            "caf\u00e9 \u20ac \ud834\udd1e\u0000",
+                            "worker-1",
+                            new ThrowableInformation(
+                              new String[] {"java.lang.Exception: boom",
+                                            "\tat Foo.bar(Foo.java:12)"}),
+                            "outer inner",
+                            new LocationInfo("Foo.java", "org.example.Foo",
+                                             "bar", "12"),
+                            mdc);
+  }
+
+  /**
+   * Encodes events into a stream with a header.
+   */
+  private static byte[] encode(final LoggingEvent[] events) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BinaryEventEncoder.writeHeader(out);
+    BinaryEventEncoder encoder = new BinaryEventEncoder();
+    for (int i = 0; i < events.length; i++) {
+      encoder.encode(events[i]);
+    }
+    encoder.writeTo(out);
+    return out.toByteArray();
+  }
+
+  /**
+   * All fields survive a round trip, including repeated strings sent
+   * through the string table.
+   */
+  public void testRoundTrip() throws IOException {
+    LoggingEvent full = createFullEvent(1000000000000L);
+    LoggingEvent plain = new LoggingEvent(Logger.class.getName(),
+                                          Logger.getLogger("org.example.Full"),
+                                          999999999000L, Level.WARN,
+                                          "plain", null);
+    InputStream in = new ByteArrayInputStream(
+      encode(new LoggingEvent[] {full, plain, full}));
+    assertEquals(BinaryEventEncoder.VERSION, BinaryEventDecoder.readHeader(in));
+    BinaryEventDecoder decoder = new BinaryEventDecoder(hierarchy);
+
+    for (int i = 0; i < 2; i++) {
+      LoggingEvent event = decoder.read(in);
+      assertEquals(1000000000000L, event.getTimeStamp());
+      assertSame(XLevel.TRACE, event.getLevel());
+      assertEquals("org.example.Full", event.getLoggerName());
+      assertSame(hierarchy.getLogger("org.example.Full"), event.getLogger());
+      assertEquals("caf\u00e9 \u20ac \ud834\udd1e\u0000",
+                   event.getRenderedMessage());
+      assertEquals("worker-1", event.getThreadName());
+      assertEquals("outer inner", event.getNDC());
+      assertEquals("\u00e9milie", event.getMDC("user"));
+      assertEquals("42", event.getMDC("request"));
+      String[] rep = event.getThrowableStrRep();
+      assertEquals(2, rep.length);
+      assertEquals("\tat Foo.bar(Foo.java:12)", rep[1]);
+      LocationInfo location = event.getLocationInformation();
+      assertEquals("org.example.Foo", location.getClassName());
+      assertEquals("bar", location.getMethodName());
+      assertEquals("Foo.java", location.getFileName());
+      assertEquals("12", location.getLineNumber());
+
+      if (i == 0) {
+        event = decoder.read(in);
+        assertEquals(999999999000L, event.getTimeStamp());
+        assertSame(Level.WARN, event.getLevel());
+        assertEquals("plain", event.getRenderedMessage());
+        assertNull(event.getThrowableStrRep());
+        assertEquals(LocationInfo.NA,
+                     event.getLocationInformation().getClassName());
+      }
+    }
+    try {
+      decoder.read(in);
+      fail("Expected EOFException");
+    } catch (EOFException ex) {
+    }
+  }
+
+  /**
+   * After resetContext, records can be read by a new decoder.
+   */
+  public void testResetContext() throws IOException {
+    BinaryEventEncoder encoder = new BinaryEventEncoder();
+    encoder.encode(createFullEvent(5000));
+    encoder.reset();
+    encoder.resetContext();
+    encoder.encode(createFullEvent(6000));
+    byte[] record = encoder.toByteArray();
+
+    BinaryEventDecoder decoder = new BinaryEventDecoder(hierarchy);
+    LoggingEvent event = decoder.read(new ByteArrayInputStream(record));
+    assertEquals(6000, event.getTimeStamp());
+    assertEquals("org.example.Foo",
+                 event.getLocationInformation().getClassName());
+  }
+
+  /**
+   * A peer defining more strings than the encoder ever does is
+   * rejected instead of growing the string table without bound.
+   */
+  public void testTooManySymbols() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i <= BinaryEventEncoder.MAX_SYMBOLS / 2; i++) {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      body.write(0); // flags
+      body.write(0); // time stamp
+      body.write(0); // level
+      String[] names = new String[] {"l" + i, "t" + i};
+      for (int j = 0; j < names.length; j++) {
+        body.write(BinaryEventEncoder.SYMBOL_NEW);
+        body.write(names[j].length() + 1);
+        body.write(names[j].getBytes("US-ASCII"));
+      }
+      body.write(0); // null message
+      out.write(body.size());
+      body.writeTo(out);
+    }
+
+    InputStream in = new ByteArrayInputStream(out.toByteArray());
+    BinaryEventDecoder decoder = new BinaryEventDecoder(hierarchy);
+    for (int i = 0; i < BinaryEventEncoder.MAX_SYMBOLS / 2; i++) {
+      decoder.read(in);
+    }
+    try {
+      decoder.read(in);
+      fail("Expected StreamCorruptedException");
+    } catch (StreamCorruptedException ex) {
+    }
+  }
+
+  /**
+   * The header of a binary stream is recognized without being
+   * consumed, and a serialized stream is not mistaken for one.
+   */
+  public void testIsBinary() throws IOException {
+    InputStream in = new BufferedInputStream(
+      new ByteArrayInputStream(encode(new LoggingEvent[0])));
+    assertTrue(BinaryEventDecoder.isBinary(in));
+    assertEquals(BinaryEventEncoder.VERSION, BinaryEventDecoder.readHeader(in));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    new ObjectOutputStream(bytes).close();
+    in = new BufferedInputStream(
+      new ByteArrayInputStream(bytes.toByteArray()));
+    assertFalse(BinaryEventDecoder.isBinary(in));
+    assertEquals(0xAC, in.read());
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Vector;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+
+
+/**
+ * Tests for {@link SocketAppender} with the <b>QueueSize</b> option set.
+ */
+public class QueuedSocketAppenderTest extends TestCase {
+  /**
+   * Spill file.
+   */
+  private static final File SPILL_FILE = new File("output/socket-spill.bin");
+
+  /**
+   * Events received by the server.
+   */
+  private final Vector received = new Vector();
+
+  /**
+   * Server socket, null until a server is started.
+   */
+  private ServerSocket server;
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public QueuedSocketAppenderTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void setUp() {
+    SPILL_FILE.delete();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void tearDown() throws IOException {
+    if (server != null) {
+      server.close();
+    }
+    SPILL_FILE.delete();
+  }
+
+  /**
+   * Starts a server accepting a single connection and collecting
+   * the events it receives.
+   */
+  private void startServer(final int port) throws IOException {
+    server = new ServerSocket(port);
+    final Hierarchy hierarchy = new Hierarchy(new RootLogger(Level.ALL));
+    hierarchy.getRootLogger().addAppender(new AppenderSkeleton() {
+        protected void append(final LoggingEvent event) {
+          received.addElement(event.getRenderedMessage());
+        }
+
+        public boolean requiresLayout() {
+          return false;
+        }
+
+        public void close() {
+        }
+      });
+    Thread thread = new Thread() {
+        public void run() {
+          try {
+            new SocketNode(server.accept(), hierarchy).run();
+          } catch (IOException e) {
+          }
+        }
+      };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Returns a port nothing listens to.
+   */
+  private static int getFreePort() throws IOException {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    return port;
+  }
+
+  /**
+   * Creates an activated appender sending to a local port.
+   */
+  private static SocketAppender createAppender(final int port,
+                                               final File spillFile) {
+    SocketAppender appender = new SocketAppender();
+    appender.setRemoteHost("localhost");
+    appender.setPort(port);
+    appender.setReconnectionDelay(100);
+    appender.setQueueSize(64);
+    appender.setBatchSize(8);
+    appender.setCodec("binary");
+    if (spillFile != null) {
+      appender.setSpillFile(spillFile.getPath());
+    }
+    appender.activateOptions();
+    return appender;
+  }
+
+  /**
+   * Sends events numbered from <code>start</code> to <code>end</code>.
+   */
+  private static void send(final SocketAppender appender,
+                           final int start, final int end) {
+    Logger logger = Logger.getLogger(QueuedSocketAppenderTest.class);
+    for (int i = start; i < end; i++) {
+      appender.doAppend(new LoggingEvent(Logger.class.getName(), logger,
+                                         Level.INFO, "m" + i, null));
+    }
+  }
+
+  /**
+   * Waits until <code>count</code> events have been received.
+   */
+  private void awaitReceived(final int count) throws InterruptedException {
+    for (int i = 0; i < 500 && received.size() < count; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Queued events are all sent, in order, by the time the appender
+   * is closed.
+   */
+  public void testQueuedDelivery() throws Exception {
+    int port = getFreePort();
+    startServer(port);
+    SocketAppender appender = createAppender(port, null);
+    send(appender, 0, 50);
+    appender.close();
+    awaitReceived(50);
+    assertEquals(50, received.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals("m" + i, received.elementAt(i));
+    }
+    assertEquals(50, appender.getQueuedCount());
+    assertEquals(50, appender.getSentCount());
+    assertEquals(0, appender.getDroppedCount());
+    assertEquals(0, appender.getSpilledCount());
+  }
+
+  /**
+   * Without a spill file, events are dropped while the server is
+   * unreachable and logging does not block.
+   */
+  public void testDropWithoutServer() throws Exception {
+    SocketAppender appender = createAppender(getFreePort(), null);
+    send(appender, 0, 20);
+    appender.close();
+    assertEquals(0, appender.getSentCount());
+    assertEquals(20, appender.getQueuedCount());
+    assertEquals(20, appender.getDroppedCount());
+  }
+
+  /**
+   * Events spilled while the server is down are sent in order,
+   * before newer events, once it comes up.
+   */
+  public void testSpillAndReplay() throws Exception {
+    int port = getFreePort();
+    SocketAppender appender = createAppender(port, SPILL_FILE);
+    send(appender, 0, 20);
+    for (int i = 0; i < 500 && appender.getSpilledCount() < 20; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(20, appender.getSpilledCount());
+    assertTrue(SPILL_FILE.exists());
+
+    startServer(port);
+    send(appender, 20, 25);
+    awaitReceived(25);
+    appender.close();
+    assertEquals(25, received.size());
+    for (int i = 0; i < 25; i++) {
+      assertEquals("m" + i, received.elementAt(i));
+    }
+    assertEquals(25, appender.getSentCount());
+    assertEquals(0, appender.getDroppedCount());
+    assertFalse(SPILL_FILE.exists());
+  }
+}
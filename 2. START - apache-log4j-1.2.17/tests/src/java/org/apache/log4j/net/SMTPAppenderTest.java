@@ -17,12 +17,23 @@
 package org.apache.log4j.net;
 
 import junit.framework.TestCase;
+import org.apache.log4j.Level;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
 import org.apache.log4j.spi.LoggingEvent;
 import org.apache.log4j.spi.TriggeringEventEvaluator;
 import org.apache.log4j.xml.DOMConfigurator;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
 /**
  * Tests for SMTPAppender.
  */
@@ -59,4 +70,216 @@ public class SMTPAppenderTest extends TestCase {
       TriggeringEventEvaluator evaluator = appender.getEvaluator();
       assertTrue(evaluator instanceof MockTriggeringEventEvaluator);
   }
+
+    /**
+     * Local SMTP server recording the data of the messages it receives.
+     */
+  private static final class SMTPServer extends Thread {
+      /**
+       * Server socket.
+       */
+      private final ServerSocket server;
+
+      /**
+       * Data of the received messages.
+       */
+      final Vector messages = new Vector();
+
+      /**
+       * Time in milliseconds the server waits before accepting a message.
+       */
+      volatile long delay;
+
+      /**
+       * Starts a server on a free port.
+       */
+      SMTPServer() throws IOException {
+          server = new ServerSocket(0);
+          setDaemon(true);
+          start();
+      }
+
+      /**
+       * Returns the port of the server.
+       */
+      int getPort() {
+          return server.getLocalPort();
+      }
+
+      /**
+       * Stops the server.
+       */
+      void close() throws IOException {
+          server.close();
+      }
+
+      /**
+       * Waits until <code>count</code> messages have been received.
+       */
+      void awaitMessages(final int count) throws InterruptedException {
+          for (int i = 0; i < 500 && messages.size() < count; i++) {
+              Thread.sleep(10);
+          }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void run() {
+          try {
+              while (true) {
+                  Socket socket = server.accept();
+                  try {
+                      serve(socket);
+                  } catch (IOException e) {
+                      // next connection
+                  } finally {
+                      socket.close();
+                  }
+              }
+          } catch (IOException e) {
+              // closed
+          }
+      }
+
+      /**
+       * Answers the commands of one connection.
+       */
+      private void serve(final Socket socket) throws IOException {
+          BufferedReader in = new BufferedReader(
+                  new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+          Writer out = new OutputStreamWriter(socket.getOutputStream(), "US-ASCII");
+          reply(out, "220 localhost");
+          String line;
+          while ((line = in.readLine()) != null) {
+              String command = line.toUpperCase();
+              if (command.startsWith("QUIT")) {
+                  reply(out, "221 bye");
+                  return;
+              }
+              if (command.startsWith("DATA")) {
+                  reply(out, "354 go ahead");
+                  StringBuffer data = new StringBuffer();
+                  while ((line = in.readLine()) != null && !line.equals(".")) {
+                      data.append(line).append('\n');
+                  }
+                  try {
+                      Thread.sleep(delay);
+                  } catch (InterruptedException e) {
+                      return;
+                  }
+                  messages.addElement(data.toString());
+              }
+              reply(out, "250 OK");
+          }
+      }
+
+      /**
+       * Writes a reply line.
+       */
+      private static void reply(final Writer out, final String reply) throws IOException {
+          out.write(reply);
+          out.write("\r\n");
+          out.flush();
+      }
+  }
+
+    /**
+     * Creates an appender sending to a local server.
+     */
+  private static SMTPAppender createAppender(final SMTPServer server) {
+      SMTPAppender appender = new SMTPAppender();
+      appender.setName("A1");
+      appender.setSMTPHost("localhost");
+      appender.setSMTPPort(server.getPort());
+      appender.setFrom("log4j@localhost");
+      appender.setTo("admin@localhost");
+      appender.setSubject("log4j");
+      appender.setLayout(new PatternLayout("[%m]%n"));
+      return appender;
+  }
+
+    /**
+     * Appends an event.
+     */
+  private static void append(final SMTPAppender appender, final Level level,
+                             final String message, final Throwable t) {
+      appender.doAppend(new LoggingEvent(Logger.class.getName(),
+              Logger.getLogger(SMTPAppenderTest.class), level, message, t));
+  }
+
+    /**
+     * An asynchronous appender does not wait for the server, and sends
+     * the errors of a storm in one message.
+     */
+  public void testAsynchronous() throws Exception {
+      SMTPServer server = new SMTPServer();
+      server.delay = 500;
+      SMTPAppender appender = createAppender(server);
+      appender.setAsynchronous(true);
+      appender.setCoalesceWindow(300);
+      appender.activateOptions();
+      long start = System.currentTimeMillis();
+      append(appender, Level.INFO, "context", null);
+      for (int i = 0; i < 5; i++) {
+          append(appender, Level.ERROR, "error " + i, null);
+      }
+      assertTrue(System.currentTimeMillis() - start < 250);
+      server.awaitMessages(1);
+      assertEquals(1, server.messages.size());
+      String data = (String) server.messages.elementAt(0);
+      assertTrue(data.indexOf("[context]") >= 0);
+      assertTrue(data.indexOf("[error 4]") >= 0);
+
+      append(appender, Level.ERROR, "error 5", null);
+      appender.close();
+      assertEquals(2, server.messages.size());
+      data = (String) server.messages.elementAt(1);
+      assertTrue(data.indexOf("[error 5]") >= 0);
+      assertTrue(data.indexOf("[error 4]") < 0);
+      server.close();
+  }
+
+    /**
+     * Repetitions of an error do not trigger messages during the rate
+     * limit interval, other errors do.
+     */
+  public void testRateLimit() throws Exception {
+      SMTPServer server = new SMTPServer();
+      SMTPAppender appender = createAppender(server);
+      appender.setRateLimitInterval(60000);
+      appender.activateOptions();
+      for (int i = 0; i < 3; i++) {
+          append(appender, Level.ERROR, "failed " + i,
+                 new IllegalStateException("attempt " + i));
+      }
+      assertEquals(1, server.messages.size());
+      assertEquals(2, appender.getSuppressedCount());
+      append(appender, Level.ERROR, "other", null);
+      assertEquals(2, server.messages.size());
+      String data = (String) server.messages.elementAt(1);
+      assertTrue(data.indexOf("[failed 2]") >= 0);
+      assertTrue(data.indexOf("[other]") >= 0);
+      appender.close();
+      server.close();
+  }
+
+    /**
+     * An asynchronous appender sends the remaining events on close when
+     * SendOnClose is set.
+     */
+  public void testAsynchronousSendOnClose() throws Exception {
+      SMTPServer server = new SMTPServer();
+      SMTPAppender appender = createAppender(server);
+      appender.setAsynchronous(true);
+      appender.setSendOnClose(true);
+      appender.activateOptions();
+      append(appender, Level.INFO, "pending", null);
+      Thread.sleep(100);
+      assertEquals(0, server.messages.size());
+      appender.close();
+      assertEquals(1, server.messages.size());
+      assertTrue(((String) server.messages.elementAt(0)).indexOf("[pending]") >= 0);
+      server.close();
+  }
 }
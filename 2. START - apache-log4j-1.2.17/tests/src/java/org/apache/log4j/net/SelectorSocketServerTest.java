@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Vector;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggerRepository;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+
+
+/**
+ * Tests for {@link SelectorSocketServer}.
+ */
+public class SelectorSocketServerTest extends TestCase {
+  /**
+   * Messages of the events received by the server.
+   */
+  private final Vector received = new Vector();
+
+  /**
+   * Repository receiving the events.
+   */
+  private final Hierarchy hierarchy = new Hierarchy(new RootLogger(Level.ALL));
+
+  /**
+   * Server, started by setUp.
+   */
+  private SelectorSocketServer server;
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public SelectorSocketServerTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void setUp() throws IOException {
+    hierarchy.getRootLogger().addAppender(new AppenderSkeleton() {
+        protected void append(final LoggingEvent event) {
+          received.addElement(event.getRenderedMessage());
+        }
+
+        public boolean requiresLayout() {
+          return false;
+        }
+
+        public void close() {
+        }
+      });
+    // a small queue so that connections get paused
+    server = new SelectorSocketServer(0, 1, 1, 4) {
+        protected LoggerRepository getRepository(final InetAddress address) {
+          return hierarchy;
+        }
+      };
+    server.start();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void tearDown() {
+    server.shutdown();
+  }
+
+  /**
+   * Creates an activated appender sending to the server.
+   */
+  private SocketAppender createAppender(final String codec) {
+    SocketAppender appender = new SocketAppender();
+    appender.setRemoteHost("localhost");
+    appender.setPort(server.getLocalPort());
+    appender.setCodec(codec);
+    appender.activateOptions();
+    return appender;
+  }
+
+  /**
+   * Creates an event.
+   */
+  private static LoggingEvent createEvent(final String message) {
+    return new LoggingEvent(Logger.class.getName(),
+                            Logger.getLogger(SelectorSocketServerTest.class),
+                            Level.INFO, message, null);
+  }
+
+  /**
+   * Waits until <code>count</code> events have been received.
+   */
+  private void awaitReceived(final int count) throws InterruptedException {
+    for (int i = 0; i < 500 && received.size() < count; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Asserts that the events of a client arrived in order.
+   */
+  private void assertInOrder(final String prefix, final int count) {
+    int next = 0;
+    for (int i = 0; i < received.size(); i++) {
+      String message = (String) received.elementAt(i);
+      if (message.startsWith(prefix)) {
+        assertEquals(prefix + next, message);
+        next++;
+      }
+    }
+    assertEquals(count, next);
+  }
+
+  /**
+   * Events of concurrent binary clients are all logged, in the order
+   * each client sent them.
+   */
+  public void testBinaryClients() throws Exception {
+    SocketAppender a = createAppender("binary");
+    SocketAppender b = createAppender("binary");
+    for (int i = 0; i < 200; i++) {
+      a.doAppend(createEvent("a" + i));
+      b.doAppend(createEvent("b" + i));
+    }
+    a.close();
+    b.close();
+    awaitReceived(400);
+    assertEquals(400, received.size());
+    assertInOrder("a", 200);
+    assertInOrder("b", 200);
+  }
+
+  /**
+   * Records split over many reads are decoded once complete.
+   */
+  public void testPartialRecords() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryEventEncoder.writeHeader(bytes);
+    BinaryEventEncoder encoder = new BinaryEventEncoder();
+    StringBuffer big = new StringBuffer();
+    for (int i = 0; i < 5000; i++) {
+      big.append("0123456789");
+    }
+    encoder.encode(createEvent("p0"));
+    encoder.encode(createEvent(big.toString()));
+    encoder.encode(createEvent("p1"));
+    encoder.writeTo(bytes);
+    byte[] stream = bytes.toByteArray();
+
+    Socket socket = new Socket("localhost", server.getLocalPort());
+    OutputStream out = socket.getOutputStream();
+    for (int i = 0; i < stream.length; i += 7) {
+      out.write(stream, i, Math.min(7, stream.length - i));
+      out.flush();
+      if (i % 700 == 0) {
+        Thread.sleep(1);
+      }
+    }
+    socket.close();
+    awaitReceived(3);
+    assertEquals(3, received.size());
+    assertEquals("p0", received.elementAt(0));
+    assertEquals(big.toString(), received.elementAt(1));
+    assertEquals("p1", received.elementAt(2));
+  }
+
+  /**
+   * Clients sending serialized events are still served.
+   */
+  public void testSerializedClient() throws Exception {
+    SocketAppender appender = createAppender("serialized");
+    for (int i = 0; i < 20; i++) {
+      appender.doAppend(createEvent("s" + i));
+    }
+    appender.close();
+    awaitReceived(20);
+    assertEquals(20, received.size());
+    assertInOrder("s", 20);
+  }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.log4j.net;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Hierarchy;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.apache.log4j.spi.RootLogger;
+
+
+/**
+ * Tests for {@link SocketHubAppender}.
+ */
+public class SocketHubAppenderTest extends TestCase {
+  /**
+   * Appender under test.
+   */
+  private SocketHubAppender appender;
+
+  /**
+   * Create new instance of test.
+   * @param name test name.
+   */
+  public SocketHubAppenderTest(final String name) {
+    super(name);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void setUp() throws IOException {
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    appender = new SocketHubAppender();
+    appender.setPort(port);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  protected void tearDown() {
+    appender.close();
+  }
+
+  /**
+   * Connects to the appender, waiting for it to listen.
+   */
+  private Socket connect() throws Exception {
+    for (int i = 0;; i++) {
+      try {
+        return new Socket("localhost", appender.getPort());
+      } catch (IOException e) {
+        if (i == 100) {
+          throw e;
+        }
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  /**
+   * A client reading events with a socket node.
+   */
+  private final class Client extends Thread {
+    /**
+     * Messages received.
+     */
+    final Vector received = new Vector();
+
+    /**
+     * Set to make the client stop reading.
+     */
+    volatile boolean blocked;
+
+    /**
+     * Node reading the events.
+     */
+    private final SocketNode node;
+
+    /**
+     * Connects a new client.
+     */
+    Client() throws Exception {
+      Hierarchy hierarchy = new Hierarchy(new RootLogger(Level.ALL));
+      hierarchy.getRootLogger().addAppender(new AppenderSkeleton() {
+          protected void append(final LoggingEvent event) {
+            while (blocked) {
+              try {
+                Thread.sleep(10);
+              } catch (InterruptedException e) {
+                return;
+              }
+            }
+            received.addElement(event.getRenderedMessage());
+          }
+
+          public boolean requiresLayout() {
+            return false;
+          }
+
+          public void close() {
+          }
+        });
+      node = new SocketNode(connect(), hierarchy);
+      setDaemon(true);
+      start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void run() {
+      node.run();
+    }
+
+    /**
+     * Waits until <code>count</code> events have been received.
+     */
+    void awaitReceived(final int count) throws InterruptedException {
+      for (int i = 0; i < 500 && received.size() < count; i++) {
+        Thread.sleep(10);
+      }
+    }
+  }
+
+  /**
+   * Appends an event.
+   */
+  private void append(final String message) {
+    appender.doAppend(new LoggingEvent(Logger.class.getName(),
+                                       Logger.getLogger(SocketHubAppenderTest.class),
+                                       Level.INFO, message, null));
+  }
+
+  /**
+   * Clients of both codecs receive the buffered events, then the
+   * events appended after they connected, in order.
+   */
+  public void testFanOut() throws Exception {
+    appender.setBufferSize(100);
+    appender.activateOptions();
+    for (int i = 0; i < 20; i++) {
+      append("m" + i);
+    }
+    Client serialized = new Client();
+    serialized.awaitReceived(20);
+    appender.setCodec("binary");
+    Client binary = new Client();
+    binary.awaitReceived(20);
+    for (int i = 20; i < 100; i++) {
+      append("m" + i);
+    }
+    serialized.awaitReceived(100);
+    binary.awaitReceived(100);
+    for (int i = 0; i < 100; i++) {
+      assertEquals("m" + i, serialized.received.elementAt(i));
+      assertEquals("m" + i, binary.received.elementAt(i));
+    }
+    assertEquals(100, serialized.received.size());
+    assertEquals(100, binary.received.size());
+    assertEquals(0, appender.getDroppedCount());
+  }
+
+  /**
+   * A client that stops reading does not block logging, loses events
+   * and then decodes the events that follow without error.
+   */
+  public void testSlowClient() throws Exception {
+    appender.setCodec("binary");
+    appender.setClientQueueSize(10);
+    appender.setBufferSize(1);
+    appender.activateOptions();
+    append("first");
+    Client slow = new Client();
+    slow.awaitReceived(1);
+    slow.blocked = true;
+
+    StringBuffer padding = new StringBuffer();
+    for (int i = 0; i < 1000; i++) {
+      padding.append("0123456789");
+    }
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 5000; i++) {
+      append(i + " " + padding);
+    }
+    assertTrue(System.currentTimeMillis() - start < 10000);
+    assertTrue(appender.getDroppedCount() > 0);
+
+    slow.blocked = false;
+    int count = -1;
+    while (count != slow.received.size()) {
+      count = slow.received.size();
+      Thread.sleep(100);
+    }
+    append("last");
+    slow.awaitReceived(count + 1);
+    assertEquals("last", slow.received.lastElement());
+    int previous = -1;
+    for (int i = 1; i < count; i++) {
+      String message = (String) slow.received.elementAt(i);
+      int n = Integer.parseInt(message.substring(0, message.indexOf(' ')));
+      assertTrue(n > previous);
+      previous = n;
+    }
+  }
+
+  /**
+   * With the disconnect policy, a client whose queue fills up is
+   * disconnected.
+   */
+  public void testDisconnect() throws Exception {
+    appender.setClientQueueSize(10);
+    appender.setSlowClientPolicy("disconnect");
+    appender.activateOptions();
+    Socket socket = connect();
+    InputStream in = socket.getInputStream();
+    // the stream header shows the client is registered
+    for (int i = 0; i < 4; i++) {
+      in.read();
+    }
+    StringBuffer padding = new StringBuffer();
+    for (int i = 0; i < 1000; i++) {
+      padding.append("0123456789");
+    }
+    for (int i = 0; i < 5000; i++) {
+      append(i + " " + padding);
+    }
+    assertTrue(appender.getDroppedCount() > 0);
+    try {
+      byte[] buf = new byte[65536];
+      while (in.read(buf) != -1) {
+      }
+    } catch (IOException e) {
+      // connection reset
+    }
+    socket.close();
+  }
+}
@@ -31,6 +31,10 @@ import org.apache.log4j.HTMLLayout;
 import java.util.StringTokenizer;
 import java.net.DatagramSocket;
 import java.net.DatagramPacket;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
 import java.util.Date;
@@ -591,4 +595,142 @@ public class SyslogAppenderTest extends TestCase {
       assertEquals(msg, rcvbuf.toString());
     }
 
+    /**
+     * Tests the RFC 5424 format over UDP.
+     * @throws Exception if exception during test.
+     */
+    public void testRfc5424() throws Exception {
+        DatagramSocket ds = new DatagramSocket();
+        ds.setSoTimeout(2000);
+
+      SyslogAppender appender = new SyslogAppender();
+      appender.setSyslogHost("localhost:" + ds.getLocalPort());
+      appender.setName("name");
+      appender.setFormat("RFC5424");
+      appender.setAppName("myapp");
+      appender.setLayout(new PatternLayout("%m"));
+      appender.activateOptions();
+
+      Logger l = Logger.getRootLogger();
+      l.addAppender(appender);
+      l.warn("caf\u00e9", new Exception("failed"));
+      appender.close();
+      byte[] buf = new byte[1200];
+      DatagramPacket p = new DatagramPacket(buf, 0, buf.length);
+      ds.receive(p);
+      String msg = new String(p.getData(), 0, p.getLength(), "UTF-8");
+      assertTrue(msg, msg.matches(
+        "<12>1 \\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}Z \\S+ myapp - - - caf\u00e9"));
+      String hdr = msg.substring(0, msg.length() - 4);
+      p = new DatagramPacket(buf, 0, buf.length);
+      ds.receive(p);
+      assertEquals(hdr + "java.lang.Exception: failed",
+                   new String(p.getData(), 0, p.getLength(), "UTF-8"));
+      p = new DatagramPacket(buf, 0, buf.length);
+      ds.receive(p);
+      assertTrue(new String(p.getData(), 0, p.getLength(), "UTF-8").startsWith(hdr + "    at "));
+      ds.close();
+    }
+
+    /**
+     * Tests that TCP messages are framed by octet counting, sent
+     * together without immediate flush and never split.
+     * @throws Exception if exception during test.
+     */
+    public void testTcp() throws Exception {
+      ServerSocket server = new ServerSocket(0);
+      server.setSoTimeout(2000);
+
+      SyslogAppender appender = new SyslogAppender();
+      appender.setSyslogHost("localhost:" + server.getLocalPort());
+      appender.setName("name");
+      appender.setProtocol("TCP");
+      appender.setFormat("RFC5424");
+      appender.setImmediateFlush(false);
+      appender.setLayout(new PatternLayout("%m"));
+      appender.activateOptions();
+
+      StringBuffer msgbuf = new StringBuffer();
+      while(msgbuf.length() < 20000) {
+          msgbuf.append("0123456789\u00e9");
+      }
+      Logger l = Logger.getRootLogger();
+      l.addAppender(appender);
+      l.info("first");
+      l.info(msgbuf.toString());
+      for (int i = 0; i < 100; i++) {
+          l.info("message " + i);
+      }
+      Socket socket = server.accept();
+      appender.close();
+
+      InputStream in = socket.getInputStream();
+      ByteArrayOutputStream received = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+          received.write(buf, 0, n);
+      }
+      socket.close();
+      server.close();
+
+      byte[] bytes = received.toByteArray();
+      String[] messages = new String[102];
+      int pos = 0;
+      for (int i = 0; i < messages.length; i++) {
+          int space = pos;
+          while (bytes[space] != ' ') {
+              space++;
+          }
+          int length = Integer.parseInt(new String(bytes, pos, space - pos, "US-ASCII"));
+          messages[i] = new String(bytes, space + 1, length, "UTF-8");
+          pos = space + 1 + length;
+      }
+      assertEquals(bytes.length, pos);
+      assertTrue(messages[0].startsWith("<14>1 "));
+      assertTrue(messages[0].endsWith(" - - - first"));
+      assertTrue(messages[1].endsWith(" - - - " + msgbuf));
+      assertTrue(messages[101].endsWith(" - - - message 99"));
+    }
+
+    /**
+     * Tests that TCP messages waiting without immediate flush are
+     * sent once the next message ends more than a second later.
+     * @throws Exception if exception during test.
+     */
+    public void testTcpBatchDelay() throws Exception {
+      ServerSocket server = new ServerSocket(0);
+      server.setSoTimeout(2000);
+
+      SyslogAppender appender = new SyslogAppender();
+      appender.setSyslogHost("localhost:" + server.getLocalPort());
+      appender.setName("name");
+      appender.setProtocol("TCP");
+      appender.setImmediateFlush(false);
+      appender.setLayout(new PatternLayout("%m"));
+      appender.activateOptions();
+
+      Logger l = Logger.getRootLogger();
+      l.addAppender(appender);
+      l.info("first");
+      Thread.sleep(1100);
+      l.info("second");
+      Socket socket = server.accept();
+      socket.setSoTimeout(2000);
+
+      InputStream in = socket.getInputStream();
+      ByteArrayOutputStream received = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      while (received.toString("US-ASCII").indexOf("second") == -1) {
+          int n = in.read(buf);
+          assertTrue(n != -1);
+          received.write(buf, 0, n);
+      }
+      assertTrue(received.toString("US-ASCII").indexOf("first") != -1);
+
+      appender.close();
+      socket.close();
+      server.close();
+    }
+
 }
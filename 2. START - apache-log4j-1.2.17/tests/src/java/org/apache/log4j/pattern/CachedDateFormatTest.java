@@ -382,6 +382,65 @@ public final class CachedDateFormatTest
       assertEquals(1, maxValid);
   }
 
+  /**
+   * Test that shared instances are shared per pattern and time zone
+   * and keep their time zone.
+   */
+  public void testGetInstance() {
+      CachedDateFormat gmtFormat =
+        CachedDateFormat.getInstance("ABSOLUTE", GMT);
+      assertSame(gmtFormat, CachedDateFormat.getInstance("HH:mm:ss,SSS", GMT));
+      assertNotSame(gmtFormat,
+        CachedDateFormat.getInstance("HH:mm:ss,SSS", CHICAGO));
+      Date jul2 = new Date(12602L * 86400000L + 42);
+      assertEquals("00:00:00,042", gmtFormat.format(jul2));
+      try {
+          gmtFormat.setTimeZone(CHICAGO);
+          fail("Expected UnsupportedOperationException");
+      } catch (UnsupportedOperationException ex) {
+      }
+      assertEquals("00:00:00,042", gmtFormat.format(jul2));
+  }
+
+  /**
+   * Test that threads formatting times in and across seconds
+   * concurrently get their own milliseconds.
+   */
+  public void testConcurrentFormat() throws InterruptedException {
+      final CachedDateFormat format =
+        CachedDateFormat.getInstance("yyyy-MM-dd HH:mm:ss,SSS", GMT);
+      final SimpleDateFormat expected =
+        new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+      expected.setTimeZone(GMT);
+      final String[] failures = new String[4];
+      Thread[] threads = new Thread[failures.length];
+      for (int t = 0; t < threads.length; t++) {
+          final int id = t;
+          threads[t] = new Thread() {
+              public void run() {
+                  long ticks = 12602L * 86400000L;
+                  for (int i = 0; i < 5000 && failures[id] == null; i++) {
+                      long time = ticks + (i * 7L + id * 331L) % 4000;
+                      String actual =
+                        format.format(time, new StringBuffer()).toString();
+                      String wanted;
+                      synchronized (expected) {
+                          wanted = expected.format(new Date(time));
+                      }
+                      if (!wanted.equals(actual)) {
+                          failures[id] = actual + " instead of " + wanted;
+                      }
+                  }
+              }
+          };
+          threads[t].start();
+      }
+      for (int t = 0; t < threads.length; t++) {
+          threads[t].join();
+          assertNull(failures[t], failures[t]);
+      }
+  }
+
   
   public static Test xsuite() {
     TestSuite suite = new TestSuite();
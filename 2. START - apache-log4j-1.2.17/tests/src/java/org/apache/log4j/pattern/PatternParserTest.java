@@ -168,4 +168,33 @@ public class PatternParserTest extends TestCase {
         assertFactories(PatternParser.getFileNamePatternRules());
   }
 
+  /**
+   * Tests that the compiled converter chain formats events like the
+   * parsed converters, with merged literals and padded levels.
+   */
+  public void testCompiledChain() throws Exception {
+      String[] patterns = {
+          "%d %-5p [%t] %c - %m%n",
+          "%r [%t] %5p %c %x - %m%n",
+          "%d{ISO8601} %.2p %c{1} - %m%n%n",
+          "xyz %, foobar %%%n%-3m|",
+          "%-p%p%n"
+      };
+      Level[] levels = {
+          Level.INFO, Level.TRACE, Level.FATAL, Level.ALL,
+          org.apache.log4j.xml.XLevel.LETHAL
+      };
+      for (int i = 0; i < patterns.length; i++) {
+          BridgePatternConverter compiled = new BridgePatternConverter(patterns[i]);
+          for (int j = 0; j < levels.length; j++) {
+              LoggingEvent levelEvent = new LoggingEvent("org.apache.log4j.Logger",
+                      logger, event.timeStamp, levels[j], "msg 1", null);
+              StringBuffer buf = new StringBuffer("prefix ");
+              compiled.format(buf, levelEvent);
+              assertEquals("prefix " + convert(patterns[i], null, levelEvent),
+                      buf.toString());
+          }
+      }
+  }
+
 }
@@ -18,6 +18,8 @@ package org.apache.log4j.spi;
 
 import junit.framework.TestCase;
 
+import org.apache.log4j.util.SerializationTestHelper;
+
 /**
  * Tests for LocationInfo.
  */
@@ -82,4 +84,40 @@ public class LocationInfoTest extends TestCase {
          assertEquals("getInfo", li.getMethodName());
      }
 
+    /**
+     * Tests that the fields of the caller frame are returned and
+     * that locations of the same call site share their full info.
+     */
+    public void testCallerFrame() throws Exception {
+        LocationInfo[] infos = new LocationInfo[2];
+        int line = 0;
+        for (int i = 0; i < infos.length; i++) {
+            line = new Throwable().getStackTrace()[0].getLineNumber() + 1;
+            infos[i] = NameSubstring.getInfo();
+        }
+        LocationInfo li = infos[0];
+        assertEquals(LocationInfoTest.class.getName(), li.getClassName());
+        assertEquals("testCallerFrame", li.getMethodName());
+        assertEquals("LocationInfoTest.java", li.getFileName());
+        assertEquals(String.valueOf(line), li.getLineNumber());
+        assertEquals(LocationInfoTest.class.getName() + ".testCallerFrame"
+                + "(LocationInfoTest.java:" + line + ")", li.fullInfo);
+        assertSame(li.fullInfo, infos[1].fullInfo);
+
+        LocationInfo copy = (LocationInfo)
+            SerializationTestHelper.serializeClone(li);
+        assertEquals(li.fullInfo, copy.fullInfo);
+        assertEquals(String.valueOf(line), copy.getLineNumber());
+        assertEquals("testCallerFrame", copy.getMethodName());
+    }
+
+    /**
+     * Tests location info when the calling class is not on the stack.
+     */
+    public void testUnknownCaller() {
+        LocationInfo li = new LocationInfo(new Throwable(), "org.example.Missing");
+        assertNull(li.fullInfo);
+        assertEquals(LocationInfo.NA, li.getClassName());
+        assertEquals(LocationInfo.NA, li.getLineNumber());
+    }
 }
@@ -340,4 +340,22 @@ public class ThrowableInformationTest extends TestCase {
         assertEquals("NastyException", rep[0]);
     }
 
+    /**
+     * Tests that the representation of a throwable is rendered once
+     * for all the events logging it and can be appended to a buffer.
+     */
+    public void testSharedRendering() {
+        StringThrowable t = new StringThrowable("first\nsecond");
+        ThrowableInformation ti = new ThrowableInformation(t);
+        ThrowableInformation other = new ThrowableInformation(t);
+        String[] rep = ti.getThrowableStrRep();
+        String[] otherRep = other.getThrowableStrRep();
+        assertNotSame(rep, otherRep);
+        assertSame(rep[1], otherRep[1]);
+
+        StringBuffer buf = new StringBuffer("> ");
+        ti.appendTo(buf, "|");
+        assertEquals("> first|second|", buf.toString());
+    }
+
 }